@@ -16,11 +16,13 @@
  */
 package cloudeventbus.cli;
 
+import cloudeventbus.Constants;
 import cloudeventbus.pki.CertificateChain;
 import cloudeventbus.pki.CertificateUtils;
 import cloudeventbus.pki.TrustStore;
 import cloudeventbus.server.ClusterManager;
 import cloudeventbus.server.GlobalHub;
+import cloudeventbus.server.HeavyHitters;
 import cloudeventbus.server.ServerChannelInitializer;
 import cloudeventbus.server.ServerConfig;
 import com.beust.jcommander.JCommander;
@@ -33,6 +35,7 @@ import io.netty.channel.socket.nio.NioServerSocketChannel;
 import java.net.InetSocketAddress;
 import java.security.PrivateKey;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Mike Heath <elcapo@gmail.com>
@@ -79,7 +82,22 @@ public class Server {
 			}
 
 			final NioEventLoopGroup parentGroup = new NioEventLoopGroup();
-			final GlobalHub globalHub = new GlobalHub();
+			final GlobalHub globalHub;
+			if (options.topSubjects > 0) {
+				final HeavyHitters heavyHitters = new HeavyHitters(options.topSubjects);
+				globalHub = new GlobalHub(heavyHitters);
+				parentGroup.next().scheduleAtFixedRate(new Runnable() {
+					@Override
+					public void run() {
+						final long seconds = TimeUnit.MILLISECONDS.toSeconds(heavyHitters.getReportLength());
+						System.out.println("Top subjects by messages over the last " + seconds + "s: " + heavyHitters.getTopSubjectsByCount());
+						System.out.println("Top subjects by bytes over the last " + seconds + "s: " + heavyHitters.getTopSubjectsByBytes());
+						System.out.println("Messages kept from filtered, sampled and rate limited subscriptions: " + globalHub.getSubscriptionDroppedCount());
+					}
+				}, HeavyHitters.DEFAULT_WINDOW_LENGTH, HeavyHitters.DEFAULT_WINDOW_LENGTH, TimeUnit.MILLISECONDS);
+			} else {
+				globalHub = new GlobalHub();
+			}
 			final ServerConfig serverConfig = new ServerConfig(port, "cloudeventbus-simple-server", trustStore, certificateChain, privateKey);
 			final ClusterManager clusterManager = new ClusterManager(serverConfig, globalHub, parentGroup);
 			if (options.peers != null) {
@@ -91,11 +109,16 @@ public class Server {
 					clusterManager.registerPeer(new InetSocketAddress(parts[0], Integer.valueOf(parts[1])));
 				}
 			}
+			final NioEventLoopGroup childGroup = new NioEventLoopGroup();
+			final ServerChannelInitializer channelInitializer = options.shards > 0 ?
+					new ServerChannelInitializer(serverConfig, clusterManager, globalHub, childGroup, options.shards) :
+					new ServerChannelInitializer(serverConfig, clusterManager, globalHub);
+			channelInitializer.maxMessageSize(options.maxMessageSize);
 			new ServerBootstrap()
-					.group(parentGroup, new NioEventLoopGroup())
+					.group(parentGroup, childGroup)
 					.channel(NioServerSocketChannel.class)
 					.localAddress(new InetSocketAddress(port))
-					.childHandler(new ServerChannelInitializer(serverConfig, clusterManager, globalHub))
+					.childHandler(channelInitializer)
 					.bind().awaitUninterruptibly();
 			System.out.println("Server listening on port " + port);
 		} catch (ParameterException e) {
@@ -118,5 +141,14 @@ public class Server {
 
 		@Parameter(names = "-peer", description = "A peer server to cluster with (e.g. -peer 10.1.2.3:4223)")
 		List<String> peers;
+
+		@Parameter(names = "-shards", description = "The number of event loops client subscriptions are partitioned across, 0 to use a single shared hub.")
+		int shards = 0;
+
+		@Parameter(names = "-topSubjects", description = "The number of busiest subjects to periodically print, 0 to disable tracking.")
+		int topSubjects = 0;
+
+		@Parameter(names = "-maxMessageSize", description = "The maximum size in bytes of the messages clients may send.")
+		int maxMessageSize = Constants.DEFAULT_MAX_MESSAGE_SIZE;
 	}
 }
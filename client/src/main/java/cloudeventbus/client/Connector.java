@@ -17,6 +17,7 @@
 package cloudeventbus.client;
 
 import cloudeventbus.Constants;
+import cloudeventbus.codec.Codec;
 import cloudeventbus.pki.CertificateChain;
 import cloudeventbus.pki.TrustStore;
 import io.netty.channel.EventLoopGroup;
@@ -66,6 +67,11 @@ public class Connector {
 	 */
 	int maxMessageSize = Constants.DEFAULT_MAX_MESSAGE_SIZE;
 
+	/**
+	 * The protocol version requested in the greeting.
+	 */
+	int protocolVersion = Constants.PROTOCOL_VERSION_TEXT;
+
 	/**
 	 * The Netty event loop group to use for connecting to the cluster.
 	 */
@@ -193,6 +199,22 @@ public class Connector {
 		return this;
 	}
 
+	/**
+	 * Specifies the protocol version used to talk to the server. By default the text protocol is used so that every
+	 * server can be connected to. If the binary protocol is requested and the server rejects it, the client reconnects
+	 * using the text protocol.
+	 *
+	 * @param protocolVersion {@link Constants#PROTOCOL_VERSION_TEXT} or {@link Constants#PROTOCOL_VERSION_BINARY}
+	 * @return this connector.
+	 */
+	public Connector protocolVersion(int protocolVersion) {
+		if (!Codec.isSupportedProtocolVersion(protocolVersion)) {
+			throw new IllegalArgumentException("Unsupported protocol version " + protocolVersion);
+		}
+		this.protocolVersion = protocolVersion;
+		return this;
+	}
+
 	/**
 	 * Specifies the trust store used for validating the server this client connects to. If a trust store is not
 	 * provided, the client will simply not validate any server it connects to.
@@ -16,6 +16,8 @@
  */
 package cloudeventbus.client;
 
+import cloudeventbus.codec.SubscriptionOptions;
+
 /**
  * A client to a Cloud Event Bus cluster. If the client's connection to the server terminates, the client will
  * automatically try to reconnect to the cluster. The client will obviously not receive any messages when not connected
@@ -66,12 +68,13 @@ public interface EventBus extends AutoCloseable {
 	 *
 	 * @param subject the subject on which the message will be published
 	 * @param replySubject the subject replies will be published on
-	 * @param body the body of the message being published
+	 * @param body the body of the message being published, a {@link cloudeventbus.MessageBody} is sent without being
+	 *             encoded again
 	 * @throws ClientClosedException if this client has been closed.
 	 * @throws IllegalArgumentException if the supplied subject contains invalid characters or if the subject is a
 	 *                                  wildcard subject.
 	 */
-	void publish(String subject, String replySubject, String body) throws ClientClosedException, IllegalArgumentException;
+	void publish(String subject, String replySubject, CharSequence body) throws ClientClosedException, IllegalArgumentException;
 
 	/**
 	 * Issues a request to the specified subject expecting a single reply.
@@ -133,4 +136,66 @@ public interface EventBus extends AutoCloseable {
 	 */
 	Subscription subscribe(String subject, Integer maxMessages, MessageHandler... messageHandlers) throws ClientClosedException, IllegalArgumentException;
 
+	/**
+	 * Subscribes to the specified subject as a member of a queue group. Each message published to the subject is
+	 * delivered to only one member of the queue group so work can be spread across several clients.
+	 *
+	 * <p>A client can only belong to one queue group for a given subject. All the client's subscriptions to the subject
+	 * must use the same queue group.
+	 *
+	 * @param subject the subject to subscribe to
+	 * @param queueGroup the name of the queue group or {@code null} to receive every message published to the subject
+	 * @param maxMessages the maximum number of messages the subscription will receive or {@code null} for no limit
+	 * @param messageHandlers any {@code MessageHandler}s to be invoked when messages arrive on the subscribe subject
+	 * @return a {@code Subscription} object for monitoring the subscription.
+	 * @throws ClientClosedException if this client has been closed.
+	 * @throws IllegalArgumentException if the supplied subject or queue group contains invalid characters, if
+	 *                                  {@code maxMessages} is less than 1 or if the client is already subscribed to
+	 *                                  the subject with a different queue group.
+	 */
+	Subscription subscribe(String subject, String queueGroup, Integer maxMessages, MessageHandler... messageHandlers) throws ClientClosedException, IllegalArgumentException;
+
+	/**
+	 * Subscribes to the specified subject as a member of a partitioned queue group. The server picks the member that
+	 * receives each message from the message subject's token at {@code partitionToken}, so all the messages with the
+	 * same partition key are delivered to the same member in the order they were published. When members join or
+	 * leave the group, only the keys of the affected members move.
+	 *
+	 * <p>Every member of the group must use the same partition token.
+	 *
+	 * @param subject the subject to subscribe to
+	 * @param queueGroup the name of the queue group
+	 * @param partitionToken the index of the subject token holding the partition key, e.g. 1 to partition
+	 *                       {@code orders.*.created} by order id
+	 * @param maxMessages the maximum number of messages the subscription will receive or {@code null} for no limit
+	 * @param messageHandlers any {@code MessageHandler}s to be invoked when messages arrive on the subscribe subject
+	 * @return a {@code Subscription} object for monitoring the subscription.
+	 * @throws ClientClosedException if this client has been closed.
+	 * @throws IllegalArgumentException if the supplied subject or queue group contains invalid characters, if the
+	 *                                  subject has no token at {@code partitionToken}, if {@code maxMessages} is less
+	 *                                  than 1 or if the client is already subscribed to the subject with a different
+	 *                                  queue group or partition token.
+	 */
+	Subscription subscribe(String subject, String queueGroup, int partitionToken, Integer maxMessages, MessageHandler... messageHandlers) throws ClientClosedException, IllegalArgumentException;
+
+	/**
+	 * Subscribes to the specified subject with options that have the server send only some of the messages published
+	 * to the subject, the messages with a given JSON field value, a sample of them or at most a given number each
+	 * second for example. Filtering, sampling and rate limiting happen on the server so selective consumers and
+	 * observers of high volume subjects don't pay for the messages they would discard.
+	 *
+	 * <p>All the client's subscriptions to the subject must use the same options.
+	 *
+	 * @param subject the subject to subscribe to
+	 * @param options the options limiting which messages are delivered to the subscription
+	 * @param maxMessages the maximum number of messages the subscription will receive or {@code null} for no limit
+	 * @param messageHandlers any {@code MessageHandler}s to be invoked when messages arrive on the subscribe subject
+	 * @return a {@code Subscription} object for monitoring the subscription.
+	 * @throws ClientClosedException if this client has been closed.
+	 * @throws IllegalArgumentException if the supplied subject contains invalid characters, if {@code maxMessages} is
+	 *                                  less than 1 or if the client is already subscribed to the subject with
+	 *                                  different options or a queue group.
+	 */
+	Subscription subscribe(String subject, SubscriptionOptions options, Integer maxMessages, MessageHandler... messageHandlers) throws ClientClosedException, IllegalArgumentException;
+
 }
@@ -20,13 +20,16 @@ import cloudeventbus.Constants;
 import cloudeventbus.Subject;
 import cloudeventbus.codec.AuthenticationRequestFrame;
 import cloudeventbus.codec.AuthenticationResponseFrame;
+import cloudeventbus.codec.BulkSubscribeFrame;
 import cloudeventbus.codec.Codec;
 import cloudeventbus.codec.ErrorFrame;
 import cloudeventbus.codec.Frame;
 import cloudeventbus.codec.GreetingFrame;
 import cloudeventbus.codec.PongFrame;
 import cloudeventbus.codec.PublishFrame;
+import cloudeventbus.codec.ServerReadyFrame;
 import cloudeventbus.codec.SubscribeFrame;
+import cloudeventbus.codec.SubscriptionOptions;
 import cloudeventbus.codec.UnsubscribeFrame;
 import cloudeventbus.pki.Certificate;
 import cloudeventbus.pki.CertificateChain;
@@ -74,6 +77,8 @@ class EventBusImpl implements EventBus {
 	private final EventLoopGroup eventLoopGroup;
 	private final boolean shutDownEventLoop;
 	private final int maxMessageSize;
+	// Drops to the text protocol if a server rejects the requested version
+	private volatile int protocolVersion;
 
 	private final CertificateChain certificateChain;
 	private final PrivateKey privateKey;
@@ -89,6 +94,8 @@ class EventBusImpl implements EventBus {
 	private Channel channel;
 	private boolean closed = false;
 	private final Map<Subject, List<DefaultSubscription>> subscriptions = new HashMap<>();
+	// The subscribe frames of queue group subscriptions and subscriptions with options
+	private final Map<Subject, SubscribeFrame> queueGroups = new HashMap<>();
 	private final List<PublishFrame> publishQueue = new ArrayList<>();
 	private boolean serverReady = false;
 
@@ -108,6 +115,7 @@ class EventBusImpl implements EventBus {
 		shutDownEventLoop = connector.eventLoopGroup == null;
 		eventLoopGroup =  shutDownEventLoop ? new NioEventLoopGroup() : connector.eventLoopGroup;
 		maxMessageSize = connector.maxMessageSize;
+		protocolVersion = connector.protocolVersion;
 
 		certificateChain = connector.certificateChain;
 		privateKey = connector.privateKey;
@@ -214,7 +222,7 @@ class EventBusImpl implements EventBus {
 	}
 
 	@Override
-	public void publish(String subject, String replySubject, String body) throws ClientClosedException, IllegalArgumentException {
+	public void publish(String subject, String replySubject, CharSequence body) throws ClientClosedException, IllegalArgumentException {
 		assertNotClosed();
 		final Subject wrappedSubject = new Subject(subject);
 		final Subject wrappedReplySubject = replySubject == null ? null : new Subject(replySubject);
@@ -246,12 +254,13 @@ class EventBusImpl implements EventBus {
 		if (wrappedSubject.isWildCard()) {
 			throw new IllegalArgumentException("Can't publish to a wild card subject.");
 		}
-		final Subject replySubject = Subject.createRequestReplySubject();
+		// The reply subject tells the server when it can stop routing replies to this client
+		final Subject replySubject = maxReplies == null ? Subject.createRequestReplySubject() : Subject.createRequestReplySubject(maxReplies);
 		final DefaultSubscription replySubscription = createSubscription(replySubject, maxReplies, replyHandlers);
 		replySubscription.addMessageHandler(replyHandler);
 		addSubscription(replySubject, replySubscription);
 
-		final PublishFrame message = new PublishFrame(new Subject(subject), replySubject, body);
+		final PublishFrame message = new PublishFrame(wrappedSubject, replySubject, body);
 		synchronized (lock) {
 			if (channel == null || !channel.isActive()) {
 				publishQueue.add(message);
@@ -289,23 +298,110 @@ class EventBusImpl implements EventBus {
 
 	@Override
 	public Subscription subscribe(String subject, Integer maxMessages, MessageHandler... messageHandlers) throws ClientClosedException, IllegalArgumentException {
+		return subscribe(subject, (String) null, maxMessages, messageHandlers);
+	}
+
+	@Override
+	public Subscription subscribe(String subject, String queueGroup, Integer maxMessages, MessageHandler... messageHandlers) throws ClientClosedException, IllegalArgumentException {
+		return subscribe(subject, queueGroup, SubscribeFrame.NOT_PARTITIONED, maxMessages, messageHandlers);
+	}
+
+	@Override
+	public Subscription subscribe(String subject, String queueGroup, int partitionToken, Integer maxMessages, MessageHandler... messageHandlers) throws ClientClosedException, IllegalArgumentException {
 		assertNotClosed();
 		final Subject wrappedSubject = new Subject(subject);
 		if (wrappedSubject.isRequestReply()) {
 			throw new IllegalArgumentException("Cannot subscribe to a request's reply");
 		}
-		final DefaultSubscription subscription = createSubscription(wrappedSubject, maxMessages, messageHandlers);
+		if (queueGroup != null && !Subject.isValidToken(queueGroup)) {
+			throw new IllegalArgumentException("Invalid queue group " + queueGroup);
+		}
+		if (partitionToken != SubscribeFrame.NOT_PARTITIONED && (queueGroup == null || partitionToken < 0 || partitionToken >= wrappedSubject.getTokenCount())) {
+			throw new IllegalArgumentException("Invalid partition token " + partitionToken + " for subject " + subject);
+		}
+		return subscribe(new SubscribeFrame(wrappedSubject, queueGroup, partitionToken), maxMessages, messageHandlers);
+	}
+
+	@Override
+	public Subscription subscribe(String subject, SubscriptionOptions options, Integer maxMessages, MessageHandler... messageHandlers) throws ClientClosedException, IllegalArgumentException {
+		assertNotClosed();
+		final Subject wrappedSubject = new Subject(subject);
+		if (wrappedSubject.isRequestReply()) {
+			throw new IllegalArgumentException("Cannot subscribe to a request's reply");
+		}
+		return subscribe(new SubscribeFrame(wrappedSubject, null, SubscribeFrame.NOT_PARTITIONED, options), maxMessages, messageHandlers);
+	}
+
+	private Subscription subscribe(SubscribeFrame subscribeFrame, Integer maxMessages, MessageHandler... messageHandlers) {
+		final Subject subject = subscribeFrame.getSubject();
+		final DefaultSubscription subscription = createSubscription(subject, maxMessages, messageHandlers);
 
 		// Send subscribe to server if this is the first time we're subscribing to this subject.
 		synchronized (lock) {
-			if (addSubscription(wrappedSubject, subscription) && channel != null && channel.isActive()) {
-				channel.write(new SubscribeFrame(new Subject(subject)));
+			if (subscriptions.containsKey(subject)) {
+				final SubscribeFrame current = queueGroups.get(subject);
+				final String currentQueueGroup = current == null ? null : current.getQueueGroup();
+				final int currentPartitionToken = current == null ? SubscribeFrame.NOT_PARTITIONED : current.getPartitionToken();
+				final SubscriptionOptions currentOptions = current == null ? SubscriptionOptions.NONE : current.getOptions();
+				final String queueGroup = subscribeFrame.getQueueGroup();
+				if ((queueGroup == null ? currentQueueGroup != null : !queueGroup.equals(currentQueueGroup))
+						|| subscribeFrame.getPartitionToken() != currentPartitionToken) {
+					throw new IllegalArgumentException("Already subscribed to " + subject + " with a different queue group");
+				}
+				if (!subscribeFrame.getOptions().equals(currentOptions)) {
+					throw new IllegalArgumentException("Already subscribed to " + subject + " with different options");
+				}
+			} else if (subscribeFrame.getQueueGroup() != null || !subscribeFrame.getOptions().equals(SubscriptionOptions.NONE)) {
+				queueGroups.put(subject, subscribeFrame);
+			}
+			if (addSubscription(subject, subscription) && channel != null && channel.isActive()) {
+				channel.write(subscribeFrame);
 			}
 		}
 
 		return subscription;
 	}
 
+	/**
+	 * Sends every subscription to the server. If the server accepts bulk subscribe frames the subscriptions are batched
+	 * into as few of them as the server's max message size allows so that the server can register them at once,
+	 * otherwise each subscription is sent on its own. Access must be synchronized on #lock.
+	 */
+	private void resubscribe(ChannelHandlerContext context, ServerReadyFrame serverReady) {
+		if (!serverReady.isBulkSubscribeSupported()) {
+			for (Subject subject : subscriptions.keySet()) {
+				final SubscribeFrame groupSubscription = queueGroups.get(subject);
+				context.write(groupSubscription == null ? new SubscribeFrame(subject) : groupSubscription);
+			}
+			return;
+		}
+		// Half the server's limit leaves room for the length prefixes of the binary protocol
+		final int maxBatchLength = serverReady.getMaxMessageSize() / 2;
+		List<SubscribeFrame> batch = new ArrayList<>();
+		int batchLength = 0;
+		for (Subject subject : subscriptions.keySet()) {
+			final SubscribeFrame groupSubscription = queueGroups.get(subject);
+			if (groupSubscription != null && !groupSubscription.getOptions().equals(SubscriptionOptions.NONE)) {
+				// Bulk subscribe frames can't carry options
+				context.write(groupSubscription);
+				continue;
+			}
+			final SubscribeFrame subscribeFrame = groupSubscription == null ? new SubscribeFrame(subject) : groupSubscription;
+			// The subject, separators and queue group plus room for a partition token
+			final int length = subject.toString().length() + (groupSubscription == null ? 1 : groupSubscription.getQueueGroup().length() + 13);
+			if (batchLength + length > maxBatchLength && !batch.isEmpty()) {
+				context.write(new BulkSubscribeFrame(batch));
+				batch = new ArrayList<>();
+				batchLength = 0;
+			}
+			batch.add(subscribeFrame);
+			batchLength += length;
+		}
+		if (!batch.isEmpty()) {
+			context.write(new BulkSubscribeFrame(batch));
+		}
+	}
+
 	private DefaultSubscription createSubscription(final Subject subject, final Integer maxMessages, final MessageHandler... messageHandlers) {
 		return new DefaultSubscription(subject.toString(), maxMessages, messageHandlers) {
 			@Override
@@ -317,6 +413,7 @@ class EventBusImpl implements EventBus {
 						if (subscriptionList.isEmpty() && channel.isActive()) {
 							// Send unsubscribe to server if there are no more subscriptions on this subject.
 							subscriptions.remove(subject);
+							queueGroups.remove(subject);
 							channel.write(new UnsubscribeFrame(subject));
 						}
 					}
@@ -397,6 +494,7 @@ class EventBusImpl implements EventBus {
 		private long serverId;
 		private CertificateChain serverCertificateChain;
 		private String serverAgent;
+		private boolean protocolRejected;
 
 		@Override
 		public void initChannel(SocketChannel channel) throws Exception {
@@ -437,13 +535,22 @@ class EventBusImpl implements EventBus {
 						}
 						case ERROR:
 							final ErrorFrame errorFrame = (ErrorFrame) frame;
+							if (errorFrame.getCode() == ErrorFrame.Code.UNSUPPORTED_PROTOCOL_VERSION
+									&& protocolVersion != Constants.PROTOCOL_VERSION_TEXT) {
+								// Servers that predate the requested version reject it, reconnect using the text protocol
+								LOGGER.info("Server rejected protocol version {}, falling back to the text protocol", protocolVersion);
+								protocolVersion = Constants.PROTOCOL_VERSION_TEXT;
+								protocolRejected = true;
+								context.close();
+								break;
+							}
 							throw new CloudEventBusClientException("Server error: " + errorFrame.getMessage());
 						case GREETING:
 							final GreetingFrame greetingFrame = (GreetingFrame) frame;
 							serverId = greetingFrame.getId();
 							serverAgent = greetingFrame.getAgent();
 
-							if (greetingFrame.getVersion() != Constants.PROTOCOL_VERSION) {
+							if (greetingFrame.getVersion() != protocolVersion) {
 								close();
 								error = new CloudEventBusClientException("This client does not support protocol version " + greetingFrame.getVersion());
 								throw error;
@@ -491,9 +598,7 @@ class EventBusImpl implements EventBus {
 							// Resubscribe with server.
 							synchronized (lock) {
 								serverReady = true;
-								for (Subject subject : subscriptions.keySet()) {
-									context.write(new SubscribeFrame(subject));
-								}
+								resubscribe(context, (ServerReadyFrame) frame);
 								for (PublishFrame publish : publishQueue) {
 									context.write(publish);
 								}
@@ -516,7 +621,7 @@ class EventBusImpl implements EventBus {
 				@Override
 				public void channelActive(ChannelHandlerContext context) throws Exception {
 					LOGGER.debug("Client channel active");
-					context.write(new GreetingFrame(Constants.PROTOCOL_VERSION, "test-client-0.1", id));
+					context.write(new GreetingFrame(protocolVersion, "test-client-0.1", id));
 					if (trustStore != null) {
 						challenge = CertificateUtils.generateChallenge();
 						context.write(new AuthenticationRequestFrame(challenge));
@@ -526,7 +631,11 @@ class EventBusImpl implements EventBus {
 				@Override
 				public void channelInactive(ChannelHandlerContext context) throws Exception {
 					LOGGER.debug("Client channel inactive");
-					scheduleReconnect();
+					if (protocolRejected) {
+						connect();
+					} else {
+						scheduleReconnect();
+					}
 					fireStateChange(ConnectionState.CLOSE, new ServerInfo(
 							context.channel().remoteAddress(),
 							context.channel().localAddress(),
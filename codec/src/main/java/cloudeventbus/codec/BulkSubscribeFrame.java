@@ -0,0 +1,66 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.codec;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Subscribes to several subjects with a single frame. Clients use this frame to restore their subscriptions after
+ * connecting to a server so that the server can register them as one batch.
+ *
+ * <p>Each subscription is sent as its subject, followed by a colon and the queue group name if the subscription
+ * belongs to a queue group, followed by another colon and the partition token if the queue group is partitioned.
+ * Subscriptions with {@link SubscriptionOptions} have to be sent with their own {@link SubscribeFrame}.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class BulkSubscribeFrame implements Frame {
+
+	/**
+	 * The queue group and partition token of a subscription follow its subject separated by this character.
+	 */
+	public static final char QUEUE_GROUP_SEPARATOR = ':';
+
+	private final List<SubscribeFrame> subscriptions;
+
+	public BulkSubscribeFrame(List<SubscribeFrame> subscriptions) {
+		if (subscriptions.isEmpty()) {
+			throw new IllegalArgumentException("At least one subscription is required");
+		}
+		for (SubscribeFrame subscription : subscriptions) {
+			if (!subscription.getOptions().equals(SubscriptionOptions.NONE)) {
+				throw new IllegalArgumentException("Subscriptions with options can not be bulk subscribed");
+			}
+		}
+		this.subscriptions = Collections.unmodifiableList(subscriptions);
+	}
+
+	public List<SubscribeFrame> getSubscriptions() {
+		return subscriptions;
+	}
+
+	@Override
+	public String toString() {
+		return "Bulk subscribe subscriptions=" + subscriptions;
+	}
+
+	@Override
+	public FrameType getFrameType() {
+		return FrameType.BULK_SUBSCRIBE;
+	}
+}
@@ -25,6 +25,11 @@ import io.netty.channel.ChannelOutboundMessageHandler;
 import io.netty.channel.CombinedChannelDuplexHandler;
 
 /**
+ * Encodes and decodes frames. Connections start out using the text protocol. Greetings are always sent using the text
+ * protocol and once a greeting with a supported version has been encoded, or decoded, the encoder, or decoder,
+ * switches to that version. The client therefore picks the protocol version, a server that supports it replies
+ * with a greeting of the same version.
+ *
  * @author Mike Heath <elcapo@gmail.com>
  */
 public class Codec extends CombinedChannelDuplexHandler
@@ -37,7 +42,18 @@ public class Codec extends CombinedChannelDuplexHandler
 	}
 
 	public Codec(int maxMessageSize) {
-		init(new Decoder(maxMessageSize), new Encoder());
+		this(maxMessageSize, SubjectInternTable.SHARED);
+	}
+
+	public Codec(int maxMessageSize, SubjectInternTable subjects) {
+		init(new Decoder(maxMessageSize, subjects), new Encoder());
+	}
+
+	/**
+	 * Returns {@code true} if the codec can encode and decode frames using the given protocol version.
+	 */
+	public static boolean isSupportedProtocolVersion(int protocolVersion) {
+		return protocolVersion >= Constants.PROTOCOL_VERSION_TEXT && protocolVersion <= Constants.PROTOCOL_VERSION;
 	}
 
 	private Decoder decoder() {
@@ -17,6 +17,7 @@
 package cloudeventbus.codec;
 
 import cloudeventbus.Constants;
+import cloudeventbus.MessageBody;
 import cloudeventbus.Subject;
 import cloudeventbus.pki.CertificateChain;
 import cloudeventbus.pki.CertificateStoreLoader;
@@ -30,6 +31,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * @author Mike Heath <elcapo@gmail.com>
@@ -39,25 +45,57 @@ public class Decoder extends ByteToMessageDecoder {
 	private static final Logger LOGGER = LoggerFactory.getLogger(Decoder.class);
 
 	private final int maxMessageSize;
+	private final SubjectInternTable subjects;
+
+	private int protocolVersion = Constants.PROTOCOL_VERSION_TEXT;
+
+	// The start and end index of each argument of the text frame header being decoded, reused for every frame
+	private int[] arguments = new int[16];
+	// The number of bytes following the reader index that have already been searched for the end of the header
+	private int searchedBytes;
+
+	// The publish frame whose header has been decoded but whose body hasn't fully arrived, the body length is -1 if
+	// there is no such frame
+	private Subject pendingSubject;
+	private Subject pendingReplySubject;
+	private DecodingException pendingError;
+	private int pendingBodyLength = -1;
 
 	protected Decoder() {
 		this(Constants.DEFAULT_MAX_MESSAGE_SIZE);
 	}
 
 	protected Decoder(int maxMessageSize) {
+		this(maxMessageSize, SubjectInternTable.SHARED);
+	}
+
+	protected Decoder(int maxMessageSize, SubjectInternTable subjects) {
 		this.maxMessageSize = maxMessageSize;
+		this.subjects = subjects;
+	}
+
+	/**
+	 * Returns the protocol version frames are decoded with.
+	 */
+	public int getProtocolVersion() {
+		return protocolVersion;
 	}
 
 	@Override
 	public Frame decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
-		in.markReaderIndex();
-		final int frameLength = indexOf(in, Codec.DELIMITER);
+		if (protocolVersion == Constants.PROTOCOL_VERSION_BINARY) {
+			return decodeBinary(in);
+		}
+		// The header of a publish frame has already been decoded, only its body is missing.
+		if (pendingBodyLength >= 0) {
+			return decodePublishBody(in);
+		}
+		final int frameLength = endOfLine(in);
 		// Frame hasn't been fully read yet.
 		if (frameLength < 0) {
 			if (in.readableBytes() > maxMessageSize) {
 				throw new TooLongFrameException("Frame exceeds maximum size");
 			}
-			in.resetReaderIndex();
 			return null;
 		}
 		// Empty frame, discard and continue decoding
@@ -68,135 +106,579 @@ public class Decoder extends ByteToMessageDecoder {
 		if (frameLength > maxMessageSize) {
 			throw new TooLongFrameException("Frame exceeds maximum size");
 		}
-		final String command = in.readBytes(frameLength).toString(CharsetUtil.UTF_8);
-		in.skipBytes(Codec.DELIMITER.length);
-		final String[] parts = command.split("\\s+");
-		final char frameTypeChar = parts[0].charAt(0);
+		final int headerStart = in.readerIndex();
+		final int headerEnd = headerStart + frameLength;
+		final char frameTypeChar = (char) (in.getByte(headerStart) & 0xFF);
 		final FrameType frameType = FrameType.getFrameType(frameTypeChar);
+		final int argumentsLength = parseArguments(in, headerStart, headerEnd);
+		// Publish frames are only consumed once their body has arrived.
+		if (frameType == FrameType.PUBLISH) {
+			LOGGER.debug("Decoding frame of type {}", frameType);
+			return decodePublishHeader(in, frameLength, argumentsLength);
+		}
+		// The arguments are read from the header after the frame has been consumed so that an invalid frame isn't
+		// decoded again.
+		in.skipBytes(frameLength + Codec.DELIMITER.length);
 		if (frameType == null) {
 			throw new DecodingException("Invalid frame type " + frameTypeChar);
 		}
 		LOGGER.debug("Decoding frame of type {}", frameType);
-		final int argumentsLength = parts.length - 1;
 		switch (frameType) {
 			case AUTH_RESPONSE:
 				assertArgumentsLength(3, argumentsLength, "authentication response");
 				final CertificateChain certificates = new CertificateChain();
-				final byte[] rawCertificates = Base64.decodeBase64(parts[1].getBytes());
+				final byte[] rawCertificates = Base64.decodeBase64(argumentBytes(in, 0));
 				CertificateStoreLoader.load(new ByteArrayInputStream(rawCertificates), certificates);
-				final byte[] salt = Base64.decodeBase64(parts[2]);
-				final byte[] digitalSignature = Base64.decodeBase64(parts[3]);
+				final byte[] salt = Base64.decodeBase64(argumentBytes(in, 1));
+				final byte[] digitalSignature = Base64.decodeBase64(argumentBytes(in, 2));
 				return new AuthenticationResponseFrame(certificates, salt, digitalSignature);
 			case AUTHENTICATE:
 				assertArgumentsLength(1, argumentsLength, "authentication request");
-				final byte[] challenge = Base64.decodeBase64(parts[1]);
+				final byte[] challenge = Base64.decodeBase64(argumentBytes(in, 0));
 				return new AuthenticationRequestFrame(challenge);
 			case ERROR:
-				if (parts.length == 0) {
+				if (argumentsLength == 0) {
 					throw new DecodingException("Error is missing error code");
 				}
-				final Integer errorNumber = Integer.valueOf(parts[1]);
-				final ErrorFrame.Code errorCode = ErrorFrame.Code.lookupCode(errorNumber);
-				int messageIndex = 1;
-				messageIndex = skipWhiteSpace(messageIndex, command);
-				while (messageIndex < command.length() && Character.isDigit(command.charAt(messageIndex))) {
-					messageIndex++;
-				}
-				messageIndex = skipWhiteSpace(messageIndex, command);
-				final String errorMessage = command.substring(messageIndex).trim();
-				if (errorMessage.length() > 0) {
-					return new ErrorFrame(errorCode, errorMessage);
-				} else {
+				final ErrorFrame.Code errorCode = ErrorFrame.Code.lookupCode(argumentInt(in, 0, "error code"));
+				if (argumentsLength == 1) {
 					return new ErrorFrame(errorCode);
 				}
+				// The message is everything following the error code, including the white space between its words.
+				final int messageStart = arguments[2];
+				return new ErrorFrame(errorCode, toString(in, messageStart, arguments[argumentsLength * 2 - 1] - messageStart));
 			case GREETING:
 				assertArgumentsLength(3, argumentsLength, "greeting");
-				final int version = Integer.valueOf(parts[1]);
-				final String agent = parts[2];
-				final long id = Long.valueOf(parts[3]);
+				final int version = argumentInt(in, 0, "protocol version");
+				final String agent = argumentString(in, 1);
+				final long id = argumentLong(in, 2, "id");
+				// The frames that follow a greeting use the greeting's protocol version
+				if (Codec.isSupportedProtocolVersion(version)) {
+					protocolVersion = version;
+				}
 				return new GreetingFrame(version, agent, id);
 			case PING:
 				return PingFrame.PING;
 			case PONG:
 				return PongFrame.PONG;
-			case PUBLISH:
-				if (argumentsLength < 2 || argumentsLength > 3) {
-					throw new DecodingException("Expected message frame to have 2 or 3 arguments. It has " + argumentsLength + ".");
-				}
-				final String messageSubject = parts[1];
-				final String replySubject;
-				final Integer messageLength;
-				if (parts.length == 3) {
-					replySubject = null;
-					messageLength = Integer.valueOf(parts[2]);
-				} else {
-					replySubject = parts[2];
-					messageLength = Integer.valueOf(parts[3]);
-				}
-				if (in.readableBytes() < messageLength + Codec.DELIMITER.length) {
-					// If we haven't received the entire message body (plus the CRLF), wait until it arrives.
-					in.resetReaderIndex();
-					return null;
-				}
-				final ByteBuf messageBytes = in.readBytes(messageLength);
-				final String messageBody = new String(messageBytes.array(), CharsetUtil.UTF_8);
-				in.skipBytes(Codec.DELIMITER.length); // Ignore the CRLF after the message body.
-				return new PublishFrame(new Subject(messageSubject), replySubject == null ? null : new Subject(replySubject), messageBody);
 			case SERVER_READY:
-				return ServerReadyFrame.SERVER_READY;
-			case SUBSCRIBE:
-				assertArgumentsLength(1, argumentsLength, "subscribe");
-				return new SubscribeFrame(new Subject(parts[1]));
+				// Servers that don't accept bulk subscribe frames don't advertise their max message size
+				if (argumentsLength == 0) {
+					return ServerReadyFrame.SERVER_READY;
+				}
+				return new ServerReadyFrame(argumentInt(in, 0, "max message size"));
+			case SUBSCRIBE: {
+				// Options follow the positional arguments
+				int positionalLength = argumentsLength;
+				while (positionalLength > 0 && argumentIndexOf(in, positionalLength - 1, SubscriptionOptions.VALUE_SEPARATOR) >= 0) {
+					positionalLength--;
+				}
+				if (positionalLength < 1 || positionalLength > 3) {
+					throw new DecodingException("Expected subscribe to have 1 to 3 arguments. It has " + positionalLength + ".");
+				}
+				final String queueGroup = positionalLength >= 2 ? validateQueueGroup(argumentString(in, 1)) : null;
+				final SubscriptionOptions options = parseOptions(in, positionalLength, argumentsLength);
+				if (queueGroup != null && !options.equals(SubscriptionOptions.NONE)) {
+					throw new DecodingException("Queue group subscriptions can not be filtered, sampled or rate limited.");
+				}
+				return new SubscribeFrame(
+						new Subject(argumentString(in, 0)),
+						queueGroup,
+						positionalLength == 3 ? parsePartitionToken(in, arguments[4], arguments[5]) : SubscribeFrame.NOT_PARTITIONED,
+						options);
+			}
+			case BULK_SUBSCRIBE:
+				if (argumentsLength < 1) {
+					throw new DecodingException("Expected bulk subscribe to have at least 1 argument.");
+				}
+				final List<SubscribeFrame> subscriptions = new ArrayList<>(argumentsLength);
+				for (int i = 0; i < argumentsLength; i++) {
+					subscriptions.add(parseBulkSubscription(in, arguments[i * 2], arguments[i * 2 + 1]));
+				}
+				return new BulkSubscribeFrame(subscriptions);
 			case UNSUBSCRIBE:
 				assertArgumentsLength(1, argumentsLength, "unsubscribe");
-				return new UnsubscribeFrame(new Subject(parts[1]));
+				return new UnsubscribeFrame(new Subject(argumentString(in, 0)));
 			default:
 				throw new DecodingException("Unknown frame type " + frameType);
 		}
 	}
 
-	private int skipWhiteSpace(int messageIndex, String command) {
-		while (messageIndex < command.length() && Character.isWhitespace(command.charAt(messageIndex))) {
-			messageIndex++;
+	/**
+	 * Consumes the header of a publish frame and remembers the subjects and the body length so that the header is
+	 * never parsed again while the body arrives, however many reads that takes.
+	 */
+	private Frame decodePublishHeader(ByteBuf in, int frameLength, int argumentsLength) {
+		// Skip the bad frame so that we don't try decoding it again.
+		if (argumentsLength < 2 || argumentsLength > 3) {
+			in.skipBytes(frameLength + Codec.DELIMITER.length);
+			throw new DecodingException("Expected message frame to have 2 or 3 arguments.");
+		}
+		final boolean hasReplySubject = argumentsLength == 3;
+		final int lengthArgument = argumentsLength - 1;
+		final int messageLength = parseInt(in, arguments[lengthArgument * 2], arguments[lengthArgument * 2 + 1]);
+		if (messageLength < 0) {
+			in.skipBytes(frameLength + Codec.DELIMITER.length);
+			throw new DecodingException("Invalid message length.");
+		}
+		// Don't buffer a body larger than any frame the binary protocol would accept.
+		if (messageLength > maxMessageSize) {
+			in.skipBytes(frameLength + Codec.DELIMITER.length);
+			throw new TooLongFrameException("Frame exceeds maximum size");
+		}
+		try {
+			pendingSubject = subjects.intern(in, arguments[0], arguments[1] - arguments[0]);
+			pendingReplySubject = hasReplySubject ? subjects.intern(in, arguments[2], arguments[3] - arguments[2]) : null;
+		} catch (DecodingException e) {
+			// The body still has to be skipped before the error is reported, otherwise it would be decoded as a frame.
+			pendingError = e;
 		}
-		return messageIndex;
+		pendingBodyLength = messageLength;
+		in.skipBytes(frameLength + Codec.DELIMITER.length);
+		return decodePublishBody(in);
 	}
 
-	private void assertArgumentsLength(int expectedArguments, int argumentsLength, String frameName) {
-		if (argumentsLength != expectedArguments) {
-			throw new DecodingException("Expected " + frameName + " to have " + expectedArguments + " arguments. It has " + argumentsLength + ".");
+	private Frame decodePublishBody(ByteBuf in) {
+		// Compared as a long so that a huge declared length can't overflow and pass the check.
+		if (in.readableBytes() < (long) pendingBodyLength + Codec.DELIMITER.length) {
+			// If we haven't received the entire message body (plus the CRLF), wait until it arrives.
+			return null;
 		}
+		// The body is kept as UTF-8, it is only decoded if something asks for it as a String. The body is only
+		// allocated once all of it has been read.
+		final byte[] messageBody = new byte[pendingBodyLength];
+		in.readBytes(messageBody);
+		in.skipBytes(Codec.DELIMITER.length); // Ignore the CRLF after the message body.
+		final Subject subject = pendingSubject;
+		final Subject replySubject = pendingReplySubject;
+		final DecodingException error = pendingError;
+		pendingSubject = null;
+		pendingReplySubject = null;
+		pendingError = null;
+		pendingBodyLength = -1;
+		if (error != null) {
+			throw error;
+		}
+		return new PublishFrame(subject, replySubject, MessageBody.wrap(messageBody));
 	}
 
 	/**
-	 * Returns the number of bytes between the readerIndex of the haystack and
-	 * the first needle found in the haystack.  -1 is returned if no needle is
-	 * found in the haystack.
-	 * <p/>
-	 * Copied from {@link io.netty.handler.codec.DelimiterBasedFrameDecoder}.
+	 * Decodes a frame encoded with the binary protocol, see {@link Encoder} for the frame layout.
 	 */
-	private int indexOf(ByteBuf haystack, byte[] needle) {
-		for (int i = haystack.readerIndex(); i < haystack.writerIndex(); i++) {
-			int haystackIndex = i;
-			int needleIndex;
-			for (needleIndex = 0; needleIndex < needle.length; needleIndex++) {
-				if (haystack.getByte(haystackIndex) != needle[needleIndex]) {
+	private Frame decodeBinary(ByteBuf in) throws Exception {
+		final int start = in.readerIndex();
+		int index = start + 1;
+		int length = 0;
+		for (int shift = 0; ; shift += 7) {
+			// Frame header hasn't been fully read yet.
+			if (index >= in.writerIndex()) {
+				return null;
+			}
+			if (shift > 28) {
+				throw new DecodingException("Invalid frame length.");
+			}
+			final byte b = in.getByte(index++);
+			length |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				break;
+			}
+		}
+		if (length < 0 || length > maxMessageSize) {
+			throw new TooLongFrameException("Frame exceeds maximum size");
+		}
+		if (in.writerIndex() - index < length) {
+			return null;
+		}
+		// Consume the frame before decoding the payload so that an invalid frame isn't decoded again.
+		in.readerIndex(index + length);
+		final char opcode = (char) (in.getByte(start) & 0xFF);
+		final FrameType frameType = FrameType.getFrameType(opcode);
+		if (frameType == null) {
+			throw new DecodingException("Invalid frame type " + opcode);
+		}
+		LOGGER.debug("Decoding frame of type {}", frameType);
+		final ByteBuf payload = in.slice(index, length);
+		final Frame frame = decodeBinaryPayload(frameType, payload);
+		if (payload.isReadable()) {
+			throw new DecodingException("Frame of type " + frameType + " has " + payload.readableBytes() + " unexpected bytes.");
+		}
+		return frame;
+	}
+
+	private Frame decodeBinaryPayload(FrameType frameType, ByteBuf payload) throws Exception {
+		switch (frameType) {
+			case AUTH_RESPONSE:
+				final CertificateChain certificates = new CertificateChain();
+				CertificateStoreLoader.load(new ByteArrayInputStream(readBinaryBytes(payload)), certificates);
+				final byte[] salt = readBinaryBytes(payload);
+				final byte[] digitalSignature = readBinaryBytes(payload);
+				return new AuthenticationResponseFrame(certificates, salt, digitalSignature);
+			case AUTHENTICATE:
+				return new AuthenticationRequestFrame(readBinaryBytes(payload));
+			case ERROR:
+				final ErrorFrame.Code errorCode = ErrorFrame.Code.lookupCode(readVarInt(payload));
+				final String errorMessage = readNullableString(payload);
+				return errorMessage == null ? new ErrorFrame(errorCode) : new ErrorFrame(errorCode, errorMessage);
+			case PING:
+				return PingFrame.PING;
+			case PONG:
+				return PongFrame.PONG;
+			case SERVER_READY:
+				if (!payload.isReadable()) {
+					return ServerReadyFrame.SERVER_READY;
+				}
+				return new ServerReadyFrame(readVarInt(payload));
+			case PUBLISH: {
+				final Subject subject = readBinarySubject(payload, readLength(payload));
+				final int replySubjectLength = readLength(payload);
+				final Subject replySubject = replySubjectLength == 0 ? null : readBinarySubject(payload, replySubjectLength - 1);
+				final byte[] body = new byte[payload.readableBytes()];
+				payload.readBytes(body);
+				return new PublishFrame(subject, replySubject, MessageBody.wrap(body));
+			}
+			case SUBSCRIBE: {
+				final SubscribeFrame subscription = readBinarySubscription(payload);
+				final int sampleEvery = readVarInt(payload);
+				final int maxRate = readVarInt(payload);
+				final String bodyPrefix = readNullableString(payload);
+				final String field = readNullableString(payload);
+				final String fieldValue = readNullableString(payload);
+				final SubscriptionOptions options;
+				try {
+					final SubscriptionOptions throttled = SubscriptionOptions.NONE.withSampling(sampleEvery).withMaxRate(maxRate).withBodyPrefix(bodyPrefix);
+					options = field == null ? throttled : throttled.withFieldEquals(field, fieldValue);
+				} catch (IllegalArgumentException e) {
+					throw new DecodingException("Invalid subscription options: " + e.getMessage());
+				}
+				if (subscription.getQueueGroup() != null && !options.equals(SubscriptionOptions.NONE)) {
+					throw new DecodingException("Queue group subscriptions can not be filtered, sampled or rate limited.");
+				}
+				return new SubscribeFrame(subscription.getSubject(), subscription.getQueueGroup(), subscription.getPartitionToken(), options);
+			}
+			case BULK_SUBSCRIBE:
+				final int count = readVarInt(payload);
+				if (count < 1) {
+					throw new DecodingException("Expected bulk subscribe to have at least 1 subscription.");
+				}
+				// Each subscription takes at least three bytes, don't let a bogus count allocate a huge list
+				final List<SubscribeFrame> subscriptions = new ArrayList<>(Math.min(count, payload.readableBytes() / 3));
+				for (int i = 0; i < count; i++) {
+					subscriptions.add(readBinarySubscription(payload));
+				}
+				return new BulkSubscribeFrame(subscriptions);
+			case UNSUBSCRIBE:
+				return new UnsubscribeFrame(readBinarySubject(payload, readLength(payload)));
+			default:
+				throw new DecodingException("Frames of type " + frameType + " can not be sent using the binary protocol.");
+		}
+	}
+
+	private SubscribeFrame readBinarySubscription(ByteBuf payload) {
+		final Subject subject = readBinarySubject(payload, readLength(payload));
+		final String queueGroup = readNullableString(payload);
+		if (queueGroup != null) {
+			validateQueueGroup(queueGroup);
+		}
+		// Shifted by one so that NOT_PARTITIONED is written as 0
+		final int partitionToken = readVarInt(payload) - 1;
+		if (partitionToken != SubscribeFrame.NOT_PARTITIONED && queueGroup == null) {
+			throw new DecodingException("Only queue group subscriptions can be partitioned.");
+		}
+		return new SubscribeFrame(subject, queueGroup, partitionToken);
+	}
+
+	private Subject readBinarySubject(ByteBuf payload, int length) {
+		if (length > payload.readableBytes()) {
+			throw new DecodingException("Frame is truncated.");
+		}
+		final Subject subject = subjects.intern(payload, payload.readerIndex(), length);
+		payload.skipBytes(length);
+		return subject;
+	}
+
+	private String readNullableString(ByteBuf payload) {
+		final int length = readLength(payload);
+		if (length == 0) {
+			return null;
+		}
+		final String string = toString(payload, payload.readerIndex(), length - 1);
+		payload.skipBytes(length - 1);
+		return string;
+	}
+
+	private byte[] readBinaryBytes(ByteBuf payload) {
+		final int length = readLength(payload);
+		if (length > payload.readableBytes()) {
+			throw new DecodingException("Frame is truncated.");
+		}
+		final byte[] bytes = new byte[length];
+		payload.readBytes(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Decodes UTF-8 bytes. Heap buffers are decoded straight from their array which is much faster than
+	 * {@link ByteBuf#toString(int, int, java.nio.charset.Charset)}.
+	 */
+	private static String toString(ByteBuf buffer, int index, int length) {
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + index, length, CharsetUtil.UTF_8);
+		}
+		return buffer.toString(index, length, CharsetUtil.UTF_8);
+	}
+
+	/**
+	 * Reads a length prefix, making sure that there are at least as many bytes left in the payload.
+	 */
+	private int readLength(ByteBuf payload) {
+		final int length = readVarInt(payload);
+		// Nullable lengths are one more than the number of bytes that follow
+		if (length - 1 > payload.readableBytes()) {
+			throw new DecodingException("Frame is truncated.");
+		}
+		return length;
+	}
+
+	private int readVarInt(ByteBuf payload) {
+		int value = 0;
+		for (int shift = 0; shift <= 28; shift += 7) {
+			if (!payload.isReadable()) {
+				throw new DecodingException("Frame is truncated.");
+			}
+			final byte b = payload.readByte();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				if (value < 0) {
 					break;
-				} else {
-					haystackIndex++;
-					if (haystackIndex == haystack.writerIndex() &&
-							needleIndex != needle.length - 1) {
-						return -1;
-					}
 				}
+				return value;
+			}
+		}
+		throw new DecodingException("Invalid varint.");
+	}
+
+	/**
+	 * Returns the number of bytes between the reader index and the first CRLF in the buffer or -1 if the buffer
+	 * doesn't contain a CRLF yet. The bytes searched by a call that doesn't find a CRLF aren't searched again.
+	 */
+	private int endOfLine(ByteBuf in) {
+		final int start = in.readerIndex();
+		// A line feed found later is still checked for a preceding CR.
+		int index = start + searchedBytes;
+		while (true) {
+			final int lineFeed = in.indexOf(index, in.writerIndex(), Codec.DELIMITER[1]);
+			if (lineFeed < 0) {
+				searchedBytes = in.readableBytes();
+				return -1;
+			}
+			if (lineFeed > start && in.getByte(lineFeed - 1) == Codec.DELIMITER[0]) {
+				searchedBytes = 0;
+				return lineFeed - 1 - start;
+			}
+			index = lineFeed + 1;
+		}
+	}
+
+	/**
+	 * Finds the arguments that follow the frame type in a single pass over the header. The start and end index of
+	 * each argument is stored in {@link #arguments} so nothing is allocated unless the header has more arguments than
+	 * any header decoded before it.
+	 *
+	 * @return the number of arguments.
+	 */
+	private int parseArguments(ByteBuf in, int start, int end) {
+		int count = 0;
+		// The frame type is a token of its own, skip it.
+		boolean inFrameType = true;
+		int argumentStart = -1;
+		for (int i = start; i < end; i++) {
+			if (isWhiteSpace(in.getByte(i))) {
+				if (argumentStart >= 0) {
+					count = addArgument(count, argumentStart, i);
+					argumentStart = -1;
+				}
+				inFrameType = false;
+			} else if (argumentStart < 0 && !inFrameType) {
+				argumentStart = i;
+			}
+		}
+		if (argumentStart >= 0) {
+			count = addArgument(count, argumentStart, end);
+		}
+		return count;
+	}
+
+	private int addArgument(int count, int start, int end) {
+		if (count * 2 == arguments.length) {
+			arguments = Arrays.copyOf(arguments, arguments.length * 2);
+		}
+		arguments[count * 2] = start;
+		arguments[count * 2 + 1] = end;
+		return count + 1;
+	}
+
+	private String argumentString(ByteBuf in, int argument) {
+		final int start = arguments[argument * 2];
+		return toString(in, start, arguments[argument * 2 + 1] - start);
+	}
+
+	private byte[] argumentBytes(ByteBuf in, int argument) {
+		final int start = arguments[argument * 2];
+		final byte[] bytes = new byte[arguments[argument * 2 + 1] - start];
+		in.getBytes(start, bytes);
+		return bytes;
+	}
+
+	private int argumentInt(ByteBuf in, int argument, String name) {
+		final int value = parseInt(in, arguments[argument * 2], arguments[argument * 2 + 1]);
+		if (value < 0) {
+			throw new DecodingException("Invalid " + name + " " + argumentString(in, argument));
+		}
+		return value;
+	}
+
+	private long argumentLong(ByteBuf in, int argument, String name) {
+		final int start = arguments[argument * 2];
+		final int end = arguments[argument * 2 + 1];
+		final boolean negative = in.getByte(start) == '-';
+		final int digitsStart = negative ? start + 1 : start;
+		// 18 digits can't overflow
+		if (digitsStart == end || end - digitsStart > 18) {
+			return parseLong(argumentString(in, argument), name);
+		}
+		long value = 0;
+		for (int i = digitsStart; i < end; i++) {
+			final byte b = in.getByte(i);
+			if (b < '0' || b > '9') {
+				throw new DecodingException("Invalid " + name + " " + argumentString(in, argument));
 			}
+			value = value * 10 + (b - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	private long parseLong(String value, String name) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new DecodingException("Invalid " + name + " " + value);
+		}
+	}
 
-			if (needleIndex == needle.length) {
-				// Found the needle from the haystack!
-				return i - haystack.readerIndex();
+	private static String validateQueueGroup(String queueGroup) {
+		if (!Subject.isValidToken(queueGroup)) {
+			throw new DecodingException("Invalid queue group '" + queueGroup + "'");
+		}
+		return queueGroup;
+	}
+
+	/**
+	 * Returns the index of the first {@code value} in an argument or -1 if the argument doesn't contain it.
+	 */
+	private int argumentIndexOf(ByteBuf in, int argument, char value) {
+		return in.indexOf(arguments[argument * 2], arguments[argument * 2 + 1], (byte) value);
+	}
+
+	private boolean isWhiteSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+	}
+
+	/**
+	 * Parses a non-negative decimal number. Returns -1 if the bytes are not a valid number.
+	 */
+	private int parseInt(ByteBuf in, int start, int end) {
+		if (start == end || end - start > 10) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			final byte b = in.getByte(i);
+			if (b < '0' || b > '9') {
+				return -1;
 			}
+			value = value * 10 + (b - '0');
+		}
+		return value > Integer.MAX_VALUE ? -1 : (int) value;
+	}
+
+	private int parsePartitionToken(ByteBuf in, int start, int end) {
+		final int token = parseInt(in, start, end);
+		if (token < 0) {
+			throw new DecodingException("Invalid partition token " + toString(in, start, end - start));
+		}
+		return token;
+	}
+
+	/**
+	 * Parses a bulk subscription, the subject optionally followed by the queue group and partition token, each
+	 * separated by {@link BulkSubscribeFrame#QUEUE_GROUP_SEPARATOR}.
+	 */
+	private SubscribeFrame parseBulkSubscription(ByteBuf in, int start, int end) {
+		final int subjectEnd = indexOf(in, start, end, BulkSubscribeFrame.QUEUE_GROUP_SEPARATOR);
+		final Subject subject = new Subject(toString(in, start, subjectEnd - start));
+		if (subjectEnd == end) {
+			return new SubscribeFrame(subject, null, SubscribeFrame.NOT_PARTITIONED);
+		}
+		final int queueGroupEnd = indexOf(in, subjectEnd + 1, end, BulkSubscribeFrame.QUEUE_GROUP_SEPARATOR);
+		final String queueGroup = validateQueueGroup(toString(in, subjectEnd + 1, queueGroupEnd - subjectEnd - 1));
+		return new SubscribeFrame(
+				subject,
+				queueGroup,
+				queueGroupEnd == end ? SubscribeFrame.NOT_PARTITIONED : parsePartitionToken(in, queueGroupEnd + 1, end));
+	}
+
+	/**
+	 * Returns the index of the first {@code value} between {@code start} and {@code end} or {@code end} if there is
+	 * none.
+	 */
+	private int indexOf(ByteBuf in, int start, int end, char value) {
+		final int index = in.indexOf(start, end, (byte) value);
+		return index < 0 ? end : index;
+	}
+
+	private SubscriptionOptions parseOptions(ByteBuf in, int start, int end) {
+		SubscriptionOptions options = SubscriptionOptions.NONE;
+		for (int i = start; i < end; i++) {
+			final int argumentStart = arguments[i * 2];
+			final int argumentEnd = arguments[i * 2 + 1];
+			final int separator = argumentIndexOf(in, i, SubscriptionOptions.VALUE_SEPARATOR);
+			final String name = toString(in, argumentStart, separator - argumentStart);
+			try {
+				switch (name) {
+					case SubscriptionOptions.SAMPLE:
+						options = options.withSampling(parseInt(in, separator + 1, argumentEnd));
+						break;
+					case SubscriptionOptions.MAX_RATE:
+						options = options.withMaxRate(parseInt(in, separator + 1, argumentEnd));
+						break;
+					case SubscriptionOptions.BODY_PREFIX:
+						options = options.withBodyPrefix(URLDecoder.decode(toString(in, separator + 1, argumentEnd - separator - 1), "UTF-8"));
+						break;
+					case SubscriptionOptions.FIELD: {
+						final int fieldEnd = in.indexOf(separator + 1, argumentEnd, (byte) SubscriptionOptions.FIELD_VALUE_SEPARATOR);
+						if (fieldEnd < 0) {
+							throw new DecodingException("Field filter " + argumentString(in, i) + " is missing a value");
+						}
+						options = options.withFieldEquals(
+								URLDecoder.decode(toString(in, separator + 1, fieldEnd - separator - 1), "UTF-8"),
+								URLDecoder.decode(toString(in, fieldEnd + 1, argumentEnd - fieldEnd - 1), "UTF-8"));
+						break;
+					}
+					default:
+						throw new DecodingException("Unknown subscription option " + name);
+				}
+			} catch (IllegalArgumentException | UnsupportedEncodingException e) {
+				// Invalid numbers are parsed as -1 which the options reject, also catches malformed URL encodings
+				throw new DecodingException("Invalid subscription option " + argumentString(in, i));
+			}
+		}
+		return options;
+	}
+
+	private void assertArgumentsLength(int expectedArguments, int argumentsLength, String frameName) {
+		if (argumentsLength != expectedArguments) {
+			throw new DecodingException("Expected " + frameName + " to have " + expectedArguments + " arguments. It has " + argumentsLength + ".");
 		}
-		return -1;
 	}
 
 }
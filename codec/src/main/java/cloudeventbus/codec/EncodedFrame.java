@@ -0,0 +1,150 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.codec;
+
+import cloudeventbus.Constants;
+import cloudeventbus.MessageBody;
+import cloudeventbus.Subject;
+import io.netty.buffer.AbstractReferenceCounted;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A frame that has already been encoded. Encoding a frame once lets it be written to many connections without
+ * serializing it again for each one. The frame is encoded for each protocol version the first time a connection using
+ * that version writes it. Only the header is written, the encoded frame wraps the body's UTF-8 bytes so a body received
+ * over the network is copied straight from the array it was decoded into to each recipient's outbound buffer.
+ *
+ * <p>Each instance holds one reference to the encoded bytes. A frame written to a channel is released by the
+ * {@link Encoder} once it has been copied to the channel's outbound buffer. A frame written to several channels must
+ * be written as a separate {@link #retainedDuplicate()} for each channel.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class EncodedFrame extends AbstractReferenceCounted implements Frame {
+
+	// The opcode, lengths, separators and delimiters of a frame usually take up less than this many bytes
+	private static final int FRAME_OVERHEAD = 16;
+
+	private final FrameType frameType;
+	// Shared by the duplicates of a frame, the references are counted on the encodings.
+	private final Encodings encodings;
+
+	private EncodedFrame(FrameType frameType, Encodings encodings) {
+		this.frameType = frameType;
+		this.encodings = encodings;
+	}
+
+	/**
+	 * Encodes a publish frame.
+	 */
+	public static EncodedFrame publish(Subject subject, Subject replySubject, CharSequence body) {
+		return new EncodedFrame(FrameType.PUBLISH, new Encodings(subject, replySubject, MessageBody.valueOf(body).getBytes()));
+	}
+
+	/**
+	 * Returns the frame encoded with the given protocol version including any delimiter that terminates it. The
+	 * returned buffer must not be modified.
+	 */
+	public ByteBuf content(int protocolVersion) {
+		return encodings.get(protocolVersion);
+	}
+
+	/**
+	 * Returns roughly the number of bytes in the encoded frame, whatever the protocol version, without encoding it.
+	 */
+	public int estimateSize() {
+		final Subject replySubject = encodings.replySubject;
+		return FRAME_OVERHEAD + encodings.subject.toString().length()
+				+ (replySubject == null ? 0 : replySubject.toString().length())
+				+ encodings.body.length;
+	}
+
+	/**
+	 * Returns a frame that shares this frame's encoded bytes and holds its own reference to them. The returned frame
+	 * can be written by a different thread than this frame.
+	 */
+	public EncodedFrame retainedDuplicate() {
+		encodings.retain();
+		return new EncodedFrame(frameType, encodings);
+	}
+
+	@Override
+	protected void deallocate() {
+		encodings.release();
+	}
+
+	@Override
+	public FrameType getFrameType() {
+		return frameType;
+	}
+
+	@Override
+	public String toString() {
+		return "Encoded " + frameType + " frame of " + encodings.body.length + " body bytes";
+	}
+
+	private static class Encodings extends AbstractReferenceCounted {
+		private final Subject subject;
+		private final Subject replySubject;
+		private final byte[] body;
+
+		// Indexed by protocol version
+		private final AtomicReferenceArray<ByteBuf> contents = new AtomicReferenceArray<>(Constants.PROTOCOL_VERSION + 1);
+
+		private Encodings(Subject subject, Subject replySubject, byte[] body) {
+			this.subject = subject;
+			this.replySubject = replySubject;
+			this.body = body;
+		}
+
+		private ByteBuf get(int protocolVersion) {
+			final ByteBuf content = contents.get(protocolVersion);
+			if (content != null) {
+				return content;
+			}
+			final ByteBuf newContent;
+			if (protocolVersion == Constants.PROTOCOL_VERSION_BINARY) {
+				final ByteBuf header = Unpooled.buffer(Encoder.binaryPublishHeaderSize(subject, replySubject, body.length));
+				Encoder.writeBinaryPublishHeader(header, subject, replySubject, body.length);
+				newContent = Unpooled.wrappedBuffer(header, Unpooled.wrappedBuffer(body));
+			} else {
+				final ByteBuf header = Unpooled.buffer(Encoder.publishHeaderSize(subject, replySubject, body.length));
+				Encoder.writePublishHeader(header, subject, replySubject, body.length);
+				newContent = Unpooled.wrappedBuffer(header, Unpooled.wrappedBuffer(body), Unpooled.wrappedBuffer(Codec.DELIMITER));
+			}
+			// Connections on other threads may be encoding the same version, the first encoding wins.
+			if (!contents.compareAndSet(protocolVersion, null, newContent)) {
+				newContent.release();
+				return contents.get(protocolVersion);
+			}
+			return newContent;
+		}
+
+		@Override
+		protected void deallocate() {
+			for (int i = 0; i < contents.length(); i++) {
+				final ByteBuf content = contents.get(i);
+				if (content != null) {
+					content.release();
+				}
+			}
+		}
+	}
+}
@@ -16,6 +16,8 @@
  */
 package cloudeventbus.codec;
 
+import cloudeventbus.Constants;
+import cloudeventbus.Subject;
 import cloudeventbus.pki.CertificateStoreLoader;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -28,7 +30,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.List;
 
 /**
  * @author Mike Heath <elcapo@gmail.com>
@@ -37,9 +43,23 @@ public class Encoder extends MessageToByteEncoder<Frame> {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(Encoder.class);
 
+	private int protocolVersion = Constants.PROTOCOL_VERSION_TEXT;
+
+	/**
+	 * Returns the protocol version frames are encoded with.
+	 */
+	public int getProtocolVersion() {
+		return protocolVersion;
+	}
+
 	@Override
 	public void encode(ChannelHandlerContext ctx, Frame frame, ByteBuf out) throws Exception {
 		LOGGER.debug("Encoding frame {}", frame);
+		// Greetings always use the text protocol
+		if (protocolVersion == Constants.PROTOCOL_VERSION_BINARY && frame.getFrameType() != FrameType.GREETING) {
+			encodeBinary(frame, out);
+			return;
+		}
 		switch (frame.getFrameType()) {
 			case AUTHENTICATE:
 				final AuthenticationRequestFrame authenticationRequestFrame = (AuthenticationRequestFrame) frame;
@@ -71,23 +91,30 @@ public class Encoder extends MessageToByteEncoder<Frame> {
 				break;
 			case ERROR:
 				final ErrorFrame errorFrame = (ErrorFrame) frame;
+				final int errorNumber = errorFrame.getCode().getErrorNumber();
+				final String message = errorFrame.getMessage();
+				out.ensureWritableBytes(2 + decimalSize(errorNumber) + (message == null ? 0 : 1 + stringSize(message)) + Codec.DELIMITER.length);
 				out.writeByte(FrameType.ERROR.getOpcode());
 				out.writeByte(' ');
-				writeString(out, Integer.toString(errorFrame.getCode().getErrorNumber()));
-				if (errorFrame.getMessage() != null) {
+				writeDecimal(out, errorNumber);
+				if (message != null) {
 					out.writeByte(' ');
-					writeString(out, errorFrame.getMessage());
+					writeString(out, message);
 				}
 				break;
 			case GREETING:
 				final GreetingFrame greetingFrame = (GreetingFrame) frame;
 				out.writeByte(FrameType.GREETING.getOpcode());
 				out.writeByte(' ');
-				writeString(out, Integer.toString(greetingFrame.getVersion()));
+				writeDecimal(out, greetingFrame.getVersion());
 				out.writeByte(' ');
 				writeString(out, greetingFrame.getAgent());
 				out.writeByte(' ');
-				writeString(out, Long.toString(greetingFrame.getId()));
+				writeDecimal(out, greetingFrame.getId());
+				// The frames that follow a greeting use the greeting's protocol version
+				if (Codec.isSupportedProtocolVersion(greetingFrame.getVersion())) {
+					protocolVersion = greetingFrame.getVersion();
+				}
 				break;
 			case PING:
 				out.writeByte(FrameType.PING.getOpcode());
@@ -96,34 +123,49 @@ public class Encoder extends MessageToByteEncoder<Frame> {
 				out.writeByte(FrameType.PONG.getOpcode());
 				break;
 			case PUBLISH:
-				final PublishFrame publishFrame = (PublishFrame) frame;
-				out.writeByte(FrameType.PUBLISH.getOpcode());
-				out.writeByte(' ');
-				writeString(out, publishFrame.getSubject().toString());
-				if (publishFrame.getReplySubject() != null) {
-					out.writeByte(' ');
-					writeString(out, publishFrame.getReplySubject().toString());
+				if (frame instanceof EncodedFrame) {
+					// The frame was already encoded, including the trailing delimiter.
+					final ByteBuf encoded = ((EncodedFrame) frame).content(Constants.PROTOCOL_VERSION_TEXT);
+					out.writeBytes(encoded, encoded.readerIndex(), encoded.readableBytes());
+					return;
 				}
-				out.writeByte(' ');
-				final ByteBuf body = Unpooled.wrappedBuffer(publishFrame.getBody().getBytes(CharsetUtil.UTF_8));
-				writeString(out, Integer.toString(body.readableBytes()));
-				out.writeBytes(Codec.DELIMITER);
-				out.writeBytes(body);
+				final PublishFrame publishFrame = (PublishFrame) frame;
+				writePublish(out, publishFrame.getSubject(), publishFrame.getReplySubject(), publishFrame.getMessageBody().getBytes());
 				break;
 			case SERVER_READY:
+				final ServerReadyFrame serverReadyFrame = (ServerReadyFrame) frame;
 				out.writeByte(FrameType.SERVER_READY.getOpcode());
+				if (serverReadyFrame.isBulkSubscribeSupported()) {
+					out.writeByte(' ');
+					writeDecimal(out, serverReadyFrame.getMaxMessageSize());
+				}
 				break;
 			case SUBSCRIBE:
 				final SubscribeFrame subscribeFrame = (SubscribeFrame) frame;
+				// Options are rare, the buffer grows to fit them if there are any.
+				out.ensureWritableBytes(1 + subscriptionSize(subscribeFrame) + Codec.DELIMITER.length);
 				out.writeByte(FrameType.SUBSCRIBE.getOpcode());
-				out.writeByte(' ');
-				writeString(out, subscribeFrame.getSubject().toString());
+				writeSubscription(out, subscribeFrame, ' ');
+				writeOptions(out, subscribeFrame.getOptions());
+				break;
+			case BULK_SUBSCRIBE:
+				final BulkSubscribeFrame bulkSubscribeFrame = (BulkSubscribeFrame) frame;
+				int bulkSubscribeSize = 1 + Codec.DELIMITER.length;
+				for (SubscribeFrame subscription : bulkSubscribeFrame.getSubscriptions()) {
+					bulkSubscribeSize += subscriptionSize(subscription);
+				}
+				out.ensureWritableBytes(bulkSubscribeSize);
+				out.writeByte(FrameType.BULK_SUBSCRIBE.getOpcode());
+				for (SubscribeFrame subscription : bulkSubscribeFrame.getSubscriptions()) {
+					writeSubscription(out, subscription, BulkSubscribeFrame.QUEUE_GROUP_SEPARATOR);
+				}
 				break;
 			case UNSUBSCRIBE:
-				final UnsubscribeFrame unsubscribeFrame = (UnsubscribeFrame) frame;
+				final String unsubscribeSubject = ((UnsubscribeFrame) frame).getSubject().toString();
+				out.ensureWritableBytes(2 + unsubscribeSubject.length() + Codec.DELIMITER.length);
 				out.writeByte(FrameType.UNSUBSCRIBE.getOpcode());
 				out.writeByte(' ');
-				writeString(out, unsubscribeFrame.getSubject().toString());
+				writeAscii(out, unsubscribeSubject);
 				break;
 			default:
 				throw new EncodingException("Don't know how to encode message of type " + frame.getClass().getName());
@@ -131,8 +173,401 @@ public class Encoder extends MessageToByteEncoder<Frame> {
 		out.writeBytes(Codec.DELIMITER);
 	}
 
-	private void writeString(ByteBuf out, String string) {
-		out.writeBytes(string.getBytes(CharsetUtil.UTF_8));
+	/**
+	 * Encodes a frame using the binary protocol. A frame is its one byte opcode, the length of its payload as a varint
+	 * and the payload. Strings and subjects in the payload are prefixed with their length, strings that may be
+	 * {@code null} are prefixed with their length plus one so that {@code null} can be written as 0.
+	 */
+	private void encodeBinary(Frame frame, ByteBuf out) throws IOException {
+		final FrameType frameType = frame.getFrameType();
+		switch (frameType) {
+			case PUBLISH:
+				if (frame instanceof EncodedFrame) {
+					final ByteBuf encoded = ((EncodedFrame) frame).content(Constants.PROTOCOL_VERSION_BINARY);
+					out.writeBytes(encoded, encoded.readerIndex(), encoded.readableBytes());
+					return;
+				}
+				final PublishFrame publishFrame = (PublishFrame) frame;
+				writeBinaryPublish(out, publishFrame.getSubject(), publishFrame.getReplySubject(), publishFrame.getMessageBody().getBytes());
+				return;
+			case PING:
+			case PONG:
+				writeBinaryFrameHeader(out, frameType, 0);
+				return;
+			case SERVER_READY:
+				final ServerReadyFrame serverReadyFrame = (ServerReadyFrame) frame;
+				if (!serverReadyFrame.isBulkSubscribeSupported()) {
+					writeBinaryFrameHeader(out, frameType, 0);
+					return;
+				}
+				writeBinaryFrameHeader(out, frameType, varIntSize(serverReadyFrame.getMaxMessageSize()));
+				writeVarInt(out, serverReadyFrame.getMaxMessageSize());
+				return;
+			case ERROR:
+				final ErrorFrame errorFrame = (ErrorFrame) frame;
+				final int errorNumber = errorFrame.getCode().getErrorNumber();
+				writeBinaryFrameHeader(out, frameType, varIntSize(errorNumber) + nullableStringSize(errorFrame.getMessage()));
+				writeVarInt(out, errorNumber);
+				writeNullableString(out, errorFrame.getMessage());
+				return;
+			case SUBSCRIBE:
+				final SubscribeFrame subscribeFrame = (SubscribeFrame) frame;
+				final SubscriptionOptions options = subscribeFrame.getOptions();
+				writeBinaryFrameHeader(out, frameType, binarySubscriptionSize(subscribeFrame)
+						+ varIntSize(options.getSampleEvery())
+						+ varIntSize(options.getMaxRate())
+						+ nullableStringSize(options.getBodyPrefix())
+						+ nullableStringSize(options.getField())
+						+ nullableStringSize(options.getFieldValue()));
+				writeBinarySubscription(out, subscribeFrame);
+				writeVarInt(out, options.getSampleEvery());
+				writeVarInt(out, options.getMaxRate());
+				writeNullableString(out, options.getBodyPrefix());
+				writeNullableString(out, options.getField());
+				writeNullableString(out, options.getFieldValue());
+				return;
+			case BULK_SUBSCRIBE:
+				final List<SubscribeFrame> subscriptions = ((BulkSubscribeFrame) frame).getSubscriptions();
+				int payloadLength = varIntSize(subscriptions.size());
+				for (SubscribeFrame subscription : subscriptions) {
+					payloadLength += binarySubscriptionSize(subscription);
+				}
+				writeBinaryFrameHeader(out, frameType, payloadLength);
+				writeVarInt(out, subscriptions.size());
+				for (SubscribeFrame subscription : subscriptions) {
+					writeBinarySubscription(out, subscription);
+				}
+				return;
+			case UNSUBSCRIBE:
+				final String subject = ((UnsubscribeFrame) frame).getSubject().toString();
+				writeBinaryFrameHeader(out, frameType, varIntSize(subject.length()) + subject.length());
+				writeBinaryAscii(out, subject);
+				return;
+		}
+		// Authentication frames are rare and hold values that have to be encoded before their length is known, so their
+		// payload is built before it is written
+		final ByteBuf payload = Unpooled.buffer();
+		try {
+			switch (frameType) {
+				case AUTHENTICATE:
+					writeBinaryBytes(payload, ((AuthenticationRequestFrame) frame).getChallenge());
+					break;
+				case AUTH_RESPONSE:
+					final AuthenticationResponseFrame authenticationResponseFrame = (AuthenticationResponseFrame) frame;
+					final ByteArrayOutputStream certificates = new ByteArrayOutputStream();
+					CertificateStoreLoader.store(certificates, authenticationResponseFrame.getCertificates());
+					writeBinaryBytes(payload, certificates.toByteArray());
+					writeBinaryBytes(payload, authenticationResponseFrame.getSalt());
+					writeBinaryBytes(payload, authenticationResponseFrame.getDigitalSignature());
+					break;
+				default:
+					throw new EncodingException("Don't know how to encode message of type " + frame.getClass().getName());
+			}
+			writeBinaryFrameHeader(out, frameType, payload.readableBytes());
+			out.writeBytes(payload);
+		} finally {
+			payload.release();
+		}
+	}
+
+	/**
+	 * Writes a binary frame's opcode and payload length, making sure the buffer has room for the payload that follows.
+	 */
+	private static void writeBinaryFrameHeader(ByteBuf out, FrameType frameType, int payloadLength) {
+		out.ensureWritableBytes(1 + varIntSize(payloadLength) + payloadLength);
+		out.writeByte(frameType.getOpcode());
+		writeVarInt(out, payloadLength);
+	}
+
+	private static int binarySubscriptionSize(SubscribeFrame subscription) {
+		final int subjectLength = subscription.getSubject().toString().length();
+		return varIntSize(subjectLength) + subjectLength
+				+ nullableStringSize(subscription.getQueueGroup())
+				+ varIntSize(subscription.getPartitionToken() + 1);
+	}
+
+	private static void writeBinarySubscription(ByteBuf out, SubscribeFrame subscription) {
+		writeBinaryAscii(out, subscription.getSubject().toString());
+		writeNullableString(out, subscription.getQueueGroup());
+		// Shifted by one so that NOT_PARTITIONED is written as 0
+		writeVarInt(out, subscription.getPartitionToken() + 1);
+	}
+
+	/**
+	 * Writes a publish frame using the binary protocol. The payload is the subject, the optional reply subject and
+	 * the body, which takes up the rest of the payload.
+	 */
+	static void writeBinaryPublish(ByteBuf out, Subject subject, Subject replySubject, byte[] body) {
+		out.ensureWritableBytes(binaryPublishHeaderSize(subject, replySubject, body.length) + body.length);
+		writeBinaryPublishHeader(out, subject, replySubject, body.length);
+		out.writeBytes(body);
+	}
+
+	/**
+	 * Writes everything in a binary publish frame that comes before the body.
+	 */
+	static void writeBinaryPublishHeader(ByteBuf out, Subject subject, Subject replySubject, int bodyLength) {
+		final String subjectString = subject.toString();
+		final String replySubjectString = replySubject == null ? null : replySubject.toString();
+		// Subjects are ASCII so their length in bytes is their length in chars
+		final int replySubjectLength = replySubjectString == null ? 0 : replySubjectString.length() + 1;
+		final int payloadLength = varIntSize(subjectString.length()) + subjectString.length()
+				+ varIntSize(replySubjectLength) + (replySubjectString == null ? 0 : replySubjectString.length())
+				+ bodyLength;
+		// The body is written by the caller, only the header is reserved
+		out.ensureWritableBytes(1 + varIntSize(payloadLength) + payloadLength - bodyLength);
+		out.writeByte(FrameType.PUBLISH.getOpcode());
+		writeVarInt(out, payloadLength);
+		writeBinaryAscii(out, subjectString);
+		writeVarInt(out, replySubjectLength);
+		if (replySubjectString != null) {
+			writeAscii(out, replySubjectString);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes in the header written by {@link #writeBinaryPublishHeader(ByteBuf, Subject, Subject, int)}.
+	 */
+	static int binaryPublishHeaderSize(Subject subject, Subject replySubject, int bodyLength) {
+		final int subjectLength = subject.toString().length();
+		final int replySubjectLength = replySubject == null ? 0 : replySubject.toString().length() + 1;
+		final int headerPayloadLength = varIntSize(subjectLength) + subjectLength
+				+ varIntSize(replySubjectLength) + Math.max(0, replySubjectLength - 1);
+		return 1 + varIntSize(headerPayloadLength + bodyLength) + headerPayloadLength;
+	}
+
+	private static void writeBinaryAscii(ByteBuf out, String string) {
+		writeVarInt(out, string.length());
+		writeAscii(out, string);
+	}
+
+	private static int nullableStringSize(String string) {
+		if (string == null) {
+			return 1;
+		}
+		final int length = stringSize(string);
+		return varIntSize(length + 1) + length;
+	}
+
+	private static void writeNullableString(ByteBuf out, String string) {
+		if (string == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		writeVarInt(out, stringSize(string) + 1);
+		writeString(out, string);
+	}
+
+	private static void writeBinaryBytes(ByteBuf out, byte[] bytes) {
+		writeVarInt(out, bytes.length);
+		out.writeBytes(bytes);
+	}
+
+	/**
+	 * Writes a non-negative int using 7 bits per byte, least significant group first, with the high bit set on every
+	 * byte but the last.
+	 */
+	static void writeVarInt(ByteBuf out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int varIntSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			size++;
+			value >>>= 7;
+		}
+		return size;
+	}
+
+	/**
+	 * Writes a publish frame without the delimiter that terminates the frame, the buffer is grown to fit the delimiter
+	 * too.
+	 */
+	static void writePublish(ByteBuf out, Subject subject, Subject replySubject, byte[] body) {
+		out.ensureWritableBytes(publishHeaderSize(subject, replySubject, body.length) + body.length + Codec.DELIMITER.length);
+		writePublishHeader(out, subject, replySubject, body.length);
+		out.writeBytes(body);
+	}
+
+	/**
+	 * Writes everything in a text publish frame that comes before the body.
+	 */
+	static void writePublishHeader(ByteBuf out, Subject subject, Subject replySubject, int bodyLength) {
+		out.ensureWritableBytes(publishHeaderSize(subject, replySubject, bodyLength));
+		out.writeByte(FrameType.PUBLISH.getOpcode());
+		out.writeByte(' ');
+		writeAscii(out, subject.toString());
+		if (replySubject != null) {
+			out.writeByte(' ');
+			writeAscii(out, replySubject.toString());
+		}
+		out.writeByte(' ');
+		writeDecimal(out, bodyLength);
+		out.writeBytes(Codec.DELIMITER);
+	}
+
+	/**
+	 * Returns the number of bytes in the header written by {@link #writePublishHeader(ByteBuf, Subject, Subject, int)}.
+	 */
+	static int publishHeaderSize(Subject subject, Subject replySubject, int bodyLength) {
+		return 2 + subject.toString().length()
+				+ (replySubject == null ? 0 : 1 + replySubject.toString().length())
+				+ 1 + decimalSize(bodyLength) + Codec.DELIMITER.length;
+	}
+
+	/**
+	 * Returns the number of bytes written by {@link #writeSubscription(ByteBuf, SubscribeFrame, char)}, options aren't
+	 * included.
+	 */
+	private static int subscriptionSize(SubscribeFrame subscription) {
+		return 1 + subscription.getSubject().toString().length()
+				+ (subscription.getQueueGroup() == null ? 0 : 1 + stringSize(subscription.getQueueGroup()))
+				+ (subscription.getPartitionToken() == SubscribeFrame.NOT_PARTITIONED ? 0 : 1 + decimalSize(subscription.getPartitionToken()));
+	}
+
+	/**
+	 * Writes a space followed by the subject, queue group and partition token of a subscription, each separated by
+	 * {@code separator}.
+	 */
+	private static void writeSubscription(ByteBuf out, SubscribeFrame subscription, char separator) {
+		out.writeByte(' ');
+		writeAscii(out, subscription.getSubject().toString());
+		if (subscription.getQueueGroup() != null) {
+			out.writeByte(separator);
+			writeString(out, subscription.getQueueGroup());
+		}
+		if (subscription.getPartitionToken() != SubscribeFrame.NOT_PARTITIONED) {
+			out.writeByte(separator);
+			writeDecimal(out, subscription.getPartitionToken());
+		}
+	}
+
+	private static void writeOptions(ByteBuf out, SubscriptionOptions options) {
+		if (options.getSampleEvery() > 1) {
+			writeOptionName(out, SubscriptionOptions.SAMPLE);
+			writeDecimal(out, options.getSampleEvery());
+		}
+		if (options.getMaxRate() > 0) {
+			writeOptionName(out, SubscriptionOptions.MAX_RATE);
+			writeDecimal(out, options.getMaxRate());
+		}
+		if (options.getBodyPrefix() != null) {
+			writeOption(out, SubscriptionOptions.BODY_PREFIX, urlEncode(options.getBodyPrefix()));
+		}
+		if (options.getField() != null) {
+			writeOption(out, SubscriptionOptions.FIELD,
+					urlEncode(options.getField()) + SubscriptionOptions.FIELD_VALUE_SEPARATOR + urlEncode(options.getFieldValue()));
+		}
+	}
+
+	private static void writeOption(ByteBuf out, String name, String value) {
+		writeOptionName(out, name);
+		writeAscii(out, value);
+	}
+
+	private static void writeOptionName(ByteBuf out, String name) {
+		out.writeByte(' ');
+		writeAscii(out, name);
+		out.writeByte(SubscriptionOptions.VALUE_SEPARATOR);
+	}
+
+	private static String urlEncode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new EncodingException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the number of bytes in the UTF-8 encoding of a string. Only strings that aren't ASCII are encoded to
+	 * find out.
+	 */
+	private static int stringSize(String string) {
+		return isAscii(string) ? string.length() : string.getBytes(CharsetUtil.UTF_8).length;
+	}
+
+	/**
+	 * Writes a string as UTF-8. ASCII strings, the common case, are written straight into the buffer.
+	 */
+	private static void writeString(ByteBuf out, String string) {
+		if (isAscii(string)) {
+			writeAscii(out, string);
+		} else {
+			out.writeBytes(string.getBytes(CharsetUtil.UTF_8));
+		}
+	}
+
+	private static boolean isAscii(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			if (string.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes a string that only holds ASCII characters, such as a subject, without encoding it to a byte array first.
+	 */
+	private static void writeAscii(ByteBuf out, String string) {
+		final int length = string.length();
+		out.ensureWritableBytes(length);
+		final int writerIndex = out.writerIndex();
+		if (out.hasArray()) {
+			final byte[] array = out.array();
+			final int offset = out.arrayOffset() + writerIndex;
+			for (int i = 0; i < length; i++) {
+				array[offset + i] = (byte) string.charAt(i);
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				out.setByte(writerIndex + i, string.charAt(i));
+			}
+		}
+		out.writerIndex(writerIndex + length);
+	}
+
+	/**
+	 * Returns the number of bytes written by {@link #writeDecimal(ByteBuf, long)}.
+	 */
+	static int decimalSize(long value) {
+		if (value == Long.MIN_VALUE) {
+			return 20;
+		}
+		int size = value < 0 ? 2 : 1;
+		for (long remaining = Math.abs(value); remaining >= 10; remaining /= 10) {
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Writes a number's decimal digits without creating a string.
+	 */
+	static void writeDecimal(ByteBuf out, long value) {
+		if (value == Long.MIN_VALUE) {
+			writeAscii(out, Long.toString(value));
+			return;
+		}
+		final int size = decimalSize(value);
+		out.ensureWritableBytes(size);
+		final int writerIndex = out.writerIndex();
+		int index = writerIndex + size;
+		long remaining = Math.abs(value);
+		do {
+			out.setByte(--index, (int) ('0' + remaining % 10));
+			remaining /= 10;
+		} while (remaining != 0);
+		if (value < 0) {
+			out.setByte(--index, '-');
+		}
+		out.writerIndex(writerIndex + size);
 	}
 
 }
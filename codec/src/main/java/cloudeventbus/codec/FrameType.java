@@ -21,16 +21,26 @@ package cloudeventbus.codec;
  */
 public enum FrameType {
 
-	AUTHENTICATE ('A'),
-	ERROR        ('E'),
-	GREETING     ('G'),
-	PING         ('I'),
-	PONG         ('O'),
-	PUBLISH      ('P'),
-	AUTH_RESPONSE('R'),
-	SUBSCRIBE    ('S'),
-	UNSUBSCRIBE  ('U'),
-	SERVER_READY ('Y');
+	AUTHENTICATE  ('A'),
+	BULK_SUBSCRIBE('B'),
+	ERROR         ('E'),
+	GREETING      ('G'),
+	PING          ('I'),
+	PONG          ('O'),
+	PUBLISH       ('P'),
+	AUTH_RESPONSE ('R'),
+	SUBSCRIBE     ('S'),
+	UNSUBSCRIBE   ('U'),
+	SERVER_READY  ('Y');
+
+	// Indexed by opcode so that looking up a frame type doesn't have to search every frame type
+	private static final FrameType[] FRAME_TYPES = new FrameType[256];
+
+	static {
+		for (FrameType frameType : values()) {
+			FRAME_TYPES[frameType.opcode] = frameType;
+		}
+	}
 
 	private final char opcode;
 
@@ -42,12 +52,10 @@ public enum FrameType {
 		return opcode;
 	}
 
+	/**
+	 * Returns the frame type with the given opcode or {@code null} if there is no such frame type.
+	 */
 	public static FrameType getFrameType(char opcode) {
-		for (FrameType frameType : values()) {
-			if (frameType.opcode == opcode) {
-				return frameType;
-			}
-		}
-		return null;
+		return opcode < FRAME_TYPES.length ? FRAME_TYPES[opcode] : null;
 	}
 }
@@ -16,6 +16,7 @@
  */
 package cloudeventbus.codec;
 
+import cloudeventbus.MessageBody;
 import cloudeventbus.Subject;
 
 /**
@@ -25,12 +26,12 @@ public class PublishFrame implements Frame {
 
 	private final Subject subject;
 	private final Subject replySubject;
-	private final String body;
+	private final MessageBody body;
 
-	public PublishFrame(Subject subject, Subject replySubject, String body) {
+	public PublishFrame(Subject subject, Subject replySubject, CharSequence body) {
 		this.subject = subject;
 		this.replySubject = replySubject;
-		this.body = body;
+		this.body = MessageBody.valueOf(body);
 	}
 
 	public Subject getSubject() {
@@ -41,7 +42,15 @@ public class PublishFrame implements Frame {
 		return replySubject;
 	}
 
+	/**
+	 * Returns the body decoded as a {@code String}. The server passes bodies along using {@link #getMessageBody()}
+	 * which doesn't decode them.
+	 */
 	public String getBody() {
+		return body.toString();
+	}
+
+	public MessageBody getMessageBody() {
 		return body;
 	}
 
@@ -17,18 +17,49 @@
 package cloudeventbus.codec;
 
 /**
+ * Sent by the server once a client may start subscribing and publishing. Servers that accept bulk subscribe frames
+ * advertise the largest frame they will decode so that clients can size their bulk subscriptions, older servers send
+ * the frame without arguments.
+ *
  * @author Mike Heath <elcapo@gmail.com>
  */
 public class ServerReadyFrame implements Frame {
 
-	public static final ServerReadyFrame  SERVER_READY = new ServerReadyFrame();
+	/**
+	 * The max message size of servers that don't advertise one.
+	 */
+	public static final int UNKNOWN_MAX_MESSAGE_SIZE = 0;
+
+	public static final ServerReadyFrame  SERVER_READY = new ServerReadyFrame(UNKNOWN_MAX_MESSAGE_SIZE);
+
+	private final int maxMessageSize;
+
+	public ServerReadyFrame(int maxMessageSize) {
+		if (maxMessageSize < 0) {
+			throw new IllegalArgumentException("maxMessageSize can not be negative.");
+		}
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	/**
+	 * Returns the largest frame, in bytes, the server will decode or {@link #UNKNOWN_MAX_MESSAGE_SIZE} if the server
+	 * didn't advertise it.
+	 */
+	public int getMaxMessageSize() {
+		return maxMessageSize;
+	}
 
-	private ServerReadyFrame() {
+	/**
+	 * Returns true if the server accepts {@link BulkSubscribeFrame}s. Only servers that accept them advertise their
+	 * max message size.
+	 */
+	public boolean isBulkSubscribeSupported() {
+		return maxMessageSize != UNKNOWN_MAX_MESSAGE_SIZE;
 	}
 
 	@Override
 	public String toString() {
-		return "Server ready";
+		return maxMessageSize == UNKNOWN_MAX_MESSAGE_SIZE ? "Server ready" : "Server ready maxMessageSize=" + maxMessageSize;
 	}
 
 	@Override
@@ -0,0 +1,170 @@
+/*
+ *   Copyright (c) 2013 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.codec;
+
+import cloudeventbus.Constants;
+import cloudeventbus.Subject;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded table of {@link Subject} instances that can be looked up directly from the bytes of a decoded frame. When
+ * a subject is found in the table, no {@code String} is created and the subject's syntax isn't validated again.
+ *
+ * <p>The table is direct mapped, a subject that hashes to an occupied slot replaces the subject in that slot. Request
+ * reply subjects are only used once so they are validated but never added to the table.
+ *
+ * <p>Instances of this class are thread safe and are meant to be shared by all the decoders in a process.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class SubjectInternTable {
+
+	public static final int DEFAULT_CAPACITY = 1024 * 4;
+
+	/**
+	 * The table used by the {@link Decoder} if no other table is specified.
+	 */
+	public static final SubjectInternTable SHARED = new SubjectInternTable(DEFAULT_CAPACITY);
+
+	private final AtomicReferenceArray<Subject> subjects;
+	private final int mask;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a subject table.
+	 *
+	 * @param capacity the number of subjects the table can hold, rounded up to the next power of two.
+	 */
+	public SubjectInternTable(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be greater than 0");
+		}
+		final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+		subjects = new AtomicReferenceArray<>(size);
+		mask = size - 1;
+	}
+
+	/**
+	 * Returns the subject held in {@code length} bytes of the buffer starting at {@code index}. The buffer's reader
+	 * and writer indexes are not modified.
+	 *
+	 * @param buffer the buffer holding the subject
+	 * @param index the index of the first byte of the subject
+	 * @param length the number of bytes in the subject
+	 * @return the subject.
+	 * @throws DecodingException if the bytes are not a valid subject.
+	 */
+	public Subject intern(ByteBuf buffer, int index, int length) throws DecodingException {
+		final int hash = validateAndHash(buffer, index, length);
+		if (isRequestReply(buffer, index)) {
+			return newSubject(buffer, index, length);
+		}
+		final int slot = (hash ^ (hash >>> 16)) & mask;
+		final Subject subject = subjects.get(slot);
+		if (subject != null && subject.hashCode() == hash && matches(subject, buffer, index, length)) {
+			hits.incrementAndGet();
+			return subject;
+		}
+		misses.incrementAndGet();
+		final Subject newSubject = newSubject(buffer, index, length);
+		subjects.lazySet(slot, newSubject);
+		return newSubject;
+	}
+
+	/**
+	 * Returns the number of lookups that were resolved from the table.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups that had to create a new {@link Subject}.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of subjects the table can hold.
+	 */
+	public int getCapacity() {
+		return subjects.length();
+	}
+
+	/**
+	 * Validates the subject syntax and computes the subject's hash code in a single pass. The hash code is the same as
+	 * the hash code of the equivalent {@code String} which makes it the same as {@link Subject#hashCode()}.
+	 */
+	private static int validateAndHash(ByteBuf buffer, int index, int length) {
+		int hash = 0;
+		int tokenLength = 0;
+		boolean wildCardToken = false;
+		for (int i = index; i < index + length; i++) {
+			final byte b = buffer.getByte(i);
+			if (b == '.') {
+				if (tokenLength == 0) {
+					throw new DecodingException("Not valid subject syntax.");
+				}
+				tokenLength = 0;
+				wildCardToken = false;
+			} else if (b == '*') {
+				if (tokenLength != 0) {
+					throw new DecodingException("Not valid subject syntax.");
+				}
+				wildCardToken = true;
+				tokenLength++;
+			} else if (Subject.isValidTokenChar(b) && !wildCardToken) {
+				tokenLength++;
+			} else {
+				throw new DecodingException("Not valid subject syntax.");
+			}
+			hash = 31 * hash + b;
+		}
+		if (tokenLength == 0) {
+			throw new DecodingException("Not valid subject syntax.");
+		}
+		return hash;
+	}
+
+	private static boolean isRequestReply(ByteBuf buffer, int index) {
+		return buffer.getByte(index) == Constants.REQUEST_REPLY_SUBJECT_PREFIX.charAt(0);
+	}
+
+	private static boolean matches(Subject subject, ByteBuf buffer, int index, int length) {
+		final String string = subject.toString();
+		if (string.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (string.charAt(i) != buffer.getByte(index + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Subject newSubject(ByteBuf buffer, int index, int length) {
+		return new Subject(buffer.toString(index, length, CharsetUtil.US_ASCII));
+	}
+}
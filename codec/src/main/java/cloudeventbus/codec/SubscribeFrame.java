@@ -16,6 +16,7 @@
  */
 package cloudeventbus.codec;
 
+import cloudeventbus.Constants;
 import cloudeventbus.Subject;
 
 /**
@@ -23,19 +24,76 @@ import cloudeventbus.Subject;
  */
 public class SubscribeFrame implements Frame {
 
+	/**
+	 * The partition token of subscriptions that are not partitioned.
+	 */
+	public static final int NOT_PARTITIONED = Constants.NOT_PARTITIONED;
+
 	private final Subject subject;
+	private final String queueGroup;
+	private final int partitionToken;
+	private final SubscriptionOptions options;
 
 	public SubscribeFrame(Subject subject) {
+		this(subject, null);
+	}
+
+	public SubscribeFrame(Subject subject, String queueGroup) {
+		this(subject, queueGroup, NOT_PARTITIONED);
+	}
+
+	public SubscribeFrame(Subject subject, String queueGroup, int partitionToken) {
+		this(subject, queueGroup, partitionToken, SubscriptionOptions.NONE);
+	}
+
+	public SubscribeFrame(Subject subject, String queueGroup, int partitionToken, SubscriptionOptions options) {
+		if (queueGroup != null && !Subject.isValidToken(queueGroup)) {
+			throw new IllegalArgumentException("Invalid queue group '" + queueGroup + "'");
+		}
+		if (partitionToken != NOT_PARTITIONED && queueGroup == null) {
+			throw new IllegalArgumentException("Only queue group subscriptions can be partitioned");
+		}
+		if (!options.equals(SubscriptionOptions.NONE) && queueGroup != null) {
+			throw new IllegalArgumentException("Queue group subscriptions can not be filtered, sampled or rate limited");
+		}
 		this.subject = subject;
+		this.queueGroup = queueGroup;
+		this.partitionToken = partitionToken;
+		this.options = options;
 	}
 
 	public Subject getSubject() {
 		return subject;
 	}
 
+	/**
+	 * Returns the name of the queue group the subscription belongs to or {@code null} if the subscription should
+	 * receive every message published to the subject.
+	 */
+	public String getQueueGroup() {
+		return queueGroup;
+	}
+
+	/**
+	 * Returns the index of the subject token that picks the queue group member for each message or
+	 * {@link #NOT_PARTITIONED} if messages are spread over the members without regard to their subject.
+	 */
+	public int getPartitionToken() {
+		return partitionToken;
+	}
+
+	/**
+	 * Returns the options limiting which of the subject's messages the subscription receives.
+	 */
+	public SubscriptionOptions getOptions() {
+		return options;
+	}
+
 	@Override
 	public String toString() {
-		return "Subscribe subject=" + subject;
+		return "Subscribe subject=" + subject + (queueGroup == null ? "" : " queueGroup=" + queueGroup)
+				+ (partitionToken == NOT_PARTITIONED ? "" : " partitionToken=" + partitionToken)
+				+ (options.equals(SubscriptionOptions.NONE) ? "" : " options=" + options);
 	}
 
 	@Override
@@ -0,0 +1,196 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.codec;
+
+/**
+ * Options that let the server send a subscription fewer messages than are published to its subject. Options are
+ * immutable, each {@code with} method returns a copy with the option changed.
+ *
+ * <p>Filters only let through the messages whose body starts with a prefix or whose JSON body has a field with a given
+ * value. Sampling and rate limits then apply to the messages that pass the filters.
+ *
+ * <p>Options follow the other arguments of a subscribe frame as {@code name=value} pairs, {@code sample=100} to receive
+ * one of every hundred messages and {@code rate=10} to receive at most ten messages a second for example. The values of
+ * filters are URL encoded so they can hold white space, a field filter is sent as the encoded field path and value
+ * separated by {@link #FIELD_VALUE_SEPARATOR}.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class SubscriptionOptions {
+
+	/**
+	 * The options of a subscription that receives every message published to its subject.
+	 */
+	public static final SubscriptionOptions NONE = new SubscriptionOptions(1, 0, null, null, null);
+
+	public static final String SAMPLE = "sample";
+	public static final String MAX_RATE = "rate";
+	public static final String BODY_PREFIX = "prefix";
+	public static final String FIELD = "field";
+
+	/**
+	 * Separates the name of an option from its value.
+	 */
+	public static final char VALUE_SEPARATOR = '=';
+
+	/**
+	 * Separates the field path of a field filter from the value the field must have.
+	 */
+	public static final char FIELD_VALUE_SEPARATOR = ':';
+
+	private final int sampleEvery;
+	private final int maxRate;
+	private final String bodyPrefix;
+	private final String field;
+	private final String fieldValue;
+
+	private SubscriptionOptions(int sampleEvery, int maxRate, String bodyPrefix, String field, String fieldValue) {
+		this.sampleEvery = sampleEvery;
+		this.maxRate = maxRate;
+		this.bodyPrefix = bodyPrefix;
+		this.field = field;
+		this.fieldValue = fieldValue;
+	}
+
+	/**
+	 * Returns options that deliver one of every {@code sampleEvery} messages, 1 to deliver every message.
+	 */
+	public SubscriptionOptions withSampling(int sampleEvery) {
+		if (sampleEvery < 1) {
+			throw new IllegalArgumentException("sampleEvery must be greater than 0");
+		}
+		return new SubscriptionOptions(sampleEvery, maxRate, bodyPrefix, field, fieldValue);
+	}
+
+	/**
+	 * Returns options that deliver at most {@code maxRate} messages per second, 0 for no limit.
+	 */
+	public SubscriptionOptions withMaxRate(int maxRate) {
+		if (maxRate < 0) {
+			throw new IllegalArgumentException("maxRate can not be negative");
+		}
+		return new SubscriptionOptions(sampleEvery, maxRate, bodyPrefix, field, fieldValue);
+	}
+
+	/**
+	 * Returns options that only deliver messages whose body starts with {@code bodyPrefix}, {@code null} to deliver
+	 * messages regardless of their body.
+	 */
+	public SubscriptionOptions withBodyPrefix(String bodyPrefix) {
+		if (bodyPrefix != null && bodyPrefix.isEmpty()) {
+			throw new IllegalArgumentException("bodyPrefix can not be empty");
+		}
+		return new SubscriptionOptions(sampleEvery, maxRate, bodyPrefix, field, fieldValue);
+	}
+
+	/**
+	 * Returns options that only deliver messages with a JSON object body holding {@code value} in the field at
+	 * {@code field}. Nested fields are separated by dots, {@code order.status} for example. {@code value} is JSON
+	 * text, {@code "shipped"} or {@code 42} for example, numbers are compared by value. Text that isn't a JSON value,
+	 * a bare {@code shipped} for example, is taken as a string.
+	 */
+	public SubscriptionOptions withFieldEquals(String field, String value) {
+		if (field == null || field.isEmpty() || value == null) {
+			throw new IllegalArgumentException("A field filter requires a field and a value");
+		}
+		return new SubscriptionOptions(sampleEvery, maxRate, bodyPrefix, field, value);
+	}
+
+	public int getSampleEvery() {
+		return sampleEvery;
+	}
+
+	/**
+	 * Returns the maximum number of messages per second or 0 if the rate isn't limited.
+	 */
+	public int getMaxRate() {
+		return maxRate;
+	}
+
+	/**
+	 * Returns the prefix the body of delivered messages must start with or {@code null}.
+	 */
+	public String getBodyPrefix() {
+		return bodyPrefix;
+	}
+
+	/**
+	 * Returns the path of the JSON field of the field filter or {@code null} if messages aren't filtered on a field.
+	 */
+	public String getField() {
+		return field;
+	}
+
+	public String getFieldValue() {
+		return fieldValue;
+	}
+
+	/**
+	 * Indicates if the subscription is sampled or rate limited.
+	 */
+	public boolean isThrottled() {
+		return sampleEvery > 1 || maxRate > 0;
+	}
+
+	/**
+	 * Indicates if the subscription filters messages on their body.
+	 */
+	public boolean isFiltered() {
+		return bodyPrefix != null || field != null;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+
+		final SubscriptionOptions that = (SubscriptionOptions) o;
+		return sampleEvery == that.sampleEvery && maxRate == that.maxRate
+				&& (bodyPrefix == null ? that.bodyPrefix == null : bodyPrefix.equals(that.bodyPrefix))
+				&& (field == null ? that.field == null : field.equals(that.field))
+				&& (fieldValue == null ? that.fieldValue == null : fieldValue.equals(that.fieldValue));
+	}
+
+	@Override
+	public int hashCode() {
+		int result = sampleEvery;
+		result = 31 * result + maxRate;
+		result = 31 * result + (bodyPrefix != null ? bodyPrefix.hashCode() : 0);
+		result = 31 * result + (field != null ? field.hashCode() : 0);
+		result = 31 * result + (fieldValue != null ? fieldValue.hashCode() : 0);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		if (sampleEvery > 1) {
+			builder.append(' ').append(SAMPLE).append(VALUE_SEPARATOR).append(sampleEvery);
+		}
+		if (maxRate > 0) {
+			builder.append(' ').append(MAX_RATE).append(VALUE_SEPARATOR).append(maxRate);
+		}
+		if (bodyPrefix != null) {
+			builder.append(' ').append(BODY_PREFIX).append(VALUE_SEPARATOR).append('\'').append(bodyPrefix).append('\'');
+		}
+		if (field != null) {
+			builder.append(' ').append(FIELD).append(VALUE_SEPARATOR).append(field).append(FIELD_VALUE_SEPARATOR)
+					.append('\'').append(fieldValue).append('\'');
+		}
+		return builder.length() == 0 ? "" : builder.substring(1);
+	}
+}
@@ -16,21 +16,32 @@
  */
 package cloudeventbus.codec;
 
+import cloudeventbus.Constants;
 import cloudeventbus.Subject;
 import cloudeventbus.pki.Certificate;
 import cloudeventbus.pki.CertificateChain;
 import cloudeventbus.pki.CertificateUtils;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelException;
 import io.netty.channel.embedded.EmbeddedByteChannel;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.CharsetUtil;
 import org.testng.annotations.Test;
 
 import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 /**
  * @author Mike Heath <elcapo@gmail.com>
@@ -101,6 +112,40 @@ public class EncoderDecoderTest {
 		assertEquals(recodedFrame.getId(), id);
 	}
 
+	@Test
+	public void greetingFrameNegativeIds() {
+		for (long id : new long[] {-1, Long.MIN_VALUE, Long.MAX_VALUE}) {
+			assertEquals(recode(new GreetingFrame(1, "test", id)).getId(), id);
+		}
+	}
+
+	@Test
+	public void nonAsciiStrings() {
+		for (int protocolVersion = Constants.PROTOCOL_VERSION_TEXT; protocolVersion <= Constants.PROTOCOL_VERSION; protocolVersion++) {
+			final ErrorFrame errorFrame = recode(new ErrorFrame(ErrorFrame.Code.SERVER_ERROR, "caf\u00e9 \u2713"), protocolVersion);
+			assertEquals(errorFrame.getMessage(), "caf\u00e9 \u2713");
+			// Queue groups are subject tokens and can't hold non-ASCII characters, subscription options can
+			final SubscriptionOptions options = SubscriptionOptions.NONE.withBodyPrefix("gr\u00fc\u00dfe");
+			final SubscribeFrame subscribeFrame = recode(new SubscribeFrame(new Subject("foo"), null, SubscribeFrame.NOT_PARTITIONED, options), protocolVersion);
+			assertEquals(subscribeFrame.getOptions(), options);
+		}
+	}
+
+	@Test
+	public void publishHeaderSize() {
+		final Subject subject = new Subject("orders.eu.created");
+		for (Subject replySubject : new Subject[] {null, new Subject("_INBOX.42")}) {
+			for (int bodyLength : new int[] {0, 9, 10, 127, 128, 123456}) {
+				final ByteBuf header = Unpooled.buffer();
+				Encoder.writePublishHeader(header, subject, replySubject, bodyLength);
+				assertEquals(header.readableBytes(), Encoder.publishHeaderSize(subject, replySubject, bodyLength));
+				final ByteBuf binaryHeader = Unpooled.buffer();
+				Encoder.writeBinaryPublishHeader(binaryHeader, subject, replySubject, bodyLength);
+				assertEquals(binaryHeader.readableBytes(), Encoder.binaryPublishHeaderSize(subject, replySubject, bodyLength));
+			}
+		}
+	}
+
 	@Test
 	public void pingFrame() {
 		recode(PingFrame.PING);
@@ -113,7 +158,11 @@ public class EncoderDecoderTest {
 
 	@Test
 	public void serverReadyFrame() {
-		recode(ServerReadyFrame.SERVER_READY);
+		assertSame(recode(ServerReadyFrame.SERVER_READY), ServerReadyFrame.SERVER_READY);
+		final ServerReadyFrame advertised = recode(new ServerReadyFrame(Constants.DEFAULT_MAX_MESSAGE_SIZE));
+		assertEquals(advertised.getMaxMessageSize(), Constants.DEFAULT_MAX_MESSAGE_SIZE);
+		assertTrue(advertised.isBulkSubscribeSupported());
+		assertFalse(ServerReadyFrame.SERVER_READY.isBulkSubscribeSupported());
 	}
 
 	@Test
@@ -129,6 +178,17 @@ public class EncoderDecoderTest {
 		assertEquals(recodedFrame.getBody(), body);
 	}
 
+	@Test
+	public void publishFrameBodyBytes() {
+		final String body = "Gr\u00fc\u00dfe \u2713";
+		for (int protocolVersion : new int[] {Constants.PROTOCOL_VERSION_TEXT, Constants.PROTOCOL_VERSION_BINARY}) {
+			final PublishFrame recodedFrame = recode(new PublishFrame(new Subject("test"), null, body), protocolVersion);
+			// Decoded bodies hold the bytes they were received as
+			assertEquals(recodedFrame.getMessageBody().getBytes(), body.getBytes(CharsetUtil.UTF_8));
+			assertEquals(recodedFrame.getBody(), body);
+		}
+	}
+
 	@Test
 	public void publishFrameNoReply() {
 		final Subject subject = new Subject("testing.with.no.reply");
@@ -141,6 +201,260 @@ public class EncoderDecoderTest {
 		assertEquals(recodedFrame.getBody(), body);
 	}
 
+	@Test
+	public void publishFrameSubjectInterned() {
+		final SubjectInternTable subjects = new SubjectInternTable(16);
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec(Constants.DEFAULT_MAX_MESSAGE_SIZE, subjects));
+		final PublishFrame frame = new PublishFrame(new Subject("interned.subject"), new Subject("_reply"), "body");
+		channel.write(frame);
+		channel.writeInbound((ByteBuf) channel.readOutbound());
+		final PublishFrame first = (PublishFrame) channel.readInbound();
+		channel.write(frame);
+		channel.writeInbound((ByteBuf) channel.readOutbound());
+		final PublishFrame second = (PublishFrame) channel.readInbound();
+		channel.checkException();
+
+		assertEquals(first.getSubject(), frame.getSubject());
+		assertSame(first.getSubject(), second.getSubject());
+		assertEquals(second.getReplySubject(), frame.getReplySubject());
+		assertEquals(subjects.getMisses(), 1);
+		assertEquals(subjects.getHits(), 1);
+	}
+
+	@Test
+	public void encodedPublishFrame() {
+		final Subject subject = new Subject("test");
+		final Subject replySubject = new Subject("_reply");
+		final EncodedFrame frame = EncodedFrame.publish(subject, replySubject, "Have a nice day");
+
+		final EncodedFrame first = frame.retainedDuplicate();
+		final EncodedFrame second = frame.retainedDuplicate();
+		final ByteBuf content = frame.content(Constants.PROTOCOL_VERSION_TEXT);
+		frame.release();
+		assertEquals(content.refCnt(), 1);
+
+		final PublishFrame firstRecoded = (PublishFrame) recode((Frame) first);
+		assertEquals(first.refCnt(), 0);
+		assertEquals(firstRecoded.getSubject(), subject);
+		assertEquals(firstRecoded.getReplySubject(), replySubject);
+		assertEquals(firstRecoded.getBody(), "Have a nice day");
+
+		// The same frame written to a connection using the binary protocol
+		final PublishFrame secondRecoded = (PublishFrame) recode((Frame) second, Constants.PROTOCOL_VERSION_BINARY);
+		assertEquals(secondRecoded.getSubject(), subject);
+		assertEquals(secondRecoded.getReplySubject(), replySubject);
+		assertEquals(secondRecoded.getBody(), "Have a nice day");
+		assertEquals(content.refCnt(), 0);
+	}
+
+	@Test
+	public void greetingSwitchesProtocolVersion() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		recode(channel, new GreetingFrame(Constants.PROTOCOL_VERSION_BINARY, "test", 0));
+
+		channel.write(PingFrame.PING);
+		final ByteBuf data = channel.readOutbound();
+		assertEquals(data.readableBytes(), 2);
+		assertEquals(data.getByte(0), FrameType.PING.getOpcode());
+		assertEquals(data.getByte(1), 0);
+	}
+
+	@Test
+	public void unsupportedGreetingKeepsTextProtocol() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		recode(channel, new GreetingFrame(Constants.PROTOCOL_VERSION + 1, "test", 0));
+		channel.write(PingFrame.PING);
+		assertEquals(((ByteBuf) channel.readOutbound()).toString(CharsetUtil.UTF_8), "I\r\n");
+	}
+
+	@Test
+	public void binaryFrames() {
+		final int binary = Constants.PROTOCOL_VERSION_BINARY;
+		final byte[] challenge = new byte[] {1,2,3,4,5,6,7,8,9,0};
+		assertEquals(recode(new AuthenticationRequestFrame(challenge), binary).getChallenge(), challenge);
+
+		final KeyPair keyPair = CertificateUtils.generateKeyPair();
+		final CertificateChain certificates = new CertificateChain(CertificateUtils.generateSelfSignedCertificate(keyPair, -1, "Test Certificate"));
+		final AuthenticationResponseFrame authenticationResponse = recode(new AuthenticationResponseFrame(certificates, "salt".getBytes(), "signature".getBytes()), binary);
+		assertEquals(authenticationResponse.getCertificates(), certificates);
+		assertEquals(authenticationResponse.getSalt(), "salt".getBytes());
+		assertEquals(authenticationResponse.getDigitalSignature(), "signature".getBytes());
+
+		final ErrorFrame error = recode(new ErrorFrame(ErrorFrame.Code.SERVER_NOT_READY, "It's broken!"), binary);
+		assertEquals(error.getCode(), ErrorFrame.Code.SERVER_NOT_READY);
+		assertEquals(error.getMessage(), "It's broken!");
+		assertNull(recode(new ErrorFrame(ErrorFrame.Code.SERVER_NOT_READY), binary).getMessage());
+
+		assertSame(recode(PingFrame.PING, binary), PingFrame.PING);
+		assertSame(recode(PongFrame.PONG, binary), PongFrame.PONG);
+		assertSame(recode(ServerReadyFrame.SERVER_READY, binary), ServerReadyFrame.SERVER_READY);
+		assertEquals(recode(new ServerReadyFrame(Constants.DEFAULT_MAX_MESSAGE_SIZE), binary).getMaxMessageSize(), Constants.DEFAULT_MAX_MESSAGE_SIZE);
+
+		final Subject subject = new Subject("orders.*.created");
+		final SubscribeFrame partitioned = recode(new SubscribeFrame(subject, "billing", 1), binary);
+		assertEquals(partitioned.getSubject(), subject);
+		assertEquals(partitioned.getQueueGroup(), "billing");
+		assertEquals(partitioned.getPartitionToken(), 1);
+		final SubscriptionOptions options = SubscriptionOptions.NONE
+				.withSampling(10)
+				.withBodyPrefix("{\"type\": \"a=b\"")
+				.withFieldEquals("order.status", "on hold: 100%");
+		final SubscribeFrame filtered = recode(new SubscribeFrame(subject, null, SubscribeFrame.NOT_PARTITIONED, options), binary);
+		assertNull(filtered.getQueueGroup());
+		assertEquals(filtered.getPartitionToken(), SubscribeFrame.NOT_PARTITIONED);
+		assertEquals(filtered.getOptions(), options);
+
+		final List<SubscribeFrame> subscriptions = recode(new BulkSubscribeFrame(Arrays.asList(
+				new SubscribeFrame(new Subject("foo.bar")),
+				new SubscribeFrame(new Subject("orders.*"), "billing", 1))), binary).getSubscriptions();
+		assertEquals(subscriptions.size(), 2);
+		assertEquals(subscriptions.get(0).getSubject(), new Subject("foo.bar"));
+		assertNull(subscriptions.get(0).getQueueGroup());
+		assertEquals(subscriptions.get(1).getQueueGroup(), "billing");
+		assertEquals(subscriptions.get(1).getPartitionToken(), 1);
+
+		assertEquals(recode(new UnsubscribeFrame(subject), binary).getSubject(), subject);
+	}
+
+	@Test
+	public void binaryPublishFrameInPieces() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		recode(channel, new GreetingFrame(Constants.PROTOCOL_VERSION_BINARY, "test", 0));
+		// A body long enough for a two byte length
+		final StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			body.append((char) ('a' + i % 26));
+		}
+		channel.write(new PublishFrame(new Subject("test"), new Subject("_reply"), body.toString()));
+		final ByteBuf data = channel.readOutbound();
+		while (data.readableBytes() > 1) {
+			channel.writeInbound(data.readBytes(1));
+			assertNull(channel.readInbound());
+		}
+		channel.writeInbound(data);
+		channel.checkException();
+		final PublishFrame frame = (PublishFrame) channel.readInbound();
+		assertEquals(frame.getSubject(), new Subject("test"));
+		assertEquals(frame.getReplySubject(), new Subject("_reply"));
+		assertEquals(frame.getBody(), body.toString());
+	}
+
+	@Test
+	public void publishFrameInPieces() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		final String body = "Some body that arrives a few bytes at a time";
+		final ByteBuf data = Unpooled.copiedBuffer("P test _reply " + body.length() + "\r\n" + body + "\r\nI\r\n", CharsetUtil.UTF_8);
+		while (data.readableBytes() > 5) {
+			channel.writeInbound(data.readBytes(3));
+			channel.checkException();
+			assertNull(channel.readInbound());
+		}
+		channel.writeInbound(data);
+		channel.checkException();
+		final PublishFrame frame = (PublishFrame) channel.readInbound();
+		assertEquals(frame.getSubject(), new Subject("test"));
+		assertEquals(frame.getReplySubject(), new Subject("_reply"));
+		assertEquals(frame.getBody(), body);
+		assertSame(channel.readInbound(), PingFrame.PING);
+	}
+
+	@Test
+	public void publishFrameBodyTooLong() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		try {
+			channel.writeInbound(Unpooled.copiedBuffer("P a " + (Constants.DEFAULT_MAX_MESSAGE_SIZE + 1) + "\r\n", CharsetUtil.UTF_8));
+			channel.checkException();
+			fail("Expected a body longer than the max message size to be rejected");
+		} catch (TooLongFrameException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void publishFrameHugeBodyLengthWaitsForBody() {
+		// Without a size limit the declared length plus the delimiter must not overflow into a successful check
+		for (int length : new int[] {Integer.MAX_VALUE - 1, Integer.MAX_VALUE}) {
+			final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec(Integer.MAX_VALUE));
+			channel.writeInbound(Unpooled.copiedBuffer("P a " + length + "\r\nbody", CharsetUtil.UTF_8));
+			channel.checkException();
+			assertNull(channel.readInbound());
+		}
+	}
+
+	@Test
+	public void publishFrameInvalidSubjectSkipsBody() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		channel.writeInbound(Unpooled.copiedBuffer("P foo..bar 4\r\n", CharsetUtil.UTF_8));
+		channel.checkException();
+		try {
+			channel.writeInbound(Unpooled.copiedBuffer("I\r\nI\r\n", CharsetUtil.UTF_8));
+			channel.checkException();
+			fail("Expected the invalid subject to be reported once the body arrived");
+		} catch (DecoderException e) {
+			// Expected
+		}
+		channel.writeInbound(Unpooled.copiedBuffer("I\r\n", CharsetUtil.UTF_8));
+		channel.checkException();
+		assertSame(channel.readInbound(), PingFrame.PING);
+	}
+
+	@Test(expectedExceptions = DecoderException.class)
+	public void binaryFrameTruncatedPayload() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		recode(channel, new GreetingFrame(Constants.PROTOCOL_VERSION_BINARY, "test", 0));
+		// An unsubscribe frame whose subject is longer than the payload
+		channel.writeInbound(Unpooled.wrappedBuffer(new byte[] {'U', 2, 5, 'a'}));
+		channel.checkException();
+	}
+
+	@Test
+	public void binarySubscribePartitionedWithoutQueueGroup() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		recode(channel, new GreetingFrame(Constants.PROTOCOL_VERSION_BINARY, "test", 0));
+		// Subscribe to 'a' with no queue group, partition token 1 and no options
+		try {
+			channel.writeInbound(Unpooled.wrappedBuffer(new byte[] {'S', 9, 1, 'a', 0, 2, 0, 0, 0, 0, 0}));
+			channel.checkException();
+			fail("Expected a partitioned subscription without a queue group to be rejected");
+		} catch (DecoderException e) {
+			assertTrue(e.getCause() instanceof DecodingException, "Expected a DecodingException but got " + e.getCause());
+		}
+	}
+
+	@Test
+	public void invalidQueueGroup() {
+		assertInvalidQueueGroup(Unpooled.copiedBuffer("S foo a*b\r\n", CharsetUtil.UTF_8), Constants.PROTOCOL_VERSION_TEXT);
+		assertInvalidQueueGroup(Unpooled.copiedBuffer("B foo:\r\n", CharsetUtil.UTF_8), Constants.PROTOCOL_VERSION_TEXT);
+		// Subscribe to 'a' with the queue group ' ', not partitioned and no options
+		assertInvalidQueueGroup(Unpooled.wrappedBuffer(new byte[] {'S', 10, 1, 'a', 2, ' ', 0, 0, 0, 0, 0, 0}), Constants.PROTOCOL_VERSION_BINARY);
+	}
+
+	private void assertInvalidQueueGroup(ByteBuf frame, int protocolVersion) {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		if (protocolVersion != Constants.PROTOCOL_VERSION_TEXT) {
+			recode(channel, new GreetingFrame(protocolVersion, "test", 0));
+		}
+		try {
+			channel.writeInbound(frame);
+			channel.checkException();
+			fail("Expected an invalid queue group to be rejected");
+		} catch (DecoderException e) {
+			assertTrue(e.getCause() instanceof DecodingException, "Expected a DecodingException but got " + e.getCause());
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void subscribeFrameEmptyQueueGroup() {
+		new SubscribeFrame(new Subject("foo"), "");
+	}
+
+	@Test(expectedExceptions = DecoderException.class)
+	public void publishFrameInvalidSubject() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		channel.writeInbound(Unpooled.copiedBuffer("P foo..bar 4\r\nbody\r\n", CharsetUtil.UTF_8));
+		channel.checkException();
+	}
+
 	@Test
 	public void subscribe() {
 		final Subject subject = new Subject("this.is.some.subject");
@@ -148,6 +462,70 @@ public class EncoderDecoderTest {
 		final SubscribeFrame recodedFrame = recode(frame);
 
 		assertEquals(recodedFrame.getSubject(), subject);
+		assertNull(recodedFrame.getQueueGroup());
+	}
+
+	@Test
+	public void subscribeQueueGroup() {
+		final Subject subject = new Subject("subscribe.test");
+		final SubscribeFrame frame = new SubscribeFrame(subject, "workers");
+		final SubscribeFrame recodedFrame = recode(frame);
+
+		assertEquals(recodedFrame.getSubject(), subject);
+		assertEquals(recodedFrame.getQueueGroup(), "workers");
+	}
+
+	@Test
+	public void subscribePartitioned() {
+		final Subject subject = new Subject("orders.*.created");
+		final SubscribeFrame recodedFrame = recode(new SubscribeFrame(subject, "billing", 1));
+
+		assertEquals(recodedFrame.getSubject(), subject);
+		assertEquals(recodedFrame.getQueueGroup(), "billing");
+		assertEquals(recodedFrame.getPartitionToken(), 1);
+	}
+
+	@Test
+	public void subscribeWithOptions() {
+		final Subject subject = new Subject("metrics.*");
+		final SubscriptionOptions options = SubscriptionOptions.NONE.withSampling(100).withMaxRate(10);
+		final SubscribeFrame recodedFrame = recode(new SubscribeFrame(subject, null, SubscribeFrame.NOT_PARTITIONED, options));
+
+		assertEquals(recodedFrame.getSubject(), subject);
+		assertNull(recodedFrame.getQueueGroup());
+		assertEquals(recodedFrame.getOptions(), options);
+
+		// Options without any other arguments
+		final SubscribeFrame rateLimitedFrame = recode(new SubscribeFrame(subject, null, SubscribeFrame.NOT_PARTITIONED, SubscriptionOptions.NONE.withMaxRate(5)));
+		assertEquals(rateLimitedFrame.getOptions().getSampleEvery(), 1);
+		assertEquals(rateLimitedFrame.getOptions().getMaxRate(), 5);
+
+		// Filter values may hold white space and the separators
+		final SubscriptionOptions filters = SubscriptionOptions.NONE
+				.withBodyPrefix("{\"type\": \"a=b\"")
+				.withFieldEquals("order.status", "on hold: 100%");
+		assertEquals(recode(new SubscribeFrame(subject, null, SubscribeFrame.NOT_PARTITIONED, filters)).getOptions(), filters);
+	}
+
+	@Test
+	public void bulkSubscribe() {
+		final BulkSubscribeFrame frame = new BulkSubscribeFrame(Arrays.asList(
+				new SubscribeFrame(new Subject("foo.bar")),
+				new SubscribeFrame(new Subject("foo.*"), "workers"),
+				new SubscribeFrame(new Subject("baz")),
+				new SubscribeFrame(new Subject("orders.*"), "billing", 1)));
+		final BulkSubscribeFrame recodedFrame = recode(frame);
+
+		final List<SubscribeFrame> subscriptions = recodedFrame.getSubscriptions();
+		assertEquals(subscriptions.size(), 4);
+		assertEquals(subscriptions.get(0).getSubject(), new Subject("foo.bar"));
+		assertNull(subscriptions.get(0).getQueueGroup());
+		assertEquals(subscriptions.get(1).getSubject(), new Subject("foo.*"));
+		assertEquals(subscriptions.get(1).getQueueGroup(), "workers");
+		assertEquals(subscriptions.get(2).getSubject(), new Subject("baz"));
+		assertEquals(subscriptions.get(1).getPartitionToken(), SubscribeFrame.NOT_PARTITIONED);
+		assertEquals(subscriptions.get(3).getQueueGroup(), "billing");
+		assertEquals(subscriptions.get(3).getPartitionToken(), 1);
 	}
 
 	@Test
@@ -159,6 +537,36 @@ public class EncoderDecoderTest {
 		assertEquals(recodedFrame.getSubject(), subject);
 	}
 
+	@Test
+	public void textHeaderWhiteSpace() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		channel.writeInbound(Unpooled.copiedBuffer("S  foo.bar \t workers 3 \r\nE 101  bad   request \r\nU foo.bar\r\n", CharsetUtil.UTF_8));
+		channel.checkException();
+
+		final SubscribeFrame subscribeFrame = (SubscribeFrame) channel.readInbound();
+		assertEquals(subscribeFrame.getSubject(), new Subject("foo.bar"));
+		assertEquals(subscribeFrame.getQueueGroup(), "workers");
+		assertEquals(subscribeFrame.getPartitionToken(), 3);
+		final ErrorFrame errorFrame = (ErrorFrame) channel.readInbound();
+		assertEquals(errorFrame.getCode(), ErrorFrame.Code.MALFORMED_REQUEST);
+		assertEquals(errorFrame.getMessage(), "bad   request");
+		assertEquals(((UnsubscribeFrame) channel.readInbound()).getSubject(), new Subject("foo.bar"));
+	}
+
+	@Test(expectedExceptions = DecoderException.class)
+	public void textFrameInvalidNumber() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		channel.writeInbound(Unpooled.copiedBuffer("S foo.bar workers 3x\r\n", CharsetUtil.UTF_8));
+		channel.checkException();
+	}
+
+	@Test(expectedExceptions = DecoderException.class)
+	public void textFrameUnknownType() {
+		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		channel.writeInbound(Unpooled.copiedBuffer("Z foo.bar\r\n", CharsetUtil.UTF_8));
+		channel.checkException();
+	}
+
 	@Test(expectedExceptions = ChannelException.class)
 	public void unknownFrame() {
 		recode(new Frame() {
@@ -170,8 +578,17 @@ public class EncoderDecoderTest {
 	}
 
 	private <T extends Frame> T recode(T frame) {
+		return recode(new EmbeddedByteChannel(new Codec()), frame);
+	}
+
+	private <T extends Frame> T recode(T frame, int protocolVersion) {
 		final EmbeddedByteChannel channel = new EmbeddedByteChannel(new Codec());
+		// Passing a greeting through the encoder and the decoder switches both to the greeting's version
+		recode(channel, new GreetingFrame(protocolVersion, "test", 0));
+		return recode(channel, frame);
+	}
 
+	private <T extends Frame> T recode(EmbeddedByteChannel channel, T frame) {
 		// Encode
 		channel.write(frame);
 		channel.checkException();
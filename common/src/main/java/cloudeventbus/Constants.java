@@ -23,7 +23,22 @@ import java.util.concurrent.TimeUnit;
  */
 public class Constants {
 
-	public static final int PROTOCOL_VERSION = 1;
+	/**
+	 * The text protocol. Frames are lines of white space separated arguments terminated by CRLF.
+	 */
+	public static final int PROTOCOL_VERSION_TEXT = 1;
+
+	/**
+	 * The binary protocol. Frames are a one byte opcode and a varint payload length followed by the payload's
+	 * length prefixed fields.
+	 */
+	public static final int PROTOCOL_VERSION_BINARY = 2;
+
+	/**
+	 * The newest protocol version. Greetings are always sent using the text protocol, once a greeting with a supported
+	 * version has been sent or received the connection switches to that version.
+	 */
+	public static final int PROTOCOL_VERSION = PROTOCOL_VERSION_BINARY;
 
 	/**
 	 * 8k default maximum message size.
@@ -39,6 +54,11 @@ public class Constants {
 	 * By default wait 5 seconds before attempting to reconnect to a Cloud Event Bus cluster.
 	 */
 	public static final long DEFAULT_RECONNECT_WAIT_TIME = TimeUnit.SECONDS.toMillis(5);
+	/**
+	 * The partition token of queue group subscriptions that are not partitioned.
+	 */
+	public static final int NOT_PARTITIONED = -1;
+
 	public static final String REQUEST_REPLY_SUBJECT_PREFIX = "_";
 	public static final int REQUEST_REPLY_SUBJECT_SIZE = 20;
 
@@ -0,0 +1,141 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The body of a message. Message bodies are sent over the network as UTF-8 and the server never needs them as
+ * {@code String}s, so a body that was received over the network holds on to the bytes it was received as and is
+ * written to each recipient without being decoded and encoded again. The {@code String} is only decoded if something
+ * asks for it, a body filter or a client for example, and then only once.
+ *
+ * <p>Instances are immutable and thread safe.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public final class MessageBody implements CharSequence {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// At least one of these is always set, the other is created when it is first needed
+	private volatile byte[] bytes;
+	private volatile String string;
+
+	private MessageBody(byte[] bytes, String string) {
+		this.bytes = bytes;
+		this.string = string;
+	}
+
+	/**
+	 * Returns a body holding UTF-8 bytes. The array is not copied and must not be modified afterwards.
+	 */
+	public static MessageBody wrap(byte[] bytes) {
+		if (bytes == null) {
+			throw new IllegalArgumentException("bytes can not be null");
+		}
+		return new MessageBody(bytes, null);
+	}
+
+	/**
+	 * Returns the body itself if it is already a {@code MessageBody}.
+	 */
+	public static MessageBody valueOf(CharSequence body) {
+		if (body instanceof MessageBody) {
+			return (MessageBody) body;
+		}
+		if (body == null) {
+			throw new IllegalArgumentException("body can not be null");
+		}
+		return new MessageBody(null, body.toString());
+	}
+
+	/**
+	 * Returns the body as UTF-8. The returned array must not be modified.
+	 */
+	public byte[] getBytes() {
+		byte[] bytes = this.bytes;
+		if (bytes == null) {
+			bytes = string.getBytes(UTF_8);
+			this.bytes = bytes;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of bytes in the body's UTF-8 encoding.
+	 */
+	public int getByteLength() {
+		return getBytes().length;
+	}
+
+	/**
+	 * Returns {@code true} if the body's UTF-8 encoding starts with the given bytes. Since UTF-8 never encodes a
+	 * character as a prefix of another character, this is the same as checking the body's text without decoding it.
+	 */
+	public boolean startsWith(byte[] prefix) {
+		final byte[] bytes = getBytes();
+		if (prefix.length > bytes.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int length() {
+		return toString().length();
+	}
+
+	@Override
+	public char charAt(int index) {
+		return toString().charAt(index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+
+		return Arrays.equals(getBytes(), ((MessageBody) o).getBytes());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(getBytes());
+	}
+
+	@Override
+	public String toString() {
+		String string = this.string;
+		if (string == null) {
+			string = new String(bytes, UTF_8);
+			this.string = string;
+		}
+		return string;
+	}
+}
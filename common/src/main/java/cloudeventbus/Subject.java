@@ -21,11 +21,18 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.regex.Pattern;
 
 /**
  * Class for holding a subject. Facilitates validating a subject is a "sub" subject.
  *
+ * <p>A subject is made up of dot separated tokens. Any token may be the wild card token, {@code *}. A wild card token
+ * in the middle of a subject matches exactly one token, {@code orders.*.created} matches {@code orders.1.created} but
+ * not {@code orders.1.2.created}. A wild card as the last token matches one or more tokens, {@code orders.*} matches
+ * both {@code orders.1} and {@code orders.1.created}.
+ *
+ * <p>The subject is split into its dot separated tokens when it is constructed so that matching subjects never has to
+ * parse the subject string again.
+ *
  * @author Mike Heath <elcapo@gmail.com>
  */
 public class Subject {
@@ -33,7 +40,77 @@ public class Subject {
 	public static final String WILD_CARD_TOKEN = "*";
 	public static final Subject ALL = new Subject("*");
 	private static final char[] VALID_SUBJECT_CHARS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
-	private static final Pattern SUBJECT_PATTERN = Pattern.compile("[0-9a-zA-Z_-]+(\\.[0-9a-zA-Z_-]+)*(\\.\\*){0,1}");
+	private static final boolean[] VALID_TOKEN_CHARS = new boolean[128];
+
+	static {
+		for (char c : VALID_SUBJECT_CHARS) {
+			VALID_TOKEN_CHARS[c] = true;
+		}
+		VALID_TOKEN_CHARS['_'] = true;
+		VALID_TOKEN_CHARS['-'] = true;
+	}
+
+	/**
+	 * Indicates if the specified character may be used in a non wild card subject token.
+	 *
+	 * @param c the character to check
+	 * @return {@code true} if the character is valid in a subject token, {@code false} otherwise.
+	 */
+	public static boolean isValidTokenChar(int c) {
+		return c >= 0 && c < VALID_TOKEN_CHARS.length && VALID_TOKEN_CHARS[c];
+	}
+
+	/**
+	 * Indicates if the specified string is a single non wild card subject token. Queue group names must be valid
+	 * tokens.
+	 *
+	 * @param token the token to validate
+	 * @return {@code true} if the token is valid, {@code false} otherwise.
+	 */
+	public static boolean isValidToken(String token) {
+		if (token.length() == 0) {
+			return false;
+		}
+		for (int i = 0; i < token.length(); i++) {
+			if (!isValidTokenChar(token.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Indicates if the specified string is a valid subject. A subject is made up of one or more dot separated tokens.
+	 * Any token may be the wild card token.
+	 *
+	 * @param subject the subject to validate
+	 * @return {@code true} if the subject is valid, {@code false} otherwise.
+	 */
+	public static boolean isValid(String subject) {
+		int tokenLength = 0;
+		boolean wildCardToken = false;
+		for (int i = 0; i < subject.length(); i++) {
+			final char c = subject.charAt(i);
+			if (c == '.') {
+				if (tokenLength == 0) {
+					return false;
+				}
+				tokenLength = 0;
+				wildCardToken = false;
+			} else if (c == '*') {
+				if (tokenLength != 0) {
+					return false;
+				}
+				wildCardToken = true;
+				tokenLength++;
+			} else if (isValidTokenChar(c) && !wildCardToken) {
+				tokenLength++;
+			} else {
+				return false;
+			}
+		}
+		return tokenLength > 0;
+	}
 
 	public static List<Subject> list(String... subjects) {
 		final Subject[] list = new Subject[subjects.length];
@@ -52,12 +129,31 @@ public class Subject {
 	}
 
 	public static Subject createRequestReplySubject() {
+		return new Subject(randomRequestReplySubject());
+	}
+
+	/**
+	 * Creates a request reply subject that tells the server how many replies the request wants. The limit is the
+	 * subject's last token so repliers and servers that don't look for it treat the subject like any other.
+	 *
+	 * @param maxReplies the number of replies the request wants, must be positive
+	 * @return a new request reply subject.
+	 * @see #getMaxReplies()
+	 */
+	public static Subject createRequestReplySubject(int maxReplies) {
+		if (maxReplies <= 0) {
+			throw new IllegalArgumentException("maxReplies must be positive");
+		}
+		return new Subject(randomRequestReplySubject() + '.' + maxReplies);
+	}
+
+	private static String randomRequestReplySubject() {
 		final ThreadLocalRandom random = ThreadLocalRandom.current();
 		final char[] randomChars = new char[Constants.REQUEST_REPLY_SUBJECT_SIZE];
 		for (int i=0; i < Constants.REQUEST_REPLY_SUBJECT_SIZE; i++) {
 			randomChars[i] = VALID_SUBJECT_CHARS[random.nextInt(VALID_SUBJECT_CHARS.length)];
 		}
-		return new Subject(Constants.REQUEST_REPLY_SUBJECT_PREFIX + new String(randomChars));
+		return Constants.REQUEST_REPLY_SUBJECT_PREFIX + new String(randomChars);
 	}
 
 	public static boolean isRequestReplySubject(String subject) {
@@ -65,36 +161,169 @@ public class Subject {
 	}
 
 	private final String subject;
+	private final String[] tokens;
+	private final int[] tokenHashes;
+	private final boolean wildCard;
+	private final boolean tailWildCard;
 
 	public Subject(String subject) {
 		if (subject == null) {
 			throw new NullPointerException("subject can not be null");
 		}
-		if (!WILD_CARD_TOKEN.equals(subject) && !SUBJECT_PATTERN.matcher(subject).matches()) {
+		if (!isValid(subject)) {
 			throw new IllegalArgumentException("Not valid subject syntax.");
 		}
 		this.subject = subject;
+		this.tokens = tokenize(subject);
+		this.tokenHashes = new int[tokens.length];
+		for (int i = 0; i < tokens.length; i++) {
+			tokenHashes[i] = tokens[i].hashCode();
+		}
+		this.tailWildCard = WILD_CARD_TOKEN.equals(tokens[tokens.length - 1]);
+		boolean wildCard = tailWildCard;
+		for (int i = 0; i < tokens.length - 1 && !wildCard; i++) {
+			wildCard = isWildCardToken(i);
+		}
+		this.wildCard = wildCard;
+	}
+
+	private static String[] tokenize(String subject) {
+		int tokenCount = 1;
+		for (int i = 0; i < subject.length(); i++) {
+			if (subject.charAt(i) == '.') {
+				tokenCount++;
+			}
+		}
+		final String[] tokens = new String[tokenCount];
+		int start = 0;
+		for (int i = 0; i < tokenCount - 1; i++) {
+			final int end = subject.indexOf('.', start);
+			tokens[i] = subject.substring(start, end);
+			start = end + 1;
+		}
+		tokens[tokenCount - 1] = subject.substring(start);
+		return tokens;
 	}
 
+	/**
+	 * Indicates if any of the subject's tokens is the wild card token.
+	 *
+	 * @return {@code true} if the subject contains a wild card token, {@code false} otherwise.
+	 */
 	public boolean isWildCard() {
-		return subject.endsWith(WILD_CARD_TOKEN);
+		return wildCard;
+	}
+
+	/**
+	 * Indicates if the last token of the subject is the wild card token and therefore matches one or more tokens.
+	 *
+	 * @return {@code true} if the subject ends with a wild card token, {@code false} otherwise.
+	 */
+	public boolean isTailWildCard() {
+		return tailWildCard;
+	}
+
+	/**
+	 * Indicates if the token at the specified index is the wild card token.
+	 *
+	 * @param index the index of the token
+	 * @return {@code true} if the token is the wild card token, {@code false} otherwise.
+	 */
+	public boolean isWildCardToken(int index) {
+		return WILD_CARD_TOKEN.equals(tokens[index]);
 	}
 
+	/**
+	 * Indicates if every subject matched by {@code subSubject} is also matched by this subject.
+	 */
 	public boolean isSub(Subject subSubject) {
-		if (subject.equals(WILD_CARD_TOKEN)) {
-			return true;
+		if (!wildCard) {
+			return equals(subSubject);
+		}
+		final int prefixLength = tailWildCard ? tokens.length - 1 : tokens.length;
+		if (subSubject.tokens.length < prefixLength) {
+			return false;
+		}
+		for (int i = 0; i < prefixLength; i++) {
+			if (isWildCardToken(i)) {
+				// A single token wild card can't cover the sub subject's tail wild card.
+				if (subSubject.tailWildCard && i == subSubject.tokens.length - 1) {
+					return false;
+				}
+			} else if (!tokenEquals(i, subSubject, i)) {
+				return false;
+			}
 		}
-		if (isWildCard()) {
-			final String subjectSansWildcard = subject.substring(0, subject.length() - 1);
-			return subSubject.subject.startsWith(subjectSansWildcard);
+		if (tailWildCard) {
+			// The tail wild card must match at least one token in the sub subject.
+			return subSubject.tokens.length > prefixLength;
 		}
-		return equals(subSubject);
+		return subSubject.tokens.length == prefixLength;
+	}
+
+	private boolean tokenEquals(int index, Subject other, int otherIndex) {
+		return tokenHashes[index] == other.tokenHashes[otherIndex] && tokens[index].equals(other.tokens[otherIndex]);
+	}
+
+	/**
+	 * Returns the number of dot separated tokens in the subject.
+	 *
+	 * @return the number of tokens in the subject.
+	 */
+	public int getTokenCount() {
+		return tokens.length;
+	}
+
+	/**
+	 * Returns the token at the specified index.
+	 *
+	 * @param index the index of the token
+	 * @return the token at the specified index.
+	 */
+	public String getToken(int index) {
+		return tokens[index];
+	}
+
+	/**
+	 * Returns the hash code of the token at the specified index.
+	 *
+	 * @param index the index of the token
+	 * @return the hash code of the token at the specified index.
+	 */
+	public int getTokenHash(int index) {
+		return tokenHashes[index];
 	}
 
 	public boolean isRequestReply() {
 		return isRequestReplySubject(subject);
 	}
 
+	/**
+	 * Returns the number of replies a request wants if this subject is a request reply subject created with
+	 * {@link #createRequestReplySubject(int)}.
+	 *
+	 * @return the number of replies the request wants or 0 if the request didn't limit its replies.
+	 */
+	public int getMaxReplies() {
+		if (!isRequestReply() || tokens.length != 2) {
+			return 0;
+		}
+		final String limit = tokens[1];
+		// Nine digits can't overflow
+		if (limit.length() > 9) {
+			return 0;
+		}
+		int maxReplies = 0;
+		for (int i = 0; i < limit.length(); i++) {
+			final char c = limit.charAt(i);
+			if (c < '0' || c > '9') {
+				return 0;
+			}
+			maxReplies = maxReplies * 10 + c - '0';
+		}
+		return maxReplies;
+	}
+
 	@Override
 	public int hashCode() {
 		return subject.hashCode();
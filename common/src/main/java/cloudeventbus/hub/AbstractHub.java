@@ -18,117 +18,497 @@ package cloudeventbus.hub;
 
 import cloudeventbus.Subject;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Mike Heath <elcapo@gmail.com>
  */
 public abstract class AbstractHub<T> implements SubscribeableHub<T> {
 
-	private final WildCardNode wildcardSubscriptions = new WildCardNode();
-	private final ConcurrentMap<Subject, Collection<Handler<T>>> subscriptions = new ConcurrentHashMap<>();
+	/**
+	 * The default maximum number of subjects the route cache will hold before it gets flushed.
+	 */
+	public static final int DEFAULT_MAX_CACHED_ROUTES = 1024 * 4;
+
+	// The number of times a publish looks up its handlers without holding the id lock before it takes the lock
+	private static final int MAX_ROUTE_ATTEMPTS = 4;
+
+	private final WildCardNode wildcardSubscriptions = new WildCardNode(null, null);
+	private final ConcurrentMap<Subject, HandlerList> subscriptions = new ConcurrentHashMap<>();
+
+	private final AtomicInteger indexNodeCount = new AtomicInteger();
+	private final AtomicInteger liveIndexNodeCount = new AtomicInteger();
+
+	private final QueueGroups<T> queueGroups = new QueueGroups<>(this);
+
+	// Subscribers are stored in the index by id
+	private final HandlerIds<T> handlerIds = new HandlerIds<>();
+
+	// Subscriptions are added to the filter before they are indexed and removed from it after they've been removed
+	// from the index so the filter never rejects a subject that has subscribers.
+	private final InterestFilter interestFilter = new InterestFilter();
+	private final AtomicLong droppedNoInterestCount = new AtomicLong();
+
+	// Cache of the deduplicated handlers for each concrete subject that has been published to. A cached route is only
+	// valid if its generation matches the current subscription generation.
+	private final ConcurrentMap<Subject, Route<T>> routes = new ConcurrentHashMap<>();
+	private final AtomicLong generation = new AtomicLong();
+	private final int maxCachedRoutes;
+
+	protected AbstractHub() {
+		this(DEFAULT_MAX_CACHED_ROUTES);
+	}
+
+	protected AbstractHub(int maxCachedRoutes) {
+		this.maxCachedRoutes = maxCachedRoutes;
+	}
 
 	@Override
-	public SubscriptionHandle subscribe(Subject subject, final Handler<T> handler) {
-		if (subject.isWildCard()) {
-			WildCardNode currentNode = wildcardSubscriptions;
-			for (String part : splitSubject(subject)) {
-				if (Subject.WILD_CARD_TOKEN.equals(part)) {
-					break;
-				}
-				currentNode = currentNode.getChild(part, true);
-			}
-			return addHandler(handler, currentNode.getHandlers());
+	public SubscriptionHandle subscribe(Subject subject, Handler<T> handler) {
+		final SubscriptionHandle handle = index(subject, handlerIds.acquire(handler));
+		// Bump the generation after the handler has been added so that a publish can't cache a stale route.
+		generation.incrementAndGet();
+		return handle;
+	}
+
+	@Override
+	public List<SubscriptionHandle> subscribeAll(List<Subject> subjects, Handler<T> handler) {
+		if (subjects.isEmpty()) {
+			return Collections.emptyList();
 		}
-		return addHandler(handler, getHandlers(subject));
+		final int id = handlerIds.acquire(handler, subjects.size());
+		final List<SubscriptionHandle> handles = new ArrayList<>(subjects.size());
+		for (Subject subject : subjects) {
+			handles.add(index(subject, id));
+		}
+		// Invalidate the cached routes once for the whole batch
+		generation.incrementAndGet();
+		return handles;
 	}
 
-	private String[] splitSubject(Subject subject) {
-		return subject.toString().split("\\.");
+	/**
+	 * Adds the handler id to the index without invalidating any cached routes.
+	 */
+	private SubscriptionHandle index(final Subject subject, final int id) {
+		interestFilter.add(subject);
+		if (subject.isWildCard()) {
+			return subscribeWildCard(subject, id);
+		}
+		for (;;) {
+			final HandlerList handlers = getHandlers(subject);
+			if (handlers.add(id)) {
+				final AtomicBoolean removed = new AtomicBoolean();
+				return new SubscriptionHandle() {
+					@Override
+					public void remove() {
+						if (removed.compareAndSet(false, true)) {
+							handlers.remove(id);
+							interestFilter.remove(subject);
+							releaseId(id);
+						}
+					}
+				};
+			}
+			// The handler list was pruned by a concurrent unsubscribe, try again with a new list.
+		}
 	}
 
-	private SubscriptionHandle addHandler(final Handler<T> handler, final Collection<Handler<T>> handlers) {
-		handlers.add(handler);
+	private SubscriptionHandle subscribeWildCard(final Subject subject, final int id) {
+		// Single token wild cards are stored as children named with the wild card token. A tail wild card is stored in
+		// the tail handlers of the node for the tokens preceding it.
+		final boolean tail = subject.isTailWildCard();
+		final WildCardNode[] path = newPath(tail ? subject.getTokenCount() - 1 : subject.getTokenCount());
+		WildCardNode currentNode = wildcardSubscriptions;
+		for (int i = 0; i < path.length; i++) {
+			final WildCardNode child = currentNode.getChild(subject.getToken(i), true);
+			if (!child.acquire()) {
+				// The node was pruned by a concurrent unsubscribe, release the nodes acquired so far and start over.
+				release(path, i);
+				return subscribeWildCard(subject, id);
+			}
+			path[i] = child;
+			currentNode = child;
+		}
+		final WildCardNode node = currentNode;
+		node.addHandler(id, tail);
+		final AtomicBoolean removed = new AtomicBoolean();
 		return new SubscriptionHandle() {
 			@Override
 			public void remove() {
-				handlers.remove(handler);
+				if (removed.compareAndSet(false, true)) {
+					node.removeHandler(id, tail);
+					release(path, path.length);
+					interestFilter.remove(subject);
+					releaseId(id);
+				}
 			}
 		};
 	}
 
-	private Collection<Handler<T>> getHandlers(Subject subject) {
-		final Collection<Handler<T>> handlers = subscriptions.get(subject);
+	private void releaseId(int id) {
+		// Bump the generation before the id can be reused so that a publish that read the id while it still belonged
+		// to the removed handler will notice the change and look up its handlers again.
+		generation.incrementAndGet();
+		handlerIds.release(id);
+	}
+
+	@SuppressWarnings("unchecked")
+	private WildCardNode[] newPath(int length) {
+		return (WildCardNode[]) new AbstractHub.WildCardNode[length];
+	}
+
+	private void release(WildCardNode[] path, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			path[i].release();
+		}
+	}
+
+	private HandlerList getHandlers(Subject subject) {
+		final HandlerList handlers = subscriptions.get(subject);
 		if (handlers == null) {
-			final Collection<Handler<T>> newHandlers = new CopyOnWriteArrayList<>();
-			final Collection<Handler<T>> existingHandlers = subscriptions.putIfAbsent(subject, newHandlers);
+			final HandlerList newHandlers = new HandlerList(subject);
+			final HandlerList existingHandlers = subscriptions.putIfAbsent(subject, newHandlers);
 			// If another thread added a handler collection, use it and discard the collection just created
 			if (existingHandlers != null) {
 				return existingHandlers;
 			}
+			indexNodeCount.incrementAndGet();
 			return newHandlers;
 		}
 		return handlers;
 	}
 
+	/**
+	 * Returns the number of nodes in the subscription index. This includes the handler lists for non wild card
+	 * subjects and the nodes of the wild card trie, excluding its root.
+	 *
+	 * @return the number of nodes in the subscription index.
+	 */
+	public int getIndexNodeCount() {
+		return indexNodeCount.get();
+	}
+
+	/**
+	 * Returns the number of nodes in the subscription index that directly hold at least one handler. The remaining
+	 * nodes are interior nodes of the wild card trie.
+	 *
+	 * @return the number of nodes in the subscription index that hold handlers.
+	 */
+	public int getLiveIndexNodeCount() {
+		return liveIndexNodeCount.get();
+	}
+
+	/**
+	 * Returns the number of messages published to subjects without any subscribers.
+	 *
+	 * @return the number of messages published to subjects without any subscribers.
+	 */
+	public long getDroppedNoInterestCount() {
+		return droppedNoInterestCount.get();
+	}
+
+	@Override
+	public SubscriptionHandle subscribe(Subject subject, String queueGroup, Handler<T> handler) {
+		return queueGroups.subscribe(subject, queueGroup, handler);
+	}
+
+	@Override
+	public SubscriptionHandle subscribe(Subject subject, String queueGroup, int partitionToken, long memberId, Handler<T> handler) {
+		return queueGroups.subscribe(subject, queueGroup, partitionToken, memberId, handler);
+	}
+
 	@Override
-	public void publish(Subject subject, Subject replySubject, String body) {
+	public void publish(Subject subject, Subject replySubject, CharSequence body) {
 		if (subject.isWildCard()) {
 			throw new IllegalArgumentException("Unable to publish to a wildcard subscription.");
 		}
-		final Set<Handler<T>> handlers = new HashSet<>();
+		// Most subjects nobody listens to are rejected here without walking the index or building a route
+		if (!interestFilter.mightMatch(subject)) {
+			droppedNoInterestCount.incrementAndGet();
+			return;
+		}
+		final Handler<T>[] route = getRoute(subject).handlers;
+		if (route.length == 0) {
+			droppedNoInterestCount.incrementAndGet();
+			return;
+		}
+		// Selective handlers decline messages before they're encoded
+		final Handler<T>[] handlers = SelectiveHandler.select(route, subject, body);
 
-		// Add wildcard handlers
-		WildCardNode currentNode = wildcardSubscriptions;
-		for (String part : splitSubject(subject)) {
-			handlers.addAll(currentNode.getHandlers());
-			currentNode = currentNode.getChild(part, false);
-			if (currentNode == null) {
+		// If we have any handlers, encode and propagate the message.
+		if (handlers.length > 0) {
+			final T message = encode(subject, replySubject, body, handlers.length);
+			try {
+				for (Handler<T> handler : handlers) {
+					QueueGroups.deliver(handler, subject, message);
+				}
+			} finally {
+				release(message);
+			}
+		}
+	}
+
+	private Route<T> getRoute(Subject subject) {
+		// Read the generation before looking up the handlers so that any concurrent subscription change invalidates
+		// the route we're about to build.
+		long currentGeneration = generation.get();
+		final Route<T> route = routes.get(subject);
+		if (route != null && route.generation == currentGeneration) {
+			return route;
+		}
+		Handler<T>[] handlers = findHandlers(subject);
+		// An id may have been reused while looking up the handlers, try again until no subscription changed.
+		for (int attempt = 1; generation.get() != currentGeneration; attempt++) {
+			currentGeneration = generation.get();
+			if (attempt < MAX_ROUTE_ATTEMPTS) {
+				handlers = findHandlers(subject);
+			} else {
+				// Under constant churn stop ids from being released while the handlers are looked up. Every id read
+				// from the index then still belongs to the handler it was subscribed with. A subscription change
+				// during the lookup still bumps the generation so the cached route is rebuilt by the next publish.
+				synchronized (handlerIds) {
+					handlers = findHandlers(subject);
+				}
 				break;
 			}
 		}
+		final Route<T> newRoute = new Route<>(currentGeneration, handlers);
+		// Request reply subjects are rarely published to more than once, caching them would only evict useful routes.
+		if (subject.isRequestReply()) {
+			return newRoute;
+		}
+		if (routes.size() >= maxCachedRoutes) {
+			routes.clear();
+		}
+		routes.put(subject, newRoute);
+		return newRoute;
+	}
+
+	private Handler<T>[] findHandlers(Subject subject) {
+		// The union of the matching subscriber sets has each handler once no matter how many subscriptions match
+		final CompressedBitmap handlers = new CompressedBitmap();
+
+		// Add wildcard handlers
+		findWildCardHandlers(wildcardSubscriptions, subject, 0, handlers);
 
 		// Add static handlers
-		final Collection<Handler<T>> nonWildCardSubscriptions = subscriptions.get(subject);
+		final HandlerList nonWildCardSubscriptions = subscriptions.get(subject);
 		if (nonWildCardSubscriptions != null) {
-			handlers.addAll(nonWildCardSubscriptions);
+			nonWildCardSubscriptions.addTo(handlers);
 		}
 
-		// If we have any handlers, encode and propagate the message.
-		if (handlers.size() > 0) {
-			final T message = encode(subject, replySubject, body, handlers.size());
-			for (Handler<T> handler : handlers) {
-				handler.publish(message);
-			}
+		return handlerIds.getHandlers(handlers.toArray());
+	}
+
+	/**
+	 * Walks the wild card trie collecting the handlers of every subscription that matches the subject. At each depth
+	 * only the child for the subject's token and the single token wild card child are visited.
+	 */
+	private void findWildCardHandlers(WildCardNode node, Subject subject, int tokenIndex, CompressedBitmap handlers) {
+		if (tokenIndex == subject.getTokenCount()) {
+			node.addHandlersTo(handlers, false);
+			return;
+		}
+		// There is at least one token left so any tail wild cards at this node match.
+		node.addHandlersTo(handlers, true);
+		final WildCardNode child = node.getChild(subject.getToken(tokenIndex), false);
+		if (child != null) {
+			findWildCardHandlers(child, subject, tokenIndex + 1, handlers);
+		}
+		final WildCardNode wildCardChild = node.getChild(Subject.WILD_CARD_TOKEN, false);
+		if (wildCardChild != null) {
+			findWildCardHandlers(wildCardChild, subject, tokenIndex + 1, handlers);
+		}
+	}
+
+	protected abstract T encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount);
+
+	/**
+	 * Called once a message returned by {@link #encode(Subject, Subject, CharSequence, int)} has been passed to every
+	 * handler. Hubs that encode messages holding resources should release them here.
+	 */
+	protected void release(T message) {
+	}
+
+	private static class Route<T> {
+		private final long generation;
+		private final Handler<T>[] handlers;
+
+		private Route(long generation, Handler<T>[] handlers) {
+			this.generation = generation;
+			this.handlers = handlers;
 		}
 	}
 
-	protected abstract T encode(Subject subject, Subject replySubject, String body, int recipientCount);
+	/**
+	 * The handlers for a non wild card subject. The list is removed from the index when its last handler is removed. A
+	 * removed list can't be added to so a subscribe that races with the removal will retry with a new list.
+	 */
+	private class HandlerList {
+		private final Subject subject;
+
+		// Access to these fields must be synchronized on this
+		private final SubscribedIds handlers = new SubscribedIds();
+		private boolean pruned;
+
+		private HandlerList(Subject subject) {
+			this.subject = subject;
+		}
+
+		public synchronized boolean add(int id) {
+			if (pruned) {
+				return false;
+			}
+			if (handlers.isEmpty()) {
+				liveIndexNodeCount.incrementAndGet();
+			}
+			handlers.add(id);
+			return true;
+		}
+
+		public synchronized void addTo(CompressedBitmap bitmap) {
+			bitmap.or(handlers.ids);
+		}
+
+		public synchronized boolean remove(int id) {
+			if (!handlers.remove(id)) {
+				return false;
+			}
+			if (handlers.isEmpty()) {
+				pruned = true;
+				subscriptions.remove(subject, this);
+				liveIndexNodeCount.decrementAndGet();
+				indexNodeCount.decrementAndGet();
+			}
+			return true;
+		}
+	}
 
+	/**
+	 * A node in the wild card trie. Each node counts the subscriptions that pass through it. When the count drops to
+	 * zero the node is removed from its parent and can't be acquired again, so a subscribe that races with the removal
+	 * will retry with a new node.
+	 */
 	private class WildCardNode {
-		private final Collection<Handler<T>> handlers = new CopyOnWriteArrayList<>();
+		private final WildCardNode parent;
+		private final String token;
+
 		private final ConcurrentMap<String, WildCardNode> children = new ConcurrentHashMap<>();
 
-		public Collection<Handler<T>> getHandlers() {
-			return handlers;
+		// Access to these fields must be synchronized on this
+		// Handlers for subscriptions that end at this node
+		private final SubscribedIds handlers = new SubscribedIds();
+		// Handlers for subscriptions with a tail wild card following this node
+		private final SubscribedIds tailHandlers = new SubscribedIds();
+		private int references;
+		private boolean pruned;
+
+		private WildCardNode(WildCardNode parent, String token) {
+			this.parent = parent;
+			this.token = token;
+		}
+
+		public synchronized void addHandlersTo(CompressedBitmap bitmap, boolean tail) {
+			bitmap.or((tail ? tailHandlers : handlers).ids);
 		}
 
 		public WildCardNode getChild(String nodeName, boolean createIfMissing) {
 			final WildCardNode node = children.get(nodeName);
 			if (node == null && createIfMissing) {
-				final WildCardNode newNode = new WildCardNode();
+				final WildCardNode newNode = new WildCardNode(this, nodeName);
 				final WildCardNode existingNode = children.putIfAbsent(nodeName, newNode);
 				if (existingNode != null) {
 					return existingNode;
 				}
+				indexNodeCount.incrementAndGet();
 				return newNode;
 			}
 			return node;
 		}
+
+		public synchronized boolean acquire() {
+			if (pruned) {
+				return false;
+			}
+			references++;
+			return true;
+		}
+
+		public synchronized void release() {
+			references--;
+			if (references == 0) {
+				pruned = true;
+				parent.children.remove(token, this);
+				indexNodeCount.decrementAndGet();
+			}
+		}
+
+		public synchronized void addHandler(int id, boolean tail) {
+			if (!isRoot() && handlers.isEmpty() && tailHandlers.isEmpty()) {
+				liveIndexNodeCount.incrementAndGet();
+			}
+			(tail ? tailHandlers : handlers).add(id);
+		}
+
+		public synchronized void removeHandler(int id, boolean tail) {
+			if ((tail ? tailHandlers : handlers).remove(id) && !isRoot() && handlers.isEmpty() && tailHandlers.isEmpty()) {
+				liveIndexNodeCount.decrementAndGet();
+			}
+		}
+
+		private boolean isRoot() {
+			return parent == null;
+		}
+	}
+
+	/**
+	 * The ids subscribed to an index node. The bitmap holds each id once, a handler that subscribes to the same
+	 * subject more than once has its extra subscriptions counted so that removing one of them leaves it subscribed.
+	 * Not thread safe, the node holding it synchronizes access.
+	 */
+	private static class SubscribedIds {
+		private final CompressedBitmap ids = new CompressedBitmap();
+		// The number of subscriptions beyond the first for each id that is subscribed more than once
+		private Map<Integer, Integer> extraSubscriptions;
+
+		public void add(int id) {
+			if (ids.add(id)) {
+				return;
+			}
+			if (extraSubscriptions == null) {
+				extraSubscriptions = new HashMap<>();
+			}
+			final Integer extra = extraSubscriptions.get(id);
+			extraSubscriptions.put(id, extra == null ? 1 : extra + 1);
+		}
+
+		/**
+		 * Removes one subscription for the id. Returns {@code true} if that was the id's last subscription.
+		 */
+		public boolean remove(int id) {
+			final Integer extra = extraSubscriptions == null ? null : extraSubscriptions.get(id);
+			if (extra == null) {
+				return ids.remove(id);
+			}
+			if (extra == 1) {
+				extraSubscriptions.remove(id);
+			} else {
+				extraSubscriptions.put(id, extra - 1);
+			}
+			return false;
+		}
+
+		public boolean isEmpty() {
+			return ids.isEmpty();
+		}
 	}
 }
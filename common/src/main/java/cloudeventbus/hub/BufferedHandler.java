@@ -0,0 +1,32 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+/**
+ * A handler that buffers published messages before they are delivered. Queue groups prefer the member with the
+ * fewest bytes waiting to be delivered.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public interface BufferedHandler<T> extends Handler<T> {
+
+	/**
+	 * Returns the number of bytes that have been published to this handler but not yet delivered.
+	 */
+	long getPendingBytes();
+
+}
@@ -0,0 +1,368 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative integers stored as a compressed bitmap. The integers are partitioned by their high 16 bits into
+ * containers. A container with few values stores them in a sorted array and switches to a plain bitmap when it fills
+ * up, so both sparse and dense sets use little memory and can be unioned quickly.
+ *
+ * <p>Instances of this class are not thread safe.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+class CompressedBitmap {
+
+	// The largest number of values an array container holds before switching to a bitmap container. At this size both
+	// containers use 8KB.
+	static final int ARRAY_CONTAINER_MAX_SIZE = 4096;
+
+	private char[] keys = new char[1];
+	private Container[] containers = new Container[1];
+	private int size;
+
+	public boolean add(int value) {
+		final char key = highBits(value);
+		int index = indexOf(key);
+		if (index < 0) {
+			index = -index - 1;
+			insert(index, key, new ArrayContainer());
+		}
+		final Container container = containers[index];
+		final int cardinality = container.cardinality;
+		containers[index] = container.add(lowBits(value));
+		return containers[index].cardinality > cardinality;
+	}
+
+	public boolean remove(int value) {
+		final int index = indexOf(highBits(value));
+		if (index < 0) {
+			return false;
+		}
+		final Container container = containers[index];
+		final int cardinality = container.cardinality;
+		final Container newContainer = container.remove(lowBits(value));
+		if (newContainer.cardinality == 0) {
+			System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+			System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+			size--;
+			containers[size] = null;
+		} else {
+			containers[index] = newContainer;
+		}
+		return newContainer.cardinality < cardinality;
+	}
+
+	public boolean contains(int value) {
+		final int index = indexOf(highBits(value));
+		return index >= 0 && containers[index].contains(lowBits(value));
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int cardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < size; i++) {
+			cardinality += containers[i].cardinality;
+		}
+		return cardinality;
+	}
+
+	/**
+	 * Adds every value in {@code other} to this bitmap. {@code other} is not modified.
+	 */
+	public void or(CompressedBitmap other) {
+		if (other.size == 0) {
+			return;
+		}
+		final char[] newKeys = new char[size + other.size];
+		final Container[] newContainers = new Container[size + other.size];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+				newKeys[k] = keys[i];
+				newContainers[k] = containers[i++];
+			} else if (i == size || keys[i] > other.keys[j]) {
+				newKeys[k] = other.keys[j];
+				newContainers[k] = other.containers[j++].copy();
+			} else {
+				newKeys[k] = keys[i];
+				newContainers[k] = containers[i++].or(other.containers[j++]);
+			}
+			k++;
+		}
+		keys = newKeys;
+		containers = newContainers;
+		size = k;
+	}
+
+	/**
+	 * Returns the values in this bitmap in ascending order.
+	 */
+	public int[] toArray() {
+		final int[] values = new int[cardinality()];
+		int offset = 0;
+		for (int i = 0; i < size; i++) {
+			offset = containers[i].toArray(keys[i] << 16, values, offset);
+		}
+		return values;
+	}
+
+	private int indexOf(char key) {
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+
+	private void insert(int index, char key, Container container) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+		}
+		System.arraycopy(keys, index, keys, index + 1, size - index);
+		System.arraycopy(containers, index, containers, index + 1, size - index);
+		keys[index] = key;
+		containers[index] = container;
+		size++;
+	}
+
+	private static char highBits(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Value must not be negative: " + value);
+		}
+		return (char) (value >>> 16);
+	}
+
+	private static char lowBits(int value) {
+		return (char) value;
+	}
+
+	/**
+	 * Holds the low 16 bits of the values that share the same high 16 bits. Operations return the container that holds
+	 * the result which may be a new container of a different type.
+	 */
+	private static abstract class Container {
+		int cardinality;
+
+		abstract Container add(char value);
+
+		abstract Container remove(char value);
+
+		abstract boolean contains(char value);
+
+		abstract Container or(Container other);
+
+		abstract Container copy();
+
+		abstract int toArray(int high, int[] values, int offset);
+	}
+
+	private static class ArrayContainer extends Container {
+		private char[] values;
+
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+
+		ArrayContainer(char[] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		Container add(char value) {
+			final int index = Arrays.binarySearch(values, 0, cardinality, value);
+			if (index >= 0) {
+				return this;
+			}
+			if (cardinality == ARRAY_CONTAINER_MAX_SIZE) {
+				return toBitmapContainer().add(value);
+			}
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_CONTAINER_MAX_SIZE));
+			}
+			final int insertionPoint = -index - 1;
+			System.arraycopy(values, insertionPoint, values, insertionPoint + 1, cardinality - insertionPoint);
+			values[insertionPoint] = value;
+			cardinality++;
+			return this;
+		}
+
+		@Override
+		Container remove(char value) {
+			final int index = Arrays.binarySearch(values, 0, cardinality, value);
+			if (index >= 0) {
+				System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+				cardinality--;
+			}
+			return this;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+		}
+
+		@Override
+		Container or(Container other) {
+			if (other instanceof BitmapContainer) {
+				return other.copy().or(this);
+			}
+			final ArrayContainer otherArray = (ArrayContainer) other;
+			final char[] merged = new char[cardinality + otherArray.cardinality];
+			int i = 0;
+			int j = 0;
+			int k = 0;
+			while (i < cardinality && j < otherArray.cardinality) {
+				if (values[i] < otherArray.values[j]) {
+					merged[k++] = values[i++];
+				} else if (values[i] > otherArray.values[j]) {
+					merged[k++] = otherArray.values[j++];
+				} else {
+					merged[k++] = values[i++];
+					j++;
+				}
+			}
+			while (i < cardinality) {
+				merged[k++] = values[i++];
+			}
+			while (j < otherArray.cardinality) {
+				merged[k++] = otherArray.values[j++];
+			}
+			final ArrayContainer result = new ArrayContainer(merged, k);
+			return k > ARRAY_CONTAINER_MAX_SIZE ? result.toBitmapContainer() : result;
+		}
+
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+		}
+
+		@Override
+		int toArray(int high, int[] values, int offset) {
+			for (int i = 0; i < cardinality; i++) {
+				values[offset++] = high | this.values[i];
+			}
+			return offset;
+		}
+
+		private BitmapContainer toBitmapContainer() {
+			final BitmapContainer bitmap = new BitmapContainer();
+			for (int i = 0; i < cardinality; i++) {
+				bitmap.add(values[i]);
+			}
+			return bitmap;
+		}
+	}
+
+	private static class BitmapContainer extends Container {
+		private final long[] words;
+
+		BitmapContainer() {
+			this(new long[(Character.MAX_VALUE + 1) / Long.SIZE], 0);
+		}
+
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		Container add(char value) {
+			final long bit = 1L << value;
+			final int index = value >>> 6;
+			if ((words[index] & bit) == 0) {
+				words[index] |= bit;
+				cardinality++;
+			}
+			return this;
+		}
+
+		@Override
+		Container remove(char value) {
+			final long bit = 1L << value;
+			final int index = value >>> 6;
+			if ((words[index] & bit) != 0) {
+				words[index] &= ~bit;
+				cardinality--;
+				// Switch back well below the array limit so that a set hovering around the limit doesn't keep converting.
+				if (cardinality <= ARRAY_CONTAINER_MAX_SIZE / 2) {
+					return toArrayContainer();
+				}
+			}
+			return this;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		Container or(Container other) {
+			if (other instanceof ArrayContainer) {
+				final ArrayContainer array = (ArrayContainer) other;
+				for (int i = 0; i < array.cardinality; i++) {
+					add(array.values[i]);
+				}
+				return this;
+			}
+			final long[] otherWords = ((BitmapContainer) other).words;
+			int newCardinality = 0;
+			for (int i = 0; i < words.length; i++) {
+				words[i] |= otherWords[i];
+				newCardinality += Long.bitCount(words[i]);
+			}
+			cardinality = newCardinality;
+			return this;
+		}
+
+		@Override
+		Container copy() {
+			return new BitmapContainer(words.clone(), cardinality);
+		}
+
+		@Override
+		int toArray(int high, int[] values, int offset) {
+			for (int i = 0; i < words.length; i++) {
+				long word = words[i];
+				while (word != 0) {
+					values[offset++] = high | ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return offset;
+		}
+
+		private ArrayContainer toArrayContainer() {
+			final char[] values = new char[Math.max(cardinality, 1)];
+			int offset = 0;
+			for (int i = 0; i < words.length; i++) {
+				long word = words[i];
+				while (word != 0) {
+					values[offset++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return new ArrayContainer(values, cardinality);
+		}
+	}
+}
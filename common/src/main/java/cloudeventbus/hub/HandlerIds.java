@@ -0,0 +1,103 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns dense integer ids to handlers so that sets of handlers can be stored as {@link CompressedBitmap}s. An id is
+ * reused once every subscription of its handler has been removed. Holding the lock on this prevents ids from being
+ * released, and so reused, while it's held.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+class HandlerIds<T> {
+
+	// Access to these fields must be synchronized on this
+	private final Map<Handler<T>, Integer> ids = new HashMap<>();
+	private int[] references = new int[16];
+	private int[] freeIds = new int[16];
+	private int freeIdCount;
+	private int nextId;
+
+	// Written while synchronized on this. Readers get ids from a bitmap that was updated after the id was assigned
+	// so the handler written for the id is visible to them.
+	private volatile Handler<T>[] handlers = newArray(16);
+
+	/**
+	 * Returns the id for the handler, assigning a new id if the handler doesn't have one. Each call must be matched by
+	 * a call to {@link #release(int)}.
+	 */
+	public int acquire(Handler<T> handler) {
+		return acquire(handler, 1);
+	}
+
+	/**
+	 * Returns the id for the handler, assigning a new id if the handler doesn't have one. The id must be released
+	 * {@code count} times.
+	 */
+	public synchronized int acquire(Handler<T> handler, int count) {
+		final Integer existingId = ids.get(handler);
+		if (existingId != null) {
+			references[existingId] += count;
+			return existingId;
+		}
+		final int id = freeIdCount > 0 ? freeIds[--freeIdCount] : nextId++;
+		if (id == references.length) {
+			references = Arrays.copyOf(references, id * 2);
+			handlers = Arrays.copyOf(handlers, id * 2);
+		}
+		references[id] = count;
+		handlers[id] = handler;
+		ids.put(handler, id);
+		return id;
+	}
+
+	public synchronized void release(int id) {
+		if (--references[id] == 0) {
+			ids.remove(handlers[id]);
+			handlers[id] = null;
+			if (freeIdCount == freeIds.length) {
+				freeIds = Arrays.copyOf(freeIds, freeIdCount * 2);
+			}
+			freeIds[freeIdCount++] = id;
+		}
+	}
+
+	/**
+	 * Returns the handlers for the ids. Ids that were released since they were read are skipped.
+	 */
+	public Handler<T>[] getHandlers(int[] ids) {
+		final Handler<T>[] handlers = this.handlers;
+		final Handler<T>[] result = newArray(ids.length);
+		int count = 0;
+		for (int id : ids) {
+			final Handler<T> handler = id < handlers.length ? handlers[id] : null;
+			if (handler != null) {
+				result[count++] = handler;
+			}
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Handler<T>[] newArray(int length) {
+		return new Handler[length];
+	}
+}
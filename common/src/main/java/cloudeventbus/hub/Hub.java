@@ -22,5 +22,10 @@ import cloudeventbus.Subject;
  * @author Mike Heath <elcapo@gmail.com>
  */
 public interface Hub {
-	void publish(Subject subject, Subject replySubject, String body);
+
+	/**
+	 * Publishes a message. Hubs pass the body along untouched, a {@link cloudeventbus.MessageBody} received over the
+	 * network reaches the encoder as the bytes it was received as.
+	 */
+	void publish(Subject subject, Subject replySubject, CharSequence body);
 }
@@ -0,0 +1,171 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import cloudeventbus.Subject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A counting Bloom filter over the subjects a hub has subscriptions for. Non wild card subscriptions are added by
+ * their full subject and wild card subscriptions by the tokens preceding their first wild card. A published subject
+ * can only have subscribers if the filter might contain the subject itself or one of its prefixes, so most publishes
+ * to subjects nobody listens to are rejected after a few probes without touching the subscription index.
+ *
+ * <p>Wild card subscriptions without a prefix, such as {@code *} or {@code *.foo}, match subjects of any prefix. While
+ * any of them exist the filter matches every subject.
+ *
+ * <p>Counters are only ever incremented and decremented so the filter never has false negatives as long as every
+ * subscription is added before it is indexed and removed after it is removed from the index. False positives simply
+ * fall through to the regular lookup.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+class InterestFilter {
+
+	static final int DEFAULT_SIZE = 1 << 16;
+	static final int HASH_COUNT = 4;
+
+	// Prefixes this long or longer are too deep to be worth probing, subscriptions with them bypass the filter
+	private static final int MAX_PREFIX_LENGTH = 16;
+	private static final int WILD_CARD_SALT = 0x2a2a2a2a;
+
+	private final AtomicIntegerArray counters;
+	private final int mask;
+
+	// The number of wild card subscriptions for each prefix length
+	private final AtomicIntegerArray prefixLengths = new AtomicIntegerArray(MAX_PREFIX_LENGTH);
+	// The number of subscriptions that can't be represented in the filter
+	private final AtomicInteger unfiltered = new AtomicInteger();
+
+	InterestFilter() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param size the number of counters, must be a power of two
+	 */
+	InterestFilter(int size) {
+		if (Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("size must be a power of two");
+		}
+		counters = new AtomicIntegerArray(size);
+		mask = size - 1;
+	}
+
+	public void add(Subject subject) {
+		update(subject, 1);
+	}
+
+	public void remove(Subject subject) {
+		update(subject, -1);
+	}
+
+	private void update(Subject subject, int delta) {
+		if (!subject.isWildCard()) {
+			updateCounters(hash(subject, subject.getTokenCount()), delta);
+			return;
+		}
+		final int prefixLength = prefixLength(subject);
+		if (prefixLength == 0 || prefixLength >= MAX_PREFIX_LENGTH) {
+			unfiltered.addAndGet(delta);
+			return;
+		}
+		if (delta > 0) {
+			updateCounters(hash(subject, prefixLength) + WILD_CARD_SALT, delta);
+			prefixLengths.addAndGet(prefixLength, delta);
+		} else {
+			prefixLengths.addAndGet(prefixLength, delta);
+			updateCounters(hash(subject, prefixLength) + WILD_CARD_SALT, delta);
+		}
+	}
+
+	private void updateCounters(int hash, int delta) {
+		final int base = mix(hash);
+		final int step = step(base);
+		for (int i = 0; i < HASH_COUNT; i++) {
+			counters.addAndGet((base + i * step) & mask, delta);
+		}
+	}
+
+	/**
+	 * Indicates if the hub might have subscriptions matching the subject.
+	 *
+	 * @param subject a subject without wild cards
+	 * @return {@code false} if the hub definitely has no subscriptions matching the subject.
+	 */
+	public boolean mightMatch(Subject subject) {
+		if (unfiltered.get() > 0) {
+			return true;
+		}
+		// Compute the hash of each prefix as we go so the subject's tokens are only visited once
+		final int tokenCount = subject.getTokenCount();
+		int hash = 0;
+		for (int i = 0; i < tokenCount; i++) {
+			hash = 31 * hash + subject.getTokenHash(i);
+			final int prefixLength = i + 1;
+			// A wild card has to match at least one token so only proper prefixes can have wild card subscriptions
+			if (prefixLength < tokenCount && prefixLength < MAX_PREFIX_LENGTH && prefixLengths.get(prefixLength) > 0
+					&& mightContain(hash + WILD_CARD_SALT)) {
+				return true;
+			}
+		}
+		return mightContain(hash);
+	}
+
+	private boolean mightContain(int hash) {
+		final int base = mix(hash);
+		final int step = step(base);
+		for (int i = 0; i < HASH_COUNT; i++) {
+			if (counters.get((base + i * step) & mask) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int prefixLength(Subject subject) {
+		int length = 0;
+		while (!subject.isWildCardToken(length)) {
+			length++;
+		}
+		return length;
+	}
+
+	private static int hash(Subject subject, int tokenCount) {
+		int hash = 0;
+		for (int i = 0; i < tokenCount; i++) {
+			hash = 31 * hash + subject.getTokenHash(i);
+		}
+		return hash;
+	}
+
+	private static int step(int base) {
+		// Odd so that the probes of a subject never land on the same counter
+		return mix(base ^ 0x5bd1e995) | 1;
+	}
+
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
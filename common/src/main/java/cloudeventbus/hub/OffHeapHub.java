@@ -0,0 +1,490 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import cloudeventbus.Subject;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A hub that keeps its subscription index in direct memory so that millions of long lived subscriptions don't add
+ * millions of objects to the heap for the garbage collector to trace. Only the handlers themselves, one entry per
+ * handler rather than per subscription, the cached routes and the subscription handles returned to callers remain on
+ * the heap.
+ *
+ * <p>Every subject, wild card or not, is a path in a trie of tokens. Trie nodes, token bytes and subscriber lists are
+ * fixed size records in {@link OffHeapSlab}s that refer to each other by index and subscribers are stored by their
+ * handler id. The children of all the nodes share a single open addressing table keyed by the parent node and the
+ * child's token.
+ *
+ * <p>Subscription changes take a write lock while route lookups that miss the route cache take a read lock, so this
+ * hub favors workloads where subscriptions are long lived. The direct memory is released when the hub is garbage
+ * collected.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public abstract class OffHeapHub<T> implements SubscribeableHub<T> {
+
+	// Node fields
+	private static final int PARENT = 0;
+	private static final int TOKEN_HASH = 1;
+	private static final int TOKEN_LENGTH = 2;
+	private static final int TOKEN = 3;
+	// The number of subscriptions on paths through the node
+	private static final int REFERENCES = 4;
+	// Subscribers to subjects that end at the node
+	private static final int HANDLERS = 5;
+	// Subscribers to subjects with a tail wild card following the node
+	private static final int TAIL_HANDLERS = 6;
+	private static final int NODE_INTS = 7;
+
+	// Token and subscriber block fields
+	private static final int NEXT = 0;
+	private static final int BLOCK_INTS = 8;
+	private static final int TOKEN_BLOCK_BYTES = (BLOCK_INTS - 1) * 4;
+	private static final int COUNT = 1;
+	private static final int FIRST_ID = 2;
+	private static final int BLOCK_IDS = BLOCK_INTS - FIRST_ID;
+
+	private static final int WILD_CARD_HASH = Subject.WILD_CARD_TOKEN.hashCode();
+	private static final int INITIAL_EDGE_CAPACITY = 1024;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Access to the index must be guarded by lock
+	private final OffHeapSlab nodes = new OffHeapSlab(NODE_INTS);
+	private final OffHeapSlab tokens = new OffHeapSlab(BLOCK_INTS);
+	private final OffHeapSlab subscribers = new OffHeapSlab(BLOCK_INTS);
+	private final int root;
+	private ByteBuffer edges = ByteBuffer.allocateDirect(INITIAL_EDGE_CAPACITY * 4);
+	private int edgeMask = INITIAL_EDGE_CAPACITY - 1;
+	private int edgeCount;
+
+	private final HandlerIds<T> handlerIds = new HandlerIds<>();
+	private final QueueGroups<T> queueGroups = new QueueGroups<>(this);
+
+	// Cached routes are only valid if their generation matches the current generation which is only changed while
+	// holding the write lock.
+	private final ConcurrentMap<Subject, Route<T>> routes = new ConcurrentHashMap<>();
+	private final AtomicLong generation = new AtomicLong();
+	private final int maxCachedRoutes;
+
+	protected OffHeapHub() {
+		this(AbstractHub.DEFAULT_MAX_CACHED_ROUTES);
+	}
+
+	protected OffHeapHub(int maxCachedRoutes) {
+		this.maxCachedRoutes = maxCachedRoutes;
+		root = newNode(OffHeapSlab.NULL, "");
+	}
+
+	@Override
+	public SubscriptionHandle subscribe(Subject subject, Handler<T> handler) {
+		lock.writeLock().lock();
+		try {
+			final SubscriptionHandle handle = index(subject, handlerIds.acquire(handler));
+			generation.incrementAndGet();
+			return handle;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<SubscriptionHandle> subscribeAll(List<Subject> subjects, Handler<T> handler) {
+		if (subjects.isEmpty()) {
+			return Collections.emptyList();
+		}
+		final List<SubscriptionHandle> handles = new ArrayList<>(subjects.size());
+		lock.writeLock().lock();
+		try {
+			final int id = handlerIds.acquire(handler, subjects.size());
+			for (Subject subject : subjects) {
+				handles.add(index(subject, id));
+			}
+			generation.incrementAndGet();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return handles;
+	}
+
+	@Override
+	public SubscriptionHandle subscribe(Subject subject, String queueGroup, Handler<T> handler) {
+		return queueGroups.subscribe(subject, queueGroup, handler);
+	}
+
+	@Override
+	public SubscriptionHandle subscribe(Subject subject, String queueGroup, int partitionToken, long memberId, Handler<T> handler) {
+		return queueGroups.subscribe(subject, queueGroup, partitionToken, memberId, handler);
+	}
+
+	private SubscriptionHandle index(Subject subject, final int id) {
+		final boolean tail = subject.isTailWildCard();
+		final int pathLength = tail ? subject.getTokenCount() - 1 : subject.getTokenCount();
+		int node = root;
+		for (int i = 0; i < pathLength; i++) {
+			node = getOrCreateChild(node, subject.getToken(i));
+			nodes.putInt(node, REFERENCES, nodes.getInt(node, REFERENCES) + 1);
+		}
+		final int list = tail ? TAIL_HANDLERS : HANDLERS;
+		addSubscriber(node, list, id);
+		return new OffHeapSubscriptionHandle(node, list, id);
+	}
+
+	/**
+	 * Removes a subscription from the index, freeing the nodes no other subscription passes through. Must be called
+	 * while holding the write lock.
+	 */
+	private void remove(int node, int list, int id) {
+		removeSubscriber(node, list, id);
+		while (node != root) {
+			final int parent = nodes.getInt(node, PARENT);
+			final int references = nodes.getInt(node, REFERENCES) - 1;
+			if (references == 0) {
+				removeEdge(node);
+				freeNode(node);
+			} else {
+				nodes.putInt(node, REFERENCES, references);
+			}
+			node = parent;
+		}
+		generation.incrementAndGet();
+		handlerIds.release(id);
+	}
+
+	@Override
+	public void publish(Subject subject, Subject replySubject, CharSequence body) {
+		if (subject.isWildCard()) {
+			throw new IllegalArgumentException("Unable to publish to a wildcard subscription.");
+		}
+		// Selective handlers decline messages before they're encoded
+		final Handler<T>[] handlers = SelectiveHandler.select(getRoute(subject), subject, body);
+
+		// If we have any handlers, encode and propagate the message.
+		if (handlers.length > 0) {
+			final T message = encode(subject, replySubject, body, handlers.length);
+			try {
+				for (Handler<T> handler : handlers) {
+					QueueGroups.deliver(handler, subject, message);
+				}
+			} finally {
+				release(message);
+			}
+		}
+	}
+
+	private Handler<T>[] getRoute(Subject subject) {
+		final Route<T> route = routes.get(subject);
+		if (route != null && route.generation == generation.get()) {
+			return route.handlers;
+		}
+		final Route<T> newRoute;
+		lock.readLock().lock();
+		try {
+			// The union of the matching subscriber lists has each handler once no matter how many subscriptions match
+			final CompressedBitmap ids = new CompressedBitmap();
+			findHandlers(root, subject, 0, ids);
+			newRoute = new Route<>(generation.get(), handlerIds.getHandlers(ids.toArray()));
+		} finally {
+			lock.readLock().unlock();
+		}
+		// Request reply subjects are rarely published to more than once, caching them would only evict useful routes.
+		if (!subject.isRequestReply()) {
+			if (routes.size() >= maxCachedRoutes) {
+				routes.clear();
+			}
+			routes.put(subject, newRoute);
+		}
+		return newRoute.handlers;
+	}
+
+	private void findHandlers(int node, Subject subject, int tokenIndex, CompressedBitmap ids) {
+		if (tokenIndex == subject.getTokenCount()) {
+			addSubscribersTo(node, HANDLERS, ids);
+			return;
+		}
+		// There is at least one token left so any tail wild cards at this node match.
+		addSubscribersTo(node, TAIL_HANDLERS, ids);
+		final String token = subject.getToken(tokenIndex);
+		final int child = findChild(node, token, token.hashCode());
+		if (child != OffHeapSlab.NULL) {
+			findHandlers(child, subject, tokenIndex + 1, ids);
+		}
+		final int wildCardChild = findChild(node, Subject.WILD_CARD_TOKEN, WILD_CARD_HASH);
+		if (wildCardChild != OffHeapSlab.NULL) {
+			findHandlers(wildCardChild, subject, tokenIndex + 1, ids);
+		}
+	}
+
+	/**
+	 * Returns the number of trie nodes in the index, including the root.
+	 */
+	public int getIndexNodeCount() {
+		lock.readLock().lock();
+		try {
+			return nodes.getAllocatedRecords();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes of direct memory reserved for the index.
+	 */
+	public long getOffHeapBytes() {
+		lock.readLock().lock();
+		try {
+			return nodes.getReservedBytes() + tokens.getReservedBytes() + subscribers.getReservedBytes() + edges.capacity();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	protected abstract T encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount);
+
+	/**
+	 * Called once a message returned by {@link #encode(Subject, Subject, CharSequence, int)} has been passed to every
+	 * handler. Hubs that encode messages holding resources should release them here.
+	 */
+	protected void release(T message) {
+	}
+
+	// Nodes
+
+	private int newNode(int parent, String token) {
+		final int node = nodes.allocate();
+		nodes.putInt(node, PARENT, parent);
+		nodes.putInt(node, TOKEN_HASH, token.hashCode());
+		nodes.putInt(node, TOKEN_LENGTH, token.length());
+		nodes.putInt(node, TOKEN, storeToken(token));
+		nodes.putInt(node, REFERENCES, 0);
+		nodes.putInt(node, HANDLERS, OffHeapSlab.NULL);
+		nodes.putInt(node, TAIL_HANDLERS, OffHeapSlab.NULL);
+		return node;
+	}
+
+	private void freeNode(int node) {
+		int block = nodes.getInt(node, TOKEN);
+		while (block != OffHeapSlab.NULL) {
+			final int next = tokens.getInt(block, NEXT);
+			tokens.free(block);
+			block = next;
+		}
+		nodes.free(node);
+	}
+
+	private int getOrCreateChild(int parent, String token) {
+		final int tokenHash = token.hashCode();
+		int child = findChild(parent, token, tokenHash);
+		if (child == OffHeapSlab.NULL) {
+			child = newNode(parent, token);
+			addEdge(child);
+		}
+		return child;
+	}
+
+	// Tokens are stored as a chain of blocks, subjects only hold ASCII characters so each character takes a byte
+
+	private int storeToken(String token) {
+		if (token.isEmpty()) {
+			return OffHeapSlab.NULL;
+		}
+		int head = OffHeapSlab.NULL;
+		for (int start = (token.length() - 1) / TOKEN_BLOCK_BYTES * TOKEN_BLOCK_BYTES; start >= 0; start -= TOKEN_BLOCK_BYTES) {
+			final int block = tokens.allocate();
+			tokens.putInt(block, NEXT, head);
+			for (int i = start; i < Math.min(start + TOKEN_BLOCK_BYTES, token.length()); i++) {
+				tokens.putByte(block, 4 + i - start, (byte) token.charAt(i));
+			}
+			head = block;
+		}
+		return head;
+	}
+
+	private boolean tokenEquals(int node, String token, int tokenHash) {
+		if (nodes.getInt(node, TOKEN_HASH) != tokenHash || nodes.getInt(node, TOKEN_LENGTH) != token.length()) {
+			return false;
+		}
+		int block = nodes.getInt(node, TOKEN);
+		for (int start = 0; start < token.length(); start += TOKEN_BLOCK_BYTES) {
+			for (int i = start; i < Math.min(start + TOKEN_BLOCK_BYTES, token.length()); i++) {
+				if (tokens.getByte(block, 4 + i - start) != token.charAt(i)) {
+					return false;
+				}
+			}
+			block = tokens.getInt(block, NEXT);
+		}
+		return true;
+	}
+
+	// Subscriber lists are chains of blocks, only the head block may have free slots
+
+	private void addSubscriber(int node, int list, int id) {
+		int head = nodes.getInt(node, list);
+		if (head == OffHeapSlab.NULL || subscribers.getInt(head, COUNT) == BLOCK_IDS) {
+			final int block = subscribers.allocate();
+			subscribers.putInt(block, NEXT, head);
+			subscribers.putInt(block, COUNT, 0);
+			nodes.putInt(node, list, block);
+			head = block;
+		}
+		final int count = subscribers.getInt(head, COUNT);
+		subscribers.putInt(head, FIRST_ID + count, id);
+		subscribers.putInt(head, COUNT, count + 1);
+	}
+
+	private void removeSubscriber(int node, int list, int id) {
+		final int head = nodes.getInt(node, list);
+		for (int block = head; block != OffHeapSlab.NULL; block = subscribers.getInt(block, NEXT)) {
+			final int count = subscribers.getInt(block, COUNT);
+			for (int i = 0; i < count; i++) {
+				if (subscribers.getInt(block, FIRST_ID + i) == id) {
+					// Fill the hole with the last id of the head block
+					final int headCount = subscribers.getInt(head, COUNT) - 1;
+					subscribers.putInt(block, FIRST_ID + i, subscribers.getInt(head, FIRST_ID + headCount));
+					subscribers.putInt(head, COUNT, headCount);
+					if (headCount == 0) {
+						nodes.putInt(node, list, subscribers.getInt(head, NEXT));
+						subscribers.free(head);
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	private void addSubscribersTo(int node, int list, CompressedBitmap ids) {
+		for (int block = nodes.getInt(node, list); block != OffHeapSlab.NULL; block = subscribers.getInt(block, NEXT)) {
+			final int count = subscribers.getInt(block, COUNT);
+			for (int i = 0; i < count; i++) {
+				ids.add(subscribers.getInt(block, FIRST_ID + i));
+			}
+		}
+	}
+
+	// The edge table maps a parent node and token to the child node using linear probing
+
+	private static int edgeHash(int parent, int tokenHash) {
+		int hash = parent * 0x9e3779b9 + tokenHash;
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		return hash ^ (hash >>> 13);
+	}
+
+	private int findChild(int parent, String token, int tokenHash) {
+		int slot = edgeHash(parent, tokenHash) & edgeMask;
+		int node;
+		while ((node = edges.getInt(slot * 4)) != OffHeapSlab.NULL) {
+			if (nodes.getInt(node, PARENT) == parent && tokenEquals(node, token, tokenHash)) {
+				return node;
+			}
+			slot = (slot + 1) & edgeMask;
+		}
+		return OffHeapSlab.NULL;
+	}
+
+	private void addEdge(int node) {
+		if ((edgeCount + 1) * 2 > edges.capacity() / 4) {
+			final ByteBuffer oldEdges = edges;
+			edges = ByteBuffer.allocateDirect(oldEdges.capacity() * 2);
+			edgeMask = edges.capacity() / 4 - 1;
+			for (int i = 0; i < oldEdges.capacity(); i += 4) {
+				final int oldNode = oldEdges.getInt(i);
+				if (oldNode != OffHeapSlab.NULL) {
+					putEdge(oldNode);
+				}
+			}
+		}
+		putEdge(node);
+		edgeCount++;
+	}
+
+	private void putEdge(int node) {
+		int slot = edgeHash(nodes.getInt(node, PARENT), nodes.getInt(node, TOKEN_HASH)) & edgeMask;
+		while (edges.getInt(slot * 4) != OffHeapSlab.NULL) {
+			slot = (slot + 1) & edgeMask;
+		}
+		edges.putInt(slot * 4, node);
+	}
+
+	private void removeEdge(int node) {
+		int hole = edgeHash(nodes.getInt(node, PARENT), nodes.getInt(node, TOKEN_HASH)) & edgeMask;
+		while (edges.getInt(hole * 4) != node) {
+			hole = (hole + 1) & edgeMask;
+		}
+		// Shift back the entries that follow the hole unless the hole lies before their home slot
+		int slot = (hole + 1) & edgeMask;
+		int next;
+		while ((next = edges.getInt(slot * 4)) != OffHeapSlab.NULL) {
+			final int home = edgeHash(nodes.getInt(next, PARENT), nodes.getInt(next, TOKEN_HASH)) & edgeMask;
+			if (((slot - home) & edgeMask) >= ((slot - hole) & edgeMask)) {
+				edges.putInt(hole * 4, next);
+				hole = slot;
+			}
+			slot = (slot + 1) & edgeMask;
+		}
+		edges.putInt(hole * 4, OffHeapSlab.NULL);
+		edgeCount--;
+	}
+
+	private static class Route<T> {
+		private final long generation;
+		private final Handler<T>[] handlers;
+
+		private Route(long generation, Handler<T>[] handlers) {
+			this.generation = generation;
+			this.handlers = handlers;
+		}
+	}
+
+	private class OffHeapSubscriptionHandle implements SubscriptionHandle {
+		private final int node;
+		private final int list;
+		private final int id;
+
+		// Guarded by the hub's write lock
+		private boolean removed;
+
+		private OffHeapSubscriptionHandle(int node, int list, int id) {
+			this.node = node;
+			this.list = list;
+			this.id = id;
+		}
+
+		@Override
+		public void remove() {
+			lock.writeLock().lock();
+			try {
+				if (!removed) {
+					removed = true;
+					OffHeapHub.this.remove(node, list, id);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+}
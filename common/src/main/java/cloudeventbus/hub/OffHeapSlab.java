@@ -0,0 +1,108 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Allocates fixed size records of {@code int} fields in direct memory. Records are addressed by index so they can
+ * refer to each other without any object references, index 0 is never allocated and serves as the null record.
+ *
+ * <p>Memory is allocated a page at a time and never copied when the slab grows. Freed records are kept in a free list
+ * threaded through their first field and are reused before new records are allocated.
+ *
+ * <p>Instances of this class are not thread safe.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+class OffHeapSlab {
+
+	static final int NULL = 0;
+
+	private static final int PAGE_SHIFT = 14;
+	private static final int PAGE_RECORDS = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_RECORDS - 1;
+
+	private final int recordBytes;
+
+	private ByteBuffer[] pages = new ByteBuffer[4];
+	private int pageCount;
+	private int nextRecord = 1;
+	private int freeList = NULL;
+	private int allocatedRecords;
+
+	OffHeapSlab(int recordInts) {
+		this.recordBytes = recordInts * 4;
+	}
+
+	/**
+	 * Returns the index of a new record. The fields of the record are not cleared.
+	 */
+	public int allocate() {
+		allocatedRecords++;
+		if (freeList != NULL) {
+			final int record = freeList;
+			freeList = getInt(record, 0);
+			return record;
+		}
+		final int record = nextRecord++;
+		if ((record >>> PAGE_SHIFT) == pageCount) {
+			if (pageCount == pages.length) {
+				pages = Arrays.copyOf(pages, pageCount * 2);
+			}
+			pages[pageCount++] = ByteBuffer.allocateDirect(PAGE_RECORDS * recordBytes);
+		}
+		return record;
+	}
+
+	public void free(int record) {
+		allocatedRecords--;
+		putInt(record, 0, freeList);
+		freeList = record;
+	}
+
+	public int getInt(int record, int field) {
+		return pages[record >>> PAGE_SHIFT].getInt((record & PAGE_MASK) * recordBytes + field * 4);
+	}
+
+	public void putInt(int record, int field, int value) {
+		pages[record >>> PAGE_SHIFT].putInt((record & PAGE_MASK) * recordBytes + field * 4, value);
+	}
+
+	public byte getByte(int record, int offset) {
+		return pages[record >>> PAGE_SHIFT].get((record & PAGE_MASK) * recordBytes + offset);
+	}
+
+	public void putByte(int record, int offset, byte value) {
+		pages[record >>> PAGE_SHIFT].put((record & PAGE_MASK) * recordBytes + offset, value);
+	}
+
+	/**
+	 * Returns the number of records that are currently allocated.
+	 */
+	public int getAllocatedRecords() {
+		return allocatedRecords;
+	}
+
+	/**
+	 * Returns the number of bytes of direct memory held by the slab.
+	 */
+	public long getReservedBytes() {
+		return (long) pageCount * PAGE_RECORDS * recordBytes;
+	}
+}
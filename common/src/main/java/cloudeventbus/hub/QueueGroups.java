@@ -0,0 +1,237 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import cloudeventbus.Constants;
+import cloudeventbus.Subject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Manages the queue groups of a hub. Each queue group is subscribed to the hub as a single handler that delivers every
+ * message to exactly one of its members, so adding members to a group doesn't change the hub's routes.
+ *
+ * <p>Partitioned queue groups pick the member from one of the message subject's tokens so hubs must pass messages to
+ * handlers with {@link #deliver(Handler, Subject, Object)}.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+class QueueGroups<T> {
+
+	private final SubscribeableHub<T> hub;
+
+	// Access must be synchronized on this
+	private final Map<Subject, Map<String, QueueGroup<T>>> groups = new HashMap<>();
+
+	QueueGroups(SubscribeableHub<T> hub) {
+		this.hub = hub;
+	}
+
+	/**
+	 * Passes a message published to {@code subject} to a handler.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> void deliver(Handler<T> handler, Subject subject, T message) {
+		if (handler instanceof QueueGroup) {
+			((QueueGroup<T>) handler).publish(subject, message);
+		} else {
+			handler.publish(message);
+		}
+	}
+
+	public SubscriptionHandle subscribe(Subject subject, String name, Handler<T> handler) {
+		return subscribe(subject, name, Constants.NOT_PARTITIONED, 0, handler);
+	}
+
+	public synchronized SubscriptionHandle subscribe(final Subject subject, final String name, int partitionToken, long memberId, final Handler<T> handler) {
+		if (partitionToken != Constants.NOT_PARTITIONED && (partitionToken < 0 || partitionToken >= subject.getTokenCount())) {
+			throw new IllegalArgumentException("Subject " + subject + " has no token at index " + partitionToken);
+		}
+		Map<String, QueueGroup<T>> subjectGroups = groups.get(subject);
+		if (subjectGroups == null) {
+			subjectGroups = new HashMap<>();
+			groups.put(subject, subjectGroups);
+		}
+		QueueGroup<T> group = subjectGroups.get(name);
+		if (group == null) {
+			group = new QueueGroup<>(partitionToken);
+			subjectGroups.put(name, group);
+			group.handle = hub.subscribe(subject, group);
+		} else if (group.partitionToken != partitionToken) {
+			throw new IllegalArgumentException("Queue group " + name + " on subject " + subject + " is partitioned differently");
+		}
+		final SubscriberSet.Slot<T> member = group.members.add(partitionToken == Constants.NOT_PARTITIONED ?
+				handler : new PartitionMember<>(handler, memberSeed(memberId, subject, name)));
+		final QueueGroup<T> memberGroup = group;
+		return new SubscriptionHandle() {
+			private boolean removed;
+
+			@Override
+			public void remove() {
+				synchronized (QueueGroups.this) {
+					if (removed) {
+						return;
+					}
+					removed = true;
+					memberGroup.members.remove(member);
+					if (memberGroup.members.isEmpty()) {
+						memberGroup.handle.remove();
+						final Map<String, QueueGroup<T>> subjectGroups = groups.get(subject);
+						subjectGroups.remove(name);
+						if (subjectGroups.isEmpty()) {
+							groups.remove(subject);
+						}
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Mixes the member id with the group so that a member's keys in one group don't predict its keys in another.
+	 */
+	private static int memberSeed(long memberId, Subject subject, String name) {
+		return ((int) (memberId ^ memberId >>> 32) * 31 + subject.hashCode()) * 31 + name.hashCode();
+	}
+
+	/**
+	 * A member of a partitioned queue group.
+	 */
+	private static class PartitionMember<T> implements Handler<T> {
+		private final Handler<T> handler;
+		private final int seed;
+
+		private PartitionMember(Handler<T> handler, int seed) {
+			this.handler = handler;
+			this.seed = seed;
+		}
+
+		@Override
+		public void publish(T message) {
+			handler.publish(message);
+		}
+	}
+
+	/**
+	 * Delivers each message to one member. Members take turns in round-robin order, if the member whose turn it is has
+	 * pending bytes the member with the fewest pending bytes among the next few is chosen instead. Members that don't
+	 * buffer messages have no pending bytes so groups of such members are purely round-robin.
+	 *
+	 * <p>Partitioned groups instead use rendezvous hashing: the partition key is hashed with each member's id and the
+	 * member with the highest hash gets the message. A key keeps going to the same member until that member leaves, and
+	 * a new member only takes over the keys it now wins. Member ids are stable so a member that reconnects gets its keys
+	 * back.
+	 */
+	private static class QueueGroup<T> implements Handler<T> {
+
+		// The number of slots after the member whose turn it is that are checked for a member with fewer pending bytes
+		private static final int LEAST_PENDING_WINDOW = 4;
+
+		private final int partitionToken;
+		private final AtomicInteger next = new AtomicInteger();
+
+		// Access to the handle and modifications of the members must be synchronized on the QueueGroups
+		private final SubscriberSet<T> members = new SubscriberSet<>();
+		private SubscriptionHandle handle;
+
+		private QueueGroup(int partitionToken) {
+			this.partitionToken = partitionToken;
+		}
+
+		private void publish(Subject subject, T message) {
+			if (partitionToken == Constants.NOT_PARTITIONED) {
+				publish(message);
+				return;
+			}
+			final int size = members.getSize();
+			final SubscriberSet.Slot<T>[] slots = members.getSlots();
+			final int key = subject.getTokenHash(partitionToken);
+			Handler<T> selected = null;
+			int selectedWeight = 0;
+			for (int i = 0; i < size && i < slots.length; i++) {
+				final SubscriberSet.Slot<T> slot = slots[i];
+				if (slot == null) {
+					continue;
+				}
+				final int weight = weight(key, ((PartitionMember<T>) slot.handler).seed);
+				if (selected == null || weight > selectedWeight) {
+					selected = slot.handler;
+					selectedWeight = weight;
+				}
+			}
+			if (selected != null) {
+				selected.publish(message);
+			}
+		}
+
+		private static int weight(int key, int seed) {
+			int hash = key ^ seed * 0x9e3779b9;
+			hash ^= hash >>> 16;
+			hash *= 0x85ebca6b;
+			hash ^= hash >>> 13;
+			hash *= 0xc2b2ae35;
+			hash ^= hash >>> 16;
+			return hash;
+		}
+
+		@Override
+		public void publish(T message) {
+			final int usedSlots = members.getSize();
+			final SubscriberSet.Slot<T>[] slots = members.getSlots();
+			final int size = Math.min(usedSlots, slots.length);
+			if (size == 0) {
+				return;
+			}
+			// The cursor indexes the slots directly. When it lands on a tombstone the member after it takes the turn and
+			// the cursor is moved past the tombstone, so that member doesn't get the tombstone's turns too.
+			final int cursor = next.getAndIncrement();
+			int index = (cursor & Integer.MAX_VALUE) % size;
+			int skipped = 0;
+			while (slots[index] == null) {
+				if (++skipped == size) {
+					return;
+				}
+				index = index + 1 == size ? 0 : index + 1;
+			}
+			if (skipped > 0) {
+				next.compareAndSet(cursor + 1, cursor + 1 + skipped);
+			}
+			Handler<T> selected = slots[index].handler;
+			long selectedPendingBytes = getPendingBytes(selected);
+			// Only a few slots following the chosen member are checked for fewer pending bytes so that publishing
+			// doesn't depend on the size of the group.
+			for (int i = 1; i <= LEAST_PENDING_WINDOW && i < size && selectedPendingBytes > 0; i++) {
+				final SubscriberSet.Slot<T> slot = slots[(index + i) % size];
+				if (slot == null) {
+					continue;
+				}
+				final long pendingBytes = getPendingBytes(slot.handler);
+				if (pendingBytes < selectedPendingBytes) {
+					selected = slot.handler;
+					selectedPendingBytes = pendingBytes;
+				}
+			}
+			selected.publish(message);
+		}
+
+		private static long getPendingBytes(Handler<?> handler) {
+			return handler instanceof BufferedHandler ? ((BufferedHandler<?>) handler).getPendingBytes() : 0;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import cloudeventbus.Subject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Describes a message that is about to be published to {@link SelectiveHandler}s. The context is shared by every
+ * selective handler on the message's route so work done on behalf of one handler, such as evaluating a filter or
+ * parsing the body, can be reused by the others.
+ *
+ * <p>Instances of this class are only used by the publishing thread and are not thread safe.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class SelectionContext {
+
+	private final Subject subject;
+	private final CharSequence body;
+
+	private Map<Object, Object> cache;
+
+	SelectionContext(Subject subject, CharSequence body) {
+		this.subject = subject;
+		this.body = body;
+	}
+
+	public Subject getSubject() {
+		return subject;
+	}
+
+	/**
+	 * Returns the message body. Bodies received over the network are {@link cloudeventbus.MessageBody}s that are only
+	 * decoded if {@code toString()} is called.
+	 */
+	public CharSequence getBody() {
+		return body;
+	}
+
+	/**
+	 * Returns the value cached for this message under {@code key} or {@code null} if no value has been cached.
+	 */
+	public Object getCached(Object key) {
+		return cache == null ? null : cache.get(key);
+	}
+
+	public void putCached(Object key, Object value) {
+		if (cache == null) {
+			cache = new HashMap<>();
+		}
+		cache.put(key, value);
+	}
+}
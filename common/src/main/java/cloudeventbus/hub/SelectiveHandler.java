@@ -0,0 +1,141 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import cloudeventbus.Subject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A handler that decides which of the messages published to it are passed on to the handler it wraps. Selective
+ * handlers can wrap other selective handlers, a message is only passed on if every handler in the chain accepts it.
+ *
+ * <p>Hubs ask selective handlers whether they want a message with {@link #select(Handler[], Subject, CharSequence)} before
+ * the message is encoded, so a message that every recipient declines is never encoded. Selective handlers only decline
+ * messages when they're subscribed to a hub directly, as queue group members they receive every message the group
+ * passes to them.
+ *
+ * <p>A connection with several subscriptions matching a subject, some of them selective, is registered with a hub
+ * through a different handler for each. Selection makes sure the handler they wrap gets the message at most once.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public abstract class SelectiveHandler<T> implements Handler<T> {
+
+	private final Handler<T> handler;
+	private final AtomicLong dropped = new AtomicLong();
+
+	protected SelectiveHandler(Handler<T> handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Returns the handlers that accept the message about to be published. A selective handler is skipped without being
+	 * asked if the handler it wraps already gets the message through another handler in the array. The array is
+	 * returned as is when none of its handlers are selective or all of them accept the message, so routes without
+	 * selective handlers cost nothing.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> Handler<T>[] select(Handler<T>[] handlers, Subject subject, CharSequence body) {
+		int firstSelective = 0;
+		while (firstSelective < handlers.length && !(handlers[firstSelective] instanceof SelectiveHandler)) {
+			firstSelective++;
+		}
+		if (firstSelective == handlers.length) {
+			return handlers;
+		}
+		final SelectionContext context = new SelectionContext(subject, body);
+		// The handlers that already get the message, unselective handlers get every message routed to them
+		final Set<Handler<T>> receivers = Collections.newSetFromMap(new IdentityHashMap<Handler<T>, Boolean>());
+		for (Handler<T> handler : handlers) {
+			if (!(handler instanceof SelectiveHandler)) {
+				receivers.add(handler);
+			}
+		}
+		Handler<T>[] selected = handlers;
+		int count = firstSelective;
+		for (int i = firstSelective; i < handlers.length; i++) {
+			final Handler<T> handler = handlers[i];
+			if (handler instanceof SelectiveHandler) {
+				final SelectiveHandler<T> selectiveHandler = (SelectiveHandler<T>) handler;
+				final boolean duplicate = receivers.contains(selectiveHandler.getReceiver());
+				if (duplicate || !selectiveHandler.acceptChain(context)) {
+					if (!duplicate) {
+						selectiveHandler.dropped.incrementAndGet();
+					}
+					if (selected == handlers) {
+						// The handlers before this one were all accepted and are already in place in the copy
+						selected = Arrays.copyOf(handlers, handlers.length);
+					}
+					continue;
+				}
+				receivers.add(selectiveHandler.getReceiver());
+			}
+			if (selected != handlers) {
+				selected[count] = handler;
+			}
+			count++;
+		}
+		return selected == handlers ? handlers : Arrays.copyOf(selected, count);
+	}
+
+	/**
+	 * Returns the handler at the end of the chain of selective handlers, the one messages are finally passed to.
+	 */
+	@SuppressWarnings("unchecked")
+	private Handler<T> getReceiver() {
+		Handler<T> receiver = handler;
+		while (receiver instanceof SelectiveHandler) {
+			receiver = ((SelectiveHandler<T>) receiver).handler;
+		}
+		return receiver;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean acceptChain(SelectionContext context) {
+		SelectiveHandler<T> current = this;
+		while (current.accept(context)) {
+			if (!(current.handler instanceof SelectiveHandler)) {
+				return true;
+			}
+			current = (SelectiveHandler<T>) current.handler;
+		}
+		return false;
+	}
+
+	/**
+	 * Decides whether the message described by the context is passed on to the wrapped handler. Called at most once
+	 * per message and only if every selective handler wrapping this one accepted the message.
+	 */
+	protected abstract boolean accept(SelectionContext context);
+
+	@Override
+	public void publish(T message) {
+		handler.publish(message);
+	}
+
+	/**
+	 * Returns the number of messages this handler, or any selective handler it wraps, declined.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import cloudeventbus.Constants;
+import cloudeventbus.Subject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A hub that partitions the subject space into independent shards. Each shard has its own subscription index and
+ * route cache and delivers messages on its own executor, typically an event loop, so publishes to different shards
+ * never contend with each other.
+ *
+ * <p>Subscriptions to concrete subjects are only added to the shard that owns the subject. Wild card subscriptions can
+ * match subjects owned by any shard so they are added to every shard.
+ *
+ * <p>Publishing queues the message on the owning shard and returns, the message is delivered later by the shard's
+ * executor. Messages published to the same subject are delivered in the order they were published. Messages
+ * published to subjects owned by different shards are delivered independently, so a handler subscribed to both may
+ * receive them in a different order than they were published, even when one connection published both.
+ *
+ * <p>Handlers are called on the shard's executor. Handlers that write to a connection owned by another thread, such
+ * as a channel on a different event loop, must hand the write off to that thread.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public abstract class ShardedHub<T> implements SubscribeableHub<T> {
+
+	/**
+	 * The maximum number of messages a shard delivers before giving other tasks on its executor a chance to run.
+	 */
+	public static final int MAX_DELIVERY_BATCH = 256;
+
+	private final Shard[] shards;
+
+	/**
+	 * Creates a sharded hub with one shard per executor.
+	 *
+	 * @param executors the executors the shards deliver messages on
+	 */
+	protected ShardedHub(Executor... executors) {
+		this(AbstractHub.DEFAULT_MAX_CACHED_ROUTES, executors);
+	}
+
+	protected ShardedHub(int maxCachedRoutes, Executor... executors) {
+		if (executors.length == 0) {
+			throw new IllegalArgumentException("At least one executor is required");
+		}
+		shards = newShards(executors.length);
+		for (int i = 0; i < executors.length; i++) {
+			shards[i] = new Shard(executors[i], maxCachedRoutes);
+		}
+	}
+
+	@Override
+	public SubscriptionHandle subscribe(Subject subject, Handler<T> handler) {
+		if (!subject.isWildCard()) {
+			return getShard(subject).hub.subscribe(subject, handler);
+		}
+		final SubscriptionHandle[] handles = new SubscriptionHandle[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			handles[i] = shards[i].hub.subscribe(subject, handler);
+		}
+		return removeAll(handles);
+	}
+
+	@Override
+	public SubscriptionHandle subscribe(Subject subject, String queueGroup, Handler<T> handler) {
+		return subscribe(subject, queueGroup, Constants.NOT_PARTITIONED, 0, handler);
+	}
+
+	@Override
+	public SubscriptionHandle subscribe(Subject subject, String queueGroup, int partitionToken, long memberId, Handler<T> handler) {
+		if (!subject.isWildCard()) {
+			return getShard(subject).hub.subscribe(subject, queueGroup, partitionToken, memberId, handler);
+		}
+		// Every shard has its own copy of the group, partitioned groups pick members the same way in every shard
+		final SubscriptionHandle[] handles = new SubscriptionHandle[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			handles[i] = shards[i].hub.subscribe(subject, queueGroup, partitionToken, memberId, handler);
+		}
+		return removeAll(handles);
+	}
+
+	@Override
+	public List<SubscriptionHandle> subscribeAll(List<Subject> subjects, Handler<T> handler) {
+		// Split the subjects into one batch per shard, wild card subscriptions go into every batch
+		final List<List<Subject>> batches = new ArrayList<>(shards.length);
+		final List<List<Integer>> batchIndexes = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			batches.add(new ArrayList<Subject>());
+			batchIndexes.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < subjects.size(); i++) {
+			final Subject subject = subjects.get(i);
+			if (subject.isWildCard()) {
+				for (int shard = 0; shard < shards.length; shard++) {
+					batches.get(shard).add(subject);
+					batchIndexes.get(shard).add(i);
+				}
+			} else {
+				final int shard = getShardIndex(subject);
+				batches.get(shard).add(subject);
+				batchIndexes.get(shard).add(i);
+			}
+		}
+		final SubscriptionHandle[] handles = new SubscriptionHandle[subjects.size()];
+		final SubscriptionHandle[][] wildCardHandles = new SubscriptionHandle[subjects.size()][];
+		for (int shard = 0; shard < shards.length; shard++) {
+			final List<SubscriptionHandle> shardHandles = shards[shard].hub.subscribeAll(batches.get(shard), handler);
+			for (int i = 0; i < shardHandles.size(); i++) {
+				final int index = batchIndexes.get(shard).get(i);
+				if (!subjects.get(index).isWildCard()) {
+					handles[index] = shardHandles.get(i);
+				} else {
+					if (wildCardHandles[index] == null) {
+						wildCardHandles[index] = new SubscriptionHandle[shards.length];
+					}
+					wildCardHandles[index][shard] = shardHandles.get(i);
+				}
+			}
+		}
+		for (int i = 0; i < handles.length; i++) {
+			if (wildCardHandles[i] != null) {
+				handles[i] = removeAll(wildCardHandles[i]);
+			}
+		}
+		return Arrays.asList(handles);
+	}
+
+	@Override
+	public void publish(Subject subject, Subject replySubject, CharSequence body) {
+		if (subject.isWildCard()) {
+			throw new IllegalArgumentException("Unable to publish to a wildcard subscription.");
+		}
+		getShard(subject).publish(new PendingPublish(subject, replySubject, body));
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * @see AbstractHub#getDroppedNoInterestCount()
+	 */
+	public long getDroppedNoInterestCount() {
+		long count = 0;
+		for (Shard shard : shards) {
+			count += shard.hub.getDroppedNoInterestCount();
+		}
+		return count;
+	}
+
+	protected abstract T encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount);
+
+	/**
+	 * @see AbstractHub#release(Object)
+	 */
+	protected void release(T message) {
+	}
+
+	private Shard getShard(Subject subject) {
+		return shards[getShardIndex(subject)];
+	}
+
+	private int getShardIndex(Subject subject) {
+		final int hash = subject.hashCode();
+		return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % shards.length;
+	}
+
+	private static SubscriptionHandle removeAll(final SubscriptionHandle[] handles) {
+		return new SubscriptionHandle() {
+			@Override
+			public void remove() {
+				for (SubscriptionHandle handle : handles) {
+					handle.remove();
+				}
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private Shard[] newShards(int length) {
+		return (Shard[]) new ShardedHub.Shard[length];
+	}
+
+	private static class PendingPublish {
+		private final Subject subject;
+		private final Subject replySubject;
+		private final CharSequence body;
+
+		private PendingPublish(Subject subject, Subject replySubject, CharSequence body) {
+			this.subject = subject;
+			this.replySubject = replySubject;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * A shard's pending messages are kept in a lock free queue. The shard is only submitted to its executor when the
+	 * queue goes from empty to non-empty, the executor then drains the queue in batches.
+	 */
+	private class Shard implements Runnable {
+		private final Executor executor;
+		private final AbstractHub<T> hub;
+		private final Queue<PendingPublish> pending = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		private Shard(Executor executor, int maxCachedRoutes) {
+			this.executor = executor;
+			this.hub = new AbstractHub<T>(maxCachedRoutes) {
+				@Override
+				protected T encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+					return ShardedHub.this.encode(subject, replySubject, body, recipientCount);
+				}
+
+				@Override
+				protected void release(T message) {
+					ShardedHub.this.release(message);
+				}
+			};
+		}
+
+		private void publish(PendingPublish publish) {
+			pending.add(publish);
+			schedule();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (int i = 0; i < MAX_DELIVERY_BATCH; i++) {
+					final PendingPublish publish = pending.poll();
+					if (publish == null) {
+						break;
+					}
+					hub.publish(publish.subject, publish.replySubject, publish.body);
+				}
+			} finally {
+				scheduled.set(false);
+				// Messages may have been queued after the last poll but before the scheduled flag was cleared.
+				if (!pending.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	}
+}
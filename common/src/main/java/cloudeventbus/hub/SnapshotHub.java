@@ -0,0 +1,332 @@
+/*
+ *   Copyright (c) 2013 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import cloudeventbus.Subject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A hub that keeps its subscriptions in a trie published through a single volatile reference. Publishing threads
+ * never take a lock and never see a partially applied batch of subscriptions.
+ *
+ * <p>Subscribing and unsubscribing queue a mutation and then apply every queued mutation while holding a lock.
+ * Concurrent subscription changes are therefore applied in batches with a single swap of the snapshot. The trie's
+ * structure is copy on write, only the nodes on a path that gains or loses a node are copied, but each node's
+ * subscribers are kept in a {@link SubscriberSet} that is shared by every snapshot holding the node. Subscribing to or
+ * unsubscribing from an existing subject therefore takes constant time however many subscribers the subject has.
+ *
+ * <p>Every batch is given the next version number and the subscriptions it adds are tagged with it. A snapshot only
+ * sees subscriptions tagged with its own version or an earlier one, so the subscriptions added by a batch, such as the
+ * subjects passed to {@link #subscribeAll(List, Handler)}, become visible all at once when the batch's snapshot is
+ * published and never become visible to a publisher still holding an earlier snapshot. Removals take effect in the
+ * shared subscriber sets as soon as they are applied, including for publishers holding an earlier snapshot. A publish
+ * that races a removal may still deliver to the removed handler, a publish that starts after
+ * {@link SubscriptionHandle#remove()} returns never does.
+ *
+ * <p>Each snapshot carries its own route cache so cached routes never need to be invalidated, they are discarded along
+ * with the snapshot they were built from.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public abstract class SnapshotHub<T> implements SubscribeableHub<T> {
+
+	private final Queue<Mutation<T>> pendingMutations = new ConcurrentLinkedQueue<>();
+	private final Object writeLock = new Object();
+	private final int maxCachedRoutes;
+	private final QueueGroups<T> queueGroups = new QueueGroups<>(this);
+
+	private volatile Snapshot<T> snapshot = new Snapshot<>(Node.<T>empty(), 0);
+	// The version of the current snapshot, only accessed while holding the write lock
+	private long version;
+
+	protected SnapshotHub() {
+		this(AbstractHub.DEFAULT_MAX_CACHED_ROUTES);
+	}
+
+	protected SnapshotHub(int maxCachedRoutes) {
+		this.maxCachedRoutes = maxCachedRoutes;
+	}
+
+	@Override
+	public SubscriptionHandle subscribe(Subject subject, Handler<T> handler) {
+		final Mutation<T> subscription = new Mutation<>(subject, handler);
+		mutate(subscription);
+		return newHandle(subscription);
+	}
+
+	@Override
+	public List<SubscriptionHandle> subscribeAll(List<Subject> subjects, Handler<T> handler) {
+		// Queue every subscription before applying them so that the batch is published with a single new snapshot
+		final List<Mutation<T>> subscriptions = new ArrayList<>(subjects.size());
+		for (Subject subject : subjects) {
+			final Mutation<T> subscription = new Mutation<>(subject, handler);
+			subscriptions.add(subscription);
+			pendingMutations.add(subscription);
+		}
+		applyPendingMutations();
+		final List<SubscriptionHandle> handles = new ArrayList<>(subjects.size());
+		for (Mutation<T> subscription : subscriptions) {
+			handles.add(newHandle(subscription));
+		}
+		return handles;
+	}
+
+	private SubscriptionHandle newHandle(final Mutation<T> subscription) {
+		final AtomicBoolean removed = new AtomicBoolean();
+		return new SubscriptionHandle() {
+			@Override
+			public void remove() {
+				if (removed.compareAndSet(false, true)) {
+					mutate(new Mutation<>(subscription));
+				}
+			}
+		};
+	}
+
+	private void mutate(Mutation<T> mutation) {
+		pendingMutations.add(mutation);
+		applyPendingMutations();
+	}
+
+	private void applyPendingMutations() {
+		synchronized (writeLock) {
+			// Another writer may have already applied our mutation along with its own.
+			if (pendingMutations.isEmpty()) {
+				return;
+			}
+			final long batchVersion = version + 1;
+			Node<T> root = snapshot.root;
+			Mutation<T> pending;
+			while ((pending = pendingMutations.poll()) != null) {
+				root = pending.apply(root, batchVersion);
+			}
+			version = batchVersion;
+			snapshot = new Snapshot<>(root, batchVersion);
+		}
+	}
+
+	@Override
+	public SubscriptionHandle subscribe(Subject subject, String queueGroup, Handler<T> handler) {
+		return queueGroups.subscribe(subject, queueGroup, handler);
+	}
+
+	@Override
+	public SubscriptionHandle subscribe(Subject subject, String queueGroup, int partitionToken, long memberId, Handler<T> handler) {
+		return queueGroups.subscribe(subject, queueGroup, partitionToken, memberId, handler);
+	}
+
+	@Override
+	public void publish(Subject subject, Subject replySubject, CharSequence body) {
+		if (subject.isWildCard()) {
+			throw new IllegalArgumentException("Unable to publish to a wildcard subscription.");
+		}
+		// Selective handlers decline messages before they're encoded
+		final Handler<T>[] handlers = SelectiveHandler.select(getRoute(snapshot, subject), subject, body);
+
+		// If we have any handlers, encode and propagate the message.
+		if (handlers.length > 0) {
+			final T message = encode(subject, replySubject, body, handlers.length);
+			try {
+				for (Handler<T> handler : handlers) {
+					QueueGroups.deliver(handler, subject, message);
+				}
+			} finally {
+				release(message);
+			}
+		}
+	}
+
+	private Handler<T>[] getRoute(Snapshot<T> snapshot, Subject subject) {
+		final Handler<T>[] route = snapshot.routes.get(subject);
+		if (route != null) {
+			return route;
+		}
+		final Set<Handler<T>> handlers = new HashSet<>();
+		findHandlers(snapshot.root, subject, 0, snapshot.version, handlers);
+		final Handler<T>[] newRoute = toArray(handlers);
+		// Request reply subjects are rarely published to more than once, caching them would only evict useful routes.
+		if (subject.isRequestReply()) {
+			return newRoute;
+		}
+		if (snapshot.routes.size() >= maxCachedRoutes) {
+			snapshot.routes.clear();
+		}
+		snapshot.routes.put(subject, newRoute);
+		return newRoute;
+	}
+
+	private void findHandlers(Node<T> node, Subject subject, int tokenIndex, long version, Set<Handler<T>> handlers) {
+		if (tokenIndex == subject.getTokenCount()) {
+			node.handlers.addTo(handlers, version);
+			return;
+		}
+		// There is at least one token left so any tail wild cards at this node match.
+		node.tailHandlers.addTo(handlers, version);
+		final Node<T> child = node.children.get(subject.getToken(tokenIndex));
+		if (child != null) {
+			findHandlers(child, subject, tokenIndex + 1, version, handlers);
+		}
+		final Node<T> wildCardChild = node.children.get(Subject.WILD_CARD_TOKEN);
+		if (wildCardChild != null) {
+			findHandlers(wildCardChild, subject, tokenIndex + 1, version, handlers);
+		}
+	}
+
+	protected abstract T encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount);
+
+	/**
+	 * Called once a message returned by {@link #encode(Subject, Subject, CharSequence, int)} has been passed to every
+	 * handler. Hubs that encode messages holding resources should release them here.
+	 */
+	protected void release(T message) {
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Handler<T>[] toArray(Set<Handler<T>> handlers) {
+		return handlers.toArray(new Handler[handlers.size()]);
+	}
+
+	private static class Snapshot<T> {
+		private final Node<T> root;
+		private final long version;
+		private final ConcurrentMap<Subject, Handler<T>[]> routes = new ConcurrentHashMap<>();
+
+		private Snapshot(Node<T> root, long version) {
+			this.root = root;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Adds a subscription or removes the subscription added by another mutation.
+	 */
+	private static class Mutation<T> {
+		private final Subject subject;
+		private final Handler<T> handler;
+		// The mutation that added the subscription to remove or null if this mutation adds a subscription
+		private final Mutation<T> subscription;
+
+		// The slot of an added subscription, set when the mutation is applied while holding the write lock
+		private SubscriberSet.Slot<T> slot;
+
+		private Mutation(Subject subject, Handler<T> handler) {
+			this.subject = subject;
+			this.handler = handler;
+			this.subscription = null;
+		}
+
+		private Mutation(Mutation<T> subscription) {
+			this.subject = subscription.subject;
+			this.handler = subscription.handler;
+			this.subscription = subscription;
+		}
+
+		/**
+		 * Returns the root with the mutation applied. Only the nodes along the subject's path are copied and only if a
+		 * node is added to or pruned from the path.
+		 */
+		private Node<T> apply(Node<T> root, long version) {
+			final Node<T> newRoot = apply(root, 0, version);
+			return newRoot == null ? Node.<T>empty() : newRoot;
+		}
+
+		private Node<T> apply(Node<T> node, int tokenIndex, long version) {
+			final boolean tail = subject.isTailWildCard();
+			final int pathLength = tail ? subject.getTokenCount() - 1 : subject.getTokenCount();
+			if (tokenIndex == pathLength) {
+				final SubscriberSet<T> subscribers = tail ? node.tailHandlers : node.handlers;
+				if (subscription == null) {
+					slot = subscribers.add(handler, version);
+					return node;
+				}
+				subscribers.remove(subscription.slot);
+				return Node.prune(node);
+			}
+			final String token = subject.getToken(tokenIndex);
+			final Node<T> child = node.children.get(token);
+			if (child == null) {
+				if (subscription != null) {
+					return node;
+				}
+				return node.withChild(token, apply(Node.<T>empty(), tokenIndex + 1, version));
+			}
+			final Node<T> newChild = apply(child, tokenIndex + 1, version);
+			return newChild == child ? node : node.withChild(token, newChild);
+		}
+	}
+
+	/**
+	 * A trie node. The children of a node never change, a node that gains or loses a child is copied. The subscriber
+	 * sets are shared by the copies and are changed in place. Nodes left without subscribers or children are pruned.
+	 */
+	private static class Node<T> {
+		// Handlers for subscriptions that end at this node
+		private final SubscriberSet<T> handlers;
+		// Handlers for subscriptions with a tail wild card following this node
+		private final SubscriberSet<T> tailHandlers;
+		private final Map<String, Node<T>> children;
+
+		private Node(Map<String, Node<T>> children, SubscriberSet<T> handlers, SubscriberSet<T> tailHandlers) {
+			this.children = children;
+			this.handlers = handlers;
+			this.tailHandlers = tailHandlers;
+		}
+
+		/**
+		 * Returns a new node, nodes are never shared since their subscriber sets are changed in place.
+		 */
+		private static <T> Node<T> empty() {
+			return new Node<>(Collections.<String, Node<T>>emptyMap(), new SubscriberSet<T>(), new SubscriberSet<T>());
+		}
+
+		private boolean isEmpty() {
+			return handlers.isEmpty() && tailHandlers.isEmpty() && children.isEmpty();
+		}
+
+		/**
+		 * Returns a copy of this node with the child replaced, or removed if {@code child} is {@code null}.
+		 */
+		private Node<T> withChild(String token, Node<T> child) {
+			if (children.get(token) == child) {
+				return this;
+			}
+			final Map<String, Node<T>> newChildren = new HashMap<>(children);
+			if (child == null) {
+				newChildren.remove(token);
+			} else {
+				newChildren.put(token, child);
+			}
+			return prune(new Node<>(newChildren.isEmpty() ? Collections.<String, Node<T>>emptyMap() : newChildren, handlers, tailHandlers));
+		}
+
+		private static <T> Node<T> prune(Node<T> node) {
+			return node.isEmpty() ? null : node;
+		}
+	}
+}
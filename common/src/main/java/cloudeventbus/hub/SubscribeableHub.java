@@ -18,9 +18,53 @@ package cloudeventbus.hub;
 
 import cloudeventbus.Subject;
 
+import java.util.List;
+
 /**
  * @author Mike Heath <elcapo@gmail.com>
  */
 public interface SubscribeableHub<T> extends Hub {
 	SubscriptionHandle subscribe(Subject subject, Handler<T> handler);
+
+	/**
+	 * Subscribes a handler as a member of a queue group. Each message published to the subject is delivered to only
+	 * one member of the group.
+	 *
+	 * @param subject the subject to subscribe to
+	 * @param queueGroup the name of the queue group
+	 * @param handler the handler to add to the queue group
+	 * @return a handle for removing the handler from the queue group.
+	 */
+	SubscriptionHandle subscribe(Subject subject, String queueGroup, Handler<T> handler);
+
+	/**
+	 * Subscribes a handler as a member of a partitioned queue group. Each message published to the subject is
+	 * delivered to one member of the group picked by the message subject's token at {@code partitionToken}, so every
+	 * message with the same partition key goes to the same member, in order, for as long as that member stays in the
+	 * group. When members join or leave, only the keys of the affected members move to other members.
+	 *
+	 * <p>Members are told apart by their ids rather than their handlers so a member that leaves and joins again with
+	 * the same id, a client reconnecting for example, gets the same keys back. Members of a group should have distinct
+	 * ids.
+	 *
+	 * @param subject the subject to subscribe to
+	 * @param queueGroup the name of the queue group
+	 * @param partitionToken the index of the subject token used as the partition key
+	 * @param memberId the stable id of the member
+	 * @param handler the handler to add to the queue group
+	 * @return a handle for removing the handler from the queue group.
+	 * @throws IllegalArgumentException if the subject doesn't have a token at {@code partitionToken} or the queue group
+	 *                                  is already partitioned differently.
+	 */
+	SubscriptionHandle subscribe(Subject subject, String queueGroup, int partitionToken, long memberId, Handler<T> handler);
+
+	/**
+	 * Subscribes a handler to each of the subjects. The subscriptions are registered as a batch which is much cheaper
+	 * than subscribing to each subject separately when a connection subscribes to many subjects at once.
+	 *
+	 * @param subjects the subjects to subscribe to
+	 * @param handler the handler to subscribe
+	 * @return a handle for each subscription in the same order as {@code subjects}.
+	 */
+	List<SubscriptionHandle> subscribeAll(List<Subject> subjects, Handler<T> handler);
 }
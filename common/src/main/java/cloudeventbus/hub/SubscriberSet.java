@@ -0,0 +1,174 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The subscribers of a subject, stored so that subscribing and unsubscribing take constant amortized time no matter
+ * how many subscribers there are, instead of copying every subscriber on each change.
+ *
+ * <p>Each subscriber is held in a {@link Slot} that remembers its position, so removing it only clears its position
+ * and leaves a tombstone. New subscribers are appended after the last slot. Once tombstones make up half of the used
+ * slots they are compacted away by copying the live slots into a new array.
+ *
+ * <p>Changes must be made by one thread at a time, publishing threads may read concurrently without locking. A reader
+ * calls {@link #getSize()} before {@link #getSlots()} and skips the {@code null} tombstones in the first {@code size}
+ * slots. Since compaction never writes to an array readers may hold, readers see every subscriber that was added
+ * before they started and wasn't removed while they were reading.
+ *
+ * <p>Each slot records the version it was added in. Readers that pass a version to {@link #addTo(Collection, long)}
+ * skip the slots added in later versions, which lets a set be shared by snapshots without later additions leaking
+ * into earlier snapshots.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+class SubscriberSet<T> {
+
+	private static final int MIN_CAPACITY = 4;
+
+	@SuppressWarnings("unchecked")
+	private volatile Slot<T>[] slots = new Slot[MIN_CAPACITY];
+	// The number of used slots including tombstones
+	private volatile int size;
+	private volatile int liveCount;
+	private int tombstones;
+
+	/**
+	 * Adds a subscriber, returning the slot needed to remove it.
+	 */
+	public Slot<T> add(Handler<T> handler) {
+		return add(handler, 0);
+	}
+
+	/**
+	 * Adds a subscriber that is only seen by readers of {@code version} or later.
+	 */
+	public Slot<T> add(Handler<T> handler, long version) {
+		Slot<T>[] slots = this.slots;
+		if (size == slots.length) {
+			if (tombstones > 0) {
+				// Grow once the array is more than half live, otherwise churn near capacity would compact on every add
+				slots = compact(Math.max(slots.length, (size - tombstones) * 2));
+			} else {
+				slots = Arrays.copyOf(slots, slots.length * 2);
+				this.slots = slots;
+			}
+		}
+		final Slot<T> slot = new Slot<>(handler, size, version);
+		slots[size] = slot;
+		size++;
+		liveCount++;
+		return slot;
+	}
+
+	/**
+	 * Removes the subscriber held in the slot. A slot that has already been removed is ignored.
+	 */
+	public void remove(Slot<T> slot) {
+		if (slot.index < 0) {
+			return;
+		}
+		slots[slot.index] = null;
+		slot.index = -1;
+		tombstones++;
+		liveCount--;
+		if (size == tombstones) {
+			// Every slot is a tombstone, start over with an empty array
+			compact(MIN_CAPACITY);
+		} else if (tombstones * 2 > size && size > MIN_CAPACITY) {
+			compact(Math.max(MIN_CAPACITY, (size - tombstones) * 2));
+		}
+	}
+
+	/**
+	 * Copies the live slots into a new array with the given capacity, publishing the array before the new size.
+	 */
+	@SuppressWarnings("unchecked")
+	private Slot<T>[] compact(int capacity) {
+		final Slot<T>[] compacted = new Slot[capacity];
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			final Slot<T> slot = slots[i];
+			if (slot != null) {
+				slot.index = count;
+				compacted[count++] = slot;
+			}
+		}
+		slots = compacted;
+		size = count;
+		tombstones = 0;
+		return compacted;
+	}
+
+	public boolean isEmpty() {
+		return liveCount == 0;
+	}
+
+	/**
+	 * Returns the number of subscribers, not counting tombstones.
+	 */
+	public int getLiveCount() {
+		return liveCount;
+	}
+
+	/**
+	 * Returns the number of used slots including tombstones.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public Slot<T>[] getSlots() {
+		return slots;
+	}
+
+	/**
+	 * Adds every subscriber to the collection.
+	 */
+	public void addTo(Collection<Handler<T>> handlers) {
+		addTo(handlers, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Adds every subscriber added in {@code version} or earlier to the collection.
+	 */
+	public void addTo(Collection<Handler<T>> handlers, long version) {
+		final int size = this.size;
+		final Slot<T>[] slots = this.slots;
+		for (int i = 0; i < size && i < slots.length; i++) {
+			final Slot<T> slot = slots[i];
+			if (slot != null && slot.version <= version) {
+				handlers.add(slot.handler);
+			}
+		}
+	}
+
+	static class Slot<T> {
+		final Handler<T> handler;
+		final long version;
+		// The position of the slot in the array or -1 once removed, only accessed by the thread making changes
+		private int index;
+
+		private Slot(Handler<T> handler, int index, long version) {
+			this.handler = handler;
+			this.index = index;
+			this.version = version;
+		}
+	}
+}
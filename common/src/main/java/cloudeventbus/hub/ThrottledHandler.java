@@ -0,0 +1,96 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a handler so that it only receives a sample of the messages published to it, at most a fixed number of
+ * messages per second, or both. Observers such as dashboards that only render a sample of a high volume subject can
+ * use it to avoid being sent every message.
+ *
+ * <p>The rate limit counts messages in fixed one second windows and, when messages are published concurrently, may let
+ * a few extra messages through as a window rolls over.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class ThrottledHandler<T> extends SelectiveHandler<T> {
+
+	/**
+	 * The maximum rate of handlers that are not rate limited.
+	 */
+	public static final int UNLIMITED = 0;
+
+	private static final long WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+	private final int sampleEvery;
+	private final int maxPerSecond;
+
+	private final AtomicLong offered = new AtomicLong();
+	private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+	private final AtomicInteger windowCount = new AtomicInteger();
+
+	/**
+	 * Creates a throttled handler.
+	 *
+	 * @param handler the handler receiving the messages that are let through
+	 * @param sampleEvery the handler receives one of every {@code sampleEvery} messages, 1 to receive every message
+	 * @param maxPerSecond the maximum number of messages per second the handler receives or {@link #UNLIMITED}
+	 */
+	public ThrottledHandler(Handler<T> handler, int sampleEvery, int maxPerSecond) {
+		super(handler);
+		if (sampleEvery < 1) {
+			throw new IllegalArgumentException("sampleEvery must be greater than 0");
+		}
+		if (maxPerSecond < 0) {
+			throw new IllegalArgumentException("maxPerSecond can not be negative");
+		}
+		this.sampleEvery = sampleEvery;
+		this.maxPerSecond = maxPerSecond;
+	}
+
+	@Override
+	protected boolean accept(SelectionContext context) {
+		return accept(System.nanoTime());
+	}
+
+	boolean accept(long now) {
+		return offered.getAndIncrement() % sampleEvery == 0 && withinRate(now);
+	}
+
+	private boolean withinRate(long now) {
+		if (maxPerSecond == UNLIMITED) {
+			return true;
+		}
+		final long start = windowStart.get();
+		if (now - start >= WINDOW && windowStart.compareAndSet(start, now)) {
+			windowCount.set(1);
+			return true;
+		}
+		return windowCount.incrementAndGet() <= maxPerSecond;
+	}
+
+	public int getSampleEvery() {
+		return sampleEvery;
+	}
+
+	public int getMaxPerSecond() {
+		return maxPerSecond;
+	}
+}
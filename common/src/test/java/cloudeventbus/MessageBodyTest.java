@@ -0,0 +1,59 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus;
+
+import org.testng.annotations.Test;
+
+import java.nio.charset.Charset;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class MessageBodyTest {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Test
+	public void bytesAndString() {
+		final String text = "Gr\u00fc\u00dfe \u2713";
+		final MessageBody fromBytes = MessageBody.wrap(text.getBytes(UTF_8));
+		final MessageBody fromString = MessageBody.valueOf(text);
+
+		assertEquals(fromBytes.toString(), text);
+		assertEquals(fromString.getBytes(), text.getBytes(UTF_8));
+		assertEquals(fromBytes.getByteLength(), text.getBytes(UTF_8).length);
+		assertEquals(fromBytes.length(), text.length());
+		assertEquals(fromBytes.charAt(2), '\u00fc');
+		assertEquals(fromBytes, fromString);
+		assertEquals(fromBytes.hashCode(), fromString.hashCode());
+		assertSame(MessageBody.valueOf(fromBytes), fromBytes);
+	}
+
+	@Test
+	public void startsWith() {
+		final MessageBody body = MessageBody.wrap("{\"type\": \"\u00e9v\u00e9nement\"}".getBytes(UTF_8));
+		assertTrue(body.startsWith("{\"type\": \"\u00e9v".getBytes(UTF_8)));
+		assertTrue(body.startsWith(new byte[0]));
+		assertFalse(body.startsWith("{\"kind\"".getBytes(UTF_8)));
+		assertFalse(body.startsWith("{\"type\": \"\u00e9v\u00e9nement\"} and more".getBytes(UTF_8)));
+	}
+}
@@ -31,6 +31,8 @@ public class SubjectTest {
 		new Subject("com.github.*");
 		new Subject("1.2.3.4.5");
 		new Subject("foo-123.bar_567");
+		new Subject("foo.*.bar");
+		new Subject("*.bar.*");
 	}
 
 	@Test(expectedExceptions = NullPointerException.class)
@@ -40,7 +42,7 @@ public class SubjectTest {
 
 	@Test(expectedExceptions = IllegalArgumentException.class)
 	public void invalidSubject1() {
-		new Subject("foo.*.bar");
+		new Subject("foo.*bar");
 	}
 
 	@Test(expectedExceptions = IllegalArgumentException.class)
@@ -76,6 +78,62 @@ public class SubjectTest {
 		assertTrue(sub.isSub(copy));
 	}
 
+	@Test
+	public void tokens() {
+		final Subject subject = new Subject("foo.bar.*");
+		assertEquals(subject.getTokenCount(), 3);
+		assertEquals(subject.getToken(0), "foo");
+		assertEquals(subject.getToken(1), "bar");
+		assertEquals(subject.getToken(2), Subject.WILD_CARD_TOKEN);
+		assertEquals(subject.getTokenHash(1), "bar".hashCode());
+		assertTrue(subject.isWildCard());
+
+		assertEquals(Subject.ALL.getTokenCount(), 1);
+		assertTrue(Subject.ALL.isWildCard());
+		assertFalse(new Subject("foo").isWildCard());
+	}
+
+	@Test
+	public void subSubjectsMatchWholeTokens() {
+		final Subject wildCard = new Subject("foo.*");
+		assertFalse(wildCard.isSub(new Subject("foo")));
+		assertFalse(wildCard.isSub(new Subject("foobar.baz")));
+		assertTrue(wildCard.isSub(new Subject("foo.bar.baz")));
+		assertTrue(wildCard.isSub(new Subject("foo.bar.*")));
+		assertFalse(new Subject("foo.bar.*").isSub(wildCard));
+	}
+
+	@Test
+	public void singleTokenWildCards() {
+		final Subject wildCard = new Subject("orders.*.created");
+		assertTrue(wildCard.isWildCard());
+		assertFalse(wildCard.isTailWildCard());
+		assertTrue(wildCard.isSub(new Subject("orders.1.created")));
+		assertTrue(wildCard.isSub(new Subject("orders.*.created")));
+		assertFalse(wildCard.isSub(new Subject("orders.1.2.created")));
+		assertFalse(wildCard.isSub(new Subject("orders.1.created.foo")));
+		assertFalse(wildCard.isSub(new Subject("orders.1")));
+
+		final Subject tail = new Subject("orders.*.*");
+		assertTrue(tail.isTailWildCard());
+		assertTrue(tail.isSub(new Subject("orders.1.created")));
+		assertTrue(tail.isSub(new Subject("orders.1.created.foo")));
+		assertFalse(tail.isSub(new Subject("orders.1")));
+		assertFalse(tail.isSub(new Subject("orders.*")));
+		assertTrue(new Subject("orders.*").isSub(tail));
+	}
+
+	@Test
+	public void requestReplyMaxReplies() {
+		assertEquals(Subject.createRequestReplySubject().getMaxReplies(), 0);
+		final Subject limited = Subject.createRequestReplySubject(3);
+		assertTrue(limited.isRequestReply());
+		assertEquals(limited.getMaxReplies(), 3);
+		assertEquals(new Subject("orders.3").getMaxReplies(), 0);
+		assertEquals(new Subject("_abc.def").getMaxReplies(), 0);
+		assertEquals(new Subject("_abc.1234567890").getMaxReplies(), 0);
+	}
+
 	@Test
 	public void testToString() {
 		final String subject = "this.is.a.test";
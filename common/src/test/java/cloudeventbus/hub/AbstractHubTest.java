@@ -0,0 +1,193 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import cloudeventbus.Subject;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class AbstractHubTest {
+
+	private static final Handler<TestHub.Message> NOOP_HANDLER = new Handler<TestHub.Message>() {
+		@Override
+		public void publish(TestHub.Message message) {
+		}
+	};
+
+	@Test
+	public void indexNodesPrunedOnRemove() {
+		final TestHub hub = new TestHub();
+		final SubscriptionHandle exact = hub.subscribe(new Subject("foo.bar"), NOOP_HANDLER);
+		final SubscriptionHandle tail = hub.subscribe(new Subject("foo.bar.*"), NOOP_HANDLER);
+		final SubscriptionHandle single = hub.subscribe(new Subject("foo.*.baz"), NOOP_HANDLER);
+		final SubscriptionHandle all = hub.subscribe(Subject.ALL, NOOP_HANDLER);
+
+		// The exact list plus trie nodes foo, foo.bar, foo.* and foo.*.baz
+		assertEquals(hub.getIndexNodeCount(), 5);
+		// The exact list, foo.bar holding the tail wild card and foo.*.baz
+		assertEquals(hub.getLiveIndexNodeCount(), 3);
+
+		single.remove();
+		assertEquals(hub.getIndexNodeCount(), 3);
+		assertEquals(hub.getLiveIndexNodeCount(), 2);
+
+		tail.remove();
+		// Removing a handle more than once must not release its nodes again
+		tail.remove();
+		exact.remove();
+		all.remove();
+		assertEquals(hub.getIndexNodeCount(), 0);
+		assertEquals(hub.getLiveIndexNodeCount(), 0);
+	}
+
+	@Test
+	public void concurrentSubscribeAndRemove() throws Exception {
+		final TestHub hub = new TestHub();
+		final Subject[] subjects = {new Subject("a.b.c"), new Subject("a.b.*"), new Subject("a.*.c"), new Subject("a.*")};
+		final int threadCount = 4;
+		final CountDownLatch done = new CountDownLatch(threadCount);
+		final List<Throwable> failures = new ArrayList<>();
+		for (int t = 0; t < threadCount; t++) {
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 10000; i++) {
+							hub.subscribe(subjects[i % subjects.length], NOOP_HANDLER).remove();
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		done.await();
+
+		assertEquals(failures.size(), 0);
+		assertEquals(hub.getIndexNodeCount(), 0);
+		assertEquals(hub.getLiveIndexNodeCount(), 0);
+
+		// The pruned index must still route new subscriptions
+		final List<TestHub.Message> messages = new ArrayList<>();
+		hub.subscribe(new Subject("a.*.c"), new Handler<TestHub.Message>() {
+			@Override
+			public void publish(TestHub.Message message) {
+				messages.add(message);
+			}
+		});
+		hub.publish(new Subject("a.b.c"), null, "body");
+		assertEquals(messages.size(), 1);
+	}
+
+	@Test
+	public void droppedNoInterest() {
+		final TestHub hub = new TestHub();
+		final SubscriptionHandle handle = hub.subscribe(new Subject("foo.*.baz"), NOOP_HANDLER);
+		hub.publish(new Subject("foo.bar.baz"), null, "body");
+		assertEquals(hub.getDroppedNoInterestCount(), 0);
+
+		// Rejected by the filter
+		hub.publish(new Subject("bar.foo.baz"), null, "body");
+		// Passes the filter but has no subscribers
+		hub.publish(new Subject("foo.bar.qux"), null, "body");
+		assertEquals(hub.getDroppedNoInterestCount(), 2);
+
+		handle.remove();
+		hub.publish(new Subject("foo.bar.baz"), null, "body");
+		assertEquals(hub.getDroppedNoInterestCount(), 3);
+	}
+
+	@Test
+	public void throttledHandlersDeclineBeforeEncoding() {
+		final AtomicInteger encodeCount = new AtomicInteger();
+		final AbstractHub<String> hub = new AbstractHub<String>() {
+			@Override
+			protected String encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				encodeCount.incrementAndGet();
+				return body.toString();
+			}
+		};
+		final List<String> sampled = new ArrayList<>();
+		final List<String> all = new ArrayList<>();
+		final ThrottledHandler<String> throttledHandler = new ThrottledHandler<>(addTo(sampled), 4, ThrottledHandler.UNLIMITED);
+		hub.subscribe(new Subject("a"), throttledHandler);
+		hub.subscribe(new Subject("a"), addTo(all));
+		for (int i = 0; i < 8; i++) {
+			hub.publish(new Subject("a"), null, "body" + i);
+		}
+		assertEquals(sampled, Arrays.asList("body0", "body4"));
+		assertEquals(all.size(), 8);
+		assertEquals(encodeCount.get(), 8);
+
+		// Messages no handler accepts are never encoded
+		encodeCount.set(0);
+		hub.subscribe(new Subject("b"), throttledHandler);
+		for (int i = 0; i < 8; i++) {
+			hub.publish(new Subject("b"), null, "body");
+		}
+		assertEquals(encodeCount.get(), 2);
+		assertEquals(throttledHandler.getDroppedCount(), 12);
+		assertEquals(hub.getDroppedNoInterestCount(), 0);
+	}
+
+	@Test
+	public void rateLimitedHandler() {
+		final ThrottledHandler<String> handler = new ThrottledHandler<>(addTo(new ArrayList<String>()), 1, 3);
+		final long now = System.nanoTime();
+		assertTrue(handler.accept(now));
+		assertTrue(handler.accept(now + 1));
+		assertTrue(handler.accept(now + 2));
+		assertFalse(handler.accept(now + 3));
+		// A new window starts a second later
+		assertTrue(handler.accept(now + TimeUnit.SECONDS.toNanos(1)));
+
+		// Declined messages are counted when a hub selects the recipients of a message
+		final ThrottledHandler<String> selectedHandler = new ThrottledHandler<>(addTo(new ArrayList<String>()), 1, 3);
+		@SuppressWarnings("unchecked")
+		final Handler<String>[] route = new Handler[] {selectedHandler};
+		for (int i = 0; i < 4; i++) {
+			SelectiveHandler.select(route, new Subject("a"), "body");
+		}
+		assertEquals(selectedHandler.getDroppedCount(), 1);
+	}
+
+	private static Handler<String> addTo(final List<String> messages) {
+		return new Handler<String>() {
+			@Override
+			public void publish(String message) {
+				messages.add(message);
+			}
+		};
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class CompressedBitmapTest {
+
+	@Test
+	public void addAndRemove() {
+		final CompressedBitmap bitmap = new CompressedBitmap();
+		assertTrue(bitmap.isEmpty());
+		assertTrue(bitmap.add(3));
+		assertFalse(bitmap.add(3));
+		assertTrue(bitmap.add(1 << 20));
+		assertTrue(bitmap.contains(3));
+		assertTrue(bitmap.contains(1 << 20));
+		assertFalse(bitmap.contains(4));
+		assertEquals(bitmap.cardinality(), 2);
+
+		assertTrue(bitmap.remove(3));
+		assertFalse(bitmap.remove(3));
+		assertFalse(bitmap.contains(3));
+		assertTrue(bitmap.remove(1 << 20));
+		assertTrue(bitmap.isEmpty());
+	}
+
+	@Test
+	public void denseContainer() {
+		final CompressedBitmap bitmap = new CompressedBitmap();
+		final int count = CompressedBitmap.ARRAY_CONTAINER_MAX_SIZE * 2;
+		for (int i = 0; i < count; i++) {
+			assertTrue(bitmap.add(i * 2));
+		}
+		assertEquals(bitmap.cardinality(), count);
+		for (int i = 0; i < count; i++) {
+			assertTrue(bitmap.contains(i * 2));
+			assertFalse(bitmap.contains(i * 2 + 1));
+		}
+		for (int i = 0; i < count; i += 2) {
+			assertTrue(bitmap.remove(i * 2));
+		}
+		assertEquals(bitmap.cardinality(), count / 2);
+		final int[] values = bitmap.toArray();
+		assertEquals(values.length, count / 2);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], i * 4 + 2);
+		}
+	}
+
+	@Test
+	public void or() {
+		final CompressedBitmap a = new CompressedBitmap();
+		final CompressedBitmap b = new CompressedBitmap();
+		for (int i = 0; i < CompressedBitmap.ARRAY_CONTAINER_MAX_SIZE + 10; i++) {
+			a.add(i);
+		}
+		a.add(200000);
+		b.add(5);
+		b.add(70000);
+		b.add(300000);
+
+		final CompressedBitmap union = new CompressedBitmap();
+		union.or(a);
+		union.or(b);
+		assertEquals(union.cardinality(), CompressedBitmap.ARRAY_CONTAINER_MAX_SIZE + 13);
+		assertTrue(union.contains(70000));
+		assertTrue(union.contains(200000));
+		assertTrue(union.contains(300000));
+
+		// The operands are not modified by the union or by later changes to it
+		union.remove(70000);
+		union.remove(0);
+		assertTrue(b.contains(70000));
+		assertTrue(a.contains(0));
+		assertEquals(b.cardinality(), 3);
+
+		final int[] values = union.toArray();
+		for (int i = 1; i < values.length; i++) {
+			assertTrue(values[i - 1] < values[i]);
+		}
+	}
+}
@@ -19,6 +19,12 @@ package cloudeventbus.hub;
 import cloudeventbus.Subject;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.testng.Assert.assertEquals;
@@ -29,6 +35,10 @@ import static org.testng.Assert.assertTrue;
  */
 public class HubTest {
 
+	protected SubscribeableHub<TestHub.Message> createHub() {
+		return new TestHub();
+	}
+
 	@Test
 	public void simpleSubscribe() throws Exception {
 		final Subject subject = new Subject("test");
@@ -36,7 +46,7 @@ public class HubTest {
 
 		final AtomicBoolean methodCalled = new AtomicBoolean();
 
-		final SubscribeableHub<TestHub.Message> hub = new TestHub();
+		final SubscribeableHub<TestHub.Message> hub = createHub();
 		hub.subscribe(new Subject("test"), new Handler<TestHub.Message>() {
 			@Override
 			public void publish(TestHub.Message message) {
@@ -56,7 +66,7 @@ public class HubTest {
 		final Subject subject = new Subject("test.foo");
 		final Subject wildCardSubject = new Subject("test.*");
 
-		final SubscribeableHub<TestHub.Message> hub = new TestHub();
+		final SubscribeableHub<TestHub.Message> hub = createHub();
 		final CountHandler handler = new CountHandler();
 
 		hub.subscribe(wildCardSubject, handler);
@@ -72,7 +82,7 @@ public class HubTest {
 
 		final AtomicBoolean methodCalled = new AtomicBoolean();
 
-		final SubscribeableHub<TestHub.Message> hub = new TestHub();
+		final SubscribeableHub<TestHub.Message> hub = createHub();
 		hub.subscribe(Subject.ALL, new Handler<TestHub.Message>() {
 			@Override
 			public void publish(TestHub.Message message) {
@@ -94,7 +104,7 @@ public class HubTest {
 
 		final CountHandler handler = new CountHandler();
 
-		final SubscribeableHub<TestHub.Message> hub = new TestHub();
+		final SubscribeableHub<TestHub.Message> hub = createHub();
 		hub.subscribe(Subject.ALL, handler);
 		hub.subscribe(subject, handler);
 		hub.publish(subject, null, body);
@@ -102,6 +112,31 @@ public class HubTest {
 		assertEquals(1, handler.getCallCount());
 	}
 
+	@Test
+	public void doubleSubscribeSingleRemove() throws Exception {
+		final Subject subject = new Subject("test.foo");
+		final CountHandler handler = new CountHandler();
+
+		final SubscribeableHub<TestHub.Message> hub = createHub();
+		final SubscriptionHandle first = hub.subscribe(subject, handler);
+		final SubscriptionHandle second = hub.subscribe(subject, handler);
+		final SubscriptionHandle firstWildCard = hub.subscribe(new Subject("test.*"), handler);
+		final SubscriptionHandle secondWildCard = hub.subscribe(new Subject("test.*"), handler);
+
+		first.remove();
+		firstWildCard.remove();
+		hub.publish(subject, null, "Test");
+		assertEquals(handler.getCallCount(), 1);
+
+		second.remove();
+		hub.publish(subject, null, "Test");
+		assertEquals(handler.getCallCount(), 2);
+
+		secondWildCard.remove();
+		hub.publish(subject, null, "Test");
+		assertEquals(handler.getCallCount(), 2);
+	}
+
 	@Test
 	public void multipleWildCards() throws Exception {
 		final Subject subject1 = new Subject("test1.*");
@@ -114,7 +149,7 @@ public class HubTest {
 		final CountHandler handler2 = new CountHandler();
 		final CountHandler handler3 = new CountHandler();
 
-		final SubscribeableHub<TestHub.Message> hub = new TestHub();
+		final SubscribeableHub<TestHub.Message> hub = createHub();
 		hub.subscribe(Subject.ALL, handlerAll);
 		hub.subscribe(subject1, handler1);
 		hub.subscribe(subject2, handler2);
@@ -142,7 +177,7 @@ public class HubTest {
 		final CountHandler handler2 = new CountHandler();
 		final CountHandler handler3 = new CountHandler();
 
-		final SubscribeableHub<TestHub.Message> hub = new TestHub();
+		final SubscribeableHub<TestHub.Message> hub = createHub();
 		hub.subscribe(Subject.ALL, handlerAll);
 		hub.subscribe(subject1, handler1);
 		hub.subscribe(subject2, handler2);
@@ -159,7 +194,274 @@ public class HubTest {
 		assertEquals(handler3.getCallCount(), 1);
 	}
 
-	private class CountHandler implements Handler<TestHub.Message> {
+	@Test
+	public void singleTokenWildCards() throws Exception {
+		final String body = "Message body";
+
+		final CountHandler middle = new CountHandler();
+		final CountHandler leading = new CountHandler();
+		final CountHandler middleAndTail = new CountHandler();
+
+		final SubscribeableHub<TestHub.Message> hub = createHub();
+		hub.subscribe(new Subject("orders.*.created"), middle);
+		hub.subscribe(new Subject("*.1.created"), leading);
+		hub.subscribe(new Subject("orders.*.*"), middleAndTail);
+
+		hub.publish(new Subject("orders.1.created"), null, body);
+		hub.publish(new Subject("orders.2.created"), null, body);
+		hub.publish(new Subject("orders.1.deleted"), null, body);
+		hub.publish(new Subject("orders.1.created.today"), null, body);
+		hub.publish(new Subject("orders.1"), null, body);
+
+		assertEquals(middle.getCallCount(), 2);
+		assertEquals(leading.getCallCount(), 1);
+		assertEquals(middleAndTail.getCallCount(), 4);
+	}
+
+	@Test
+	public void subscribeAfterPublish() throws Exception {
+		final Subject subject = new Subject("foo.bar");
+		final String body = "Message body";
+
+		final CountHandler handler1 = new CountHandler();
+		final CountHandler handler2 = new CountHandler();
+
+		final SubscribeableHub<TestHub.Message> hub = createHub();
+		hub.subscribe(subject, handler1);
+		hub.publish(subject, null, body);
+
+		// A new subscription must invalidate any cached route for the subject
+		hub.subscribe(new Subject("foo.*"), handler2);
+		hub.publish(subject, null, body);
+
+		assertEquals(handler1.getCallCount(), 2);
+		assertEquals(handler2.getCallCount(), 1);
+	}
+
+	@Test
+	public void removeAfterPublish() throws Exception {
+		final Subject subject = new Subject("foo.bar");
+		final String body = "Message body";
+
+		final CountHandler handler = new CountHandler();
+
+		final SubscribeableHub<TestHub.Message> hub = createHub();
+		final SubscriptionHandle handle = hub.subscribe(subject, handler);
+		hub.publish(subject, null, body);
+		handle.remove();
+		hub.publish(subject, null, body);
+
+		assertEquals(handler.getCallCount(), 1);
+	}
+
+	@Test
+	public void resubscribeAfterRemove() throws Exception {
+		final String body = "Message body";
+		final CountHandler handler = new CountHandler();
+
+		final SubscribeableHub<TestHub.Message> hub = createHub();
+		for (Subject subject : new Subject[] {new Subject("foo.bar"), new Subject("foo.*"), new Subject("*.bar")}) {
+			hub.subscribe(subject, handler).remove();
+			hub.subscribe(subject, handler);
+		}
+		hub.publish(new Subject("foo.bar"), null, body);
+
+		assertEquals(handler.getCallCount(), 1);
+	}
+
+	@Test
+	public void queueGroup() throws Exception {
+		final Subject subject = new Subject("foo.bar");
+		final CountHandler member1 = new CountHandler();
+		final CountHandler member2 = new CountHandler();
+		final CountHandler otherGroupMember = new CountHandler();
+		final CountHandler subscriber = new CountHandler();
+
+		final SubscribeableHub<TestHub.Message> hub = createHub();
+		final SubscriptionHandle handle = hub.subscribe(subject, "workers", member1);
+		hub.subscribe(new Subject("foo.*"), "workers", member2);
+		hub.subscribe(subject, "workers", member2);
+		hub.subscribe(subject, "others", otherGroupMember);
+		hub.subscribe(subject, subscriber);
+		for (int i = 0; i < 10; i++) {
+			hub.publish(subject, null, "Test");
+		}
+
+		// Each group gets every message once, members of the same group share them
+		assertEquals(member1.getCallCount(), 5);
+		assertEquals(member2.getCallCount(), 15);
+		assertEquals(otherGroupMember.getCallCount(), 10);
+		assertEquals(subscriber.getCallCount(), 10);
+
+		handle.remove();
+		hub.publish(subject, null, "Test");
+		assertEquals(member1.getCallCount(), 5);
+		assertEquals(member2.getCallCount(), 17);
+	}
+
+	@Test
+	public void queueGroupSharesEvenlyAfterRemove() throws Exception {
+		final Subject subject = new Subject("foo.bar");
+		final CountHandler member1 = new CountHandler();
+		final CountHandler member2 = new CountHandler();
+		final CountHandler member3 = new CountHandler();
+
+		final SubscribeableHub<TestHub.Message> hub = createHub();
+		hub.subscribe(subject, "workers", member1);
+		final SubscriptionHandle handle = hub.subscribe(subject, "workers", member2);
+		hub.subscribe(subject, "workers", member3);
+		handle.remove();
+		for (int i = 0; i < 100; i++) {
+			hub.publish(subject, null, "Test");
+		}
+
+		// The member following the removed member doesn't get the removed member's turns
+		assertEquals(member1.getCallCount(), 50);
+		assertEquals(member2.getCallCount(), 0);
+		assertEquals(member3.getCallCount(), 50);
+	}
+
+	@Test
+	public void queueGroupPrefersFewerPendingBytes() throws Exception {
+		final Subject subject = new Subject("foo.bar");
+		final PendingHandler busy = new PendingHandler(1000);
+		final PendingHandler idle = new PendingHandler(0);
+
+		final SubscribeableHub<TestHub.Message> hub = createHub();
+		hub.subscribe(subject, "workers", busy);
+		hub.subscribe(subject, "workers", idle);
+		for (int i = 0; i < 10; i++) {
+			hub.publish(subject, null, "Test");
+		}
+
+		// The busy member's turns go to the idle member
+		assertEquals(busy.getCallCount(), 0);
+		assertEquals(idle.getCallCount(), 10);
+	}
+
+	@Test
+	public void partitionedQueueGroup() throws Exception {
+		final Subject subject = new Subject("orders.*.created");
+		final SubscribeableHub<TestHub.Message> hub = createHub();
+		final List<Map<String, Integer>> received = new ArrayList<>();
+		final List<SubscriptionHandle> handles = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			final Map<String, Integer> keys = new HashMap<>();
+			received.add(keys);
+			handles.add(hub.subscribe(subject, "billing", 1, i, new Handler<TestHub.Message>() {
+				@Override
+				public void publish(TestHub.Message message) {
+					final String key = message.getSubject().getToken(1);
+					keys.put(key, keys.containsKey(key) ? keys.get(key) + 1 : 1);
+				}
+			}));
+		}
+		for (int i = 0; i < 300; i++) {
+			hub.publish(new Subject("orders." + (i % 100) + ".created"), null, "Test");
+		}
+
+		// Every key goes to exactly one member
+		int keyCount = 0;
+		for (Map<String, Integer> keys : received) {
+			assertTrue(keys.size() > 0);
+			for (int count : keys.values()) {
+				assertEquals(count, 3);
+			}
+			keyCount += keys.size();
+		}
+		assertEquals(keyCount, 100);
+
+		// Removing a member only moves the keys it owned
+		handles.get(0).remove();
+		final Map<String, Integer> remainingKeys = new HashMap<>(received.get(1));
+		for (int i = 0; i < 100; i++) {
+			hub.publish(new Subject("orders." + i + ".created"), null, "Test");
+		}
+		for (Map.Entry<String, Integer> entry : remainingKeys.entrySet()) {
+			assertEquals(received.get(1).get(entry.getKey()).intValue(), entry.getValue() + 1);
+		}
+		assertEquals(received.get(1).size() + received.get(2).size(), 100);
+	}
+
+	@Test
+	public void partitionedMemberKeepsKeysWhenRejoining() throws Exception {
+		final Subject subject = new Subject("orders.*.created");
+		final SubscribeableHub<TestHub.Message> hub = createHub();
+		final KeyHandler first = new KeyHandler();
+		final SubscriptionHandle handle = hub.subscribe(subject, "billing", 1, 1, first);
+		hub.subscribe(subject, "billing", 1, 2, new KeyHandler());
+		hub.subscribe(subject, "billing", 1, 3, new KeyHandler());
+		for (int i = 0; i < 100; i++) {
+			hub.publish(new Subject("orders." + i + ".created"), null, "Test");
+		}
+		assertTrue(first.keys.size() > 0);
+
+		// A new handler with the same member id, a reconnected client for example, owns the same keys
+		handle.remove();
+		final KeyHandler rejoined = new KeyHandler();
+		hub.subscribe(subject, "billing", 1, 1, rejoined);
+		for (int i = 0; i < 100; i++) {
+			hub.publish(new Subject("orders." + i + ".created"), null, "Test");
+		}
+		assertEquals(rejoined.keys, first.keys);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void partitionTokenOutOfRange() {
+		createHub().subscribe(new Subject("orders.*"), "billing", 2, 0, new CountHandler());
+	}
+
+	@Test
+	public void subscribeAll() throws Exception {
+		final CountHandler handler = new CountHandler();
+		final CountHandler otherHandler = new CountHandler();
+
+		final SubscribeableHub<TestHub.Message> hub = createHub();
+		hub.subscribe(new Subject("foo.bar"), otherHandler);
+		final List<SubscriptionHandle> handles = hub.subscribeAll(Subject.list("foo.bar", "foo.*", "baz", "qux.*.quux"), handler);
+		assertEquals(handles.size(), 4);
+		hub.publish(new Subject("foo.bar"), null, "Test");
+		hub.publish(new Subject("baz"), null, "Test");
+		hub.publish(new Subject("qux.1.quux"), null, "Test");
+		assertEquals(handler.getCallCount(), 3);
+		assertEquals(otherHandler.getCallCount(), 1);
+
+		// Handles are returned in the same order as the subjects
+		handles.get(1).remove();
+		handles.get(2).remove();
+		hub.publish(new Subject("foo.bar"), null, "Test");
+		hub.publish(new Subject("foo.baz"), null, "Test");
+		hub.publish(new Subject("baz"), null, "Test");
+		assertEquals(handler.getCallCount(), 4);
+		assertEquals(otherHandler.getCallCount(), 2);
+	}
+
+	static class KeyHandler implements Handler<TestHub.Message> {
+
+		// The partition keys of the messages received
+		private final Set<String> keys = new HashSet<>();
+
+		@Override
+		public void publish(TestHub.Message message) {
+			keys.add(message.getSubject().getToken(1));
+		}
+	}
+
+	static class PendingHandler extends CountHandler implements BufferedHandler<TestHub.Message> {
+
+		private final long pendingBytes;
+
+		PendingHandler(long pendingBytes) {
+			this.pendingBytes = pendingBytes;
+		}
+
+		@Override
+		public long getPendingBytes() {
+			return pendingBytes;
+		}
+	}
+
+	static class CountHandler implements Handler<TestHub.Message> {
 
 		private int callCount = 0;
 
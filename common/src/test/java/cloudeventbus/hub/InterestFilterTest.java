@@ -0,0 +1,85 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import cloudeventbus.Subject;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class InterestFilterTest {
+
+	@Test
+	public void exactSubjects() {
+		final InterestFilter filter = new InterestFilter();
+		assertFalse(filter.mightMatch(new Subject("foo.bar")));
+		filter.add(new Subject("foo.bar"));
+		filter.add(new Subject("foo.bar"));
+		assertTrue(filter.mightMatch(new Subject("foo.bar")));
+		assertFalse(filter.mightMatch(new Subject("foo")));
+		assertFalse(filter.mightMatch(new Subject("foo.bar.baz")));
+
+		filter.remove(new Subject("foo.bar"));
+		assertTrue(filter.mightMatch(new Subject("foo.bar")));
+		filter.remove(new Subject("foo.bar"));
+		assertFalse(filter.mightMatch(new Subject("foo.bar")));
+	}
+
+	@Test
+	public void wildCardPrefixes() {
+		final InterestFilter filter = new InterestFilter();
+		filter.add(new Subject("foo.bar.*"));
+		filter.add(new Subject("baz.*.qux"));
+		assertTrue(filter.mightMatch(new Subject("foo.bar.baz")));
+		assertTrue(filter.mightMatch(new Subject("foo.bar.baz.qux")));
+		assertTrue(filter.mightMatch(new Subject("baz.foo.qux")));
+		// The wild card must match a token
+		assertFalse(filter.mightMatch(new Subject("foo.bar")));
+		assertFalse(filter.mightMatch(new Subject("baz")));
+		assertFalse(filter.mightMatch(new Subject("foo.baz.bar")));
+
+		filter.remove(new Subject("foo.bar.*"));
+		assertFalse(filter.mightMatch(new Subject("foo.bar.baz")));
+		assertTrue(filter.mightMatch(new Subject("baz.foo.qux")));
+	}
+
+	@Test
+	public void leadingWildCardMatchesEverything() {
+		final InterestFilter filter = new InterestFilter();
+		filter.add(new Subject("*.foo"));
+		assertTrue(filter.mightMatch(new Subject("bar")));
+		filter.remove(new Subject("*.foo"));
+		assertFalse(filter.mightMatch(new Subject("bar")));
+	}
+
+	@Test
+	public void noFalseNegatives() {
+		final InterestFilter filter = new InterestFilter(1 << 10);
+		for (int i = 0; i < 5000; i++) {
+			filter.add(new Subject("orders." + i));
+			filter.add(new Subject("users." + i + ".*"));
+		}
+		for (int i = 0; i < 5000; i++) {
+			assertTrue(filter.mightMatch(new Subject("orders." + i)));
+			assertTrue(filter.mightMatch(new Subject("users." + i + ".created")));
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import cloudeventbus.Subject;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Runs the {@link HubTest} tests against {@link OffHeapHub}.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class OffHeapHubTest extends HubTest {
+
+	@Override
+	protected OffHeapHub<TestHub.Message> createHub() {
+		return new OffHeapHub<TestHub.Message>() {
+			@Override
+			protected TestHub.Message encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				return new TestHub.Message(subject, replySubject, body);
+			}
+		};
+	}
+
+	@Test
+	public void nodesFreedOnRemove() {
+		final OffHeapHub<TestHub.Message> hub = createHub();
+		final CountHandler handler = new CountHandler();
+		final List<SubscriptionHandle> handles = new ArrayList<>();
+		// Enough subscriptions to grow the edge table, long tokens span several blocks and share a prefix
+		final String longToken = "a_token_that_is_much_longer_than_a_single_token_block";
+		for (int i = 0; i < 5000; i++) {
+			handles.add(hub.subscribe(new Subject("orders." + i + ".created"), handler));
+			handles.add(hub.subscribe(new Subject(longToken + i + ".*"), handler));
+		}
+		handles.add(hub.subscribe(new Subject("orders.*.created"), handler));
+		hub.publish(new Subject("orders.42.created"), null, "body");
+		hub.publish(new Subject(longToken + "42.foo.bar"), null, "body");
+		hub.publish(new Subject(longToken + "4.foo"), null, "body");
+		hub.publish(new Subject(longToken + "42"), null, "body");
+		assertEquals(handler.getCallCount(), 3);
+
+		// Removing the orders subscriptions must keep the others reachable
+		for (int i = 0; i < handles.size(); i += 2) {
+			handles.get(i).remove();
+		}
+		hub.publish(new Subject("orders.42.created"), null, "body");
+		hub.publish(new Subject(longToken + "42.foo"), null, "body");
+		assertEquals(handler.getCallCount(), 4);
+
+		for (SubscriptionHandle handle : handles) {
+			handle.remove();
+		}
+		// Only the root is left
+		assertEquals(hub.getIndexNodeCount(), 1);
+		hub.publish(new Subject(longToken + "42.foo"), null, "body");
+		assertEquals(handler.getCallCount(), 4);
+	}
+}
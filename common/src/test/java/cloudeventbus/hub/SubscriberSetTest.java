@@ -0,0 +1,136 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.hub;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class SubscriberSetTest {
+
+	@Test
+	public void addAndRemove() {
+		final SubscriberSet<Object> set = new SubscriberSet<>();
+		assertTrue(set.isEmpty());
+		final Handler<Object> a = newHandler();
+		final Handler<Object> b = newHandler();
+		final SubscriberSet.Slot<Object> slotA = set.add(a);
+		final SubscriberSet.Slot<Object> slotB = set.add(b);
+		assertEquals(handlers(set).size(), 2);
+
+		set.remove(slotA);
+		set.remove(slotA);
+		assertFalse(set.isEmpty());
+		assertEquals(handlers(set), Collections.singleton(b));
+		set.remove(slotB);
+		assertTrue(set.isEmpty());
+		assertTrue(handlers(set).isEmpty());
+	}
+
+	@Test
+	public void tombstonesCompacted() {
+		final SubscriberSet<Object> set = new SubscriberSet<>();
+		final List<SubscriberSet.Slot<Object>> slots = new ArrayList<>();
+		final List<Handler<Object>> handlers = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			final Handler<Object> handler = newHandler();
+			handlers.add(handler);
+			slots.add(set.add(handler));
+		}
+		// Remove every handler but each tenth
+		for (int i = 0; i < slots.size(); i++) {
+			if (i % 10 != 0) {
+				set.remove(slots.get(i));
+			}
+		}
+		assertTrue(set.getSize() < 200, "Tombstones were not compacted, size " + set.getSize());
+		final Set<Handler<Object>> remaining = handlers(set);
+		assertEquals(remaining.size(), 100);
+		for (int i = 0; i < handlers.size(); i += 10) {
+			assertTrue(remaining.contains(handlers.get(i)));
+		}
+
+		// Slots moved by compaction can still be removed
+		for (int i = 0; i < slots.size(); i += 10) {
+			set.remove(slots.get(i));
+		}
+		assertTrue(set.isEmpty());
+		assertEquals(set.getSize(), 0);
+	}
+
+	@Test
+	public void churnAtCapacityGrows() {
+		final SubscriberSet<Object> set = new SubscriberSet<>();
+		final List<SubscriberSet.Slot<Object>> slots = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			slots.add(set.add(newHandler()));
+		}
+		assertEquals(set.getSlots().length, 16);
+		set.remove(slots.get(0));
+
+		// A full array that is mostly live grows instead of being compacted to the same capacity on every add
+		SubscriberSet.Slot<Object> slot = set.add(newHandler());
+		final int capacity = set.getSlots().length;
+		assertTrue(capacity > 16, "Array didn't grow, capacity " + capacity);
+		for (int i = 0; i < 1000; i++) {
+			set.remove(slot);
+			slot = set.add(newHandler());
+		}
+		assertEquals(set.getLiveCount(), 16);
+		assertEquals(set.getSlots().length, capacity);
+	}
+
+	@Test
+	public void versions() {
+		final SubscriberSet<Object> set = new SubscriberSet<>();
+		final Handler<Object> a = newHandler();
+		final Handler<Object> b = newHandler();
+		set.add(a, 1);
+		set.add(b, 2);
+
+		final Set<Handler<Object>> handlers = new HashSet<>();
+		set.addTo(handlers, 1);
+		assertEquals(handlers, Collections.singleton(a));
+		set.addTo(handlers, 2);
+		assertEquals(handlers.size(), 2);
+	}
+
+	private static Handler<Object> newHandler() {
+		return new Handler<Object>() {
+			@Override
+			public void publish(Object message) {
+			}
+		};
+	}
+
+	private static Set<Handler<Object>> handlers(SubscriberSet<Object> set) {
+		final Set<Handler<Object>> handlers = new HashSet<>();
+		set.addTo(handlers);
+		return handlers;
+	}
+}
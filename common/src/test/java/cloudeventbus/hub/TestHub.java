@@ -28,10 +28,10 @@ class TestHub extends AbstractHub<TestHub.Message> {
 		final Subject replySubject;
 		final String body;
 
-		Message(Subject subject, Subject replySubject, String body) {
+		Message(Subject subject, Subject replySubject, CharSequence body) {
 			this.subject = subject;
 			this.replySubject = replySubject;
-			this.body = body;
+			this.body = body.toString();
 		}
 
 		public Subject getSubject() {
@@ -48,7 +48,7 @@ class TestHub extends AbstractHub<TestHub.Message> {
 	}
 
 	@Override
-	protected TestHub.Message encode(Subject subject, Subject replySubject, String body, int recipientCount) {
+	protected TestHub.Message encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
 		return new Message(subject, replySubject, body);
 	}
 }
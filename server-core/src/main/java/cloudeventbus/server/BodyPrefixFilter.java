@@ -0,0 +1,60 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.MessageBody;
+import cloudeventbus.hub.SelectionContext;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Matches messages whose body starts with a prefix. Bodies received over the network are matched against the
+ * prefix's UTF-8 bytes without being decoded.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+class BodyPrefixFilter implements MessageFilter {
+
+	private final String prefix;
+	private final byte[] prefixBytes;
+
+	BodyPrefixFilter(String prefix) {
+		this.prefix = prefix;
+		this.prefixBytes = prefix.getBytes(CharsetUtil.UTF_8);
+	}
+
+	@Override
+	public boolean matches(SelectionContext context) {
+		final CharSequence body = context.getBody();
+		if (body instanceof MessageBody) {
+			return ((MessageBody) body).startsWith(prefixBytes);
+		}
+		return body.toString().startsWith(prefix);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+
+		return prefix.equals(((BodyPrefixFilter) o).prefix);
+	}
+
+	@Override
+	public int hashCode() {
+		return prefix.hashCode();
+	}
+}
@@ -37,7 +37,7 @@ public class ClientPeer implements Peer {
 	}
 
 	@Override
-	public void publish(Subject subject, Subject replySubject, String body) {
+	public void publish(Subject subject, Subject replySubject, CharSequence body) {
 		eventBus.publish(subject.toString(), replySubject == null ? null : replySubject.toString(), body);
 	}
 
@@ -77,7 +77,7 @@ public class ClusterManager implements Hub {
 			}
 
 			@Override
-			public void publish(Subject subject, Subject replySubject, String body) {
+			public void publish(Subject subject, Subject replySubject, CharSequence body) {
 				// Do nothing
 			}
 
@@ -107,7 +107,7 @@ public class ClusterManager implements Hub {
 	 * Publishes to all the peer servers.
 	 */
 	@Override
-	public void publish(Subject subject, Subject replySubject, String body) {
+	public void publish(Subject subject, Subject replySubject, CharSequence body) {
 		// TODO Cache the list of known peers so we don't have contention on lock. When a write fails because the peer is closed, update cache. When peer changes in PeerInfo, update cache.
 		synchronized (lock) {
 			for (PeerInfo peerInfo : knownPeers.values()) {
@@ -0,0 +1,304 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.Subject;
+import cloudeventbus.codec.Frame;
+import cloudeventbus.codec.SubscribeFrame;
+import cloudeventbus.codec.SubscriptionOptions;
+import cloudeventbus.hub.Handler;
+import cloudeventbus.hub.SelectiveHandler;
+import cloudeventbus.hub.SubscribeableHub;
+import cloudeventbus.hub.SubscriptionHandle;
+import cloudeventbus.hub.ThrottledHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the subscriptions of a single connection. A subscription that is covered by another subscription of the same
+ * connection, {@code a.b.c} by {@code a.b.*} for example, is not registered with the hub because the covering
+ * subscription already delivers every message it matches. When the covering subscription is removed, the subscriptions
+ * it covered are registered with the hub again before the covering subscription is removed from the hub so no
+ * messages are missed.
+ *
+ * <p>Queue group subscriptions are always registered with the hub since their messages are shared with other members
+ * of the group. Filtered, sampled and rate limited subscriptions are registered with their own
+ * {@link SelectiveHandler} and never cover other subscriptions since they don't deliver every message they match.
+ *
+ * <p>The subscriptions that aren't in a queue group are indexed by subject so finding the subscriptions covering, or
+ * covered by, a subscription doesn't look at every subscription of the connection. A connection subscribing to many
+ * subjects at once stays cheap.
+ *
+ * <p>Instances of this class are not thread safe, they are meant to be used from the connection's event loop.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+class ConnectionSubscriptions {
+
+	private final SubscribeableHub<Frame> hub;
+	private final Handler<Frame> handler;
+	private final Map<Subject, Subscription> subscriptions = new HashMap<>();
+	// The subscriptions that aren't in a queue group, the only ones that can cover or be covered
+	private final SubjectTrie<Subscription> coverageIndex = new SubjectTrie<>();
+
+	// The messages dropped by selective subscriptions that have been removed
+	private long removedDroppedCount;
+
+	// Identifies this connection's memberships in partitioned queue groups
+	private long clientId;
+
+	ConnectionSubscriptions(SubscribeableHub<Frame> hub, Handler<Frame> handler) {
+		this.hub = hub;
+		this.handler = handler;
+	}
+
+	/**
+	 * Sets the id the client sent in its greeting. Partitioned queue groups tell members apart by it so a client that
+	 * reconnects gets its partition keys back.
+	 */
+	public void setClientId(long clientId) {
+		this.clientId = clientId;
+	}
+
+	public boolean contains(Subject subject) {
+		return subscriptions.containsKey(subject);
+	}
+
+	public void subscribe(Subject subject, String queueGroup) {
+		subscribe(subject, queueGroup, SubscribeFrame.NOT_PARTITIONED);
+	}
+
+	public void subscribe(Subject subject, String queueGroup, int partitionToken) {
+		subscribe(subject, queueGroup, partitionToken, SubscriptionOptions.NONE);
+	}
+
+	public void subscribe(Subject subject, String queueGroup, int partitionToken, SubscriptionOptions options) {
+		if (queueGroup != null && !Subject.isValidToken(queueGroup)) {
+			throw new IllegalArgumentException("Invalid queue group '" + queueGroup + "'");
+		}
+		final Subscription subscription = new Subscription(subject, queueGroup, partitionToken, handlerFor(options));
+		if (queueGroup != null) {
+			// Subscribe before tracking the subscription in case the hub rejects it
+			subscription.handle = subscribeQueueGroup(subscription);
+			subscriptions.put(subject, subscription);
+			return;
+		}
+		subscriptions.put(subject, subscription);
+		coverageIndex.put(subject, subscription);
+		if (!isCovered(subscription)) {
+			subscription.handle = hub.subscribe(subject, subscription.handler);
+			if (subscription.handler == handler) {
+				removeCoveredBy(subscription);
+			}
+		}
+	}
+
+	/**
+	 * Adds every subscription, registering the ones that are not covered with the hub as a single batch.
+	 */
+	public void subscribeAll(List<SubscribeFrame> subscribeFrames) {
+		final List<Subscription> added = new ArrayList<>(subscribeFrames.size());
+		for (SubscribeFrame subscribeFrame : subscribeFrames) {
+			final Subscription subscription = new Subscription(subscribeFrame.getSubject(), subscribeFrame.getQueueGroup(),
+					subscribeFrame.getPartitionToken(), handlerFor(subscribeFrame.getOptions()));
+			if (subscription.queueGroup != null) {
+				// Subscribe before tracking the subscription in case the hub rejects it
+				subscription.handle = subscribeQueueGroup(subscription);
+			} else {
+				added.add(subscription);
+				coverageIndex.put(subscription.subject, subscription);
+			}
+			subscriptions.put(subscription.subject, subscription);
+		}
+		// Coverage is decided once every subscription in the batch is tracked
+		final List<Subscription> uncovered = new ArrayList<>();
+		for (Subscription subscription : added) {
+			if (!isCovered(subscription)) {
+				uncovered.add(subscription);
+			}
+		}
+		register(uncovered);
+		for (Subscription subscription : uncovered) {
+			if (subscription.handler == handler) {
+				removeCoveredBy(subscription);
+			}
+		}
+	}
+
+	/**
+	 * Removes the subscription to the subject.
+	 *
+	 * @return {@code false} if the connection isn't subscribed to the subject.
+	 */
+	public boolean unsubscribe(Subject subject) {
+		final Subscription subscription = subscriptions.remove(subject);
+		if (subscription == null) {
+			return false;
+		}
+		removedDroppedCount += getDroppedCount(subscription);
+		if (subscription.queueGroup == null) {
+			coverageIndex.remove(subject);
+		}
+		if (subscription.handle == null) {
+			// Covered by another subscription, nothing was registered with the hub
+			return true;
+		}
+		if (subscription.queueGroup == null && subscription.handler == handler) {
+			// Register the subscriptions that are no longer covered before removing the covering subscription
+			final List<Subscription> coveredBy = new ArrayList<>();
+			coverageIndex.findCoveredBy(subject, coveredBy);
+			final List<Subscription> uncovered = new ArrayList<>();
+			for (Subscription covered : coveredBy) {
+				if (covered.handle == null && !isCovered(covered)) {
+					uncovered.add(covered);
+				}
+			}
+			register(uncovered);
+		}
+		subscription.handle.remove();
+		return true;
+	}
+
+	public void unsubscribeAll() {
+		for (Subscription subscription : subscriptions.values()) {
+			removedDroppedCount += getDroppedCount(subscription);
+			if (subscription.handle != null) {
+				subscription.handle.remove();
+			}
+		}
+		subscriptions.clear();
+		coverageIndex.clear();
+	}
+
+	/**
+	 * Returns the number of this connection's subscriptions that are registered with the hub.
+	 */
+	public int getRegisteredCount() {
+		int count = 0;
+		for (Subscription subscription : subscriptions.values()) {
+			if (subscription.handle != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of messages this connection's filtered, sampled and rate limited subscriptions didn't receive,
+	 * including the subscriptions that have been removed.
+	 */
+	public long getDroppedCount() {
+		long count = removedDroppedCount;
+		for (Subscription subscription : subscriptions.values()) {
+			count += getDroppedCount(subscription);
+		}
+		return count;
+	}
+
+	private static long getDroppedCount(Subscription subscription) {
+		return subscription.handler instanceof SelectiveHandler ? ((SelectiveHandler<Frame>) subscription.handler).getDroppedCount() : 0;
+	}
+
+	private Handler<Frame> handlerFor(SubscriptionOptions options) {
+		Handler<Frame> selectiveHandler = handler;
+		// Sampling and rate limits apply to the messages that pass the filters
+		if (options.isThrottled()) {
+			selectiveHandler = new ThrottledHandler<>(selectiveHandler, options.getSampleEvery(), options.getMaxRate());
+		}
+		if (options.isFiltered()) {
+			selectiveHandler = new FilteredHandler(selectiveHandler, options);
+		}
+		return selectiveHandler;
+	}
+
+	private SubscriptionHandle subscribeQueueGroup(Subscription subscription) {
+		return subscription.partitionToken == SubscribeFrame.NOT_PARTITIONED ?
+				hub.subscribe(subscription.subject, subscription.queueGroup, handler) :
+				hub.subscribe(subscription.subject, subscription.queueGroup, subscription.partitionToken, clientId, handler);
+	}
+
+	private void register(List<Subscription> uncovered) {
+		if (uncovered.isEmpty()) {
+			return;
+		}
+		// Selective subscriptions each have their own handler, the rest are registered as one batch
+		final List<Subscription> batch = new ArrayList<>(uncovered.size());
+		final List<Subject> subjects = new ArrayList<>(uncovered.size());
+		for (Subscription subscription : uncovered) {
+			if (subscription.handler == handler) {
+				batch.add(subscription);
+				subjects.add(subscription.subject);
+			} else {
+				subscription.handle = hub.subscribe(subscription.subject, subscription.handler);
+			}
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		final List<SubscriptionHandle> handles = hub.subscribeAll(subjects, handler);
+		for (int i = 0; i < batch.size(); i++) {
+			batch.get(i).handle = handles.get(i);
+		}
+	}
+
+	/**
+	 * Indicates if any other subscription of this connection delivers every message the subscription matches. Covering
+	 * is transitive so a covered subscription is always covered by a registered one.
+	 */
+	private boolean isCovered(Subscription subscription) {
+		final List<Subscription> covering = new ArrayList<>();
+		coverageIndex.findCovering(subscription.subject, covering);
+		for (Subscription other : covering) {
+			if (other != subscription && other.handler == handler) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void removeCoveredBy(Subscription covering) {
+		final List<Subscription> covered = new ArrayList<>();
+		coverageIndex.findCoveredBy(covering.subject, covered);
+		for (Subscription subscription : covered) {
+			if (subscription != covering && subscription.handle != null) {
+				subscription.handle.remove();
+				subscription.handle = null;
+			}
+		}
+	}
+
+	private static class Subscription {
+		private final Subject subject;
+		private final String queueGroup;
+		private final int partitionToken;
+		// The connection's handler or a selective handler wrapping it
+		private final Handler<Frame> handler;
+
+		// The handle of the subscription in the hub or null if the subscription is covered by another subscription
+		private SubscriptionHandle handle;
+
+		private Subscription(Subject subject, String queueGroup, int partitionToken, Handler<Frame> handler) {
+			this.subject = subject;
+			this.queueGroup = queueGroup;
+			this.partitionToken = partitionToken;
+			this.handler = handler;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.codec.Frame;
+import cloudeventbus.codec.SubscriptionOptions;
+import cloudeventbus.hub.Handler;
+import cloudeventbus.hub.SelectionContext;
+import cloudeventbus.hub.SelectiveHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Only passes on the messages that match every one of its filters. The result of each filter is cached in the
+ * message's {@link SelectionContext} so a filter shared by many subscriptions is evaluated once per message.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+class FilteredHandler extends SelectiveHandler<Frame> {
+
+	private final MessageFilter[] filters;
+
+	FilteredHandler(Handler<Frame> handler, SubscriptionOptions options) {
+		super(handler);
+		final List<MessageFilter> filters = new ArrayList<>();
+		if (options.getBodyPrefix() != null) {
+			filters.add(new BodyPrefixFilter(options.getBodyPrefix()));
+		}
+		if (options.getField() != null) {
+			filters.add(new JsonFieldFilter(options.getField(), options.getFieldValue()));
+		}
+		this.filters = filters.toArray(new MessageFilter[filters.size()]);
+	}
+
+	@Override
+	protected boolean accept(SelectionContext context) {
+		for (MessageFilter filter : filters) {
+			Boolean matches = (Boolean) context.getCached(filter);
+			if (matches == null) {
+				matches = filter.matches(context);
+				context.putCached(filter, matches);
+			}
+			if (!matches) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -21,6 +21,7 @@ import cloudeventbus.hub.Hub;
 
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This hub is responsible for distributing messages to all client connections and forwarding messages to peer servers.
@@ -32,6 +33,21 @@ public class GlobalHub {
 
 	private final List<Hub> localHubs = new CopyOnWriteArrayList<>();
 	private final List<Hub> remoteHubs = new CopyOnWriteArrayList<>();
+	private final HeavyHitters heavyHitters;
+	private final AtomicLong subscriptionDroppedCount = new AtomicLong();
+
+	public GlobalHub() {
+		this(null);
+	}
+
+	/**
+	 * Creates a global hub that counts every message it distributes in {@code heavyHitters}.
+	 *
+	 * @param heavyHitters the tracker used to find the busiest subjects, may be {@code null}
+	 */
+	public GlobalHub(HeavyHitters heavyHitters) {
+		this.heavyHitters = heavyHitters;
+	}
 
 	/**
 	 * Use this method to distribute messages to just the local subscribers.
@@ -40,7 +56,10 @@ public class GlobalHub {
 	 * @param replySubject the subject replies should be sent to
 	 * @param body the body of the message
 	 */
-	public void publish(Subject subject, Subject replySubject, String body) {
+	public void publish(Subject subject, Subject replySubject, CharSequence body) {
+		if (heavyHitters != null) {
+			heavyHitters.record(subject, body);
+		}
 		for (Hub hub : localHubs) {
 			hub.publish(subject, replySubject, body);
 		}
@@ -53,7 +72,7 @@ public class GlobalHub {
 	 * @param replySubject the subject replies should be sent to
 	 * @param body the body of the message
 	 */
-	public void broadcast(Subject subject, Subject replySubject, String body) {
+	public void broadcast(Subject subject, Subject replySubject, CharSequence body) {
 		for (Hub hub : remoteHubs) {
 			hub.publish(subject, replySubject, body);
 		}
@@ -67,4 +86,27 @@ public class GlobalHub {
 	public void addRemoteHub(Hub hub) {
 		remoteHubs.add(hub);
 	}
+
+	/**
+	 * Adds to the number of messages filtered, sampled and rate limited subscriptions kept from their connections.
+	 * Connections report the messages they dropped periodically rather than as they're dropped.
+	 */
+	public void addSubscriptionDroppedCount(long count) {
+		subscriptionDroppedCount.addAndGet(count);
+	}
+
+	/**
+	 * Returns the number of messages filtered, sampled and rate limited subscriptions have kept from their connections
+	 * as of the connections' last reports.
+	 */
+	public long getSubscriptionDroppedCount() {
+		return subscriptionDroppedCount.get();
+	}
+
+	/**
+	 * Returns the tracker counting the messages distributed by this hub or {@code null} if messages are not tracked.
+	 */
+	public HeavyHitters getHeavyHitters() {
+		return heavyHitters;
+	}
 }
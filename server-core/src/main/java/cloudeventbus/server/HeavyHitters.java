@@ -0,0 +1,357 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.MessageBody;
+import cloudeventbus.Subject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Finds the subjects that carry the most messages and the most bytes without keeping a counter for every subject.
+ *
+ * <p>Messages are counted in count-min sketches, one for message counts and one for body lengths, which never
+ * underestimate and overestimate by a bounded amount. Each sketch is split into stripes picked by the publishing thread
+ * so that event loops don't contend on the same counters. Alongside the sketches, a small heap keeps the subjects with
+ * the largest estimates as candidates for the report. Publishing threads only update the heap when a subject's
+ * estimate beats the smallest candidate and skip the update if another thread holds the heap's lock.
+ *
+ * <p>Counts are kept in a ring of fixed length windows. Reports cover the windows that haven't expired, so they
+ * describe the traffic over the last {@link #getReportLength()} milliseconds.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class HeavyHitters {
+
+	public static final int DEFAULT_TOP_SUBJECTS = 10;
+	public static final int DEFAULT_WIDTH = 1024;
+	public static final int DEFAULT_DEPTH = 4;
+	public static final int DEFAULT_WINDOW_COUNT = 6;
+	public static final long DEFAULT_WINDOW_LENGTH = TimeUnit.SECONDS.toMillis(10);
+
+	private static final int MAX_STRIPES = 4;
+
+	private static final Comparator<Estimate> ESTIMATE_COMPARATOR = new Comparator<Estimate>() {
+		@Override
+		public int compare(Estimate o1, Estimate o2) {
+			return o1.estimate < o2.estimate ? -1 : (o1.estimate == o2.estimate ? 0 : 1);
+		}
+	};
+
+	private final int topSubjects;
+	private final int depth;
+	private final int widthMask;
+	private final int stripeMask;
+	private final long windowLength;
+	private final Window[] windows;
+
+	public HeavyHitters() {
+		this(DEFAULT_TOP_SUBJECTS);
+	}
+
+	public HeavyHitters(int topSubjects) {
+		this(topSubjects, DEFAULT_WIDTH, DEFAULT_DEPTH, DEFAULT_WINDOW_COUNT, DEFAULT_WINDOW_LENGTH);
+	}
+
+	/**
+	 * Creates a heavy hitter tracker.
+	 *
+	 * @param topSubjects the number of subjects included in a report
+	 * @param width the number of counters in each row of a sketch, rounded up to the next power of two. Wider sketches
+	 *              overestimate less.
+	 * @param depth the number of rows in a sketch. Deeper sketches are less likely to overestimate.
+	 * @param windowCount the number of windows reports cover
+	 * @param windowLength the length of each window in milliseconds
+	 */
+	public HeavyHitters(int topSubjects, int width, int depth, int windowCount, long windowLength) {
+		if (topSubjects < 1 || width < 1 || depth < 1 || windowCount < 1 || windowLength < 1) {
+			throw new IllegalArgumentException("topSubjects, width, depth, windowCount and windowLength must be greater than 0");
+		}
+		this.topSubjects = topSubjects;
+		this.depth = depth;
+		this.widthMask = powerOfTwo(width) - 1;
+		this.stripeMask = Math.min(powerOfTwo(Runtime.getRuntime().availableProcessors()), MAX_STRIPES) - 1;
+		this.windowLength = windowLength;
+		windows = new Window[windowCount];
+		for (int i = 0; i < windowCount; i++) {
+			windows[i] = new Window();
+		}
+	}
+
+	/**
+	 * Counts a message published to {@code subject}.
+	 */
+	public void record(Subject subject, CharSequence body) {
+		final int bytes = body == null ? 0 : body instanceof MessageBody ? ((MessageBody) body).getByteLength() : body.length();
+		record(subject, bytes, System.currentTimeMillis());
+	}
+
+	void record(Subject subject, int bytes, long now) {
+		final long epoch = now / windowLength;
+		final Window window = windows[(int) (epoch % windows.length)];
+		window.roll(epoch);
+
+		final int stripe = (int) Thread.currentThread().getId() & stripeMask;
+		final int hash = subject.hashCode();
+		long countEstimate = Long.MAX_VALUE;
+		long bytesEstimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			final int index = index(row, hash);
+			window.counts[stripe].incrementAndGet(index);
+			window.bytes[stripe].addAndGet(index, bytes);
+			countEstimate = Math.min(countEstimate, sum(window.counts, index));
+			bytesEstimate = Math.min(bytesEstimate, sum(window.bytes, index));
+		}
+		window.topByCount.offer(subject, countEstimate);
+		window.topByBytes.offer(subject, bytesEstimate);
+	}
+
+	/**
+	 * Returns the subjects that received the most messages, largest first, with their estimated message counts.
+	 */
+	public List<Estimate> getTopSubjectsByCount() {
+		return report(false, System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the subjects that received the most bytes of message bodies, largest first, with their estimated sizes.
+	 */
+	public List<Estimate> getTopSubjectsByBytes() {
+		return report(true, System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the number of milliseconds of traffic a report covers.
+	 */
+	public long getReportLength() {
+		return windowLength * windows.length;
+	}
+
+	List<Estimate> report(boolean bytes, long now) {
+		final long epoch = now / windowLength;
+		final List<Window> liveWindows = new ArrayList<>();
+		final Set<Subject> candidates = new HashSet<>();
+		for (Window window : windows) {
+			if (window.isLive(epoch, windows.length)) {
+				liveWindows.add(window);
+				(bytes ? window.topByBytes : window.topByCount).addCandidatesTo(candidates);
+			}
+		}
+		final List<Estimate> estimates = new ArrayList<>();
+		for (Subject subject : candidates) {
+			final int hash = subject.hashCode();
+			long total = 0;
+			for (Window window : liveWindows) {
+				long estimate = Long.MAX_VALUE;
+				for (int row = 0; row < depth; row++) {
+					estimate = Math.min(estimate, sum(bytes ? window.bytes : window.counts, index(row, hash)));
+				}
+				total += estimate;
+			}
+			if (total > 0) {
+				estimates.add(new Estimate(subject, total));
+			}
+		}
+		Collections.sort(estimates, Collections.reverseOrder(ESTIMATE_COMPARATOR));
+		return estimates.size() > topSubjects ? estimates.subList(0, topSubjects) : estimates;
+	}
+
+	private int index(int row, int hash) {
+		// Each row mixes the hash with its own seed so that subjects colliding in one row rarely collide in the others
+		return row * (widthMask + 1) + (spread(hash + row * 0x9e3779b9) & widthMask);
+	}
+
+	private static long sum(AtomicLongArray[] stripes, int index) {
+		long sum = 0;
+		for (AtomicLongArray stripe : stripes) {
+			sum += stripe.get(index);
+		}
+		return sum;
+	}
+
+	private static int spread(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	private static int powerOfTwo(int value) {
+		return Integer.highestOneBit(value) == value ? value : Integer.highestOneBit(value) << 1;
+	}
+
+	/**
+	 * The estimated traffic for a subject.
+	 */
+	public static class Estimate {
+		private final Subject subject;
+		private final long estimate;
+
+		Estimate(Subject subject, long estimate) {
+			this.subject = subject;
+			this.estimate = estimate;
+		}
+
+		public Subject getSubject() {
+			return subject;
+		}
+
+		/**
+		 * Returns the estimated number of messages or bytes. The estimate is never lower than the actual value.
+		 */
+		public long getEstimate() {
+			return estimate;
+		}
+
+		@Override
+		public String toString() {
+			return subject + "=" + estimate;
+		}
+	}
+
+	private class Window {
+		private final AtomicLong epoch = new AtomicLong(-1);
+		private final AtomicLongArray[] counts = new AtomicLongArray[stripeMask + 1];
+		private final AtomicLongArray[] bytes = new AtomicLongArray[stripeMask + 1];
+		private final TopSubjects topByCount = new TopSubjects(topSubjects * 2);
+		private final TopSubjects topByBytes = new TopSubjects(topSubjects * 2);
+
+		private Window() {
+			for (int i = 0; i <= stripeMask; i++) {
+				counts[i] = new AtomicLongArray(depth * (widthMask + 1));
+				bytes[i] = new AtomicLongArray(depth * (widthMask + 1));
+			}
+		}
+
+		/**
+		 * Clears the window if it still holds the counts of an earlier epoch. Counts recorded by other threads while
+		 * the window is cleared may be lost, which the estimates tolerate.
+		 */
+		private void roll(long newEpoch) {
+			final long currentEpoch = epoch.get();
+			if (currentEpoch < newEpoch && epoch.compareAndSet(currentEpoch, newEpoch)) {
+				for (int i = 0; i <= stripeMask; i++) {
+					for (int j = 0; j < counts[i].length(); j++) {
+						counts[i].set(j, 0);
+						bytes[i].set(j, 0);
+					}
+				}
+				topByCount.clear();
+				topByBytes.clear();
+			}
+		}
+
+		private boolean isLive(long currentEpoch, int windowCount) {
+			final long windowEpoch = epoch.get();
+			return windowEpoch >= 0 && windowEpoch > currentEpoch - windowCount && windowEpoch <= currentEpoch;
+		}
+	}
+
+	/**
+	 * A bounded min heap of the subjects with the largest estimates.
+	 */
+	private static class TopSubjects {
+		private final int capacity;
+		private final ReentrantLock lock = new ReentrantLock();
+
+		// Access to these fields must be guarded by lock
+		private final Map<Subject, Candidate> candidates = new HashMap<>();
+		private final PriorityQueue<Candidate> heap = new PriorityQueue<>();
+
+		// The smallest estimate a subject needs to become a candidate, 0 until the heap is full
+		private volatile long minimum;
+
+		private TopSubjects(int capacity) {
+			this.capacity = capacity;
+		}
+
+		private void offer(Subject subject, long estimate) {
+			// Estimates only grow so a subject that doesn't beat the minimum is either already a candidate or can't
+			// become one. Losing an update to a contended lock is fine, heavy hitters will be offered again soon.
+			if (estimate <= minimum || !lock.tryLock()) {
+				return;
+			}
+			try {
+				Candidate candidate = candidates.get(subject);
+				if (candidate != null) {
+					heap.remove(candidate);
+					candidate.estimate = estimate;
+				} else if (heap.size() < capacity) {
+					candidate = new Candidate(subject, estimate);
+					candidates.put(subject, candidate);
+				} else {
+					candidates.remove(heap.poll().subject);
+					candidate = new Candidate(subject, estimate);
+					candidates.put(subject, candidate);
+				}
+				heap.add(candidate);
+				minimum = heap.size() < capacity ? 0 : heap.peek().estimate;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void addCandidatesTo(Set<Subject> subjects) {
+			lock.lock();
+			try {
+				subjects.addAll(candidates.keySet());
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void clear() {
+			lock.lock();
+			try {
+				candidates.clear();
+				heap.clear();
+				minimum = 0;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private static class Candidate implements Comparable<Candidate> {
+		private final Subject subject;
+		private long estimate;
+
+		private Candidate(Subject subject, long estimate) {
+			this.subject = subject;
+			this.estimate = estimate;
+		}
+
+		@Override
+		public int compareTo(Candidate o) {
+			return estimate < o.estimate ? -1 : (estimate == o.estimate ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.MessageBody;
+import cloudeventbus.hub.SelectionContext;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.MissingNode;
+import org.codehaus.jackson.node.TextNode;
+
+import java.io.IOException;
+
+/**
+ * Matches messages with a JSON body holding a value in a field. The body is parsed once per message no matter how
+ * many field filters are evaluated, bodies that aren't valid JSON never match.
+ *
+ * <p>The expected value is JSON text, {@code "shipped"}, {@code 42} or {@code true} for example. Numbers are compared
+ * by value so {@code 1.0} matches {@code 1}, a quoted {@code "42"} only matches the string and not the number. Text
+ * that isn't a JSON value, such as a bare {@code shipped}, is taken as a string.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+class JsonFieldFilter implements MessageFilter {
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	// The key of the parsed body in the selection context
+	private static final Object JSON_TREE = new Object();
+
+	private final String field;
+	private final String[] path;
+	private final String value;
+	private final JsonNode expected;
+
+	/**
+	 * @param field the path of the field, nested fields are separated by dots
+	 * @param value the JSON text of the value the field must hold, text that isn't a JSON value is taken as a string
+	 */
+	JsonFieldFilter(String field, String value) {
+		this.field = field;
+		this.path = field.split("\\.");
+		this.value = value;
+		this.expected = parseValue(value);
+	}
+
+	@Override
+	public boolean matches(SelectionContext context) {
+		JsonNode node = parse(context);
+		for (String name : path) {
+			node = node.path(name);
+		}
+		if (!node.isValueNode() || !expected.isValueNode()) {
+			return false;
+		}
+		if (node.isNumber() && expected.isNumber()) {
+			return node.getDecimalValue().compareTo(expected.getDecimalValue()) == 0;
+		}
+		return node.equals(expected);
+	}
+
+	private static JsonNode parseValue(String value) {
+		try {
+			final JsonParser parser = OBJECT_MAPPER.getJsonFactory().createJsonParser(value);
+			final JsonNode node = OBJECT_MAPPER.readTree(parser);
+			// Trailing text means the value as a whole isn't JSON
+			if (node != null && parser.nextToken() == null) {
+				return node;
+			}
+		} catch (IOException e) {
+			// Not JSON, compare as a string
+		}
+		return TextNode.valueOf(value);
+	}
+
+	private static JsonNode parse(SelectionContext context) {
+		JsonNode tree = (JsonNode) context.getCached(JSON_TREE);
+		if (tree == null) {
+			try {
+				// Bodies received over the network are parsed straight from their UTF-8 bytes
+				final CharSequence body = context.getBody();
+				tree = body instanceof MessageBody
+						? OBJECT_MAPPER.readTree(((MessageBody) body).getBytes())
+						: OBJECT_MAPPER.readTree(body.toString());
+			} catch (IOException e) {
+				tree = MissingNode.getInstance();
+			}
+			// Empty bodies have no tree
+			if (tree == null) {
+				tree = MissingNode.getInstance();
+			}
+			context.putCached(JSON_TREE, tree);
+		}
+		return tree;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+
+		final JsonFieldFilter that = (JsonFieldFilter) o;
+		return field.equals(that.field) && value.equals(that.value);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * field.hashCode() + value.hashCode();
+	}
+}
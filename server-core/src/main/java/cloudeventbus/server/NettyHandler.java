@@ -16,23 +16,120 @@
  */
 package cloudeventbus.server;
 
+import cloudeventbus.codec.EncodedFrame;
 import cloudeventbus.codec.Frame;
-import cloudeventbus.hub.Handler;
+import cloudeventbus.codec.PublishFrame;
+import cloudeventbus.hub.BufferedHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultChannelPromise;
+import io.netty.channel.EventLoop;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Writes the messages a hub delivers to a connection. Hubs may deliver on any thread, writes are always made on the
+ * connection's event loop.
+ *
  * @author Mike Heath <elcapo@gmail.com>
  */
-public class NettyHandler implements Handler<Frame> {
+public class NettyHandler implements BufferedHandler<Frame> {
+
+	// The number of bytes added to the size of a message's subject and body to account for the rest of the frame.
+	private static final int FRAME_OVERHEAD = 16;
 
 	public NettyHandler(ChannelHandlerContext context) {
 		this.context = context;
 	}
 
 	private final ChannelHandlerContext context;
+	private final AtomicLong pendingBytes = new AtomicLong();
+
+	// Shared by every write, each write's promise carries the frame and size it accounts for.
+	private final ChannelFutureListener writeListener = new ChannelFutureListener() {
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			final PendingWrite write = (PendingWrite) future;
+			pendingBytes.addAndGet(-write.size);
+			// The encoder releases the frame once it has been encoded. If the write failed before the frame got to
+			// the encoder, because the channel was closed for example, the frame has to be released here.
+			if (!future.isSuccess()) {
+				release(write.frame);
+			}
+		}
+	};
 
 	@Override
 	public void publish(Frame message) {
-		context.write(message);
+		// Frames encoded by the hub are shared by every recipient, each connection writes its own duplicate.
+		final Frame frame = message instanceof EncodedFrame ? ((EncodedFrame) message).retainedDuplicate() : message;
+		final PendingWrite write = new PendingWrite(frame, estimateSize(frame));
+		write.addListener(writeListener);
+		pendingBytes.addAndGet(write.size);
+		final EventLoop eventLoop = context.channel().eventLoop();
+		if (eventLoop.inEventLoop()) {
+			write.run();
+			return;
+		}
+		// Messages are published on the publisher's event loop or on a ShardedHub shard, the write is handed to this
+		// channel's event loop so that the pipeline is only ever used from one thread.
+		try {
+			eventLoop.execute(write);
+		} catch (RejectedExecutionException e) {
+			// The event loop has been shut down, the channel is closed. The listeners of the write would be notified on
+			// that event loop, so the write is accounted for here.
+			pendingBytes.addAndGet(-write.size);
+			release(frame);
+		}
+	}
+
+	/**
+	 * Returns an estimate of the number of bytes published to this connection that haven't been written yet.
+	 */
+	@Override
+	public long getPendingBytes() {
+		return pendingBytes.get();
+	}
+
+	/**
+	 * The promise of a single write. It is also the task that makes the write when the write is handed off to the
+	 * channel's event loop, so a write doesn't allocate anything beyond the promise Netty would otherwise create.
+	 */
+	private class PendingWrite extends DefaultChannelPromise implements Runnable {
+		private final Frame frame;
+		private final int size;
+
+		private PendingWrite(Frame frame, int size) {
+			super(context.channel());
+			this.frame = frame;
+			this.size = size;
+		}
+
+		@Override
+		public void run() {
+			context.write(frame, this);
+		}
+	}
+
+	private static void release(Frame frame) {
+		if (frame instanceof EncodedFrame) {
+			final EncodedFrame encodedFrame = (EncodedFrame) frame;
+			if (encodedFrame.refCnt() > 0) {
+				encodedFrame.release();
+			}
+		}
+	}
+
+	private static int estimateSize(Frame message) {
+		if (message instanceof EncodedFrame) {
+			return ((EncodedFrame) message).estimateSize();
+		}
+		if (message instanceof PublishFrame) {
+			final PublishFrame publishFrame = (PublishFrame) message;
+			return FRAME_OVERHEAD + publishFrame.getSubject().toString().length() + publishFrame.getMessageBody().getByteLength();
+		}
+		return FRAME_OVERHEAD;
 	}
 }
@@ -29,7 +29,7 @@ public interface Peer {
 
 	SocketAddress getAddress();
 
-	void publish(Subject subject, Subject replySubject, String body);
+	void publish(Subject subject, Subject replySubject, CharSequence body);
 
 	/**
 	 * Called by {@link ClusterManager} to clean up any resources the Peer may be holding.
@@ -0,0 +1,199 @@
+/*
+ *   Copyright (c) 2013 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.Subject;
+import cloudeventbus.codec.Frame;
+import cloudeventbus.codec.PublishFrame;
+import cloudeventbus.hub.Handler;
+import cloudeventbus.hub.Hub;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes replies to the connection that issued the request. Request reply subjects are only used by a single request
+ * so they are kept out of the subscription hubs. Each route is removed when it expires, when the connection that
+ * issued the request closes or, if the number of replies is limited, once it has delivered the maximum number of
+ * replies. Requests carry their reply limit in their reply subject, see {@link Subject#getMaxReplies()}. The replies
+ * to requests without a limit are limited by the router's max replies, by default every reply is routed until the
+ * route expires.
+ *
+ * <p>There should only be one instance of this class per server and it should be added as a local hub to the
+ * {@link GlobalHub}.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class ReplyRouter implements Hub {
+
+	/**
+	 * Indicates that every reply to requests that don't limit their replies is routed until the route expires.
+	 */
+	public static final int UNLIMITED_REPLIES = 0;
+
+	public static final int DEFAULT_MAX_REPLIES = UNLIMITED_REPLIES;
+	public static final long DEFAULT_REPLY_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+	private final ConcurrentMap<Subject, Route> routes = new ConcurrentHashMap<>();
+	// The routes of each connection so they can be removed when it closes
+	private final ConcurrentMap<Handler<Frame>, Set<Route>> handlerRoutes = new ConcurrentHashMap<>();
+	private final Timer timer;
+	private final int maxReplies;
+	private final long replyTimeout;
+
+	/**
+	 * Creates a reply router that expires its routes using a timer shared by every router created this way.
+	 */
+	public ReplyRouter() {
+		this(SharedTimer.TIMER, DEFAULT_MAX_REPLIES, DEFAULT_REPLY_TIMEOUT);
+	}
+
+	/**
+	 * Creates a reply router.
+	 *
+	 * @param timer the timer used to expire routes
+	 * @param maxReplies the number of replies that will be routed for requests that don't limit their replies or
+	 *                   {@link #UNLIMITED_REPLIES}
+	 * @param replyTimeout the number of milliseconds a route will wait for replies
+	 */
+	public ReplyRouter(Timer timer, int maxReplies, long replyTimeout) {
+		if (maxReplies < 0) {
+			throw new IllegalArgumentException("maxReplies must not be negative");
+		}
+		this.timer = timer;
+		this.maxReplies = maxReplies;
+		this.replyTimeout = replyTimeout;
+	}
+
+	/**
+	 * Routes replies sent to {@code replySubject} to {@code handler}.
+	 *
+	 * @param replySubject the reply subject of the request
+	 * @param handler the handler for the connection that issued the request
+	 */
+	public void register(Subject replySubject, Handler<Frame> handler) {
+		final int requestedReplies = replySubject.getMaxReplies();
+		final Route route = new Route(replySubject, handler, requestedReplies > 0 ? requestedReplies : maxReplies);
+		Set<Route> connectionRoutes = handlerRoutes.get(handler);
+		if (connectionRoutes == null) {
+			// Routes are registered and removed on the connection's event loop so the set can't be replaced concurrently
+			connectionRoutes = Collections.newSetFromMap(new ConcurrentHashMap<Route, Boolean>());
+			handlerRoutes.put(handler, connectionRoutes);
+		}
+		connectionRoutes.add(route);
+		route.timeout = timer.newTimeout(route, replyTimeout, TimeUnit.MILLISECONDS);
+		final Route previousRoute = routes.put(replySubject, route);
+		if (previousRoute != null) {
+			previousRoute.remove();
+		}
+	}
+
+	/**
+	 * Removes the routes of every request issued by the connection of {@code handler}. Called when the connection
+	 * closes.
+	 */
+	public void removeRoutes(Handler<Frame> handler) {
+		final Set<Route> connectionRoutes = handlerRoutes.remove(handler);
+		if (connectionRoutes != null) {
+			for (Route route : connectionRoutes) {
+				route.remove();
+			}
+		}
+	}
+
+	@Override
+	public void publish(Subject subject, Subject replySubject, CharSequence body) {
+		if (!subject.isRequestReply()) {
+			return;
+		}
+		final Route route = routes.get(subject);
+		if (route != null && route.acquireReply()) {
+			route.handler.publish(new PublishFrame(subject, replySubject, body));
+		}
+	}
+
+	/**
+	 * Returns the number of requests still waiting for replies.
+	 */
+	public int getRouteCount() {
+		return routes.size();
+	}
+
+	// Created the first time a router needs it. A hashed wheel timer runs its own thread so one is shared by every
+	// router rather than starting a thread per server.
+	private static class SharedTimer {
+		private static final Timer TIMER = new HashedWheelTimer(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable, "reply-router-timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private class Route implements TimerTask {
+		private final Subject replySubject;
+		private final Handler<Frame> handler;
+		private final AtomicInteger remainingReplies;
+
+		private Timeout timeout;
+
+		private Route(Subject replySubject, Handler<Frame> handler, int maxReplies) {
+			this.replySubject = replySubject;
+			this.handler = handler;
+			this.remainingReplies = maxReplies == UNLIMITED_REPLIES ? null : new AtomicInteger(maxReplies);
+		}
+
+		/**
+		 * Returns {@code true} if the route may deliver another reply and removes the route after the last one.
+		 */
+		private boolean acquireReply() {
+			if (remainingReplies == null) {
+				return true;
+			}
+			final int remaining = remainingReplies.decrementAndGet();
+			if (remaining == 0) {
+				remove();
+			}
+			return remaining >= 0;
+		}
+
+		private void remove() {
+			routes.remove(replySubject, this);
+			timeout.cancel();
+			final Set<Route> connectionRoutes = handlerRoutes.get(handler);
+			if (connectionRoutes != null) {
+				connectionRoutes.remove(this);
+			}
+		}
+
+		@Override
+		public void run(Timeout timeout) {
+			remove();
+		}
+	}
+}
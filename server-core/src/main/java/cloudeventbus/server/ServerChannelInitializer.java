@@ -16,14 +16,18 @@
  */
 package cloudeventbus.server;
 
+import cloudeventbus.Constants;
 import cloudeventbus.Subject;
 import cloudeventbus.codec.Codec;
+import cloudeventbus.codec.EncodedFrame;
 import cloudeventbus.codec.Frame;
-import cloudeventbus.codec.PublishFrame;
 import cloudeventbus.hub.AbstractHub;
+import cloudeventbus.hub.ShardedHub;
 import cloudeventbus.hub.SubscribeableHub;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 
 /**
@@ -35,26 +39,88 @@ public class ServerChannelInitializer extends ChannelInitializer<SocketChannel>
 	private final ClusterManager clusterManager;
 	private final GlobalHub globalHub;
 
-	final SubscribeableHub<Frame> clientSubscriptionHub = new AbstractHub<Frame>() {
-		@Override
-		protected Frame encode(Subject subject, Subject replySubject, String body, int recipientCount) {
-			return new PublishFrame(subject, replySubject, body);
-		}
-	};
+	final SubscribeableHub<Frame> clientSubscriptionHub;
+
+	final ReplyRouter replyRouter = new ReplyRouter();
+
+	private int maxMessageSize = Constants.DEFAULT_MAX_MESSAGE_SIZE;
 
 	public ServerChannelInitializer(ServerConfig serverConfig, ClusterManager clusterManager, GlobalHub globalHub) {
+		this(serverConfig, clusterManager, globalHub, new AbstractHub<Frame>() {
+			@Override
+			protected Frame encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				return EncodedFrame.publish(subject, replySubject, body);
+			}
+
+			@Override
+			protected void release(Frame message) {
+				((EncodedFrame) message).release();
+			}
+		});
+	}
+
+	/**
+	 * Creates a channel initializer that partitions client subscriptions into shards. Each shard delivers messages on
+	 * its own event loop and the writes are handed off to each client's event loop. Messages a client publishes to
+	 * subjects in different shards may reach subscribers in a different order than they were published, see
+	 * {@link ShardedHub}.
+	 *
+	 * @param shardGroup the event loops the shards are assigned to
+	 * @param shards the number of shards, should not exceed the number of event loops in {@code shardGroup}
+	 */
+	public ServerChannelInitializer(ServerConfig serverConfig, ClusterManager clusterManager, GlobalHub globalHub, EventLoopGroup shardGroup, int shards) {
+		this(serverConfig, clusterManager, globalHub, new ShardedHub<Frame>(nextEventLoops(shardGroup, shards)) {
+			@Override
+			protected Frame encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				return EncodedFrame.publish(subject, replySubject, body);
+			}
+
+			@Override
+			protected void release(Frame message) {
+				((EncodedFrame) message).release();
+			}
+		});
+	}
+
+	private ServerChannelInitializer(ServerConfig serverConfig, ClusterManager clusterManager, GlobalHub globalHub, SubscribeableHub<Frame> clientSubscriptionHub) {
 		this.serverConfig = serverConfig;
 		this.clusterManager = clusterManager;
 		this.globalHub = globalHub;
+		this.clientSubscriptionHub = clientSubscriptionHub;
 
 		globalHub.addLocalHub(clientSubscriptionHub);
+		globalHub.addLocalHub(replyRouter);
+	}
+
+	/**
+	 * Specifies the maximum size of the messages clients may send, the size is advertised to clients when their
+	 * connection is ready. Defaults to {@link Constants#DEFAULT_MAX_MESSAGE_SIZE}. Only channels initialized after
+	 * this is called use the new size.
+	 *
+	 * @param maxMessageSize the maximum message size in bytes
+	 * @return this channel initializer.
+	 */
+	public ServerChannelInitializer maxMessageSize(int maxMessageSize) {
+		if (maxMessageSize <= 0) {
+			throw new IllegalArgumentException("maxMessageSize must be greater than 0");
+		}
+		this.maxMessageSize = maxMessageSize;
+		return this;
 	}
 
 	@Override
 	public void initChannel(SocketChannel ch) throws Exception {
 		final ChannelPipeline pipeline = ch.pipeline();
-		pipeline.addLast(new Codec());
-		pipeline.addLast(new ServerHandler(serverConfig, clusterManager, globalHub, clientSubscriptionHub));
+		pipeline.addLast(new Codec(maxMessageSize));
+		pipeline.addLast(new ServerHandler(serverConfig, clusterManager, globalHub, clientSubscriptionHub, replyRouter, maxMessageSize));
+	}
+
+	private static EventLoop[] nextEventLoops(EventLoopGroup group, int count) {
+		final EventLoop[] eventLoops = new EventLoop[count];
+		for (int i = 0; i < count; i++) {
+			eventLoops[i] = group.next();
+		}
+		return eventLoops;
 	}
 
 }
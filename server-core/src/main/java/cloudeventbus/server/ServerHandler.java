@@ -20,6 +20,8 @@ import cloudeventbus.Constants;
 import cloudeventbus.Subject;
 import cloudeventbus.codec.AuthenticationRequestFrame;
 import cloudeventbus.codec.AuthenticationResponseFrame;
+import cloudeventbus.codec.BulkSubscribeFrame;
+import cloudeventbus.codec.Codec;
 import cloudeventbus.codec.DecodingException;
 import cloudeventbus.codec.ErrorFrame;
 import cloudeventbus.codec.Frame;
@@ -31,7 +33,6 @@ import cloudeventbus.codec.ServerReadyFrame;
 import cloudeventbus.codec.SubscribeFrame;
 import cloudeventbus.codec.UnsubscribeFrame;
 import cloudeventbus.hub.SubscribeableHub;
-import cloudeventbus.hub.SubscriptionHandle;
 import cloudeventbus.pki.CertificateChain;
 import cloudeventbus.pki.CertificatePermissionError;
 import cloudeventbus.pki.CertificateUtils;
@@ -45,8 +46,8 @@ import io.netty.handler.codec.DecoderException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -57,11 +58,21 @@ public class ServerHandler extends ChannelInboundMessageHandlerAdapter<Frame> {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(ServerHandler.class);
 
+	/**
+	 * How often a connection adds the messages its selective subscriptions dropped to the server wide count.
+	 */
+	public static final long DROPPED_REPORT_INTERVAL_SECONDS = 60;
+
 	private final ServerConfig serverConfig;
 
+	// Advertises the max message size of the connection's Codec, which also tells clients that bulk subscribe frames
+	// are accepted
+	private final ServerReadyFrame serverReadyFrame;
+
 	private final ClusterManager clusterManager;
 	private final GlobalHub hub;
 	private final SubscribeableHub<Frame> clientSubscriptionHub;
+	private final ReplyRouter replyRouter;
 
 	private byte[] challenge;
 	private boolean serverReady = false;
@@ -72,7 +83,7 @@ public class ServerHandler extends ChannelInboundMessageHandlerAdapter<Frame> {
 
 	// Subscription handler fields
 	private NettyHandler handler;
-	private final Map<Subject, SubscriptionHandle> subscriptionHandles = new HashMap<>();
+	private ConnectionSubscriptions subscriptions;
 
 	// Ping and idle detection fields
 	private Runnable idleTask;
@@ -80,11 +91,25 @@ public class ServerHandler extends ChannelInboundMessageHandlerAdapter<Frame> {
 	private Runnable pingTask;
 	private ScheduledFuture<?> pingFuture;
 
-	public ServerHandler(ServerConfig serverConfig, ClusterManager clusterManager, GlobalHub hub, SubscribeableHub<Frame> clientSubscriptionHub) {
+	// Dropped message reporting fields
+	private ScheduledFuture<?> droppedReportFuture;
+	private long reportedDroppedCount;
+
+	public ServerHandler(ServerConfig serverConfig, ClusterManager clusterManager, GlobalHub hub, SubscribeableHub<Frame> clientSubscriptionHub, ReplyRouter replyRouter) {
+		this(serverConfig, clusterManager, hub, clientSubscriptionHub, replyRouter, Constants.DEFAULT_MAX_MESSAGE_SIZE);
+	}
+
+	/**
+	 * @param maxMessageSize the max message size of the {@link Codec} in the channel's pipeline, advertised to clients
+	 *                       in the server ready frame
+	 */
+	public ServerHandler(ServerConfig serverConfig, ClusterManager clusterManager, GlobalHub hub, SubscribeableHub<Frame> clientSubscriptionHub, ReplyRouter replyRouter, int maxMessageSize) {
 		this.serverConfig = serverConfig;
+		this.serverReadyFrame = new ServerReadyFrame(maxMessageSize);
 		this.clusterManager = clusterManager;
 		this.hub = hub;
 		this.clientSubscriptionHub = clientSubscriptionHub;
+		this.replyRouter = replyRouter;
 	}
 
 	@Override
@@ -114,7 +139,7 @@ public class ServerHandler extends ChannelInboundMessageHandlerAdapter<Frame> {
 						break;
 				}
 				serverReady = true;
-				context.write(ServerReadyFrame.SERVER_READY);
+				context.write(serverReadyFrame);
 				break;
 			}
 			case AUTHENTICATE: {
@@ -132,14 +157,16 @@ public class ServerHandler extends ChannelInboundMessageHandlerAdapter<Frame> {
 				final GreetingFrame greetingFrame = (GreetingFrame) frame;
 				clientAgent = greetingFrame.getAgent();
 				clientId = greetingFrame.getId();
-				if (greetingFrame.getVersion() != Constants.PROTOCOL_VERSION) {
+				subscriptions.setClientId(clientId);
+				if (!Codec.isSupportedProtocolVersion(greetingFrame.getVersion())) {
 					throw new InvalidProtocolVersionException("This server doesn't support protocol version " + greetingFrame.getVersion());
 				}
 				// TODO Try moving this back to channelActive and see if server still crashes...
-				context.write(new GreetingFrame(Constants.PROTOCOL_VERSION, serverConfig.getAgentString(), serverConfig.getId()));
+				// Reply with the client's version, the codec switches to it once the greeting has been written
+				context.write(new GreetingFrame(greetingFrame.getVersion(), serverConfig.getAgentString(), serverConfig.getId()));
 				if (serverConfig.getTrustStore() == null) {
 					serverReady = true;
-					context.write(ServerReadyFrame.SERVER_READY);
+					context.write(serverReadyFrame);
 				} else {
 					challenge = CertificateUtils.generateChallenge();
 					context.write(new AuthenticationRequestFrame(challenge));
@@ -156,14 +183,14 @@ public class ServerHandler extends ChannelInboundMessageHandlerAdapter<Frame> {
 						case PUBLISH: {
 							final PublishFrame publishFrame = (PublishFrame) frame;
 							final Subject subject = publishFrame.getSubject();
-							final String body = publishFrame.getBody();
+							final CharSequence body = publishFrame.getMessageBody();
 							if (clientCertificates != null) {
 								clientCertificates.getLast().validatePublishPermission(subject);
 							}
 							final Subject replySubject = publishFrame.getReplySubject();
-							// Implicitly subscribe to request reply subjects
+							// Route replies to the request back to this connection
 							if (replySubject != null && replySubject.isRequestReply()) {
-								clientSubscriptionHub.subscribe(replySubject, handler);
+								replyRouter.register(replySubject, handler);
 							}
 							// If the publish is coming from a peer server, publish locally
 							if (serverConnection) {
@@ -179,24 +206,39 @@ public class ServerHandler extends ChannelInboundMessageHandlerAdapter<Frame> {
 							if (clientCertificates != null) {
 								clientCertificates.getLast().validateSubscribePermission(subject);
 							}
-							if (subscriptionHandles.containsKey(subject)) {
+							if (subscriptions.contains(subject)) {
 								throw new DuplicateSubscriptionException("Already subscribed to subject " + subject);
 							}
 							// If the connection is a peer server, let the ClusterManager forward messages instead of the normal subscription mechanism
 							if (!serverConnection) {
-								final SubscriptionHandle subscriptionHandle = clientSubscriptionHub.subscribe(subject, handler);
-								subscriptionHandles.put(subject, subscriptionHandle);
+								subscriptions.subscribe(subject, subscribeFrame.getQueueGroup(), subscribeFrame.getPartitionToken(), subscribeFrame.getOptions());
+							}
+							break;
+						}
+						case BULK_SUBSCRIBE: {
+							final BulkSubscribeFrame bulkSubscribeFrame = (BulkSubscribeFrame) frame;
+							// Check every subscription before registering any of them
+							final Set<Subject> subjects = new HashSet<>();
+							for (SubscribeFrame subscription : bulkSubscribeFrame.getSubscriptions()) {
+								final Subject subject = subscription.getSubject();
+								if (clientCertificates != null) {
+									clientCertificates.getLast().validateSubscribePermission(subject);
+								}
+								if (subscriptions.contains(subject) || !subjects.add(subject)) {
+									throw new DuplicateSubscriptionException("Already subscribed to subject " + subject);
+								}
+							}
+							if (!serverConnection) {
+								subscriptions.subscribeAll(bulkSubscribeFrame.getSubscriptions());
 							}
 							break;
 						}
 						case UNSUBSCRIBE: {
 							final UnsubscribeFrame unsubscribeFrame = (UnsubscribeFrame) frame;
 							final Subject subject = unsubscribeFrame.getSubject();
-							final SubscriptionHandle subscriptionHandle = subscriptionHandles.get(subject);
-							if (subscriptionHandle == null) {
+							if (!subscriptions.unsubscribe(subject)) {
 								throw new NotSubscribedException("Not subscribed to subject " + subject);
 							}
-							subscriptionHandle.remove();
 							break;
 						}
 						case PING:
@@ -243,15 +285,35 @@ public class ServerHandler extends ChannelInboundMessageHandlerAdapter<Frame> {
 		};
 		resetIdleTask(ctx.channel().eventLoop());
 		handler = new NettyHandler(ctx);
+		subscriptions = new ConnectionSubscriptions(clientSubscriptionHub, handler);
+		try {
+			droppedReportFuture = ctx.channel().eventLoop().scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					reportDroppedCount(ctx);
+				}
+			}, DROPPED_REPORT_INTERVAL_SECONDS, DROPPED_REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+		} catch (UnsupportedOperationException e) {
+			// Don't throw an error when running tests.
+			LOGGER.warn("Dropped message reporting not supported", e);
+		}
 	}
 
 	@Override
 	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
 		LOGGER.debug("Channel inactive from {}", ctx.channel().remoteAddress());
 		// Cleanup subscriptions in hub
-		for (SubscriptionHandle handle : subscriptionHandles.values()) {
-			handle.remove();
+		subscriptions.unsubscribeAll();
+		// Replies to this connection's requests have nowhere to go
+		replyRouter.removeRoutes(handler);
+		final long droppedCount = subscriptions.getDroppedCount();
+		if (droppedCount > 0) {
+			LOGGER.info("Filters, sampling and rate limits kept {} messages from {}", droppedCount, ctx.channel().remoteAddress());
 		}
+		if (droppedReportFuture != null) {
+			droppedReportFuture.cancel(false);
+		}
+		reportDroppedCount(ctx);
 		// Cancel idle check and ping tasks.
 		if (idleFuture != null) {
 			idleFuture.cancel(false);
@@ -261,6 +323,15 @@ public class ServerHandler extends ChannelInboundMessageHandlerAdapter<Frame> {
 		}
 	}
 
+	private void reportDroppedCount(ChannelHandlerContext ctx) {
+		final long droppedCount = subscriptions.getDroppedCount();
+		if (droppedCount > reportedDroppedCount) {
+			LOGGER.debug("Filters, sampling and rate limits kept {} more messages from {}", droppedCount - reportedDroppedCount, ctx.channel().remoteAddress());
+			hub.addSubscriptionDroppedCount(droppedCount - reportedDroppedCount);
+			reportedDroppedCount = droppedCount;
+		}
+	}
+
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
 		// TODO Experiment with using a marker to identify the remote agent.
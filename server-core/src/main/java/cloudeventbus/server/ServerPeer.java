@@ -31,7 +31,7 @@ public class ServerPeer implements Peer {
 	}
 
 	@Override
-	public void publish(Subject subject, Subject replySubject, String body) {
+	public void publish(Subject subject, Subject replySubject, CharSequence body) {
 		channel.write(new PublishFrame(subject, replySubject, body));
 	}
 
@@ -0,0 +1,164 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.Subject;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps subjects to values and finds the subjects that cover, or are covered by, a subject without looking at every
+ * subject. Subjects are stored in a tree by token, a lookup only walks the branches whose tokens can match and checks
+ * the subjects it finds with {@link Subject#isSub(Subject)}.
+ *
+ * <p>Instances of this class are not thread safe.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+class SubjectTrie<V> {
+
+	private Node<V> root = new Node<>();
+
+	public void put(Subject subject, V value) {
+		Node<V> node = root;
+		for (int i = 0; i < subject.getTokenCount(); i++) {
+			node = node.getChild(subject.getToken(i), true);
+		}
+		node.subject = subject;
+		node.value = value;
+	}
+
+	public void remove(Subject subject) {
+		remove(root, subject, 0);
+	}
+
+	public void clear() {
+		root = new Node<>();
+	}
+
+	/**
+	 * Adds the value of every subject that covers {@code subject}, including the subject itself, to {@code values}.
+	 */
+	public void findCovering(Subject subject, List<V> values) {
+		findCovering(root, subject, 0, values);
+	}
+
+	/**
+	 * Adds the value of every subject covered by {@code subject}, including the subject itself, to {@code values}.
+	 */
+	public void findCoveredBy(Subject subject, List<V> values) {
+		findCoveredBy(root, subject, 0, values);
+	}
+
+	private void findCovering(Node<V> node, Subject subject, int tokenIndex, List<V> values) {
+		// Tail wild cards cover subjects longer than the node's path so they are checked on the way down
+		if (node.subject != null && node.subject.isSub(subject)) {
+			values.add(node.value);
+		}
+		if (tokenIndex == subject.getTokenCount() || node.children == null) {
+			return;
+		}
+		final String token = subject.getToken(tokenIndex);
+		if (!Subject.WILD_CARD_TOKEN.equals(token)) {
+			final Node<V> child = node.children.get(token);
+			if (child != null) {
+				findCovering(child, subject, tokenIndex + 1, values);
+			}
+		}
+		final Node<V> wildCardChild = node.children.get(Subject.WILD_CARD_TOKEN);
+		if (wildCardChild != null) {
+			findCovering(wildCardChild, subject, tokenIndex + 1, values);
+		}
+	}
+
+	private void findCoveredBy(Node<V> node, Subject subject, int tokenIndex, List<V> values) {
+		if (node.subject != null && subject.isSub(node.subject)) {
+			values.add(node.value);
+		}
+		if (tokenIndex == subject.getTokenCount() || node.children == null) {
+			return;
+		}
+		if (subject.isTailWildCard() && tokenIndex == subject.getTokenCount() - 1) {
+			// A tail wild card matches the subjects anywhere below the node
+			for (Node<V> child : node.children.values()) {
+				findAllCoveredBy(child, subject, values);
+			}
+			return;
+		}
+		if (subject.isWildCardToken(tokenIndex)) {
+			for (Node<V> child : node.children.values()) {
+				findCoveredBy(child, subject, tokenIndex + 1, values);
+			}
+			return;
+		}
+		final Node<V> child = node.children.get(subject.getToken(tokenIndex));
+		if (child != null) {
+			findCoveredBy(child, subject, tokenIndex + 1, values);
+		}
+	}
+
+	private void findAllCoveredBy(Node<V> node, Subject subject, List<V> values) {
+		if (node.subject != null && subject.isSub(node.subject)) {
+			values.add(node.value);
+		}
+		if (node.children != null) {
+			for (Node<V> child : node.children.values()) {
+				findAllCoveredBy(child, subject, values);
+			}
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the node no longer holds a subject or children and can be pruned.
+	 */
+	private boolean remove(Node<V> node, Subject subject, int tokenIndex) {
+		if (tokenIndex == subject.getTokenCount()) {
+			node.subject = null;
+			node.value = null;
+		} else {
+			final String token = subject.getToken(tokenIndex);
+			final Node<V> child = node.getChild(token, false);
+			if (child != null && remove(child, subject, tokenIndex + 1)) {
+				node.children.remove(token);
+				if (node.children.isEmpty()) {
+					node.children = null;
+				}
+			}
+		}
+		return node.subject == null && node.children == null;
+	}
+
+	private static class Node<V> {
+		private Subject subject;
+		private V value;
+		private Map<String, Node<V>> children;
+
+		private Node<V> getChild(String token, boolean createIfMissing) {
+			Node<V> child = children == null ? null : children.get(token);
+			if (child == null && createIfMissing) {
+				if (children == null) {
+					children = new HashMap<>();
+				}
+				child = new Node<>();
+				children.put(token, child);
+			}
+			return child;
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.Subject;
+import cloudeventbus.codec.Frame;
+import cloudeventbus.codec.PublishFrame;
+import cloudeventbus.codec.SubscribeFrame;
+import cloudeventbus.codec.SubscriptionOptions;
+import cloudeventbus.hub.AbstractHub;
+import cloudeventbus.hub.Handler;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class ConnectionSubscriptionsTest {
+
+	@Test
+	public void coveredSubscriptionsNotRegistered() {
+		final CountHandler handler = new CountHandler();
+		final AbstractHub<Frame> hub = createHub();
+		final ConnectionSubscriptions subscriptions = new ConnectionSubscriptions(hub, handler);
+
+		subscriptions.subscribe(new Subject("a.b.c"), null);
+		subscriptions.subscribe(new Subject("a.b.d"), null);
+		assertEquals(subscriptions.getRegisteredCount(), 2);
+
+		// The wild card covers both existing subscriptions and any later ones it matches
+		subscriptions.subscribe(new Subject("a.b.*"), null);
+		assertEquals(subscriptions.getRegisteredCount(), 1);
+		subscriptions.subscribe(new Subject("a.b.e"), null);
+		assertEquals(subscriptions.getRegisteredCount(), 1);
+		// Queue group subscriptions are never collapsed
+		subscriptions.subscribe(new Subject("a.b.f"), "workers");
+		assertEquals(subscriptions.getRegisteredCount(), 2);
+
+		hub.publish(new Subject("a.b.c"), null, "body");
+		assertEquals(handler.count, 1);
+
+		// Removing a covered subscription doesn't affect the covering subscription
+		assertTrue(subscriptions.unsubscribe(new Subject("a.b.d")));
+		hub.publish(new Subject("a.b.d"), null, "body");
+		assertEquals(handler.count, 2);
+
+		// Removing the covering subscription restores the exact subscriptions it covered
+		assertTrue(subscriptions.unsubscribe(new Subject("a.b.*")));
+		assertEquals(subscriptions.getRegisteredCount(), 3);
+		hub.publish(new Subject("a.b.c"), null, "body");
+		hub.publish(new Subject("a.b.d"), null, "body");
+		hub.publish(new Subject("a.b.e"), null, "body");
+		hub.publish(new Subject("a.b.g"), null, "body");
+		assertEquals(handler.count, 4);
+
+		assertFalse(subscriptions.unsubscribe(new Subject("a.b.*")));
+		subscriptions.unsubscribeAll();
+		hub.publish(new Subject("a.b.c"), null, "body");
+		assertEquals(handler.count, 4);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void invalidQueueGroup() {
+		final ConnectionSubscriptions subscriptions = new ConnectionSubscriptions(createHub(), new CountHandler());
+		subscriptions.subscribe(new Subject("a.b"), " ");
+	}
+
+	@Test
+	public void nestedCoverage() {
+		final CountHandler handler = new CountHandler();
+		final AbstractHub<Frame> hub = createHub();
+		final ConnectionSubscriptions subscriptions = new ConnectionSubscriptions(hub, handler);
+
+		subscriptions.subscribeAll(Arrays.asList(
+				new SubscribeFrame(new Subject("a.b.c")),
+				new SubscribeFrame(new Subject("a.b.*")),
+				new SubscribeFrame(new Subject("a.*"))));
+		assertEquals(subscriptions.getRegisteredCount(), 1);
+
+		// a.b.* takes over from a.* and still covers a.b.c
+		subscriptions.unsubscribe(new Subject("a.*"));
+		assertEquals(subscriptions.getRegisteredCount(), 1);
+		hub.publish(new Subject("a.b.c"), null, "body");
+		hub.publish(new Subject("a.b.d"), null, "body");
+		hub.publish(new Subject("a.c"), null, "body");
+		assertEquals(handler.count, 2);
+
+		subscriptions.unsubscribe(new Subject("a.b.*"));
+		assertEquals(subscriptions.getRegisteredCount(), 1);
+		hub.publish(new Subject("a.b.c"), null, "body");
+		hub.publish(new Subject("a.b.d"), null, "body");
+		assertEquals(handler.count, 3);
+	}
+
+	@Test
+	public void throttledSubscriptionsDoNotCover() {
+		final CountHandler handler = new CountHandler();
+		final AbstractHub<Frame> hub = createHub();
+		final ConnectionSubscriptions subscriptions = new ConnectionSubscriptions(hub, handler);
+
+		subscriptions.subscribe(new Subject("a.b.c"), null);
+		// A sampled wild card doesn't deliver every message so a.b.c stays registered
+		subscriptions.subscribe(new Subject("a.b.*"), null, SubscribeFrame.NOT_PARTITIONED, SubscriptionOptions.NONE.withSampling(2));
+		assertEquals(subscriptions.getRegisteredCount(), 2);
+		for (int i = 0; i < 4; i++) {
+			hub.publish(new Subject("a.b.d"), null, "body");
+		}
+		assertEquals(handler.count, 2);
+		assertEquals(subscriptions.getDroppedCount(), 2);
+
+		// An unthrottled wild card covers both
+		subscriptions.subscribe(new Subject("a.*"), null);
+		assertEquals(subscriptions.getRegisteredCount(), 1);
+		subscriptions.unsubscribe(new Subject("a.*"));
+		assertEquals(subscriptions.getRegisteredCount(), 2);
+		hub.publish(new Subject("a.b.d"), null, "body");
+		hub.publish(new Subject("a.b.d"), null, "body");
+		assertEquals(handler.count, 3);
+
+		subscriptions.unsubscribeAll();
+		assertEquals(subscriptions.getDroppedCount(), 3);
+	}
+
+	@Test
+	public void overlappingThrottledSubscriptionDeliversOnce() {
+		final CountHandler handler = new CountHandler();
+		final AbstractHub<Frame> hub = createHub();
+		final ConnectionSubscriptions subscriptions = new ConnectionSubscriptions(hub, handler);
+
+		subscriptions.subscribe(new Subject("a.b.*"), null, SubscribeFrame.NOT_PARTITIONED, SubscriptionOptions.NONE.withSampling(2));
+		subscriptions.subscribe(new Subject("a.*.c"), null);
+		assertEquals(subscriptions.getRegisteredCount(), 2);
+
+		// Both subscriptions match, the unthrottled one delivers every message and the sampled one is skipped
+		for (int i = 0; i < 4; i++) {
+			hub.publish(new Subject("a.b.c"), null, "body");
+		}
+		assertEquals(handler.count, 4);
+		assertEquals(subscriptions.getDroppedCount(), 0);
+
+		// Only the sampled subscription matches
+		for (int i = 0; i < 4; i++) {
+			hub.publish(new Subject("a.b.d"), null, "body");
+		}
+		assertEquals(handler.count, 6);
+		assertEquals(subscriptions.getDroppedCount(), 2);
+	}
+
+	@Test
+	public void filteredSubscriptions() {
+		final CountHandler prefixHandler = new CountHandler();
+		final CountHandler fieldHandler = new CountHandler();
+		final CountHandler otherFieldHandler = new CountHandler();
+		final AbstractHub<Frame> hub = createHub();
+		final SubscriptionOptions fieldFilter = SubscriptionOptions.NONE.withFieldEquals("order.status", "shipped");
+		new ConnectionSubscriptions(hub, prefixHandler).subscribe(new Subject("orders"), null, SubscribeFrame.NOT_PARTITIONED,
+				SubscriptionOptions.NONE.withBodyPrefix("{\"order\""));
+		final ConnectionSubscriptions fieldSubscriptions = new ConnectionSubscriptions(hub, fieldHandler);
+		fieldSubscriptions.subscribe(new Subject("orders"), null, SubscribeFrame.NOT_PARTITIONED, fieldFilter);
+		new ConnectionSubscriptions(hub, otherFieldHandler).subscribe(new Subject("orders"), null, SubscribeFrame.NOT_PARTITIONED, fieldFilter);
+
+		hub.publish(new Subject("orders"), null, "{\"order\": {\"id\": 1, \"status\": \"shipped\"}}");
+		hub.publish(new Subject("orders"), null, "{\"order\": {\"id\": 2, \"status\": \"pending\"}}");
+		hub.publish(new Subject("orders"), null, "not json");
+		assertEquals(prefixHandler.count, 2);
+		assertEquals(fieldHandler.count, 1);
+		assertEquals(otherFieldHandler.count, 1);
+		assertEquals(fieldSubscriptions.getDroppedCount(), 2);
+	}
+
+	@Test
+	public void overlappingFilteredSubscriptionsDeliverOnce() {
+		final CountHandler handler = new CountHandler();
+		final AbstractHub<Frame> hub = createHub();
+		final ConnectionSubscriptions subscriptions = new ConnectionSubscriptions(hub, handler);
+		subscriptions.subscribe(new Subject("orders.*"), null, SubscribeFrame.NOT_PARTITIONED,
+				SubscriptionOptions.NONE.withFieldEquals("status", "shipped"));
+		subscriptions.subscribe(new Subject("orders.eu"), null, SubscribeFrame.NOT_PARTITIONED,
+				SubscriptionOptions.NONE.withBodyPrefix("{"));
+		assertEquals(subscriptions.getRegisteredCount(), 2);
+
+		// Both filters match but the connection gets the message once
+		hub.publish(new Subject("orders.eu"), null, "{\"status\": \"shipped\"}");
+		assertEquals(handler.count, 1);
+		// Only the prefix filter matches
+		hub.publish(new Subject("orders.eu"), null, "{\"status\": \"pending\"}");
+		assertEquals(handler.count, 2);
+		// Neither matches
+		hub.publish(new Subject("orders.eu"), null, "[]");
+		assertEquals(handler.count, 2);
+	}
+
+	private static AbstractHub<Frame> createHub() {
+		return new AbstractHub<Frame>() {
+			@Override
+			protected Frame encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				return new PublishFrame(subject, replySubject, body);
+			}
+		};
+	}
+
+	private static class CountHandler implements Handler<Frame> {
+		private int count;
+
+		@Override
+		public void publish(Frame message) {
+			count++;
+		}
+	}
+}
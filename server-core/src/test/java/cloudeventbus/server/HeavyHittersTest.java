@@ -0,0 +1,80 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.Subject;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class HeavyHittersTest {
+
+	@Test
+	public void topSubjects() {
+		final HeavyHitters heavyHitters = new HeavyHitters(2, 256, 4, 3, 1000);
+		final Subject busy = new Subject("busy");
+		final Subject large = new Subject("large");
+		for (int i = 0; i < 1000; i++) {
+			heavyHitters.record(busy, 1, 0);
+			heavyHitters.record(new Subject("quiet." + i), 1, 0);
+			if (i % 100 == 0) {
+				heavyHitters.record(large, 10000, 0);
+			}
+		}
+
+		final List<HeavyHitters.Estimate> byCount = heavyHitters.report(false, 0);
+		assertEquals(byCount.size(), 2);
+		assertEquals(byCount.get(0).getSubject(), busy);
+		// Count-min sketches never underestimate
+		assertTrue(byCount.get(0).getEstimate() >= 1000);
+
+		final List<HeavyHitters.Estimate> byBytes = heavyHitters.report(true, 0);
+		assertEquals(byBytes.get(0).getSubject(), large);
+		assertTrue(byBytes.get(0).getEstimate() >= 100000);
+		assertEquals(byBytes.get(1).getSubject(), busy);
+	}
+
+	@Test
+	public void windowsExpire() {
+		final HeavyHitters heavyHitters = new HeavyHitters(1, 256, 4, 3, 1000);
+		final Subject old = new Subject("old");
+		final Subject recent = new Subject("recent");
+		for (int i = 0; i < 10; i++) {
+			heavyHitters.record(old, 1, 500);
+		}
+		heavyHitters.record(recent, 1, 2500);
+		heavyHitters.record(recent, 1, 2500);
+
+		// The first window is still covered by a report
+		final List<HeavyHitters.Estimate> inRange = heavyHitters.report(false, 2999);
+		assertEquals(inRange.get(0).getSubject(), old);
+		assertEquals(inRange.get(0).getEstimate(), 10);
+
+		// The first window has expired, reusing its slot must not count the old messages
+		heavyHitters.record(recent, 1, 3500);
+		final List<HeavyHitters.Estimate> expired = heavyHitters.report(false, 3500);
+		assertEquals(expired.size(), 1);
+		assertEquals(expired.get(0).getSubject(), recent);
+		assertEquals(expired.get(0).getEstimate(), 3);
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.MessageBody;
+import cloudeventbus.Subject;
+import cloudeventbus.codec.Frame;
+import cloudeventbus.codec.PublishFrame;
+import cloudeventbus.codec.SubscriptionOptions;
+import cloudeventbus.hub.AbstractHub;
+import cloudeventbus.hub.Handler;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class JsonFieldFilterTest {
+
+	@Test
+	public void topLevelField() {
+		assertTrue(matches("status", "shipped", "{\"status\": \"shipped\"}"));
+		assertFalse(matches("status", "shipped", "{\"status\": \"pending\"}"));
+	}
+
+	@Test
+	public void nestedField() {
+		final String body = "{\"order\": {\"customer\": {\"region\": \"eu\"}, \"status\": \"shipped\"}}";
+		assertTrue(matches("order.customer.region", "eu", body));
+		assertTrue(matches("order.status", "shipped", body));
+		assertFalse(matches("order.customer.region", "us", body));
+		// A field name holding the whole path doesn't match a nested field
+		assertFalse(matches("order.region", "eu", body));
+	}
+
+	@Test
+	public void numericAndBooleanValues() {
+		final String body = "{\"id\": 42, \"price\": 9.5, \"paid\": true, \"gift\": false}";
+		assertTrue(matches("id", "42", body));
+		assertFalse(matches("id", "43", body));
+		assertTrue(matches("price", "9.5", body));
+		assertTrue(matches("paid", "true", body));
+		assertTrue(matches("gift", "false", body));
+		assertFalse(matches("gift", "true", body));
+	}
+
+	@Test
+	public void quotedStrings() {
+		final String body = "{\"status\": \"shipped\", \"code\": \"42\", \"flag\": \"true\"}";
+		assertTrue(matches("status", "\"shipped\"", body));
+		assertFalse(matches("status", "\"pending\"", body));
+		assertTrue(matches("code", "\"42\"", body));
+		assertTrue(matches("flag", "\"true\"", body));
+		// Unquoted numbers and booleans don't match strings
+		assertFalse(matches("code", "42", body));
+		assertFalse(matches("flag", "true", body));
+		// Text with trailing content isn't a single JSON value and is taken as a string
+		assertTrue(matches("status", "\"a\" b", "{\"status\": \"\\\"a\\\" b\"}"));
+	}
+
+	@Test
+	public void numbersComparedByValue() {
+		final String body = "{\"id\": 1, \"price\": 1.0, \"big\": 100}";
+		assertTrue(matches("id", "1", body));
+		assertTrue(matches("id", "1.0", body));
+		assertTrue(matches("price", "1", body));
+		assertTrue(matches("price", "1.00", body));
+		assertTrue(matches("big", "1e2", body));
+		assertFalse(matches("id", "1.5", body));
+		// A quoted number is a string
+		assertFalse(matches("id", "\"1\"", body));
+	}
+
+	@Test
+	public void arraysAndObjectsNeverMatch() {
+		final String body = "{\"tags\": [\"a\", \"b\"], \"order\": {\"id\": 1}}";
+		assertFalse(matches("tags", "a", body));
+		assertFalse(matches("tags.0", "a", body));
+		assertFalse(matches("order", "{\"id\": 1}", body));
+	}
+
+	@Test
+	public void missingField() {
+		assertFalse(matches("status", "shipped", "{\"state\": \"shipped\"}"));
+		assertFalse(matches("order.status", "shipped", "{\"order\": \"shipped\"}"));
+		assertFalse(matches("order.status", "shipped", "{}"));
+	}
+
+	@Test
+	public void invalidJson() {
+		assertFalse(matches("status", "shipped", "not json"));
+		assertFalse(matches("status", "shipped", "{\"status\": \"shipped\""));
+		assertFalse(matches("status", "shipped", ""));
+	}
+
+	@Test
+	public void bodyBytes() {
+		final String body = "{\"city\": \"Z\u00fcrich\"}";
+		assertTrue(matches("city", "Z\u00fcrich", MessageBody.wrap(body.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	private static boolean matches(String field, String value, CharSequence body) {
+		final AbstractHub<Frame> hub = new AbstractHub<Frame>() {
+			@Override
+			protected Frame encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				return new PublishFrame(subject, replySubject, body);
+			}
+		};
+		final int[] count = new int[1];
+		final Handler<Frame> handler = new Handler<Frame>() {
+			@Override
+			public void publish(Frame message) {
+				count[0]++;
+			}
+		};
+		hub.subscribe(new Subject("test"), new FilteredHandler(handler, SubscriptionOptions.NONE.withFieldEquals(field, value)));
+		hub.publish(new Subject("test"), null, body);
+		return count[0] == 1;
+	}
+}
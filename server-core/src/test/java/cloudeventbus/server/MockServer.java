@@ -19,8 +19,8 @@ package cloudeventbus.server;
 import cloudeventbus.Constants;
 import cloudeventbus.Subject;
 import cloudeventbus.codec.Codec;
+import cloudeventbus.codec.EncodedFrame;
 import cloudeventbus.codec.Frame;
-import cloudeventbus.codec.PublishFrame;
 import cloudeventbus.hub.AbstractHub;
 import cloudeventbus.hub.SubscribeableHub;
 import io.netty.buffer.ByteBuf;
@@ -41,26 +41,40 @@ public class MockServer {
 
 	final SubscribeableHub<Frame> clientSubscriptionHub = new AbstractHub<Frame>() {
 		@Override
-		protected Frame encode(Subject subject, Subject replySubject, String body, int recipientCount) {
-			return new PublishFrame(subject, replySubject, body);
+		protected Frame encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+			return EncodedFrame.publish(subject, replySubject, body);
+		}
+
+		@Override
+		protected void release(Frame message) {
+			((EncodedFrame) message).release();
 		}
 	};
 
+	final ReplyRouter replyRouter = new ReplyRouter();
+
 	public MockServer() {
 		this(new ServerConfig(Constants.DEFAULT_PORT, SERVER_AGENT, null, null, null));
 	}
 
 	public MockServer(ServerConfig serverConfig) {
+		this(serverConfig, Constants.DEFAULT_MAX_MESSAGE_SIZE);
+	}
+
+	public MockServer(ServerConfig serverConfig, int maxMessageSize) {
 		globalHub = new GlobalHub();
 		clusterManager = new ClusterManager(serverConfig, globalHub, null);
 		globalHub.addLocalHub(clientSubscriptionHub);
+		globalHub.addLocalHub(replyRouter);
 		serverChannel = new EmbeddedByteChannel(
-				new Codec(),
+				new Codec(maxMessageSize),
 				new ServerHandler(
 						serverConfig,
 						clusterManager,
 						globalHub,
-						clientSubscriptionHub
+						clientSubscriptionHub,
+						replyRouter,
+						maxMessageSize
 				));
 	}
 
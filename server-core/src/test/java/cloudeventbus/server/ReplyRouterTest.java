@@ -0,0 +1,58 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.Subject;
+import cloudeventbus.codec.Frame;
+import cloudeventbus.hub.Handler;
+import io.netty.util.HashedWheelTimer;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class ReplyRouterTest {
+
+	@Test
+	public void limitedReplies() {
+		final HashedWheelTimer timer = new HashedWheelTimer();
+		try {
+			final ReplyRouter router = new ReplyRouter(timer, 2, TimeUnit.MINUTES.toMillis(1));
+			final List<Frame> replies = new ArrayList<>();
+			final Subject replySubject = Subject.createRequestReplySubject();
+			router.register(replySubject, new Handler<Frame>() {
+				@Override
+				public void publish(Frame message) {
+					replies.add(message);
+				}
+			});
+			for (int i = 0; i < 3; i++) {
+				router.publish(replySubject, null, "reply");
+			}
+			assertEquals(replies.size(), 2);
+			assertEquals(router.getRouteCount(), 0);
+		} finally {
+			timer.stop();
+		}
+	}
+}
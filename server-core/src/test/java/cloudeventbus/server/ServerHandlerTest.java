@@ -20,6 +20,7 @@ import cloudeventbus.Constants;
 import cloudeventbus.Subject;
 import cloudeventbus.codec.AuthenticationRequestFrame;
 import cloudeventbus.codec.AuthenticationResponseFrame;
+import cloudeventbus.codec.BulkSubscribeFrame;
 import cloudeventbus.codec.ErrorFrame;
 import cloudeventbus.codec.GreetingFrame;
 import cloudeventbus.codec.PublishFrame;
@@ -32,6 +33,7 @@ import cloudeventbus.pki.TrustStore;
 import org.testng.annotations.Test;
 
 import java.security.KeyPair;
+import java.util.Arrays;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
@@ -54,6 +56,19 @@ public class ServerHandlerTest {
 
 		final ServerReadyFrame ready = (ServerReadyFrame) server.read();
 		assertNotNull(ready);
+		assertEquals(ready.getMaxMessageSize(), Constants.DEFAULT_MAX_MESSAGE_SIZE);
+	}
+
+	@Test
+	public void serverReadyAdvertisesMaxMessageSize() {
+		final int maxMessageSize = Constants.DEFAULT_MAX_MESSAGE_SIZE * 4;
+		final MockServer server = new MockServer(new ServerConfig(Constants.DEFAULT_PORT, MockServer.SERVER_AGENT, null, null, null), maxMessageSize);
+		server.write(new GreetingFrame(1, "mock-client", 0L));
+		assertNotNull(server.read());
+
+		final ServerReadyFrame ready = (ServerReadyFrame) server.read();
+		assertNotNull(ready);
+		assertEquals(ready.getMaxMessageSize(), maxMessageSize);
 	}
 
 	@Test
@@ -77,6 +92,87 @@ public class ServerHandlerTest {
 		assertEquals(errorFrame.getCode(), ErrorFrame.Code.DUPLICATE_SUBSCRIPTION);
 	}
 
+	@Test
+	public void bulkSubscribe() {
+		final MockServer server = new MockServer();
+		server.write(new GreetingFrame(1, "mock-client", 0l));
+		assertNotNull(server.read());
+		assertNotNull(server.read());
+
+		server.write(new BulkSubscribeFrame(Arrays.asList(
+				new SubscribeFrame(new Subject("foo")),
+				new SubscribeFrame(new Subject("bar.*"), "workers"))));
+		assertNull(server.read());
+
+		server.write(new PublishFrame(new Subject("foo"), null, "foo"));
+		assertEquals(((PublishFrame) server.read()).getBody(), "foo");
+		server.write(new PublishFrame(new Subject("bar.baz"), null, "bar"));
+		assertEquals(((PublishFrame) server.read()).getBody(), "bar");
+
+		server.write(new BulkSubscribeFrame(Arrays.asList(new SubscribeFrame(new Subject("baz")), new SubscribeFrame(new Subject("foo")))));
+		final ErrorFrame errorFrame = (ErrorFrame) server.read();
+		assertNotNull(errorFrame);
+		assertEquals(errorFrame.getCode(), ErrorFrame.Code.DUPLICATE_SUBSCRIPTION);
+	}
+
+	@Test
+	public void requestReply() {
+		final MockServer server = new MockServer();
+		server.write(new GreetingFrame(1, "mock-client", 0l));
+		assertNotNull(server.read());
+		assertNotNull(server.read());
+
+		final Subject replySubject = Subject.createRequestReplySubject();
+		server.write(new PublishFrame(new Subject("test"), replySubject, "request"));
+		assertEquals(server.replyRouter.getRouteCount(), 1);
+
+		server.write(new PublishFrame(replySubject, null, "reply"));
+		final PublishFrame reply = (PublishFrame) server.read();
+		assertNotNull(reply);
+		assertEquals(reply.getSubject(), replySubject);
+		assertEquals(reply.getBody(), "reply");
+
+		// Requests that don't limit their replies get every reply until the route expires
+		server.write(new PublishFrame(replySubject, null, "another reply"));
+		final PublishFrame anotherReply = (PublishFrame) server.read();
+		assertNotNull(anotherReply);
+		assertEquals(anotherReply.getBody(), "another reply");
+		assertEquals(server.replyRouter.getRouteCount(), 1);
+	}
+
+	@Test
+	public void requestReplySingleReply() {
+		final MockServer server = new MockServer();
+		server.write(new GreetingFrame(1, "mock-client", 0l));
+		assertNotNull(server.read());
+		assertNotNull(server.read());
+
+		final Subject replySubject = Subject.createRequestReplySubject(1);
+		server.write(new PublishFrame(new Subject("test"), replySubject, "request"));
+		assertEquals(server.replyRouter.getRouteCount(), 1);
+
+		// The request only wants one reply so the route is removed once it has been delivered
+		server.write(new PublishFrame(replySubject, null, "reply"));
+		assertEquals(((PublishFrame) server.read()).getBody(), "reply");
+		assertEquals(server.replyRouter.getRouteCount(), 0);
+		server.write(new PublishFrame(replySubject, null, "another reply"));
+		assertNull(server.read());
+	}
+
+	@Test
+	public void requestRoutesRemovedOnClose() {
+		final MockServer server = new MockServer();
+		server.write(new GreetingFrame(1, "mock-client", 0l));
+		assertNotNull(server.read());
+		assertNotNull(server.read());
+
+		server.write(new PublishFrame(new Subject("test"), Subject.createRequestReplySubject(), "request"));
+		server.write(new PublishFrame(new Subject("test"), Subject.createRequestReplySubject(2), "request"));
+		assertEquals(server.replyRouter.getRouteCount(), 2);
+		server.serverChannel.finish();
+		assertEquals(server.replyRouter.getRouteCount(), 0);
+	}
+
 	@Test
 	public void authentication() {
 		final KeyPair keyPair = CertificateUtils.generateKeyPair();
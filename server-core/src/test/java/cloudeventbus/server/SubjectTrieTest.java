@@ -0,0 +1,106 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+package cloudeventbus.server;
+
+import cloudeventbus.Subject;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class SubjectTrieTest {
+
+	private static final String[] TOKENS = {"a", "b", "c", Subject.WILD_CARD_TOKEN};
+
+	@Test
+	public void matchesIsSub() {
+		final Random random = new Random(42);
+		final Set<Subject> subjects = new HashSet<>();
+		while (subjects.size() < 200) {
+			subjects.add(randomSubject(random));
+		}
+		final SubjectTrie<Subject> trie = new SubjectTrie<>();
+		for (Subject subject : subjects) {
+			trie.put(subject, subject);
+		}
+		assertMatchesIsSub(trie, subjects);
+
+		// Removing subjects prunes them from both lookups
+		final List<Subject> removed = new ArrayList<>(subjects).subList(0, 100);
+		for (Subject subject : removed) {
+			trie.remove(subject);
+		}
+		subjects.removeAll(new ArrayList<>(removed));
+		assertMatchesIsSub(trie, subjects);
+	}
+
+	@Test
+	public void clear() {
+		final SubjectTrie<Subject> trie = new SubjectTrie<>();
+		trie.put(new Subject("a.*"), new Subject("a.*"));
+		trie.clear();
+		final List<Subject> covering = new ArrayList<>();
+		trie.findCovering(new Subject("a.b"), covering);
+		assertEquals(covering.size(), 0);
+	}
+
+	private static void assertMatchesIsSub(SubjectTrie<Subject> trie, Set<Subject> subjects) {
+		final Random random = new Random(7);
+		for (int i = 0; i < 500; i++) {
+			final Subject query = randomSubject(random);
+			final Set<Subject> expectedCovering = new HashSet<>();
+			final Set<Subject> expectedCoveredBy = new HashSet<>();
+			for (Subject subject : subjects) {
+				if (subject.isSub(query)) {
+					expectedCovering.add(subject);
+				}
+				if (query.isSub(subject)) {
+					expectedCoveredBy.add(subject);
+				}
+			}
+			final List<Subject> covering = new ArrayList<>();
+			trie.findCovering(query, covering);
+			assertTrue(new HashSet<>(covering).equals(expectedCovering), "Subjects covering " + query);
+			assertEquals(covering.size(), expectedCovering.size());
+			final List<Subject> coveredBy = new ArrayList<>();
+			trie.findCoveredBy(query, coveredBy);
+			assertTrue(new HashSet<>(coveredBy).equals(expectedCoveredBy), "Subjects covered by " + query);
+			assertEquals(coveredBy.size(), expectedCoveredBy.size());
+		}
+	}
+
+	private static Subject randomSubject(Random random) {
+		final StringBuilder subject = new StringBuilder();
+		final int length = 1 + random.nextInt(4);
+		for (int i = 0; i < length; i++) {
+			if (i > 0) {
+				subject.append('.');
+			}
+			subject.append(TOKENS[random.nextInt(TOKENS.length)]);
+		}
+		return new Subject(subject.toString());
+	}
+}
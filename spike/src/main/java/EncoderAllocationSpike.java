@@ -0,0 +1,92 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+import cloudeventbus.Constants;
+import cloudeventbus.Subject;
+import cloudeventbus.codec.BulkSubscribeFrame;
+import cloudeventbus.codec.Encoder;
+import cloudeventbus.codec.ErrorFrame;
+import cloudeventbus.codec.Frame;
+import cloudeventbus.codec.GreetingFrame;
+import cloudeventbus.codec.PublishFrame;
+import cloudeventbus.codec.SubscribeFrame;
+import cloudeventbus.codec.UnsubscribeFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the bytes the {@link Encoder} allocates for each frame it encodes, along with the frames encoded per second.
+ * Frames are encoded into a buffer that is large enough for every frame in a batch so that growing the output buffer
+ * isn't counted. Allocations are measured with {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class EncoderAllocationSpike {
+
+	private static final int FRAMES = 10000;
+	private static final int ITERATIONS = 200;
+
+	public static void main(String[] args) throws Exception {
+		final List<SubscribeFrame> bulkSubscriptions = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			bulkSubscriptions.add(new SubscribeFrame(new Subject("orders." + i + ".*"), "workers", i));
+		}
+		final PublishFrame publish = new PublishFrame(new Subject("orders.eu.created"), null, "{\"id\": 42}");
+		final PublishFrame publishWithReply = new PublishFrame(new Subject("orders.eu.created"), new Subject("_INBOX.42"), "{\"id\": 42}");
+		for (int run = 0; run < 3; run++) {
+			System.out.println("Run " + run);
+			for (int protocolVersion = Constants.PROTOCOL_VERSION_TEXT; protocolVersion <= Constants.PROTOCOL_VERSION; protocolVersion++) {
+				final String protocol = protocolVersion == Constants.PROTOCOL_VERSION_TEXT ? "Text" : "Binary";
+				benchmark(protocol, protocolVersion, "Publish", publish);
+				benchmark(protocol, protocolVersion, "Publish with reply", publishWithReply);
+				benchmark(protocol, protocolVersion, "Subscribe to partition", new SubscribeFrame(new Subject("orders.*.created"), "workers", 7));
+				benchmark(protocol, protocolVersion, "Bulk subscribe (8)", new BulkSubscribeFrame(bulkSubscriptions));
+				benchmark(protocol, protocolVersion, "Unsubscribe", new UnsubscribeFrame(new Subject("orders.*.created")));
+				benchmark(protocol, protocolVersion, "Error", new ErrorFrame(ErrorFrame.Code.NOT_SUBSCRIBED, "Not subscribed"));
+			}
+		}
+	}
+
+	private static void benchmark(String protocol, int protocolVersion, String name, Frame frame) throws Exception {
+		final Encoder encoder = new Encoder();
+		final ByteBuf greeting = Unpooled.buffer();
+		encoder.encode(null, new GreetingFrame(protocolVersion, "spike", 0), greeting);
+		final ByteBuf buffer = Unpooled.buffer(FRAMES * 256);
+
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			buffer.clear();
+			for (int j = 0; j < FRAMES; j++) {
+				encoder.encode(null, frame, buffer);
+			}
+		}
+		final long elapsed = System.nanoTime() - start;
+		final long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		final long frames = (long) FRAMES * ITERATIONS;
+		System.out.printf("  %-6s %-24s %,12.0f frames/s  %6.1f bytes allocated/frame%n",
+				protocol,
+				name,
+				frames / (elapsed / 1e9),
+				(double) allocated / frames);
+	}
+}
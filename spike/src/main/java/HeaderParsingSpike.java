@@ -0,0 +1,89 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+import cloudeventbus.Constants;
+import cloudeventbus.Subject;
+import cloudeventbus.codec.BulkSubscribeFrame;
+import cloudeventbus.codec.Decoder;
+import cloudeventbus.codec.Encoder;
+import cloudeventbus.codec.ErrorFrame;
+import cloudeventbus.codec.Frame;
+import cloudeventbus.codec.PingFrame;
+import cloudeventbus.codec.PublishFrame;
+import cloudeventbus.codec.SubscribeFrame;
+import cloudeventbus.codec.SubscriptionOptions;
+import cloudeventbus.codec.UnsubscribeFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how many text protocol frames per second the {@link Decoder} decodes for frames with differently shaped
+ * headers. Each shape is encoded once into a buffer which is then decoded over and over, the decoder is called
+ * directly without a channel.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class HeaderParsingSpike {
+
+	private static final int FRAMES = 10000;
+	private static final int ITERATIONS = 200;
+
+	public static void main(String[] args) throws Exception {
+		final List<SubscribeFrame> bulkSubscriptions = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			bulkSubscriptions.add(new SubscribeFrame(new Subject("orders." + i + ".*"), "workers", i));
+		}
+		for (int run = 0; run < 3; run++) {
+			System.out.println("Run " + run);
+			benchmark("Ping", PingFrame.PING);
+			benchmark("Publish", new PublishFrame(new Subject("orders.eu.created"), null, "body"));
+			benchmark("Publish with reply", new PublishFrame(new Subject("orders.eu.created"), new Subject("_INBOX.42"), "body"));
+			benchmark("Subscribe", new SubscribeFrame(new Subject("orders.*.created")));
+			benchmark("Subscribe to partition", new SubscribeFrame(new Subject("orders.*.created"), "workers", 7));
+			benchmark("Subscribe with options", new SubscribeFrame(new Subject("orders.*.created"), null,
+					SubscribeFrame.NOT_PARTITIONED, SubscriptionOptions.NONE.withSampling(10).withMaxRate(100)));
+			benchmark("Bulk subscribe (8)", new BulkSubscribeFrame(bulkSubscriptions));
+			benchmark("Unsubscribe", new UnsubscribeFrame(new Subject("orders.*.created")));
+			benchmark("Error", new ErrorFrame(ErrorFrame.Code.NOT_SUBSCRIBED, "Not subscribed to orders.*.created"));
+		}
+	}
+
+	private static void benchmark(String name, Frame frame) throws Exception {
+		final Encoder encoder = new Encoder();
+		final Decoder decoder = new Decoder(Constants.DEFAULT_MAX_MESSAGE_SIZE) {};
+		final ByteBuf buffer = Unpooled.buffer();
+		for (int i = 0; i < FRAMES; i++) {
+			encoder.encode(null, frame, buffer);
+		}
+
+		long decoded = 0;
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			buffer.readerIndex(0);
+			while (buffer.isReadable() && decoder.decode(null, buffer) != null) {
+				decoded++;
+			}
+		}
+		final long elapsed = System.nanoTime() - start;
+		System.out.printf("  %-24s %,12.0f frames/s  %4d bytes/frame%n",
+				name,
+				decoded / (elapsed / 1e9),
+				buffer.writerIndex() / FRAMES);
+	}
+}
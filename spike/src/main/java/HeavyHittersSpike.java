@@ -0,0 +1,104 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+import cloudeventbus.Subject;
+import cloudeventbus.hub.AbstractHub;
+import cloudeventbus.hub.Handler;
+import cloudeventbus.server.GlobalHub;
+import cloudeventbus.server.HeavyHitters;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the publish overhead of tracking heavy hitters in the {@link GlobalHub}. Subjects are drawn from a skewed
+ * distribution over a large number of subjects so the sketches and candidate heaps see realistic churn.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class HeavyHittersSpike {
+
+	private static final int SUBJECTS = 100000;
+	private static final int SAMPLES = 1 << 20;
+	private static final int PUBLISHES_PER_THREAD = 5000000;
+
+	public static void main(String[] args) throws Exception {
+		final Subject[] subjects = new Subject[SUBJECTS];
+		for (int i = 0; i < SUBJECTS; i++) {
+			subjects[i] = new Subject("orders." + i + ".created");
+		}
+		// Roughly Zipfian, the first subjects are far more popular than the rest
+		final Random random = new Random(0);
+		final Subject[] samples = new Subject[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++) {
+			samples[i] = subjects[(int) Math.pow(SUBJECTS, random.nextDouble()) - 1];
+		}
+
+		final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		HeavyHitters heavyHitters = null;
+		for (int run = 0; run < 3; run++) {
+			heavyHitters = new HeavyHitters();
+			final double untracked = benchmark(new GlobalHub(), samples, threads);
+			final double tracked = benchmark(new GlobalHub(heavyHitters), samples, threads);
+			System.out.printf("Run %d: untracked %,.0f msgs/s, tracked %,.0f msgs/s (%.1f%% overhead)%n",
+					run, untracked, tracked, (untracked - tracked) / untracked * 100);
+		}
+		System.out.println("Top subjects by messages: " + heavyHitters.getTopSubjectsByCount());
+		System.out.println("Top subjects by bytes: " + heavyHitters.getTopSubjectsByBytes());
+	}
+
+	private static double benchmark(final GlobalHub globalHub, final Subject[] samples, int threads) throws Exception {
+		final AbstractHub<Object> hub = new AbstractHub<Object>() {
+			@Override
+			protected Object encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				return body;
+			}
+		};
+		hub.subscribe(new Subject("orders.*.created"), new Handler<Object>() {
+			@Override
+			public void publish(Object message) {
+			}
+		});
+		globalHub.addLocalHub(hub);
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * 7919;
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < PUBLISHES_PER_THREAD; i++) {
+							final Subject subject = samples[(offset + i) & (SAMPLES - 1)];
+							globalHub.publish(subject, null, (i & 15) == 0 ? "a much larger message body" : "body");
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		final long startTime = System.nanoTime();
+		start.countDown();
+		done.await();
+		final long elapsed = System.nanoTime() - startTime;
+		return (long) threads * PUBLISHES_PER_THREAD / (elapsed / 1e9);
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+import cloudeventbus.Subject;
+import cloudeventbus.hub.AbstractHub;
+import cloudeventbus.hub.Handler;
+import cloudeventbus.hub.OffHeapHub;
+import cloudeventbus.hub.SubscribeableHub;
+import cloudeventbus.hub.SubscriptionHandle;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the memory used per subscription and the garbage collection pauses of an {@link AbstractHub} and an
+ * {@link OffHeapHub} holding millions of subscriptions spread over thousands of handlers, one handler per simulated
+ * connection. The subscription handles are kept like a server keeps them for each connection.
+ *
+ * <p>Pass the number of subscriptions as the first argument, the default is one million. Run with a heap large enough
+ * for the on heap index, e.g. {@code -Xmx4g -XX:MaxDirectMemorySize=1g}, and a single hub in the heap at a time.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class OffHeapHubSpike {
+
+	private static final int HANDLERS = 10000;
+	private static final int PUBLISHES = 2000000;
+
+	public static void main(String[] args) {
+		final int subscriptions = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final List<Handler<Object>> handlers = new ArrayList<>();
+		for (int i = 0; i < HANDLERS; i++) {
+			handlers.add(new Handler<Object>() {
+				@Override
+				public void publish(Object message) {
+				}
+			});
+		}
+		for (int run = 0; run < 2; run++) {
+			System.out.println("Run " + run);
+			benchmark("AbstractHub", new AbstractHub<Object>() {
+				@Override
+				protected Object encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+					return body;
+				}
+			}, handlers, subscriptions);
+			benchmark("OffHeapHub", new OffHeapHub<Object>() {
+				@Override
+				protected Object encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+					return body;
+				}
+			}, handlers, subscriptions);
+		}
+	}
+
+	private static void benchmark(String name, SubscribeableHub<Object> hub, List<Handler<Object>> handlers, int subscriptions) {
+		final long heapBefore = usedHeap();
+		final long start = System.nanoTime();
+		final List<SubscriptionHandle> handles = new ArrayList<>(subscriptions);
+		for (int i = 0; i < subscriptions; i++) {
+			// Mostly exact subjects with a wild card subscription every tenth subject
+			final Subject subject = new Subject(i % 10 == 0 ? "users." + i + ".*" : "users." + i + ".events");
+			handles.add(hub.subscribe(subject, handlers.get(i % handlers.size())));
+		}
+		final long subscribeNanos = System.nanoTime() - start;
+		final long heapBytes = usedHeap() - heapBefore;
+		final long offHeapBytes = hub instanceof OffHeapHub ? ((OffHeapHub<Object>) hub).getOffHeapBytes() : 0;
+
+		// A full collection has to trace every object reachable from the index
+		long fullGcNanos = Long.MAX_VALUE;
+		for (int i = 0; i < 3; i++) {
+			final long gcStart = System.nanoTime();
+			System.gc();
+			fullGcNanos = Math.min(fullGcNanos, System.nanoTime() - gcStart);
+		}
+
+		// Publishing allocates routes and encoded messages, collections of that garbage have to scan the old index
+		final long gcCountBefore = gcCount();
+		final long gcTimeBefore = gcTime();
+		final long publishStart = System.nanoTime();
+		for (int i = 0; i < PUBLISHES; i++) {
+			final int user = (i * 7919) % subscriptions;
+			hub.publish(new Subject("users." + user + ".events"), null, "body");
+		}
+		final long publishNanos = System.nanoTime() - publishStart;
+
+		System.out.printf("  %-12s %,10d subs  heap %6.1f B/sub  off heap %6.1f B/sub  subscribe %,8.0f subs/s%n",
+				name, subscriptions, (double) heapBytes / subscriptions, (double) offHeapBytes / subscriptions,
+				subscriptions / (subscribeNanos / 1e9));
+		System.out.printf("  %-12s full GC %,6.1f ms  publish %,10.0f msgs/s with %d collections taking %,d ms%n",
+				"", fullGcNanos / 1e6, PUBLISHES / (publishNanos / 1e9), gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+
+		for (SubscriptionHandle handle : handles) {
+			handle.remove();
+		}
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += bean.getCollectionCount();
+		}
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += bean.getCollectionTime();
+		}
+		return time;
+	}
+}
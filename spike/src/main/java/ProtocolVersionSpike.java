@@ -0,0 +1,91 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+import cloudeventbus.Constants;
+import cloudeventbus.Subject;
+import cloudeventbus.codec.Decoder;
+import cloudeventbus.codec.Encoder;
+import cloudeventbus.codec.Frame;
+import cloudeventbus.codec.GreetingFrame;
+import cloudeventbus.codec.PublishFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Compares encoding and decoding publish frames with the text protocol and the binary protocol. The encoder and
+ * decoder are called directly, without a channel, and are switched to a protocol version by passing them a greeting
+ * just like a connection does.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class ProtocolVersionSpike {
+
+	private static final int FRAMES = 10000;
+	private static final int ITERATIONS = 200;
+
+	public static void main(String[] args) throws Exception {
+		final int[] bodySizes = {16, 256, 2048};
+		for (int run = 0; run < 3; run++) {
+			System.out.println("Run " + run);
+			for (int bodySize : bodySizes) {
+				System.out.println(" " + bodySize + " byte bodies");
+				benchmark("Text", Constants.PROTOCOL_VERSION_TEXT, bodySize);
+				benchmark("Binary", Constants.PROTOCOL_VERSION_BINARY, bodySize);
+			}
+		}
+	}
+
+	private static void benchmark(String name, int protocolVersion, int bodySize) throws Exception {
+		final Encoder encoder = new Encoder();
+		final Decoder decoder = new Decoder(Constants.DEFAULT_MAX_MESSAGE_SIZE) {};
+		final ByteBuf greeting = Unpooled.buffer();
+		encoder.encode(null, new GreetingFrame(protocolVersion, "spike", 0), greeting);
+		decoder.decode(null, greeting);
+
+		final StringBuilder body = new StringBuilder();
+		for (int i = 0; i < bodySize; i++) {
+			body.append((char) ('a' + i % 26));
+		}
+		final PublishFrame frame = new PublishFrame(new Subject("orders.eu.created"), new Subject("_INBOX.42"), body.toString());
+		final ByteBuf buffer = Unpooled.buffer(FRAMES * (bodySize + 64));
+
+		long encodeTime = 0;
+		long decodeTime = 0;
+		long decoded = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			buffer.clear();
+			long start = System.nanoTime();
+			for (int j = 0; j < FRAMES; j++) {
+				encoder.encode(null, frame, buffer);
+			}
+			encodeTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Frame decodedFrame;
+			while (buffer.isReadable() && (decodedFrame = decoder.decode(null, buffer)) != null) {
+				decoded += ((PublishFrame) decodedFrame).getBody().length();
+			}
+			decodeTime += System.nanoTime() - start;
+		}
+		final long frames = (long) FRAMES * ITERATIONS;
+		System.out.printf("  %-8s encode %,12.0f frames/s  decode %,12.0f frames/s  %4d bytes/frame (%d)%n",
+				name,
+				frames / (encodeTime / 1e9),
+				frames / (decodeTime / 1e9),
+				buffer.writerIndex() / FRAMES,
+				decoded / frames);
+	}
+}
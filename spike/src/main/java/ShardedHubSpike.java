@@ -0,0 +1,136 @@
+/*
+ *   Copyright (c) 2013 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+import cloudeventbus.Subject;
+import cloudeventbus.hub.AbstractHub;
+import cloudeventbus.hub.Handler;
+import cloudeventbus.hub.ShardedHub;
+import cloudeventbus.hub.SubscribeableHub;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how publish throughput scales with the number of publishing threads for a single {@link AbstractHub}
+ * shared by every thread and for a {@link ShardedHub} with one shard per publishing thread.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class ShardedHubSpike {
+
+	private static final int SUBJECTS = 4096;
+	private static final int PUBLISHES_PER_THREAD = 1000000;
+
+	public static void main(String[] args) throws Exception {
+		final int cores = Runtime.getRuntime().availableProcessors();
+		final Subject[] subjects = new Subject[SUBJECTS];
+		for (int i = 0; i < SUBJECTS; i++) {
+			subjects[i] = new Subject("orders." + i + ".created");
+		}
+		System.out.printf("%8s %20s %20s%n", "threads", "shared msgs/s", "sharded msgs/s");
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			final double shared = benchmark(createSharedHub(), subjects, threads, null);
+			final ExecutorService[] executors = new ExecutorService[threads];
+			for (int i = 0; i < threads; i++) {
+				executors[i] = Executors.newSingleThreadExecutor();
+			}
+			final double sharded = benchmark(createShardedHub(executors), subjects, threads, executors);
+			for (ExecutorService executor : executors) {
+				executor.shutdown();
+			}
+			System.out.printf("%8d %,20.0f %,20.0f%n", threads, shared, sharded);
+		}
+	}
+
+	private static double benchmark(final SubscribeableHub<Object> hub, final Subject[] subjects, int threads, ExecutorService[] shards) throws Exception {
+		final AtomicLong[] counters = new AtomicLong[subjects.length];
+		for (int i = 0; i < subjects.length; i++) {
+			final AtomicLong counter = new AtomicLong();
+			counters[i] = counter;
+			hub.subscribe(subjects[i], new Handler<Object>() {
+				@Override
+				public void publish(Object message) {
+					counter.incrementAndGet();
+				}
+			});
+		}
+		hub.subscribe(new Subject("orders.*.created"), new Handler<Object>() {
+			@Override
+			public void publish(Object message) {
+				// Wild card subscriptions are replicated to every shard
+			}
+		});
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * 7919;
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < PUBLISHES_PER_THREAD; i++) {
+							hub.publish(subjects[(offset + i) % subjects.length], null, "body");
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		final long startTime = System.nanoTime();
+		start.countDown();
+		done.await();
+		// Sharded hubs deliver asynchronously, wait for the shards to drain.
+		final long expected = (long) threads * PUBLISHES_PER_THREAD;
+		while (delivered(counters) < expected) {
+			Thread.yield();
+		}
+		final long elapsed = System.nanoTime() - startTime;
+		return expected / (elapsed / 1e9);
+	}
+
+	private static long delivered(AtomicLong[] counters) {
+		long total = 0;
+		for (AtomicLong counter : counters) {
+			total += counter.get();
+		}
+		return total;
+	}
+
+	private static SubscribeableHub<Object> createSharedHub() {
+		return new AbstractHub<Object>() {
+			@Override
+			protected Object encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				return body;
+			}
+		};
+	}
+
+	private static SubscribeableHub<Object> createShardedHub(ExecutorService[] executors) {
+		return new ShardedHub<Object>(executors) {
+			@Override
+			protected Object encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				return body;
+			}
+		};
+	}
+}
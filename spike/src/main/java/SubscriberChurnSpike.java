@@ -0,0 +1,123 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+import cloudeventbus.Subject;
+import cloudeventbus.hub.AbstractHub;
+import cloudeventbus.hub.Handler;
+import cloudeventbus.hub.SnapshotHub;
+import cloudeventbus.hub.SubscribeableHub;
+import cloudeventbus.hub.SubscriptionHandle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Measures subscription churn on a single subject that already has many subscribers. Each operation subscribes a new
+ * handler and unsubscribes a randomly chosen existing one, the way clients of a busy subject come and go. A
+ * {@link CopyOnWriteArrayList} of handlers, which copies every subscriber on each change, is included as a baseline.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class SubscriberChurnSpike {
+
+	private static final int[] SUBSCRIBER_COUNTS = {10000, 100000};
+	private static final int OPERATIONS = 20000;
+
+	private static final Subject SUBJECT = new Subject("orders.created");
+
+	public static void main(String[] args) {
+		for (int run = 0; run < 3; run++) {
+			System.out.println("Run " + run);
+			for (int subscribers : SUBSCRIBER_COUNTS) {
+				System.out.println(" " + subscribers + " subscribers");
+				benchmarkHub("AbstractHub", newAbstractHub(), subscribers, false);
+				benchmarkHub("SnapshotHub", newSnapshotHub(), subscribers, false);
+				benchmarkHub("SnapshotHub queue group", newSnapshotHub(), subscribers, true);
+				benchmarkCopyOnWrite(subscribers);
+			}
+		}
+	}
+
+	private static void benchmarkHub(String name, SubscribeableHub<Object> hub, int subscribers, boolean queueGroup) {
+		final Random random = new Random(0);
+		final List<SubscriptionHandle> handles = new ArrayList<>(subscribers);
+		for (int i = 0; i < subscribers; i++) {
+			handles.add(subscribe(hub, queueGroup));
+		}
+		hub.publish(SUBJECT, null, "body");
+		final long start = System.nanoTime();
+		for (int i = 0; i < OPERATIONS; i++) {
+			final int index = random.nextInt(handles.size());
+			handles.get(index).remove();
+			handles.set(index, subscribe(hub, queueGroup));
+		}
+		report(name, start);
+	}
+
+	private static SubscriptionHandle subscribe(SubscribeableHub<Object> hub, boolean queueGroup) {
+		return queueGroup ? hub.subscribe(SUBJECT, "workers", new NullHandler()) : hub.subscribe(SUBJECT, new NullHandler());
+	}
+
+	private static void benchmarkCopyOnWrite(int subscribers) {
+		final Random random = new Random(0);
+		final List<Handler<Object>> handlers = new CopyOnWriteArrayList<>();
+		final List<Handler<Object>> subscribed = new ArrayList<>(subscribers);
+		for (int i = 0; i < subscribers; i++) {
+			subscribed.add(new NullHandler());
+		}
+		handlers.addAll(subscribed);
+		final long start = System.nanoTime();
+		for (int i = 0; i < OPERATIONS; i++) {
+			final int index = random.nextInt(subscribed.size());
+			handlers.remove(subscribed.get(index));
+			final Handler<Object> handler = new NullHandler();
+			subscribed.set(index, handler);
+			handlers.add(handler);
+		}
+		report("CopyOnWriteArrayList", start);
+	}
+
+	private static void report(String name, long start) {
+		final long elapsed = System.nanoTime() - start;
+		System.out.printf("  %-30s %,12.0f subscribe/unsubscribe pairs/s%n", name, OPERATIONS / (elapsed / 1e9));
+	}
+
+	private static AbstractHub<Object> newAbstractHub() {
+		return new AbstractHub<Object>() {
+			@Override
+			protected Object encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				return body;
+			}
+		};
+	}
+
+	private static SnapshotHub<Object> newSnapshotHub() {
+		return new SnapshotHub<Object>() {
+			@Override
+			protected Object encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				return body;
+			}
+		};
+	}
+
+	private static class NullHandler implements Handler<Object> {
+		@Override
+		public void publish(Object message) {
+		}
+	}
+}
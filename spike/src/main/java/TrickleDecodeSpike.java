@@ -0,0 +1,87 @@
+/*
+ *   Copyright (c) 2012 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+import cloudeventbus.Subject;
+import cloudeventbus.codec.BulkSubscribeFrame;
+import cloudeventbus.codec.Decoder;
+import cloudeventbus.codec.Encoder;
+import cloudeventbus.codec.Frame;
+import cloudeventbus.codec.PublishFrame;
+import cloudeventbus.codec.SubscribeFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures decoding large text protocol frames that arrive a few bytes at a time, like they do over a slow link.
+ * Each read is appended to a cumulation buffer which is then decoded and compacted, the way
+ * {@link io.netty.handler.codec.ByteToMessageDecoder} handles reads.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class TrickleDecodeSpike {
+
+	private static final int READ_SIZE = 512;
+	private static final int ITERATIONS = 20;
+	private static final int MAX_FRAME_SIZE = 2 * 1024 * 1024;
+
+	public static void main(String[] args) throws Exception {
+		final StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 1024 * 1024; i++) {
+			body.append((char) ('a' + i % 26));
+		}
+		final PublishFrame publishFrame = new PublishFrame(new Subject("orders.eu.created"), new Subject("_INBOX.42"), body.toString());
+		final List<SubscribeFrame> subscriptions = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			subscriptions.add(new SubscribeFrame(new Subject("orders." + i + ".*"), "workers"));
+		}
+		final BulkSubscribeFrame bulkSubscribeFrame = new BulkSubscribeFrame(subscriptions);
+		for (int run = 0; run < 3; run++) {
+			System.out.println("Run " + run);
+			benchmark("Publish, 1MB body", publishFrame);
+			benchmark("Bulk subscribe, 20000", bulkSubscribeFrame);
+		}
+	}
+
+	private static void benchmark(String name, Frame frame) throws Exception {
+		final ByteBuf encoded = Unpooled.buffer();
+		new Encoder().encode(null, frame, encoded);
+		final byte[] bytes = new byte[encoded.readableBytes()];
+		encoded.readBytes(bytes);
+
+		long decoded = 0;
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			final Decoder decoder = new Decoder(MAX_FRAME_SIZE) {};
+			final ByteBuf cumulation = Unpooled.buffer();
+			for (int offset = 0; offset < bytes.length; offset += READ_SIZE) {
+				cumulation.writeBytes(bytes, offset, Math.min(READ_SIZE, bytes.length - offset));
+				while (cumulation.isReadable() && decoder.decode(null, cumulation) != null) {
+					decoded++;
+				}
+				cumulation.discardReadBytes();
+			}
+		}
+		final long elapsed = System.nanoTime() - start;
+		System.out.printf("  %-24s %,10.2f ms/frame  %,8d reads/frame  (%d decoded)%n",
+				name,
+				elapsed / 1e6 / ITERATIONS,
+				(bytes.length + READ_SIZE - 1) / READ_SIZE,
+				decoded);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ *   Copyright (c) 2013 Mike Heath.  All rights reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+import cloudeventbus.Subject;
+import cloudeventbus.hub.AbstractHub;
+import cloudeventbus.hub.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares matching published subjects against tail wild card subscriptions (the only wild card the old prefix
+ * semantics supported) and single token wild card subscriptions in the {@link AbstractHub} trie. A linear scan using
+ * {@link Subject#isSub(Subject)}, which is what a client filtering a broad subscription does, is included as a
+ * baseline.
+ *
+ * @author Mike Heath <elcapo@gmail.com>
+ */
+public class WildCardMatchingSpike {
+
+	private static final int SUBSCRIPTIONS = 10000;
+	private static final int SUBJECTS = 1024;
+	private static final int ITERATIONS = 2000000;
+
+	public static void main(String[] args) {
+		final List<Subject> subjects = new ArrayList<>();
+		for (int i = 0; i < SUBJECTS; i++) {
+			subjects.add(new Subject("orders." + (i % SUBSCRIPTIONS) + ".created"));
+		}
+
+		final List<Subject> prefixSubscriptions = new ArrayList<>();
+		final List<Subject> singleTokenSubscriptions = new ArrayList<>();
+		for (int i = 0; i < SUBSCRIPTIONS; i++) {
+			prefixSubscriptions.add(new Subject("orders." + i + ".*"));
+			singleTokenSubscriptions.add(new Subject("*." + i + ".created"));
+		}
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("Run " + run);
+			benchmarkHub("Prefix wild cards (trie)", prefixSubscriptions, subjects);
+			benchmarkHub("Single token wild cards (trie)", singleTokenSubscriptions, subjects);
+			benchmarkLinearScan("Prefix wild cards (linear isSub scan)", prefixSubscriptions, subjects);
+		}
+	}
+
+	private static void benchmarkHub(String name, List<Subject> subscriptions, List<Subject> subjects) {
+		// Disable the route cache so that every publish walks the trie.
+		final AbstractHub<Object> hub = new AbstractHub<Object>(1) {
+			@Override
+			protected Object encode(Subject subject, Subject replySubject, CharSequence body, int recipientCount) {
+				return body;
+			}
+		};
+		final CountingHandler handler = new CountingHandler();
+		for (Subject subscription : subscriptions) {
+			hub.subscribe(subscription, handler);
+		}
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			hub.publish(subjects.get(i % subjects.size()), null, "body");
+		}
+		report(name, ITERATIONS, start, handler.count);
+	}
+
+	private static void benchmarkLinearScan(String name, List<Subject> subscriptions, List<Subject> subjects) {
+		final int iterations = ITERATIONS / 100;
+		long matches = 0;
+		final long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			final Subject subject = subjects.get(i % subjects.size());
+			for (Subject subscription : subscriptions) {
+				if (subscription.isSub(subject)) {
+					matches++;
+				}
+			}
+		}
+		report(name, iterations, start, matches);
+	}
+
+	private static void report(String name, int iterations, long start, long matches) {
+		final long elapsed = System.nanoTime() - start;
+		System.out.printf("  %-40s %,12.0f publishes/s (%d matches)%n", name, iterations / (elapsed / 1e9), matches);
+	}
+
+	private static class CountingHandler implements Handler<Object> {
+		private long count;
+
+		@Override
+		public void publish(Object message) {
+			count++;
+		}
+	}
+}
@@ -16,10 +16,13 @@
  */
 package cloudeventbus.test;
 
+import cloudeventbus.Constants;
 import cloudeventbus.client.ConnectionStateAdapter;
 import cloudeventbus.client.Connector;
 import cloudeventbus.client.EventBus;
+import cloudeventbus.client.MessageIterator;
 import cloudeventbus.client.ServerInfo;
+import cloudeventbus.server.ServerConfig;
 import org.testng.annotations.Test;
 
 import java.util.concurrent.TimeUnit;
@@ -61,6 +64,86 @@ public class ConnectionTest {
 		}
 	}
 
+	@Test
+	public void binaryProtocolFallsBackOnOldServer() throws Exception {
+		try (
+				final TestServer server = new TestServer(new ServerConfig(Constants.DEFAULT_PORT, TestServer.SERVER_AGENT, null, null, null), Constants.PROTOCOL_VERSION_TEXT)
+		) {
+			final BlockingConnectionStateListener listener = new BlockingConnectionStateListener();
+			try (
+					EventBus eventBus = new Connector()
+							.addServer("localhost")
+							.autoReconnect(false)
+							.protocolVersion(Constants.PROTOCOL_VERSION_BINARY)
+							.addConnectionStateListener(listener)
+							.connect()
+				) {
+				listener.awaitConnection();
+				assertTrue(eventBus.isServerReady());
+				assertFalse(eventBus.isClosed());
+			}
+		}
+	}
+
+	@Test
+	public void defaultProtocolConnectsToOldServer() throws Exception {
+		try (
+				final TestServer server = new TestServer(new ServerConfig(Constants.DEFAULT_PORT, TestServer.SERVER_AGENT, null, null, null), Constants.PROTOCOL_VERSION_TEXT)
+		) {
+			final BlockingConnectionStateListener listener = new BlockingConnectionStateListener();
+			try (
+					EventBus eventBus = new Connector()
+							.addServer("localhost")
+							.autoReconnect(false)
+							.addConnectionStateListener(listener)
+							.connect()
+				) {
+				listener.awaitConnection();
+				assertTrue(eventBus.isServerReady());
+			}
+		}
+	}
+
+	@Test
+	public void resubscribe() throws Exception {
+		assertResubscribe(Constants.PROTOCOL_VERSION);
+	}
+
+	@Test
+	public void resubscribeToOldServer() throws Exception {
+		// Old servers reject bulk subscribe frames, the client must send each subscription on its own
+		assertResubscribe(Constants.PROTOCOL_VERSION_TEXT);
+	}
+
+	private void assertResubscribe(int maxProtocolVersion) throws Exception {
+		final int port = 4225;
+		final BlockingConnectionStateListener listener = new BlockingConnectionStateListener();
+		try (
+				EventBus eventBus = new Connector()
+						.reconnectWaitTime(100, TimeUnit.MILLISECONDS)
+						.addServer("localhost", port)
+						.addConnectionStateListener(listener)
+						.connect()
+		) {
+			// Subscribe before the server is up so that the subscriptions are sent once the server is ready
+			final MessageIterator plain = eventBus.subscribe("resubscribe.plain").iterator();
+			final MessageIterator wildcard = eventBus.subscribe("resubscribe.wildcard.*").iterator();
+			final MessageIterator queueGroup = eventBus.subscribe("resubscribe.group", "workers", null).iterator();
+			try (
+					final TestServer server = new TestServer(new ServerConfig(port, TestServer.SERVER_AGENT, null, null, null), maxProtocolVersion)
+			) {
+				listener.awaitConnection();
+				eventBus.publish("resubscribe.plain", "plain");
+				eventBus.publish("resubscribe.wildcard.a", "wildcard");
+				eventBus.publish("resubscribe.group", "group");
+				assertEquals(plain.next(2, TimeUnit.SECONDS).getBody(), "plain");
+				assertEquals(wildcard.next(2, TimeUnit.SECONDS).getBody(), "wildcard");
+				assertEquals(queueGroup.next(2, TimeUnit.SECONDS).getBody(), "group");
+				assertEquals(server.getConnectionCount(), 1);
+			}
+		}
+	}
+
 	@Test(invocationCount = 4)
 	public void reconnect() throws Exception {
 		final int port1 = 4223;
@@ -1,6 +1,12 @@
 package cloudeventbus.test;
 
 import cloudeventbus.Constants;
+import cloudeventbus.codec.BulkSubscribeFrame;
+import cloudeventbus.codec.Codec;
+import cloudeventbus.codec.ErrorFrame;
+import cloudeventbus.codec.FrameType;
+import cloudeventbus.codec.GreetingFrame;
+import cloudeventbus.codec.ServerReadyFrame;
 import cloudeventbus.server.ClusterManager;
 import cloudeventbus.server.GlobalHub;
 import cloudeventbus.server.ServerChannelInitializer;
@@ -10,6 +16,7 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundMessageHandlerAdapter;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelStateHandlerAdapter;
 import io.netty.channel.group.ChannelGroup;
@@ -17,6 +24,7 @@ import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.MessageToMessageEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,6 +71,52 @@ public class TestServer implements AutoCloseable {
 
 	private ConnectionCounterHandler connectionCounter = new ConnectionCounterHandler();
 
+	/**
+	 * Rejects greetings for protocol versions newer than a maximum version the way a server that predates them does.
+	 */
+	@ChannelHandler.Sharable
+	static class ProtocolVersionLimiter extends ChannelInboundMessageHandlerAdapter<GreetingFrame> {
+		private final int maxProtocolVersion;
+
+		ProtocolVersionLimiter(int maxProtocolVersion) {
+			this.maxProtocolVersion = maxProtocolVersion;
+		}
+
+		@Override
+		protected boolean acceptInboundMessage(Object msg) throws Exception {
+			return msg instanceof GreetingFrame && ((GreetingFrame) msg).getVersion() > maxProtocolVersion;
+		}
+
+		@Override
+		protected void messageReceived(ChannelHandlerContext context, GreetingFrame greeting) throws Exception {
+			final ErrorFrame error = new ErrorFrame(ErrorFrame.Code.UNSUPPORTED_PROTOCOL_VERSION, "This server doesn't support protocol version " + greeting.getVersion());
+			context.write(error).addListener(ChannelFutureListener.CLOSE);
+		}
+	}
+
+	/**
+	 * Rejects bulk subscribe frames the way a server that predates them does.
+	 */
+	@ChannelHandler.Sharable
+	static class BulkSubscribeRejecter extends ChannelInboundMessageHandlerAdapter<BulkSubscribeFrame> {
+		@Override
+		protected void messageReceived(ChannelHandlerContext context, BulkSubscribeFrame bulkSubscribe) throws Exception {
+			final ErrorFrame error = new ErrorFrame(ErrorFrame.Code.MALFORMED_REQUEST, "Invalid frame type " + FrameType.BULK_SUBSCRIBE.getOpcode());
+			context.write(error).addListener(ChannelFutureListener.CLOSE);
+		}
+	}
+
+	/**
+	 * Sends server ready frames without a max message size the way a server that predates bulk subscribe frames does.
+	 */
+	@ChannelHandler.Sharable
+	static class ServerReadyDowngrader extends MessageToMessageEncoder<ServerReadyFrame> {
+		@Override
+		protected Object encode(ChannelHandlerContext context, ServerReadyFrame serverReady) throws Exception {
+			return ServerReadyFrame.SERVER_READY;
+		}
+	}
+
 	public TestServer() {
 		this(SERVER_AGENT, Constants.DEFAULT_PORT);
 	}
@@ -72,6 +126,17 @@ public class TestServer implements AutoCloseable {
 	}
 
 	public TestServer(ServerConfig serverConfig) {
+		this(serverConfig, Constants.PROTOCOL_VERSION);
+	}
+
+	/**
+	 * Creates a server that behaves like an older server which only supports protocol versions up to
+	 * {@code maxProtocolVersion}. Such servers also predate bulk subscribe frames.
+	 */
+	public TestServer(ServerConfig serverConfig, int maxProtocolVersion) {
+		final ProtocolVersionLimiter versionLimiter = maxProtocolVersion < Constants.PROTOCOL_VERSION ? new ProtocolVersionLimiter(maxProtocolVersion) : null;
+		final BulkSubscribeRejecter bulkSubscribeRejecter = new BulkSubscribeRejecter();
+		final ServerReadyDowngrader serverReadyDowngrader = new ServerReadyDowngrader();
 		this.serverConfig = serverConfig;
 		final NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup();
 		globalHub = new GlobalHub();
@@ -86,6 +151,11 @@ public class TestServer implements AutoCloseable {
 						super.initChannel(channel);
 						final ChannelPipeline pipeline = channel.pipeline();
 						pipeline.addFirst("counter", connectionCounter);
+						if (versionLimiter != null) {
+							pipeline.addAfter(pipeline.context(Codec.class).name(), "versionLimiter", versionLimiter);
+							pipeline.addAfter("versionLimiter", "bulkSubscribeRejecter", bulkSubscribeRejecter);
+							pipeline.addAfter("bulkSubscribeRejecter", "serverReadyDowngrader", serverReadyDowngrader);
+						}
 					}
 				})
 				.bind().awaitUninterruptibly();